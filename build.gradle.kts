@@ -1,6 +1,8 @@
 plugins {
     // QuPath Gradle extension convention plugin
     id("qupath-conventions")
+    // Runnable distribution of the command line entry point
+    application
     // Benchmark plugin
     id("me.champeau.jmh") version "0.7.3"
 }
@@ -23,6 +25,38 @@ dependencies {
     testImplementation(libs.junit.platform)
 }
 
+application {
+    // Stitch batches of slides in one JVM without QuPath's user interface (see StitchingCommand)
+    mainClass = "qupath.ext.stitching.cli.StitchingCommand"
+    applicationName = "qupath-stitching"
+    // The logging configuration is only part of the distribution (see src/dist), so that it doesn't override the
+    // logging of applications using the extension as a library
+    applicationDefaultJvmArgs = listOf(
+        "-Djava.awt.headless=true",
+        "-Dlogback.configurationFile=APP_HOME_PLACEHOLDER/conf/logback.xml"
+    )
+}
+
+tasks.startScripts {
+    // Point the start scripts to the conf directory of the installed distribution
+    doLast {
+        unixScript.writeText(unixScript.readText().replace("APP_HOME_PLACEHOLDER", "'\"\$APP_HOME\"'"))
+        windowsScript.writeText(windowsScript.readText().replace("APP_HOME_PLACEHOLDER", "%APP_HOME%"))
+    }
+}
+
+tasks.named<JavaExec>("run") {
+    jvmArgs = listOf(
+        "-Djava.awt.headless=true",
+        "-Dlogback.configurationFile=${layout.projectDirectory.file("src/dist/conf/logback.xml").asFile}"
+    )
+}
+
+jmh {
+    // Report the memory allocated per operation, to check that pixel buffers are reused
+    profilers.add("gc")
+}
+
 repositories {
     maven {
         name = "ome.maven"
@@ -1,6 +1,8 @@
+import qupath.ext.stitching.core.BlendingMode
 import qupath.ext.stitching.core.ImageStitcher
 import qupath.ext.stitching.core.positionfinders.TiffTagPositionFinder
 import qupath.ext.stitching.core.positionfinders.FilenamePatternPositionFinder
+import qupath.lib.images.writers.ome.OMEPyramidWriter
 
 /*
  * This script will stitch input images and write the result to an output OME-TIFF image.
@@ -16,14 +18,35 @@ var positionFinders = [
         new FilenamePatternPositionFinder(FilenamePatternPositionFinder.StandardPattern.VECTRA),
         new TiffTagPositionFinder()
 ]     // a list of strategies for where to find each tile position. FilenamePatternPositionFinder looks at the image name, while TiffTagPositionFinder looks at the TIFF tags of the image
-var numberOfThreads = Runtime.getRuntime().availableProcessors()    // the number of threads to use when reading and writing files
+var numberOfThreads = Runtime.getRuntime().availableProcessors()    // the number of threads to use when reading and writing images
 var pyramidalize = true                                         // whether to create a pyramidal image
+var maxOpenInputs = 128                                         // the maximum number of input images that can be open at the same time
+var maxConcurrentParsing = 128                                  // the maximum number of input images that can be parsed at the same time. A higher number can help if the input images are on a network drive
+var memoryBudget = Long.MAX_VALUE                               // the maximum number of bytes the pixels being processed can use at the same time (e.g. 4L << 30 for 4 GiB). Threads wait when it is reached
+var pipelinedParsing = false                                    // whether to start writing the output image while the input images are still parsed. Positions must then be found without opening the input images (e.g. from TIFF tags or file names)
+var registration = false                                        // whether to correct the tile positions by aligning the overlapping parts of neighbouring tiles
+var blendingMode = BlendingMode.NONE                            // how to determine the pixels covered by several tiles: NONE (the tile written last is used), FEATHER (weighted average of the tiles), or NEAREST_CENTER (the tile whose center is the closest is used)
+var shadingCorrection = false                                   // whether to correct the uneven illumination (for example vignetting) of the input images, estimated from a random sample of them
+var shadingCorrectionSamples = 50                               // the number of input images to read to estimate the shading correction
+var tiffCompression = null                                      // how to compress the tiles of the output image, for example OMEPyramidWriter.CompressionType.LZW, ZLIB, or JPEG (lossy, for 8-bit RGB images only). Null to use the default lossless compression
+var tiffTileSize = 512                                          // the width and height of the tiles of the output image (a multiple of 16), or 0 to align them with the grid of the input images
 
-new ImageStitcher.Builder(inputImages)
-    .positionFinders(positionFinders)
-    .numberOfThreads(numberOfThreads)
-    .pyramidalize(pyramidalize)
-    .build()
-    .writeToTiffFile(outputImage)
+try (var imageStitcher = new ImageStitcher.Builder(inputImages)
+        .positionFinders(positionFinders)
+        .numberOfThreads(numberOfThreads)
+        .pyramidalize(pyramidalize)
+        .maxOpenInputs(maxOpenInputs)
+        .maxConcurrentParsing(maxConcurrentParsing)
+        .memoryBudget(memoryBudget)
+        .pipelinedParsing(pipelinedParsing)
+        .registration(registration)
+        .blendingMode(blendingMode)
+        .shadingCorrection(shadingCorrection)
+        .shadingCorrectionSamples(shadingCorrectionSamples)
+        .tiffCompression(tiffCompression)
+        .tiffTileSize(tiffTileSize)
+        .build()) {
+    imageStitcher.writeToTiffFile(outputImage)
+}
 
 println "Done"
\ No newline at end of file
@@ -1,4 +1,6 @@
+import qupath.ext.stitching.core.BlendingMode
 import qupath.ext.stitching.core.ImageStitcher
+import qupath.ext.stitching.core.ZarrCodec
 import qupath.ext.stitching.core.positionfinders.TiffTagPositionFinder
 import qupath.ext.stitching.core.positionfinders.FilenamePatternPositionFinder
 
@@ -11,19 +13,48 @@ var inputImages = [
         "/path/to/the/input/image2.tiff",
         // other images...
 ]
-var outputImage = "/path/to/the/output/image.ome.zarr"          // the path must ends with ".ome.zarr" and must not already exist
+var outputImage = "/path/to/the/output/image.ome.zarr"          // the path must ends with ".ome.zarr" and must not already exist (unless it contains an interrupted writing, see below)
 var positionFinders = [
         new FilenamePatternPositionFinder(FilenamePatternPositionFinder.StandardPattern.VECTRA),
         new TiffTagPositionFinder()
 ]     // a list of strategies for where to find each tile position. FilenamePatternPositionFinder looks at the image name, while TiffTagPositionFinder looks at the TIFF tags of the image
-var numberOfThreads = Runtime.getRuntime().availableProcessors()  // the number of threads to use when reading and writing files
+var numberOfThreads = Runtime.getRuntime().availableProcessors()  // the number of threads to use when reading and writing images
 var pyramidalize = true                                       // whether to create a pyramidal image
+var maxOpenInputs = 128                                       // the maximum number of input images that can be open at the same time
+var maxConcurrentParsing = 128                                // the maximum number of input images that can be parsed at the same time. A higher number can help if the input images are on a network drive
+var memoryBudget = Long.MAX_VALUE                             // the maximum number of bytes the pixels being processed can use at the same time (e.g. 4L << 30 for 4 GiB). Threads wait when it is reached
+var pipelinedParsing = false                                  // whether to start writing the output image while the input images are still parsed. Positions must then be found without opening the input images (e.g. from TIFF tags or file names)
+var registration = false                                      // whether to correct the tile positions by aligning the overlapping parts of neighbouring tiles
+var blendingMode = BlendingMode.NONE                          // how to determine the pixels covered by several tiles: NONE (the tile written last is used), FEATHER (weighted average of the tiles), or NEAREST_CENTER (the tile whose center is the closest is used)
+var shadingCorrection = false                                 // whether to correct the uneven illumination (for example vignetting) of the input images, estimated from a random sample of them
+var shadingCorrectionSamples = 50                             // the number of input images to read to estimate the shading correction
+var zarrCodec = ZarrCodec.BLOSC_LZ4                           // how to compress the chunks of the output image: BLOSC_LZ4 (fast), BLOSC_ZSTD (smaller), ZLIB, GZIP, or NONE (fastest, largest image)
+var zarrCompressionLevel = ZarrCodec.DEFAULT_LEVEL            // the compression level, from 1 (fastest) to 9 (smallest image)
+var chunkSize = 0                                             // the width and height of the chunks of the output image (a multiple of 4), or 0 to align them with the grid of the input images
+var zarrShardSize = 1                                         // the number of chunks along each axis of a shard file (e.g. 8 to pack 8x8 chunks per file, with the Zarr v3 format), or 1 to store each chunk in its own file
 
-new ImageStitcher.Builder(inputImages)
-    .positionFinders(positionFinders)
-    .numberOfThreads(numberOfThreads)
-    .pyramidalize(pyramidalize)
-    .build()
-    .writeToZarrFile(outputImage, null)
+try (var imageStitcher = new ImageStitcher.Builder(inputImages)
+        .positionFinders(positionFinders)
+        .numberOfThreads(numberOfThreads)
+        .pyramidalize(pyramidalize)
+        .maxOpenInputs(maxOpenInputs)
+        .maxConcurrentParsing(maxConcurrentParsing)
+        .memoryBudget(memoryBudget)
+        .pipelinedParsing(pipelinedParsing)
+        .registration(registration)
+        .blendingMode(blendingMode)
+        .shadingCorrection(shadingCorrection)
+        .shadingCorrectionSamples(shadingCorrectionSamples)
+        .zarrCodec(zarrCodec)
+        .zarrCompressionLevel(zarrCompressionLevel)
+        .chunkSize(chunkSize)
+        .zarrShardSize(zarrShardSize)
+        .build()) {
+    if (ImageStitcher.isZarrFileResumable(outputImage)) {
+        imageStitcher.resumeZarrFile(outputImage, null)      // continue a writing that was interrupted, only writing missing chunks
+    } else {
+        imageStitcher.writeToZarrFile(outputImage, null)
+    }
+}
 
 println "Done"
\ No newline at end of file
@@ -64,16 +64,17 @@ public class BenchmarkImageStitching {
     }
 
     @Benchmark
-    public void Benchmark_Number_Of_Threads_Of_Image_Stitcher_Creation() throws IOException, InterruptedException {
+    public void Benchmark_Number_Of_Threads_Of_Image_Stitcher_Creation() throws Exception {
         String outputPath = Files.createTempDirectory(imagesDirectory, null).resolve("image.ome.zarr").toString();
 
-        new ImageStitcher.Builder(imagePaths)
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(imagePaths)
                 .numberOfThreads(Math.max(
                         (int) (Runtime.getRuntime().availableProcessors() * fractionOfAvailableCores),
                         1
                 ))
-                .build()
-                .writeToZarrFile(outputPath, null);
+                .build()) {
+            imageStitcher.writeToZarrFile(outputPath, null);
+        }
     }
 
     @TearDown(Level.Trial)
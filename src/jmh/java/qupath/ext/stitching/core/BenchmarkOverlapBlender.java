@@ -0,0 +1,82 @@
+package qupath.ext.stitching.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A benchmark to compare the cost of the blending modes. It blends the four parts of input images covering a
+ * corner of a grid of overlapping input images into an output tile, as done for each tile of the stitched image.
+ * <p>
+ * It can be run with "./gradlew jmh". Results will be printed on the console and saved to build/results/jmh/results.txt.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Fork(2)
+public class BenchmarkOverlapBlender {
+
+    private static final int TILE_SIZE = 512;
+    private static final int INPUT_SIZE = 1800;
+    private static final int OVERLAP = 180;
+    private OverlapBlender overlapBlender;
+    private List<OverlapBlender.Part> parts;
+    private WritableRaster destination;
+    @Param({"NONE", "FEATHER", "NEAREST_CENTER"})
+    public BlendingMode blendingMode;
+
+    @Setup(Level.Trial)
+    public void Create_Parts() {
+        overlapBlender = new OverlapBlender(blendingMode);
+        destination = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB).getRaster();
+
+        // The output tile is centered on the corner shared by four input images, which overlap by OVERLAP pixels
+        int start = INPUT_SIZE - OVERLAP / 2 - TILE_SIZE / 2;
+        int step = INPUT_SIZE - OVERLAP;
+        parts = List.of(
+                createPart(start, start, 0, 0),
+                createPart(start, start - step, 0, step),
+                createPart(start - step, start, step, 0),
+                createPart(start - step, start - step, step, step)
+        );
+    }
+
+    @Benchmark
+    public WritableRaster Benchmark_Blending_Of_Overlapping_Tile() {
+        overlapBlender.blend(parts, destination);
+        return destination;
+    }
+
+    private static OverlapBlender.Part createPart(int tileXInInput, int tileYInInput, int inputX, int inputY) {
+        int x1 = Math.max(0, tileXInInput);
+        int y1 = Math.max(0, tileYInInput);
+        int x2 = Math.min(INPUT_SIZE, tileXInInput + TILE_SIZE);
+        int y2 = Math.min(INPUT_SIZE, tileYInInput + TILE_SIZE);
+        BufferedImage part = ImageUtils.createTexturedImage(x2 - x1, y2 - y1, inputX + inputY);
+
+        return new OverlapBlender.Part(
+                part.getRaster(),
+                x1 - tileXInInput,
+                y1 - tileYInInput,
+                x1,
+                y1,
+                INPUT_SIZE,
+                INPUT_SIZE,
+                1
+        );
+    }
+}
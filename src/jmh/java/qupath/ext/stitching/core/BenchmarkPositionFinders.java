@@ -0,0 +1,81 @@
+package qupath.ext.stitching.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import qupath.ext.stitching.core.positionfinders.FilenamePatternPositionFinder;
+import qupath.ext.stitching.core.positionfinders.PositionFinder;
+import qupath.ext.stitching.core.positionfinders.TiffTagPositionFinder;
+import qupath.lib.images.servers.ImageServer;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A benchmark to measure the cost of finding the positions of all input images with each {@link PositionFinder}.
+ * <p>
+ * Positions are found either from probes of the input files (which is tried first by the {@link ImageStitcher}, and
+ * includes the cost of probing the files), or from servers already opened on the input images.
+ * <p>
+ * It can be run with "./gradlew jmh". Results will be printed on the console and saved to build/results/jmh/results.txt.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Fork(1)
+public class BenchmarkPositionFinders {
+
+    private PositionFinder finder;
+    private List<ImageServer<BufferedImage>> servers;
+    @Param({"FILE_NAME", "TIFF_TAGS"})
+    public String positionFinder;
+
+    @Setup(Level.Trial)
+    public void Open_Input_Images(StitchingInputs inputs) throws Exception {
+        finder = switch (positionFinder) {
+            case "FILE_NAME" -> new FilenamePatternPositionFinder(FilenamePatternPositionFinder.StandardPattern.VECTRA);
+            case "TIFF_TAGS" -> new TiffTagPositionFinder();
+            default -> throw new IllegalArgumentException(String.format("Unknown position finder %s", positionFinder));
+        };
+
+        servers = new ArrayList<>();
+        for (int i=0; i<inputs.getImagePaths().size(); i++) {
+            servers.add(inputs.openImage(i));
+        }
+    }
+
+    @Benchmark
+    public void Benchmark_Position_Finding_From_Probes(StitchingInputs inputs, Blackhole blackhole) throws IOException {
+        for (String imagePath: inputs.getImagePaths()) {
+            blackhole.consume(finder.findProbedPosition(InputProbe.probe(imagePath)));
+        }
+    }
+
+    @Benchmark
+    public void Benchmark_Position_Finding_From_Servers(Blackhole blackhole) throws IOException {
+        for (ImageServer<BufferedImage> server: servers) {
+            blackhole.consume(finder.findPosition(server));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void Close_Input_Images() throws Exception {
+        for (ImageServer<BufferedImage> server: servers) {
+            server.close();
+        }
+    }
+}
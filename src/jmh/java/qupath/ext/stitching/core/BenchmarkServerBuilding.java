@@ -0,0 +1,47 @@
+package qupath.ext.stitching.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import qupath.ext.stitching.core.positionfinders.TiffTagPositionFinder;
+import qupath.lib.images.servers.ImageServer;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A benchmark to measure the cost of building servers: the Bio-Formats servers reading each input image, and the
+ * {@link ImageStitcher} parsing all input images and creating the stitched image (without writing it).
+ * <p>
+ * It can be run with "./gradlew jmh". Results will be printed on the console and saved to build/results/jmh/results.txt.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Fork(1)
+public class BenchmarkServerBuilding {
+
+    @Benchmark
+    public void Benchmark_Building_Of_Input_Servers(StitchingInputs inputs, Blackhole blackhole) throws Exception {
+        for (int i=0; i<inputs.getImagePaths().size(); i++) {
+            try (ImageServer<BufferedImage> server = inputs.openImage(i)) {
+                blackhole.consume(server.getMetadata());
+            }
+        }
+    }
+
+    @Benchmark
+    public void Benchmark_Building_Of_Image_Stitcher(StitchingInputs inputs, Blackhole blackhole) throws Exception {
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(inputs.getImagePaths())
+                .positionFinders(List.of(new TiffTagPositionFinder()))
+                .build()
+        ) {
+            blackhole.consume(imageStitcher.getServer().getMetadata());
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package qupath.ext.stitching.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import qupath.ext.stitching.Utils;
+import qupath.ext.stitching.core.positionfinders.TiffTagPositionFinder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A benchmark to measure the cost of writing a stitched image to an OME-Zarr image and to an OME-TIFF file, once the
+ * {@link ImageStitcher} is created (see {@link BenchmarkServerBuilding} for the creation of the stitcher).
+ * <p>
+ * The output written by each invocation is deleted once the invocation is done, so that benchmarks writing large
+ * images don't fill the disk.
+ * <p>
+ * It can be run with "./gradlew jmh". Results will be printed on the console and saved to build/results/jmh/results.txt.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Fork(1)
+public class BenchmarkStitchedImageWriting {
+
+    private ImageStitcher imageStitcher;
+    private Path outputDirectory;
+
+    @Setup(Level.Trial)
+    public void Create_Image_Stitcher(StitchingInputs inputs) throws Exception {
+        imageStitcher = new ImageStitcher.Builder(inputs.getImagePaths())
+                .positionFinders(List.of(new TiffTagPositionFinder()))
+                .build();
+    }
+
+    @Setup(Level.Invocation)
+    public void Create_Output_Directory() throws Exception {
+        outputDirectory = Files.createTempDirectory(null);
+    }
+
+    @Benchmark
+    public void Benchmark_Zarr_Writing() throws Exception {
+        imageStitcher.writeToZarrFile(outputDirectory.resolve("image.ome.zarr").toString(), null);
+    }
+
+    @Benchmark
+    public void Benchmark_Tiff_Writing() throws Exception {
+        imageStitcher.writeToTiffFile(outputDirectory.resolve("image.ome.tiff").toString());
+    }
+
+    @TearDown(Level.Invocation)
+    public void Delete_Output_Directory() throws Exception {
+        Utils.deleteFileOrDirectoryRecursively(outputDirectory.toFile());
+    }
+
+    @TearDown(Level.Trial)
+    public void Close_Image_Stitcher() throws Exception {
+        imageStitcher.close();
+    }
+}
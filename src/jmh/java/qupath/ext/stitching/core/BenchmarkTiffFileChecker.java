@@ -0,0 +1,32 @@
+package qupath.ext.stitching.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A benchmark to measure the cost of checking that all input images are TIFF files (see {@link TiffFileChecker}), when
+ * each file is opened only for this check. When stitching, this check is done by {@link InputProbe} on the first
+ * bytes it reads, without opening the file again.
+ * <p>
+ * It can be run with "./gradlew jmh". Results will be printed on the console and saved to build/results/jmh/results.txt.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2)
+@Fork(1)
+public class BenchmarkTiffFileChecker {
+
+    @Benchmark
+    public void Benchmark_Check_Of_All_Input_Images(StitchingInputs inputs) throws IOException {
+        for (String imagePath: inputs.getImagePaths()) {
+            TiffFileChecker.checkTiffFile(imagePath);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package qupath.ext.stitching.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import qupath.lib.images.servers.ImageServer;
+import qupath.lib.images.servers.TileRequest;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A benchmark to measure the cost of composing all full resolution tiles of a {@link StitchedImageServer}: reading
+ * the parts of the input images intersecting each tile, and drawing them into the tile.
+ * <p>
+ * Tiles are read on a single thread and without going through the tile cache of the server, and all input images are
+ * kept open, so that only the composition is measured.
+ * <p>
+ * It can be run with "./gradlew jmh". Results will be printed on the console and saved to build/results/jmh/results.txt.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Fork(1)
+public class BenchmarkTileComposition {
+
+    private StitchedImageServer server;
+    private Collection<TileRequest> tileRequests;
+
+    @Setup(Level.Trial)
+    public void Create_Server(StitchingInputs inputs) throws Exception {
+        List<InputDescriptor> descriptors = new ArrayList<>();
+        for (int i=0; i<inputs.getImagePaths().size(); i++) {
+            try (ImageServer<BufferedImage> input = inputs.openImage(i)) {
+                descriptors.add(InputDescriptor.of(input));
+            }
+        }
+
+        server = new StitchedImageServer.Builder(
+                descriptors,
+                new InputServerPool(inputs::openImage, descriptors.size()),
+                inputs.getLayout()
+        ).build();
+        tileRequests = server.getTileRequestManager().getTileRequestsForLevel(0);
+    }
+
+    @Benchmark
+    public void Benchmark_Composition_Of_All_Tiles(Blackhole blackhole) throws Exception {
+        for (TileRequest tileRequest: tileRequests) {
+            blackhole.consume(server.readTile(tileRequest));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void Close_Server() throws Exception {
+        server.close();
+    }
+}
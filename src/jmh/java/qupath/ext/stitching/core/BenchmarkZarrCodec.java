@@ -0,0 +1,82 @@
+package qupath.ext.stitching.core;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A benchmark to compare the speed and compression ratio of the Zarr codecs and compression levels. It encodes a
+ * 16-bit chunk containing smooth intensity variations with some noise, as usually found in fluorescence images.
+ * <p>
+ * Each compression is described by a codec, followed by the compression level for compressed codecs (for example
+ * "ZLIB_5"). The compression ratio of each compression is reported next to its throughput as a secondary result
+ * (see {@link CompressionRatio}).
+ * <p>
+ * It can be run with "./gradlew jmh". Results will be printed on the console and saved to build/results/jmh/results.txt.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Fork(1)
+public class BenchmarkZarrCodec {
+
+    private static final int CHUNK_SIZE = 512;
+    private static final int NOISE = 64;
+    private byte[] chunk;
+    private ZarrCodec codec;
+    private int level;
+    @Param({"NONE", "ZLIB_1", "ZLIB_5", "ZLIB_9", "GZIP_1", "GZIP_5", "GZIP_9", "BLOSC_LZ4_1", "BLOSC_LZ4_5", "BLOSC_LZ4_9", "BLOSC_ZSTD_1", "BLOSC_ZSTD_5", "BLOSC_ZSTD_9"})
+    public String compression;
+    /**
+     * The compression ratio of the encoded chunk. It is set by each benchmark invocation (and not accumulated), so the
+     * reported value is the compression ratio as long as the benchmark is run by a single thread.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class CompressionRatio {
+
+        public double compressionRatio;
+    }
+
+    @Setup(Level.Trial)
+    public void Create_Chunk() {
+        // Codec names can contain underscores, so the level is after the last one
+        int levelSeparator = compression.lastIndexOf('_');
+        boolean hasLevel = levelSeparator >= 0 && Character.isDigit(compression.charAt(compression.length() - 1));
+        codec = ZarrCodec.valueOf(hasLevel ? compression.substring(0, levelSeparator) : compression);
+        level = hasLevel ? Integer.parseInt(compression.substring(levelSeparator + 1)) : ZarrCodec.DEFAULT_LEVEL;
+
+        Random random = new Random(0);
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE * CHUNK_SIZE * Short.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int y=0; y<CHUNK_SIZE; y++) {
+            for (int x=0; x<CHUNK_SIZE; x++) {
+                double signal = 2000 + 1500 * Math.sin(x / 40d) * Math.cos(y / 55d);
+                buffer.putShort((short) (signal + random.nextInt(NOISE)));
+            }
+        }
+        chunk = buffer.array();
+    }
+
+    @Benchmark
+    public byte[] Benchmark_Encoding_Of_Chunk(CompressionRatio compressionRatio) throws IOException {
+        byte[] encodedChunk = codec.encode(chunk, level);
+        compressionRatio.compressionRatio = (double) chunk.length / encodedChunk.length;
+        return encodedChunk;
+    }
+}
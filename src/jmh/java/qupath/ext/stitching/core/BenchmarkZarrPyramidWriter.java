@@ -0,0 +1,94 @@
+package qupath.ext.stitching.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import qupath.ext.stitching.Utils;
+import qupath.lib.images.servers.ImageServer;
+import qupath.lib.images.servers.WrappedBufferedImageServer;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * A benchmark to measure the cost of composing, downsampling and encoding the chunks of an OME-Zarr image. It writes
+ * all chunks of a grid of in-memory input images, so that reading the input images from disk doesn't hide the cost of
+ * the writer.
+ * <p>
+ * It can be run with "./gradlew jmh". Results will be printed on the console and saved to build/results/jmh/results.txt.
+ * The "gc.alloc.rate.norm" line of each result (given by the gc profiler enabled in build.gradle.kts) indicates the
+ * number of bytes allocated per written image, which should stay close to the size of the input parts read (the
+ * chunks and encoding buffers being reused).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Fork(2)
+public class BenchmarkZarrPyramidWriter {
+
+    private static final int CHUNK_SIZE = 512;
+    private static final int INPUT_SIZE = 1024;
+    private static final int NUMBER_OF_INPUTS_PER_SIDE = 4;
+    private Path outputDirectory;
+    private StitchedImageServer server;
+    private OmeZarrStore store;
+    @Param({"NONE", "ZLIB", "BLOSC_LZ4"})
+    public ZarrCodec codec;
+    @Param({"1", "4"})
+    public int numberOfThreads;
+
+    @Setup(Level.Trial)
+    public void Create_Server_And_Store() throws Exception {
+        List<ImageServer<BufferedImage>> inputs = IntStream.range(0, NUMBER_OF_INPUTS_PER_SIDE * NUMBER_OF_INPUTS_PER_SIDE)
+                .mapToObj(i -> (ImageServer<BufferedImage>) new WrappedBufferedImageServer(
+                        String.valueOf(i),
+                        ImageUtils.createTexturedImage(INPUT_SIZE, INPUT_SIZE, i)
+                ))
+                .toList();
+        server = new StitchedImageServer.Builder(
+                inputs.stream().map(InputDescriptor::of).toList(),
+                new InputServerPool(inputs::get, inputs.size()),
+                new TileLayout(
+                        IntStream.range(0, inputs.size()).map(i -> (i % NUMBER_OF_INPUTS_PER_SIDE) * INPUT_SIZE).toArray(),
+                        IntStream.range(0, inputs.size()).map(i -> (i / NUMBER_OF_INPUTS_PER_SIDE) * INPUT_SIZE).toArray(),
+                        IntStream.generate(() -> INPUT_SIZE).limit(inputs.size()).toArray(),
+                        IntStream.generate(() -> INPUT_SIZE).limit(inputs.size()).toArray()
+                )
+        ).build();
+
+        outputDirectory = Files.createTempDirectory(null);
+        store = new OmeZarrStore.Builder(outputDirectory.resolve("image.ome.zarr"), server.getMetadata())
+                .numberOfLevels(OmeZarrStore.getNumberOfLevelsToFitInChunk(server.getWidth(), server.getHeight(), CHUNK_SIZE, CHUNK_SIZE))
+                .chunkSize(CHUNK_SIZE, CHUNK_SIZE)
+                .codec(codec)
+                .build();
+    }
+
+    @Benchmark
+    public void Benchmark_Writing_Of_All_Chunks() throws Exception {
+        ZarrPyramidWriter writer = new ZarrPyramidWriter.Builder(server, store)
+                .numberOfThreads(numberOfThreads)
+                .build();
+        writer.write(writer.getAllChunks(), false, null, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void Delete_Store() throws Exception {
+        server.close();
+        Utils.deleteFileOrDirectoryRecursively(outputDirectory.toFile());
+    }
+}
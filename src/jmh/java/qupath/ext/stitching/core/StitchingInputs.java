@@ -0,0 +1,102 @@
+package qupath.ext.stitching.core;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import qupath.ext.stitching.Utils;
+import qupath.lib.images.servers.ImageServer;
+import qupath.lib.images.servers.bioformats.BioFormatsServerBuilder;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * The input images shared by the benchmarks of each phase of the stitching (see for example {@link BenchmarkTileComposition}),
+ * so that all phases are measured on the same images.
+ * <p>
+ * The input images are TIFF files placed on a square grid with an overlap of 10% between neighbours, as produced by
+ * a slide scanner. Their positions are contained both in their file names (with the Vectra "[x,y]" pattern) and in
+ * their "XPosition" and "YPosition" TIFF tags, so that every position finder can be used.
+ * <p>
+ * The benchmarks using this state are run for every combination of number of tiles, tile size, number of channels,
+ * and bit depth, which can take a long time. The benchmarks and parameters to run can be restricted with the
+ * "includes" and "benchmarkParameters" options of the "jmh" block of build.gradle.kts.
+ */
+@State(Scope.Benchmark)
+public class StitchingInputs {
+
+    private static final int OVERLAP_PERCENTAGE = 10;
+    private static final BioFormatsServerBuilder SERVER_BUILDER = new BioFormatsServerBuilder();
+    private Path imagesDirectory;
+    private List<String> imagePaths;
+    private TileLayout layout;
+    @Param({"4", "16"})
+    public int numberOfTiles;
+    @Param({"512", "1024"})
+    public int tileSize;
+    @Param({"1", "4"})
+    public int numberOfChannels;
+    @Param({"8", "16"})
+    public int bitDepth;
+
+    @Setup(Level.Trial)
+    public void Create_Input_Images() throws IOException {
+        int tilesPerRow = (int) Math.ceil(Math.sqrt(numberOfTiles));
+        int step = tileSize - tileSize * OVERLAP_PERCENTAGE / 100;
+        int[] xs = IntStream.range(0, numberOfTiles).map(i -> (i % tilesPerRow) * step).toArray();
+        int[] ys = IntStream.range(0, numberOfTiles).map(i -> (i / tilesPerRow) * step).toArray();
+
+        imagesDirectory = Files.createTempDirectory(null);
+        imagePaths = new ArrayList<>();
+        for (int i=0; i<numberOfTiles; i++) {
+            Path path = imagesDirectory.resolve(String.format("tile_[%d,%d].tif", xs[i], ys[i]));
+            ImageUtils.writeMultichannelTiff(path, tileSize, tileSize, numberOfChannels, bitDepth, xs[i], ys[i], i);
+            imagePaths.add(path.toString());
+        }
+
+        layout = new TileLayout(
+                xs,
+                ys,
+                IntStream.generate(() -> tileSize).limit(numberOfTiles).toArray(),
+                IntStream.generate(() -> tileSize).limit(numberOfTiles).toArray()
+        );
+    }
+
+    @TearDown(Level.Trial)
+    public void Delete_Input_Images() throws IOException {
+        Utils.deleteFileOrDirectoryRecursively(imagesDirectory.toFile());
+    }
+
+    /**
+     * @return the paths of the input images
+     */
+    public List<String> getImagePaths() {
+        return imagePaths;
+    }
+
+    /**
+     * @return the positions and sizes of the input images, in the order of {@link #getImagePaths()}
+     */
+    public TileLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Open an input image with Bio-Formats, as done by the {@link ImageStitcher}.
+     *
+     * @param index the index of the input image in {@link #getImagePaths()}
+     * @return a server reading the input image, which must be closed once not used anymore
+     * @throws Exception if the input image cannot be opened
+     */
+    public ImageServer<BufferedImage> openImage(int index) throws Exception {
+        return SERVER_BUILDER.buildServer(Path.of(imagePaths.get(index)).toUri());
+    }
+}
@@ -0,0 +1,569 @@
+package qupath.ext.stitching.cli;
+
+import qupath.ext.stitching.core.BlendingMode;
+import qupath.ext.stitching.core.ImageStitcher;
+import qupath.ext.stitching.core.ZarrCodec;
+import qupath.ext.stitching.core.positionfinders.FilenamePatternPositionFinder;
+import qupath.ext.stitching.core.positionfinders.PositionFinder;
+import qupath.ext.stitching.core.positionfinders.TiffTagPositionFinder;
+import qupath.lib.images.writers.ome.OMEPyramidWriter;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+
+/**
+ * The options of the {@link StitchingCommand}, parsed from the arguments of the command line.
+ * <p>
+ * Options configuring the stitching itself are recorded as settings of an {@link ImageStitcher.Builder}, so the
+ * command line has the same defaults and the same validation as the builder.
+ * <p>
+ * This class is immutable.
+ */
+class CommandLineOptions {
+
+    private static final String USAGE = """
+            Usage: qupath-stitching [options] <slide>...
+
+            Stitch the input images of each slide into one OME-Zarr or OME-TIFF image. All slides are processed one
+            after the other in the same JVM. A slide can be:
+              - a directory, whose .tif and .tiff files are stitched,
+              - a glob matching the input images (for example "/data/slide1/*.tif" or "/data/slide1/**.tiff"),
+              - a file listing the input images, one per line, prefixed with @ (for example @slide1.txt).
+
+            Output:
+              -o, --output <path>                the output image (.ome.zarr or .ome.tiff). Only with a single slide
+              -d, --output-dir <dir>             the directory where each slide is written, named after the slide.
+                                                 The current directory by default
+              -f, --format <ome-zarr|ome-tiff>   the format of the images written to the output directory. ome-zarr
+                                                 by default
+              --skip-existing                    skip slides whose output image already exists, instead of failing.
+                                                 Partially written OME-Zarr images are always resumed
+              --no-pyramid                       only write the full resolution of the output images
+              --chunk-size <pixels>              the size of the OME-Zarr chunks (a multiple of 4), or 0 to align
+                                                 them with the grid of the input images (by default)
+              --zarr-codec <codec>               the compression of the OME-Zarr chunks: blosc-lz4 (by default),
+                                                 blosc-zstd, zlib, gzip or none
+              --zarr-compression-level <1-9>     the compression level of the OME-Zarr chunks
+              --zarr-shard-size <chunks>         the number of chunks along each axis of an OME-Zarr shard, or 1 to
+                                                 not shard the output
+              --tiff-compression <type>          the compression of the OME-TIFF tiles, for example lzw, zlib or jpeg
+              --tiff-tile-size <pixels>          the size of the OME-TIFF tiles (a multiple of 16, 512 by default),
+                                                 or 0 to align them with the grid of the input images
+
+            Positions:
+              -p, --position-finder <all|tiff-tags|file-name>
+                                                 where to find the position of each input image. all (the file name,
+                                                 then the TIFF tags) by default
+              --file-name-pattern <regex>        the pattern finding the position in the file name, with two groups
+                                                 for x and y. The Vectra pattern by default
+              --file-name-unit <pixel|calibrated|grid>
+                                                 the unit of the positions found in the file name. calibrated by
+                                                 default
+              --layout-manifest <path>           a file recording the parsed input images, to not parse them again
+                                                 when the slide is stitched again. Only with a single slide
+              --registration                     correct the positions by aligning overlapping input images
+              --blending <none|feather|nearest-center>
+                                                 how to combine the pixels of overlapping input images
+              --shading-correction               correct the uneven illumination of the input images
+
+            Threading and memory:
+              -t, --threads <number>             the number of threads reading and writing images
+              --max-open-inputs <number>         the maximum number of input images open at the same time
+              --max-concurrent-parsing <number>  the maximum number of input images parsed at the same time
+              --memory-budget <size>             the maximum memory used by the pixels being processed, for example
+                                                 512M or 4G. Not limited by default
+              --pipelined-parsing                start writing the output image while input images are still parsed
+
+            Partitions (OME-Zarr output of a single slide, each step possibly run by a different process):
+              --create-partitions <number>       create the output image, split into this number of partitions
+              --write-partition <index>          write one partition of the output image
+              --finish-partitions                complete the output image once all partitions are written
+
+            Other:
+              -v, --verbose                      log the details of the stitching
+              -h, --help                         print this help and exit
+            """;
+    private final boolean help;
+    private final boolean verbose;
+    private final Path output;
+    private final Path outputDirectory;
+    private final OutputFormat outputFormat;
+    private final boolean skipExisting;
+    private final Path layoutManifest;
+    private final PartitionStep partitionStep;
+    private final int partitionParameter;
+    private final List<String> slides;
+    private final List<Consumer<ImageStitcher.Builder>> builderSettings;
+    /**
+     * The format of an output image.
+     */
+    public enum OutputFormat {
+        /**
+         * The OME-Zarr format.
+         */
+        OME_ZARR(".ome.zarr"),
+        /**
+         * The OME-TIFF format.
+         */
+        OME_TIFF(".ome.tiff");
+
+        private final String extension;
+
+        OutputFormat(String extension) {
+            this.extension = extension;
+        }
+
+        /**
+         * @return the extension that output images of this format must have
+         */
+        public String getExtension() {
+            return extension;
+        }
+    }
+    /**
+     * A step of the writing of an OME-Zarr image by partitions.
+     */
+    public enum PartitionStep {
+        /**
+         * The image is not written by partitions.
+         */
+        NONE,
+        /**
+         * The image is created with a number of partitions.
+         */
+        CREATE,
+        /**
+         * A partition of the image is written.
+         */
+        WRITE,
+        /**
+         * The image is completed once all its partitions are written.
+         */
+        FINISH
+    }
+    private enum PositionFinderChoice {
+        ALL,
+        TIFF_TAGS,
+        FILE_NAME
+    }
+
+    private CommandLineOptions(Parser parser) {
+        this.help = parser.help;
+        this.verbose = parser.verbose;
+        this.output = parser.output;
+        this.outputDirectory = parser.outputDirectory;
+        this.outputFormat = parser.outputFormat;
+        this.skipExisting = parser.skipExisting;
+        this.layoutManifest = parser.layoutManifest;
+        this.partitionStep = parser.partitionStep;
+        this.partitionParameter = parser.partitionParameter;
+        this.slides = List.copyOf(parser.slides);
+        this.builderSettings = List.copyOf(parser.builderSettings);
+    }
+
+    /**
+     * Parse the arguments of the command line.
+     *
+     * @param arguments the arguments given to the command line
+     * @return the parsed options
+     * @throws IllegalArgumentException if an option is unknown, is missing its value, has an invalid value, or cannot
+     * be combined with the other options, or if no slide is provided (unless the help is requested)
+     * @throws NullPointerException if the provided list or one of its elements is null
+     */
+    public static CommandLineOptions parse(List<String> arguments) {
+        Parser parser = new Parser();
+        parser.parse(arguments);
+        return new CommandLineOptions(parser);
+    }
+
+    /**
+     * @return a description of the arguments accepted by the command line
+     */
+    public static String getUsage() {
+        return USAGE;
+    }
+
+    /**
+     * @return whether the help was requested. Other options may not be set in that case
+     */
+    public boolean isHelp() {
+        return help;
+    }
+
+    /**
+     * @return whether the details of the stitching should be logged
+     */
+    public boolean isVerbose() {
+        return verbose;
+    }
+
+    /**
+     * @return whether slides whose output image already exists (and is not a partially written OME-Zarr image) should
+     * be skipped instead of failing
+     */
+    public boolean isSkipExisting() {
+        return skipExisting;
+    }
+
+    /**
+     * @return the arguments describing the slides to stitch (see {@link Slide#fromArgument(String)})
+     */
+    public List<String> getSlides() {
+        return slides;
+    }
+
+    /**
+     * Get the path the output image of a slide should have.
+     *
+     * @param slide the slide to stitch
+     * @return the path of the output image of the provided slide
+     */
+    public Path getOutputPath(Slide slide) {
+        return output == null ? outputDirectory.resolve(slide.name() + outputFormat.getExtension()) : output;
+    }
+
+    /**
+     * @return the format of the output images
+     */
+    public OutputFormat getOutputFormat() {
+        return outputFormat;
+    }
+
+    /**
+     * @return the step of the writing by partitions to perform, or {@link PartitionStep#NONE} if the output image is
+     * not written by partitions
+     */
+    public PartitionStep getPartitionStep() {
+        return partitionStep;
+    }
+
+    /**
+     * @return the number of partitions to create with {@link PartitionStep#CREATE}, or the index of the partition to
+     * write with {@link PartitionStep#WRITE}. Not relevant with other steps
+     */
+    public int getPartitionParameter() {
+        return partitionParameter;
+    }
+
+    /**
+     * Create a builder of {@link ImageStitcher} configured with these options.
+     *
+     * @param inputImages the paths of the input images to stitch
+     * @return a builder configured with these options
+     */
+    public ImageStitcher.Builder createBuilder(List<String> inputImages) {
+        ImageStitcher.Builder builder = new ImageStitcher.Builder(inputImages);
+        for (Consumer<ImageStitcher.Builder> builderSetting: builderSettings) {
+            builderSetting.accept(builder);
+        }
+        if (layoutManifest != null) {
+            builder.layoutManifest(layoutManifest);
+        }
+        return builder;
+    }
+
+    private static class Parser {
+
+        private boolean help = false;
+        private boolean verbose = false;
+        private Path output = null;
+        private Path outputDirectory = Path.of("");
+        private OutputFormat outputFormat = null;
+        private boolean skipExisting = false;
+        private Path layoutManifest = null;
+        private PartitionStep partitionStep = PartitionStep.NONE;
+        private int partitionParameter = 0;
+        private PositionFinderChoice positionFinderChoice = PositionFinderChoice.ALL;
+        private Pattern fileNamePattern = null;
+        private FilenamePatternPositionFinder.Unit fileNameUnit = FilenamePatternPositionFinder.Unit.CALIBRATED;
+        private boolean outputDirectorySet = false;
+        private final List<String> slides = new ArrayList<>();
+        private final List<Consumer<ImageStitcher.Builder>> builderSettings = new ArrayList<>();
+        private List<String> arguments;
+        private int index;
+
+        public void parse(List<String> arguments) {
+            this.arguments = arguments;
+
+            boolean onlySlides = false;
+            for (index=0; index<arguments.size(); index++) {
+                String argument = arguments.get(index);
+
+                if (onlySlides || !argument.startsWith("-")) {
+                    slides.add(argument);
+                } else if (argument.equals("--")) {
+                    onlySlides = true;
+                } else {
+                    parseOption(argument);
+                }
+            }
+
+            if (help) {
+                return;
+            }
+            checkOptions();
+
+            // Apply the settings once, so that invalid values are reported before any slide is stitched
+            ImageStitcher.Builder builder = new ImageStitcher.Builder(List.of());
+            for (Consumer<ImageStitcher.Builder> builderSetting: builderSettings) {
+                builderSetting.accept(builder);
+            }
+        }
+
+        private void parseOption(String argument) {
+            // Values can be provided with "--option value" or "--option=value"
+            int separator = argument.startsWith("--") ? argument.indexOf('=') : -1;
+            String option = separator < 0 ? argument : argument.substring(0, separator);
+            String inlineValue = separator < 0 ? null : argument.substring(separator + 1);
+            Value value = new Value(option, inlineValue);
+
+            switch (option) {
+                case "-h", "--help" -> help = true;
+                case "-v", "--verbose" -> verbose = true;
+                case "-o", "--output" -> output = Path.of(value.get());
+                case "-d", "--output-dir" -> {
+                    outputDirectory = Path.of(value.get());
+                    outputDirectorySet = true;
+                }
+                case "-f", "--format" -> outputFormat = value.getEnum(OutputFormat.class);
+                case "--skip-existing" -> skipExisting = true;
+                case "--no-pyramid" -> builderSettings.add(builder -> builder.pyramidalize(false));
+                case "--chunk-size" -> {
+                    int chunkSize = value.getInt();
+                    builderSettings.add(builder -> builder.chunkSize(chunkSize));
+                }
+                case "--zarr-codec" -> {
+                    ZarrCodec zarrCodec = value.getEnum(ZarrCodec.class);
+                    builderSettings.add(builder -> builder.zarrCodec(zarrCodec));
+                }
+                case "--zarr-compression-level" -> {
+                    int zarrCompressionLevel = value.getInt();
+                    builderSettings.add(builder -> builder.zarrCompressionLevel(zarrCompressionLevel));
+                }
+                case "--zarr-shard-size" -> {
+                    int zarrShardSize = value.getInt();
+                    builderSettings.add(builder -> builder.zarrShardSize(zarrShardSize));
+                }
+                case "--tiff-compression" -> {
+                    OMEPyramidWriter.CompressionType tiffCompression = value.getEnum(OMEPyramidWriter.CompressionType.class);
+                    builderSettings.add(builder -> builder.tiffCompression(tiffCompression));
+                }
+                case "--tiff-tile-size" -> {
+                    int tiffTileSize = value.getInt();
+                    builderSettings.add(builder -> builder.tiffTileSize(tiffTileSize));
+                }
+                case "-p", "--position-finder" -> positionFinderChoice = value.getEnum(PositionFinderChoice.class);
+                case "--file-name-pattern" -> {
+                    try {
+                        fileNamePattern = Pattern.compile(value.get());
+                    } catch (PatternSyntaxException e) {
+                        throw new IllegalArgumentException(String.format("The value of %s is not a valid pattern: %s", option, e.getMessage()), e);
+                    }
+                }
+                case "--file-name-unit" -> fileNameUnit = value.getEnum(FilenamePatternPositionFinder.Unit.class);
+                case "--layout-manifest" -> layoutManifest = Path.of(value.get());
+                case "--registration" -> builderSettings.add(builder -> builder.registration(true));
+                case "--blending" -> {
+                    BlendingMode blendingMode = value.getEnum(BlendingMode.class);
+                    builderSettings.add(builder -> builder.blendingMode(blendingMode));
+                }
+                case "--shading-correction" -> builderSettings.add(builder -> builder.shadingCorrection(true));
+                case "-t", "--threads" -> {
+                    int numberOfThreads = value.getInt();
+                    if (numberOfThreads < 1) {
+                        throw new IllegalArgumentException(String.format("The value of %s (%d) must be at least 1", option, numberOfThreads));
+                    }
+                    builderSettings.add(builder -> builder.numberOfThreads(numberOfThreads));
+                }
+                case "--max-open-inputs" -> {
+                    int maxOpenInputs = value.getInt();
+                    builderSettings.add(builder -> builder.maxOpenInputs(maxOpenInputs));
+                }
+                case "--max-concurrent-parsing" -> {
+                    int maxConcurrentParsing = value.getInt();
+                    builderSettings.add(builder -> builder.maxConcurrentParsing(maxConcurrentParsing));
+                }
+                case "--memory-budget" -> {
+                    long memoryBudget = value.getSize();
+                    builderSettings.add(builder -> builder.memoryBudget(memoryBudget));
+                }
+                case "--pipelined-parsing" -> builderSettings.add(builder -> builder.pipelinedParsing(true));
+                case "--create-partitions" -> setPartitionStep(PartitionStep.CREATE, value.getInt());
+                case "--write-partition" -> setPartitionStep(PartitionStep.WRITE, value.getInt());
+                case "--finish-partitions" -> setPartitionStep(PartitionStep.FINISH, 0);
+                default -> throw new IllegalArgumentException(String.format("Unknown option %s", option));
+            }
+
+            if (inlineValue != null && !value.used) {
+                throw new IllegalArgumentException(String.format("The option %s doesn't take a value", option));
+            }
+        }
+
+        private void setPartitionStep(PartitionStep partitionStep, int partitionParameter) {
+            if (this.partitionStep != PartitionStep.NONE) {
+                throw new IllegalArgumentException(
+                        "Only one of --create-partitions, --write-partition and --finish-partitions can be provided"
+                );
+            }
+
+            this.partitionStep = partitionStep;
+            this.partitionParameter = partitionParameter;
+        }
+
+        private void checkOptions() {
+            if (slides.isEmpty()) {
+                throw new IllegalArgumentException("No slide provided");
+            }
+
+            if (output != null) {
+                if (slides.size() > 1) {
+                    throw new IllegalArgumentException(String.format(
+                            "--output can only be used with a single slide, while %d slides were provided", slides.size()
+                    ));
+                }
+                if (outputDirectorySet) {
+                    throw new IllegalArgumentException("--output and --output-dir cannot be used together");
+                }
+
+                OutputFormat formatOfOutput = Arrays.stream(OutputFormat.values())
+                        .filter(format -> output.toString().endsWith(format.getExtension()))
+                        .findAny()
+                        .orElseThrow(() -> new IllegalArgumentException(String.format(
+                                "The output %s must end with %s",
+                                output,
+                                Arrays.stream(OutputFormat.values()).map(OutputFormat::getExtension).collect(Collectors.joining(" or "))
+                        )));
+                if (outputFormat != null && outputFormat != formatOfOutput) {
+                    throw new IllegalArgumentException(String.format("The output %s doesn't have the %s format", output, toValue(outputFormat)));
+                }
+                outputFormat = formatOfOutput;
+            } else if (outputFormat == null) {
+                outputFormat = OutputFormat.OME_ZARR;
+            }
+
+            if (layoutManifest != null && slides.size() > 1) {
+                throw new IllegalArgumentException(String.format(
+                        "--layout-manifest can only be used with a single slide, while %d slides were provided", slides.size()
+                ));
+            }
+
+            if (partitionStep != PartitionStep.NONE) {
+                if (slides.size() > 1) {
+                    throw new IllegalArgumentException(String.format(
+                            "Partitions can only be written for a single slide, while %d slides were provided", slides.size()
+                    ));
+                }
+                if (outputFormat != OutputFormat.OME_ZARR) {
+                    throw new IllegalArgumentException("Partitions can only be written with the OME-Zarr format");
+                }
+                if (partitionStep == PartitionStep.CREATE && partitionParameter < 1) {
+                    throw new IllegalArgumentException(String.format("The number of partitions (%d) must be at least 1", partitionParameter));
+                }
+                if (partitionStep == PartitionStep.WRITE && partitionParameter < 0) {
+                    throw new IllegalArgumentException(String.format("The partition index (%d) must be at least 0", partitionParameter));
+                }
+            }
+
+            List<PositionFinder> positionFinders = createPositionFinders();
+            builderSettings.add(builder -> builder.positionFinders(positionFinders));
+        }
+
+        private List<PositionFinder> createPositionFinders() {
+            FilenamePatternPositionFinder filenamePatternPositionFinder = fileNamePattern == null ?
+                    new FilenamePatternPositionFinder(FilenamePatternPositionFinder.StandardPattern.VECTRA) :
+                    new FilenamePatternPositionFinder(fileNamePattern, fileNameUnit);
+
+            return switch (positionFinderChoice) {
+                case ALL -> List.of(filenamePatternPositionFinder, new TiffTagPositionFinder());
+                case TIFF_TAGS -> List.of(new TiffTagPositionFinder());
+                case FILE_NAME -> List.of(filenamePatternPositionFinder);
+            };
+        }
+
+        private static String toValue(Enum<?> value) {
+            return value.name().toLowerCase(Locale.ROOT).replace('_', '-');
+        }
+
+        private class Value {
+
+            private final String option;
+            private final String inlineValue;
+            private boolean used = false;
+
+            public Value(String option, String inlineValue) {
+                this.option = option;
+                this.inlineValue = inlineValue;
+            }
+
+            public String get() {
+                used = true;
+                if (inlineValue != null) {
+                    return inlineValue;
+                }
+
+                index++;
+                if (index >= arguments.size()) {
+                    throw new IllegalArgumentException(String.format("The option %s requires a value", option));
+                }
+                return arguments.get(index);
+            }
+
+            public int getInt() {
+                String value = get();
+                try {
+                    return Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException(String.format("The value of %s (%s) is not an integer", option, value), e);
+                }
+            }
+
+            public long getSize() {
+                String value = get();
+                String upperCaseValue = value.toUpperCase(Locale.ROOT);
+
+                int shift = 0;
+                if (!upperCaseValue.isEmpty()) {
+                    shift = switch (upperCaseValue.charAt(upperCaseValue.length() - 1)) {
+                        case 'K' -> 10;
+                        case 'M' -> 20;
+                        case 'G' -> 30;
+                        case 'T' -> 40;
+                        default -> 0;
+                    };
+                }
+                try {
+                    long size = Long.parseLong(shift == 0 ? upperCaseValue : upperCaseValue.substring(0, upperCaseValue.length() - 1));
+                    if (size > Long.MAX_VALUE >> shift) {
+                        throw new IllegalArgumentException(String.format("The value of %s (%s) is too large", option, value));
+                    }
+                    return size << shift;
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException(String.format(
+                            "The value of %s (%s) is not a size, such as 1048576, 512K, 64M or 4G", option, value
+                    ), e);
+                }
+            }
+
+            public <T extends Enum<T>> T getEnum(Class<T> enumClass) {
+                String value = get();
+
+                return Arrays.stream(enumClass.getEnumConstants())
+                        .filter(constant -> toValue(constant).equals(value.toLowerCase(Locale.ROOT)))
+                        .findAny()
+                        .orElseThrow(() -> new IllegalArgumentException(String.format(
+                                "The value of %s (%s) must be one of %s",
+                                option,
+                                value,
+                                Arrays.stream(enumClass.getEnumConstants()).map(Parser::toValue).collect(Collectors.joining(", "))
+                        )));
+            }
+        }
+    }
+}
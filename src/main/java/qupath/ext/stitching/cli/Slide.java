@@ -0,0 +1,135 @@
+package qupath.ext.stitching.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * The input images of a slide, to be stitched into one output image.
+ *
+ * @param name the name of the slide, used to name its output image
+ * @param inputImages the paths of the input images of the slide
+ */
+record Slide(String name, List<String> inputImages) {
+
+    private static final String LIST_PREFIX = "@";
+    private static final String GLOB_CHARACTERS = "*?[{";
+    private static final List<String> INPUT_EXTENSIONS = List.of(".tif", ".tiff");
+
+    /**
+     * Create a slide from the description given to the command line. The description can be:
+     * <ul>
+     *     <li>A directory. The input images are the files of the directory with a ".tif" or ".tiff" extension, and the
+     *     name is the name of the directory.</li>
+     *     <li>A glob matching the input images, for example "/data/slide1/*.tif". Only the part following the last
+     *     directory without glob characters is a pattern, and "**" matches any number of directories. The name is the
+     *     name of the last directory without glob characters.</li>
+     *     <li>A path to a text file prefixed with "@", for example "@slide1.txt". Each line of the file is the path of an
+     *     input image, relative to the directory of the file. Empty lines and lines starting with "#" are ignored. The
+     *     name is the name of the file without its extension.</li>
+     * </ul>
+     * Input images are sorted by path, so that a slide always gives the same output image.
+     *
+     * @param argument the description of the slide
+     * @return the slide described by the provided argument
+     * @throws IOException if the input images cannot be listed
+     * @throws IllegalArgumentException if the provided argument doesn't describe a slide, or if the slide doesn't
+     * contain any input image
+     */
+    public static Slide fromArgument(String argument) throws IOException {
+        Slide slide;
+        if (argument.startsWith(LIST_PREFIX)) {
+            slide = fromList(Path.of(argument.substring(LIST_PREFIX.length())));
+        } else if (argument.chars().anyMatch(character -> GLOB_CHARACTERS.indexOf(character) >= 0)) {
+            slide = fromGlob(argument);
+        } else if (Files.isDirectory(Path.of(argument))) {
+            slide = fromDirectory(Path.of(argument));
+        } else {
+            throw new IllegalArgumentException(String.format(
+                    "%s is neither a directory, a glob, nor a list of input images prefixed with %s", argument, LIST_PREFIX
+            ));
+        }
+
+        if (slide.inputImages.isEmpty()) {
+            throw new IllegalArgumentException(String.format("No input image found for %s", argument));
+        }
+        return slide;
+    }
+
+    private static Slide fromList(Path listPath) throws IOException {
+        Path directory = listPath.toAbsolutePath().getParent();
+
+        try (Stream<String> lines = Files.lines(listPath)) {
+            return new Slide(
+                    getNameWithoutExtension(listPath),
+                    lines
+                            .map(String::strip)
+                            .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                            .map(line -> directory.resolve(line).normalize().toString())
+                            .sorted()
+                            .toList()
+            );
+        }
+    }
+
+    private static Slide fromGlob(String glob) throws IOException {
+        int firstGlobCharacter = 0;
+        while (GLOB_CHARACTERS.indexOf(glob.charAt(firstGlobCharacter)) < 0) {
+            firstGlobCharacter++;
+        }
+        int lastSeparator = Math.max(
+                glob.lastIndexOf('/', firstGlobCharacter),
+                glob.lastIndexOf(File.separatorChar, firstGlobCharacter)
+        );
+        Path directory = lastSeparator < 0 ? Path.of("") : Path.of(lastSeparator == 0 ? glob.substring(0, 1) : glob.substring(0, lastSeparator));
+        String pattern = glob.substring(lastSeparator + 1);
+
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        int maxDepth = pattern.contains("**") ? Integer.MAX_VALUE : (int) pattern.chars().filter(character -> character == '/').count() + 1;
+
+        try (Stream<Path> paths = Files.walk(directory, maxDepth)) {
+            return new Slide(
+                    getName(directory),
+                    paths
+                            .filter(Files::isRegularFile)
+                            .filter(path -> matcher.matches(directory.relativize(path)))
+                            .map(Path::toString)
+                            .sorted()
+                            .toList()
+            );
+        }
+    }
+
+    private static Slide fromDirectory(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return new Slide(
+                    getName(directory),
+                    paths
+                            .filter(Files::isRegularFile)
+                            .filter(path -> INPUT_EXTENSIONS.stream().anyMatch(extension ->
+                                    path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(extension)
+                            ))
+                            .map(Path::toString)
+                            .sorted()
+                            .toList()
+            );
+        }
+    }
+
+    private static String getName(Path directory) {
+        Path fileName = directory.toAbsolutePath().normalize().getFileName();
+        return fileName == null ? "slide" : fileName.toString();
+    }
+
+    private static String getNameWithoutExtension(Path path) {
+        String fileName = path.getFileName().toString();
+        int extensionIndex = fileName.lastIndexOf('.');
+        return extensionIndex > 0 ? fileName.substring(0, extensionIndex) : fileName;
+    }
+}
@@ -0,0 +1,204 @@
+package qupath.ext.stitching.cli;
+
+import qupath.ext.stitching.core.ImageStitcher;
+
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * A command line entry point to stitch images without QuPath's user interface.
+ * <p>
+ * Several slides can be provided, and they are stitched one after the other in the same JVM, so the startup of the
+ * JVM, the compilation of the stitching code and the initialization of the image readers only happen once for the
+ * whole batch. A slide that cannot be stitched is reported and doesn't prevent the next slides from being stitched.
+ * <p>
+ * Run it with no argument or with {@code --help} to see the accepted options (see also {@link CommandLineOptions}).
+ * The exit code is 0 if all slides were stitched or skipped, 1 if at least one slide failed, and 2 if the arguments
+ * are invalid.
+ */
+public class StitchingCommand {
+
+    private static final int SUCCESS = 0;
+    private static final int FAILURE = 1;
+    private static final int INVALID_ARGUMENTS = 2;
+    private static final String LOG_LEVEL_PROPERTY = "qupath.ext.stitching.logLevel";
+    private static final int PROGRESS_STEPS = 10;
+
+    private StitchingCommand() {
+        throw new AssertionError("This class is not instantiable.");
+    }
+
+    /**
+     * Stitch the slides described by the provided arguments and exit.
+     *
+     * @param args the arguments of the command line. Run with {@code --help} to see the accepted arguments
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        // The log level used by the logging configuration of the distribution must be set before any logger is
+        // created, which happens as soon as the options are parsed
+        if (System.getProperty(LOG_LEVEL_PROPERTY) == null) {
+            List<String> arguments = List.of(args);
+            System.setProperty(
+                    LOG_LEVEL_PROPERTY,
+                    arguments.contains("-v") || arguments.contains("--verbose") ? "DEBUG" : "WARN"
+            );
+        }
+
+        System.exit(run(args.length == 0 ? List.of("--help") : List.of(args), System.out, System.err));
+    }
+
+    /**
+     * Stitch the slides described by the provided arguments.
+     *
+     * @param arguments the arguments of the command line
+     * @param out the stream where the progress of the stitching should be printed
+     * @param err the stream where errors should be printed
+     * @return the exit code of the command line: 0 if all slides were stitched or skipped, 1 if at least one slide
+     * failed, and 2 if the arguments are invalid
+     */
+    static int run(List<String> arguments, PrintStream out, PrintStream err) {
+        CommandLineOptions options;
+        try {
+            options = CommandLineOptions.parse(arguments);
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println("Run with --help to see the accepted options");
+            return INVALID_ARGUMENTS;
+        }
+        if (options.isHelp()) {
+            out.print(CommandLineOptions.getUsage());
+            return SUCCESS;
+        }
+
+        long startTime = System.nanoTime();
+        List<String> slideArguments = options.getSlides();
+        Set<Path> outputPaths = new HashSet<>();
+        int numberOfSkippedSlides = 0;
+        int numberOfFailedSlides = 0;
+
+        for (int i=0; i<slideArguments.size(); i++) {
+            String slideArgument = slideArguments.get(i);
+            String prefix = String.format("[%d/%d]", i + 1, slideArguments.size());
+
+            try {
+                Slide slide = Slide.fromArgument(slideArgument);
+                Path outputPath = options.getOutputPath(slide);
+                if (!outputPaths.add(outputPath.toAbsolutePath().normalize())) {
+                    throw new IllegalArgumentException(String.format("%s is also the output of a previous slide", outputPath));
+                }
+
+                long slideStartTime = System.nanoTime();
+                if (stitch(options, slide, outputPath, prefix, out)) {
+                    out.printf("%s Done in %s%n", prefix, formatDuration(slideStartTime));
+                } else {
+                    numberOfSkippedSlides++;
+                }
+            } catch (InterruptedException e) {
+                err.printf("%s Stitching of %s interrupted%n", prefix, slideArgument);
+                Thread.currentThread().interrupt();
+                return FAILURE;
+            } catch (Exception e) {
+                err.printf("%s Cannot stitch %s: %s%n", prefix, slideArgument, e.getMessage());
+                if (options.isVerbose()) {
+                    e.printStackTrace(err);
+                }
+                numberOfFailedSlides++;
+            }
+        }
+
+        out.printf(
+                "%d slide(s) stitched, %d skipped, %d failed in %s%n",
+                slideArguments.size() - numberOfSkippedSlides - numberOfFailedSlides,
+                numberOfSkippedSlides,
+                numberOfFailedSlides,
+                formatDuration(startTime)
+        );
+        return numberOfFailedSlides > 0 ? FAILURE : SUCCESS;
+    }
+
+    private static boolean stitch(
+            CommandLineOptions options,
+            Slide slide,
+            Path outputPath,
+            String prefix,
+            PrintStream out
+    ) throws Exception {
+        String output = outputPath.toString();
+        CommandLineOptions.PartitionStep partitionStep = options.getPartitionStep();
+        // Checked before building the stitcher, so that skipped slides are not parsed
+        boolean resume = partitionStep == CommandLineOptions.PartitionStep.NONE &&
+                options.getOutputFormat() == CommandLineOptions.OutputFormat.OME_ZARR &&
+                ImageStitcher.isZarrFileResumable(output);
+        if (partitionStep == CommandLineOptions.PartitionStep.NONE && !resume && Files.exists(outputPath)) {
+            if (options.isSkipExisting()) {
+                out.printf("%s Skipping %s, as %s already exists%n", prefix, slide.name(), outputPath);
+                return false;
+            } else {
+                throw new IllegalArgumentException(String.format("%s already exists", outputPath));
+            }
+        }
+
+        out.printf("%s Parsing %d input images of %s%n", prefix, slide.inputImages().size(), slide.name());
+        try (ImageStitcher imageStitcher = options.createBuilder(slide.inputImages()).build()) {
+            Consumer<Float> onProgress = createProgressPrinter(prefix, out);
+
+            switch (partitionStep) {
+                case NONE -> {
+                    out.printf("%s %s %s%n", prefix, resume ? "Resuming" : "Writing", outputPath);
+                    switch (options.getOutputFormat()) {
+                        case OME_ZARR -> {
+                            if (resume) {
+                                imageStitcher.resumeZarrFile(output, onProgress);
+                            } else {
+                                imageStitcher.writeToZarrFile(output, onProgress);
+                            }
+                        }
+                        case OME_TIFF -> imageStitcher.writeToTiffFile(output);
+                    }
+                }
+                case CREATE -> {
+                    out.printf("%s Creating %s with %d partitions%n", prefix, outputPath, options.getPartitionParameter());
+                    imageStitcher.createPartitionedZarrFile(output, options.getPartitionParameter());
+                }
+                case WRITE -> {
+                    out.printf("%s Writing partition %d of %s%n", prefix, options.getPartitionParameter(), outputPath);
+                    imageStitcher.writeZarrPartition(output, options.getPartitionParameter(), onProgress);
+                }
+                case FINISH -> {
+                    out.printf("%s Completing the partitions of %s%n", prefix, outputPath);
+                    imageStitcher.finishPartitionedZarrFile(output, onProgress);
+                }
+            }
+
+            if (imageStitcher.areSomeInputImagesNotUsed()) {
+                out.printf("%s Some input images of %s could not be used (run with --verbose for details)%n", prefix, slide.name());
+            }
+        }
+        return true;
+    }
+
+    private static Consumer<Float> createProgressPrinter(String prefix, PrintStream out) {
+        // Progress is reported from any thread, so only the thread reaching a new step prints it
+        AtomicInteger lastStep = new AtomicInteger(0);
+
+        return progress -> {
+            int step = (int) (progress * PROGRESS_STEPS);
+            int previousStep = lastStep.getAndAccumulate(step, Math::max);
+            if (step > previousStep) {
+                out.printf("%s %d%%%n", prefix, step * 100 / PROGRESS_STEPS);
+            }
+        };
+    }
+
+    private static String formatDuration(long startTime) {
+        return String.format("%.1f s", (System.nanoTime() - startTime) / 1e9);
+    }
+}
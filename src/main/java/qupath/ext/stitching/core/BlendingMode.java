@@ -0,0 +1,24 @@
+package qupath.ext.stitching.core;
+
+/**
+ * A strategy to determine the pixels of the output image covered by several input images.
+ */
+public enum BlendingMode {
+    /**
+     * The input image drawn last is used. Overlapping pixels are simply copied, so this is the fastest mode, but seams
+     * may be visible at the borders of input images.
+     */
+    NONE,
+    /**
+     * Overlapping pixels are a weighted average of the input images covering them. The weight of a pixel of an input
+     * image decreases linearly from the center of the image to its borders, so transitions between input images are
+     * smooth.
+     */
+    FEATHER,
+    /**
+     * Each overlapping pixel is taken from the input image whose center is the closest (relatively to the size of the
+     * image). Contrary to {@link #FEATHER}, pixels are never mixed, so slightly misaligned input images don't create
+     * ghosting, and seams are placed where input images are usually the best (far from their borders).
+     */
+    NEAREST_CENTER
+}
@@ -0,0 +1,163 @@
+package qupath.ext.stitching.core;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The coverage of the chunks of an {@link OmeZarrStore} by the input images of a {@link TileLayout}, at all resolution
+ * levels.
+ * <p>
+ * A chunk is {@link Coverage#UNCOVERED uncovered} if it doesn't intersect any input image, {@link Coverage#FULL fully
+ * covered} if each of its pixels belongs to an input image, and {@link Coverage#PARTIAL partially covered} otherwise.
+ * A chunk of a lower resolution level is uncovered if all its children are uncovered, and fully covered if all its
+ * children are fully covered.
+ * <p>
+ * Sparse acquisitions leave large areas of the output image uncovered. Uncovered chunks don't need to be composed or
+ * written, as Zarr readers return the fill value of the image for missing chunks. Fully covered chunks are entirely
+ * overwritten when drawn, so they don't need to be filled with zeros first.
+ * <p>
+ * This class is immutable.
+ */
+class ChunkCoverage {
+
+    private final OmeZarrStore store;
+    private final List<BitSet> coveredChunks;
+    private final List<BitSet> fullyCoveredChunks;
+
+    /**
+     * The coverage of a chunk by the input images.
+     */
+    public enum Coverage {
+        /**
+         * The chunk doesn't intersect any input image
+         */
+        UNCOVERED,
+        /**
+         * Some pixels of the chunk belong to an input image, others don't
+         */
+        PARTIAL,
+        /**
+         * Each pixel of the chunk belongs to an input image
+         */
+        FULL
+    }
+
+    /**
+     * Compute the coverage of the chunks of all levels of the provided image.
+     *
+     * @param layout the positions and sizes of the input images
+     * @param store the image whose chunks should be classified
+     * @param offsetX the x-coordinate of the layout within the full resolution level of the store
+     * @param offsetY the y-coordinate of the layout within the full resolution level of the store
+     */
+    public ChunkCoverage(TileLayout layout, OmeZarrStore store, int offsetX, int offsetY) {
+        this.store = store;
+        this.coveredChunks = new ArrayList<>();
+        this.fullyCoveredChunks = new ArrayList<>();
+
+        int nChunksX = store.getNumberOfChunksX(0);
+        int nChunksY = store.getNumberOfChunksY(0);
+        BitSet covered = new BitSet();
+        for (int i=0; i<layout.getNumberOfTiles(); i++) {
+            int minChunkX = Math.max(0, (offsetX + layout.getX(i)) / store.getChunkWidth());
+            int minChunkY = Math.max(0, (offsetY + layout.getY(i)) / store.getChunkHeight());
+            int maxChunkX = Math.min(nChunksX - 1, (offsetX + layout.getX(i) + layout.getWidth(i) - 1) / store.getChunkWidth());
+            int maxChunkY = Math.min(nChunksY - 1, (offsetY + layout.getY(i) + layout.getHeight(i) - 1) / store.getChunkHeight());
+
+            for (int chunkY=minChunkY; chunkY<=maxChunkY; chunkY++) {
+                if (minChunkX <= maxChunkX) {
+                    covered.set(chunkY * nChunksX + minChunkX, chunkY * nChunksX + maxChunkX + 1);
+                }
+            }
+        }
+
+        BitSet fullyCovered = new BitSet();
+        for (int chunk=covered.nextSetBit(0); chunk>=0; chunk=covered.nextSetBit(chunk+1)) {
+            int x = (chunk % nChunksX) * store.getChunkWidth();
+            int y = (chunk / nChunksX) * store.getChunkHeight();
+
+            if (layout.covers(
+                    x - offsetX,
+                    y - offsetY,
+                    Math.min(store.getChunkWidth(), store.getWidth(0) - x),
+                    Math.min(store.getChunkHeight(), store.getHeight(0) - y)
+            )) {
+                fullyCovered.set(chunk);
+            }
+        }
+        coveredChunks.add(covered);
+        fullyCoveredChunks.add(fullyCovered);
+
+        for (int level=1; level<store.getNumberOfLevels(); level++) {
+            addParentLevel(level);
+        }
+    }
+
+    /**
+     * Get the chunks of a level that intersect at least one input image.
+     *
+     * @param level the resolution level of the chunks
+     * @return the chunks of the provided level that are partially or fully covered. Chunk (x, y) is represented by the
+     * bit y * (number of chunks along the x-axis) + x. This is a copy that can be modified
+     */
+    public BitSet getCoveredChunks(int level) {
+        return (BitSet) coveredChunks.get(level).clone();
+    }
+
+    /**
+     * Get the coverage of a chunk.
+     *
+     * @param level the resolution level of the chunk
+     * @param chunk the index of the chunk within its level, y * (number of chunks along the x-axis) + x
+     * @return the coverage of the provided chunk
+     */
+    public Coverage getCoverage(int level, int chunk) {
+        if (fullyCoveredChunks.get(level).get(chunk)) {
+            return Coverage.FULL;
+        } else if (coveredChunks.get(level).get(chunk)) {
+            return Coverage.PARTIAL;
+        } else {
+            return Coverage.UNCOVERED;
+        }
+    }
+
+    private void addParentLevel(int level) {
+        int nChildChunksX = store.getNumberOfChunksX(level - 1);
+        int nChildChunksY = store.getNumberOfChunksY(level - 1);
+        int nChunksX = store.getNumberOfChunksX(level);
+        int nChunksY = store.getNumberOfChunksY(level);
+        BitSet childCovered = coveredChunks.get(level - 1);
+        BitSet childFullyCovered = fullyCoveredChunks.get(level - 1);
+        int factor = store.getDownsampleFactor(level);
+
+        BitSet covered = new BitSet();
+        BitSet fullyCovered = new BitSet();
+        for (int chunkY=0; chunkY<nChunksY; chunkY++) {
+            for (int chunkX=0; chunkX<nChunksX; chunkX++) {
+                boolean anyChildCovered = false;
+                boolean allChildrenFullyCovered = true;
+
+                // Children located outside the lower level don't correspond to any pixel of the chunk
+                for (int childY=factor*chunkY; childY<Math.min(factor*(chunkY+1), nChildChunksY); childY++) {
+                    for (int childX=factor*chunkX; childX<Math.min(factor*(chunkX+1), nChildChunksX); childX++) {
+                        int child = childY * nChildChunksX + childX;
+
+                        anyChildCovered |= childCovered.get(child);
+                        allChildrenFullyCovered &= childFullyCovered.get(child);
+                    }
+                }
+
+                if (anyChildCovered) {
+                    covered.set(chunkY * nChunksX + chunkX);
+                }
+                if (allChildrenFullyCovered) {
+                    fullyCovered.set(chunkY * nChunksX + chunkX);
+                }
+            }
+        }
+
+        coveredChunks.add(covered);
+        fullyCoveredChunks.add(fullyCovered);
+    }
+}
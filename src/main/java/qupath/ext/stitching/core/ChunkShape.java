@@ -0,0 +1,102 @@
+package qupath.ext.stitching.core;
+
+/**
+ * The size of the chunks (OME-Zarr) or tiles (OME-TIFF) of an output image.
+ * <p>
+ * {@link #fromLayout(TileLayout, int)} chooses a size aligned with the grid of the input images, so that most chunks
+ * are contained in a single input image and only this input image has to be read and decoded to write them.
+ *
+ * @param width the width of a chunk in pixels
+ * @param height the height of a chunk in pixels
+ */
+record ChunkShape(int width, int height) {
+
+    /**
+     * The multiple that the size of an OME-Zarr chunk must be. The chunks of the first lower resolution level are
+     * computed from 4x4 chunks of the full resolution level (see {@link OmeZarrStore#getDefaultDownsample(int)}), so
+     * chunk sizes must be multiples of 4
+     */
+    public static final int ZARR_MULTIPLE = 4;
+    /**
+     * The multiple that the size of an OME-TIFF tile must be, as required by the TIFF specification
+     */
+    public static final int TIFF_MULTIPLE = 16;
+    /**
+     * The size of a chunk when the input images are not on a regular grid
+     */
+    public static final int DEFAULT_SIZE = 512;
+    /**
+     * The minimum size of a chunk chosen from a layout. Smaller chunks make too many files and read requests
+     */
+    public static final int MIN_SIZE = 256;
+    /**
+     * The maximum size of a chunk chosen from a layout. Larger chunks take too much memory when many channels are
+     * written in parallel
+     */
+    public static final int MAX_SIZE = 1024;
+
+    /**
+     * Create the chunk shape.
+     *
+     * @throws IllegalArgumentException if the width or the height is not strictly positive
+     */
+    public ChunkShape {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException(String.format("The chunk shape %dx%d is not strictly positive", width, height));
+        }
+    }
+
+    /**
+     * Choose a chunk shape suited to the provided layout.
+     * <p>
+     * If the input images are on a {@link TileLayout#isRegularGrid() regular grid}, the width (and similarly the height)
+     * of a chunk is the multiple of the provided number between {@link #MIN_SIZE} and {@link #MAX_SIZE} that minimizes
+     * the average number of grid columns crossed by a chunk, the largest such width being taken in case of equality.
+     * For example, a grid step of 1800 pixels gives a width of 900 pixels with a multiple of {@link #ZARR_MULTIPLE}
+     * (two chunks per input image, none crossing a column), and a grid step of 480 pixels gives a width of 480 pixels
+     * (one chunk per input image).
+     * <p>
+     * Otherwise, chunks are squares of {@link #DEFAULT_SIZE} pixels.
+     *
+     * @param layout the layout of the input images
+     * @param multiple the number that the chunk width and height must be multiples of, for example {@link #ZARR_MULTIPLE}
+     *                 or {@link #TIFF_MULTIPLE}. Must divide {@link #DEFAULT_SIZE}
+     * @return a chunk shape suited to the provided layout
+     * @throws IllegalArgumentException if the provided multiple doesn't divide {@link #DEFAULT_SIZE}
+     */
+    public static ChunkShape fromLayout(TileLayout layout, int multiple) {
+        if (multiple < 1 || DEFAULT_SIZE % multiple != 0) {
+            throw new IllegalArgumentException(String.format("The chunk size multiple (%d) doesn't divide %d", multiple, DEFAULT_SIZE));
+        }
+
+        if (layout.isRegularGrid()) {
+            return new ChunkShape(findSize(layout.getGridStepX(), multiple), findSize(layout.getGridStepY(), multiple));
+        } else {
+            return new ChunkShape(DEFAULT_SIZE, DEFAULT_SIZE);
+        }
+    }
+
+    private static int findSize(int step, int multiple) {
+        // A chunk [kc, (k+1)c[ contains on average c / step column boundaries, of which gcd(c, step) / step are
+        // located on its first pixel. So a chunk crosses on average (c - gcd(c, step)) / step boundaries
+        int bestSize = DEFAULT_SIZE;
+        long bestCrossings = Long.MAX_VALUE;
+        for (int size = (MIN_SIZE + multiple - 1) / multiple * multiple; size <= MAX_SIZE; size += multiple) {
+            long crossings = size - gcd(size, step);
+            if (crossings <= bestCrossings) {
+                bestSize = size;
+                bestCrossings = crossings;
+            }
+        }
+        return bestSize;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int remainder = a % b;
+            a = b;
+            b = remainder;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,109 @@
+package qupath.ext.stitching.core;
+
+/**
+ * An in-place radix-2 fast Fourier transform of complex arrays.
+ * <p>
+ * Arrays are stored as separate real and imaginary parts. Two-dimensional arrays are stored row by row, and their
+ * width and height must be powers of two.
+ */
+class Fft {
+
+    private Fft() {
+        throw new AssertionError("This class is not instantiable.");
+    }
+
+    /**
+     * @param n a strictly positive number
+     * @return the smallest power of two greater than or equal to the provided number
+     */
+    public static int nextPowerOfTwo(int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    /**
+     * Compute the (forward or inverse) Fourier transform of a two-dimensional complex array. The inverse transform
+     * is normalized, so that applying the forward and then the inverse transform gives back the original array.
+     *
+     * @param real the real part of the array, which will contain the real part of the transform
+     * @param imaginary the imaginary part of the array, which will contain the imaginary part of the transform
+     * @param width the width of the array. Must be a power of two
+     * @param height the height of the array. Must be a power of two
+     * @param inverse whether to compute the inverse transform
+     * @throws IllegalArgumentException if the width or height is not a power of two, or if the arrays don't have
+     * width * height elements
+     */
+    public static void transform2D(double[] real, double[] imaginary, int width, int height, boolean inverse) {
+        if (Integer.bitCount(width) != 1 || Integer.bitCount(height) != 1) {
+            throw new IllegalArgumentException(String.format("The size %dx%d is not made of powers of two", width, height));
+        }
+        if (real.length != width * height || imaginary.length != width * height) {
+            throw new IllegalArgumentException(String.format(
+                    "The arrays have %d and %d elements, while %d were expected", real.length, imaginary.length, width * height
+            ));
+        }
+
+        for (int y=0; y<height; y++) {
+            transform(real, imaginary, y * width, 1, width, inverse);
+        }
+        for (int x=0; x<width; x++) {
+            transform(real, imaginary, x, width, height, inverse);
+        }
+
+        if (inverse) {
+            double scale = 1d / (width * height);
+            for (int i=0; i<real.length; i++) {
+                real[i] *= scale;
+                imaginary[i] *= scale;
+            }
+        }
+    }
+
+    private static void transform(double[] real, double[] imaginary, int offset, int stride, int n, boolean inverse) {
+        // Bit reversal permutation
+        for (int i=1, j=0; i<n; i++) {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1) {
+                j ^= bit;
+            }
+            j ^= bit;
+
+            if (i < j) {
+                swap(real, offset + i * stride, offset + j * stride);
+                swap(imaginary, offset + i * stride, offset + j * stride);
+            }
+        }
+
+        for (int length=2; length<=n; length<<=1) {
+            double angle = (inverse ? 2 : -2) * Math.PI / length;
+            double stepReal = Math.cos(angle);
+            double stepImaginary = Math.sin(angle);
+
+            for (int start=0; start<n; start+=length) {
+                double twiddleReal = 1;
+                double twiddleImaginary = 0;
+
+                for (int k=0; k<length/2; k++) {
+                    int even = offset + (start + k) * stride;
+                    int odd = offset + (start + k + length/2) * stride;
+
+                    double oddReal = real[odd] * twiddleReal - imaginary[odd] * twiddleImaginary;
+                    double oddImaginary = real[odd] * twiddleImaginary + imaginary[odd] * twiddleReal;
+                    real[odd] = real[even] - oddReal;
+                    imaginary[odd] = imaginary[even] - oddImaginary;
+                    real[even] += oddReal;
+                    imaginary[even] += oddImaginary;
+
+                    double nextTwiddleReal = twiddleReal * stepReal - twiddleImaginary * stepImaginary;
+                    twiddleImaginary = twiddleReal * stepImaginary + twiddleImaginary * stepReal;
+                    twiddleReal = nextTwiddleReal;
+                }
+            }
+        }
+    }
+
+    private static void swap(double[] array, int i, int j) {
+        double temp = array[i];
+        array[i] = array[j];
+        array[j] = temp;
+    }
+}
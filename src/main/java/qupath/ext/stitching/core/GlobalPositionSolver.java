@@ -0,0 +1,366 @@
+package qupath.ext.stitching.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+/**
+ * Compute the positions of the tiles of a layout that best agree with measured offsets between pairs of tiles.
+ * <p>
+ * Each offset gives the expected position of a tile relative to another tile. Positions are solved globally by
+ * weighted least squares: they minimize the sum over all offsets of {@code weight * |position(moving) - position(reference) - offset|²}.
+ * The normal equations form a sparse (graph Laplacian) system, which is solved independently along each axis with a
+ * Jacobi-preconditioned conjugate gradient. The system is never stored: products with its matrix are computed directly
+ * from the offsets, which are stored in primitive arrays. Memory is therefore linear in the number of tiles and offsets,
+ * and each iteration of the solver is linear in the number of offsets.
+ * <p>
+ * Offsets that don't agree with the solution (i.e. whose residual is greater than the maximum residual provided to the
+ * constructor) are considered as outliers. The worst ones are rejected and the positions are solved again, until all
+ * remaining offsets agree with the solution. Rejected offsets that agree with this final solution are then used again.
+ * <p>
+ * The positions of a set of tiles connected by offsets are only defined up to a translation. This translation is chosen
+ * so that the mean position of the set is the same as in the nominal layout. Tiles that are not connected to any
+ * (non-rejected) offset keep their nominal position.
+ * <p>
+ * This class is not thread-safe.
+ */
+class GlobalPositionSolver {
+
+    private static final Logger logger = LoggerFactory.getLogger(GlobalPositionSolver.class);
+    private static final int MAX_OUTLIER_ITERATIONS = 20;
+    private static final int MIN_SOLVER_ITERATIONS = 1000;
+    private static final double SOLVER_TOLERANCE = 1e-6;
+    private final TileLayout nominalLayout;
+    private final double maxResidual;
+    private int numberOfOffsets = 0;
+    private int[] references = new int[16];
+    private int[] movings = new int[16];
+    private double[] offsetsX = new double[16];
+    private double[] offsetsY = new double[16];
+    private double[] weights = new double[16];
+    private boolean[] rejected = new boolean[16];
+
+    /**
+     * Create the solver.
+     *
+     * @param nominalLayout the nominal positions and sizes of the tiles. Tiles are identified by their index in this layout
+     * @param maxResidual the maximum distance (in pixels) between an offset and the solution for the offset to be considered
+     *                    as valid
+     * @throws IllegalArgumentException if the maximum residual is not strictly positive
+     */
+    public GlobalPositionSolver(TileLayout nominalLayout, double maxResidual) {
+        if (maxResidual <= 0) {
+            throw new IllegalArgumentException(String.format("The maximum residual (%f) must be strictly positive", maxResidual));
+        }
+
+        this.nominalLayout = nominalLayout;
+        this.maxResidual = maxResidual;
+    }
+
+    /**
+     * Add a measured offset between two tiles.
+     *
+     * @param reference the index of the tile the offset is relative to
+     * @param moving the index of the other tile
+     * @param offsetX the measured x-coordinate of the moving tile minus the x-coordinate of the reference tile
+     * @param offsetY the measured y-coordinate of the moving tile minus the y-coordinate of the reference tile
+     * @param weight the confidence in the offset. Must be strictly positive
+     * @throws IllegalArgumentException if one of the indices is out of the bounds of the nominal layout, if the two
+     * indices are equal, or if the weight is not strictly positive
+     */
+    public void addOffset(int reference, int moving, double offsetX, double offsetY, double weight) {
+        int numberOfTiles = nominalLayout.getNumberOfTiles();
+        if (reference < 0 || reference >= numberOfTiles || moving < 0 || moving >= numberOfTiles || reference == moving) {
+            throw new IllegalArgumentException(String.format(
+                    "The tiles %d and %d are not two different tiles of a layout of %d tiles", reference, moving, numberOfTiles
+            ));
+        }
+        if (!(weight > 0)) {
+            throw new IllegalArgumentException(String.format("The weight (%f) must be strictly positive", weight));
+        }
+
+        if (numberOfOffsets == references.length) {
+            int capacity = references.length * 2;
+            references = Arrays.copyOf(references, capacity);
+            movings = Arrays.copyOf(movings, capacity);
+            offsetsX = Arrays.copyOf(offsetsX, capacity);
+            offsetsY = Arrays.copyOf(offsetsY, capacity);
+            weights = Arrays.copyOf(weights, capacity);
+            rejected = Arrays.copyOf(rejected, capacity);
+        }
+
+        references[numberOfOffsets] = reference;
+        movings[numberOfOffsets] = moving;
+        offsetsX[numberOfOffsets] = offsetX;
+        offsetsY[numberOfOffsets] = offsetY;
+        weights[numberOfOffsets] = weight;
+        rejected[numberOfOffsets] = false;
+        numberOfOffsets++;
+    }
+
+    /**
+     * @return the number of offsets added to this solver
+     */
+    public int getNumberOfOffsets() {
+        return numberOfOffsets;
+    }
+
+    /**
+     * @return the number of offsets rejected as outliers by the last call to {@link #solve()}
+     */
+    public int getNumberOfRejectedOffsets() {
+        int numberOfRejectedOffsets = 0;
+        for (int i=0; i<numberOfOffsets; i++) {
+            if (rejected[i]) {
+                numberOfRejectedOffsets++;
+            }
+        }
+        return numberOfRejectedOffsets;
+    }
+
+    /**
+     * Compute the positions of the tiles that best agree with the offsets added to this solver, rejecting outliers.
+     *
+     * @return a layout containing the solved positions of the tiles, with the same tile indices and sizes as the nominal
+     * layout
+     */
+    public TileLayout solve() {
+        int numberOfTiles = nominalLayout.getNumberOfTiles();
+        double[] xs = new double[numberOfTiles];
+        double[] ys = new double[numberOfTiles];
+        for (int i=0; i<numberOfTiles; i++) {
+            xs[i] = nominalLayout.getX(i);
+            ys[i] = nominalLayout.getY(i);
+        }
+        Arrays.fill(rejected, false);
+
+        double[] degrees = new double[numberOfTiles];
+        double[] worstResidualsOfTiles = new double[numberOfTiles];
+        for (int iteration=0; iteration<MAX_OUTLIER_ITERATIONS; iteration++) {
+            computeDegrees(degrees);
+            int solverIterationsX = solveAxis(xs, offsetsX, degrees);
+            int solverIterationsY = solveAxis(ys, offsetsY, degrees);
+
+            Arrays.fill(worstResidualsOfTiles, 0);
+            double worstResidual = 0;
+            for (int i=0; i<numberOfOffsets; i++) {
+                if (!rejected[i]) {
+                    double residual = computeResidual(i, xs, ys);
+
+                    worstResidualsOfTiles[references[i]] = Math.max(worstResidualsOfTiles[references[i]], residual);
+                    worstResidualsOfTiles[movings[i]] = Math.max(worstResidualsOfTiles[movings[i]], residual);
+                    worstResidual = Math.max(worstResidual, residual);
+                }
+            }
+            logger.trace(
+                    "Positions solved in {} and {} iterations with worst residual {}",
+                    solverIterationsX,
+                    solverIterationsY,
+                    worstResidual
+            );
+
+            if (worstResidual <= maxResidual) {
+                // Offsets rejected because of an outlier close to them may agree with the final solution
+                if (!readmitOffsets(xs, ys)) {
+                    break;
+                }
+            } else {
+                // A single outlier also increases the residuals of the correct offsets around it, so only the
+                // offsets having the worst residual of both of their tiles are rejected
+                for (int i=0; i<numberOfOffsets; i++) {
+                    if (!rejected[i]) {
+                        double residual = computeResidual(i, xs, ys);
+
+                        rejected[i] = residual > maxResidual &&
+                                residual >= worstResidualsOfTiles[references[i]] &&
+                                residual >= worstResidualsOfTiles[movings[i]];
+                    }
+                }
+            }
+        }
+        computeDegrees(degrees);
+
+        int[] components = findComponents();
+        translateComponents(xs, ys, components, degrees);
+        logger.debug(
+                "Positions of {} tiles solved from {} offsets, {} of them rejected",
+                numberOfTiles,
+                numberOfOffsets,
+                getNumberOfRejectedOffsets()
+        );
+
+        int[] solvedXs = new int[numberOfTiles];
+        int[] solvedYs = new int[numberOfTiles];
+        int[] widths = new int[numberOfTiles];
+        int[] heights = new int[numberOfTiles];
+        for (int i=0; i<numberOfTiles; i++) {
+            solvedXs[i] = nominalLayout.getOriginX() + (int) Math.round(xs[i]);
+            solvedYs[i] = nominalLayout.getOriginY() + (int) Math.round(ys[i]);
+            widths[i] = nominalLayout.getWidth(i);
+            heights[i] = nominalLayout.getHeight(i);
+        }
+        return new TileLayout(solvedXs, solvedYs, widths, heights);
+    }
+
+    private boolean readmitOffsets(double[] xs, double[] ys) {
+        boolean offsetsReadmitted = false;
+
+        for (int i=0; i<numberOfOffsets; i++) {
+            if (rejected[i] && computeResidual(i, xs, ys) <= maxResidual) {
+                rejected[i] = false;
+                offsetsReadmitted = true;
+            }
+        }
+        return offsetsReadmitted;
+    }
+
+    private void computeDegrees(double[] degrees) {
+        Arrays.fill(degrees, 0);
+
+        for (int i=0; i<numberOfOffsets; i++) {
+            if (!rejected[i]) {
+                degrees[references[i]] += weights[i];
+                degrees[movings[i]] += weights[i];
+            }
+        }
+    }
+
+    /**
+     * Solve L * positions = b with a Jacobi-preconditioned conjugate gradient, where L is the weighted Laplacian of the
+     * graph of non-rejected offsets and b the weighted divergence of the offsets. The provided positions are used as the
+     * initial guess and contain the solution once this function returns. Tiles without any offset are not modified.
+     */
+    private int solveAxis(double[] positions, double[] offsets, double[] degrees) {
+        int numberOfTiles = positions.length;
+
+        double[] residual = new double[numberOfTiles];
+        for (int i=0; i<numberOfOffsets; i++) {
+            if (!rejected[i]) {
+                residual[movings[i]] += weights[i] * offsets[i];
+                residual[references[i]] -= weights[i] * offsets[i];
+            }
+        }
+        double normB = Math.sqrt(dot(residual, residual));
+
+        double[] product = new double[numberOfTiles];
+        multiplyByLaplacian(positions, product);
+        for (int i=0; i<numberOfTiles; i++) {
+            residual[i] -= product[i];
+        }
+
+        double[] preconditionedResidual = new double[numberOfTiles];
+        precondition(residual, degrees, preconditionedResidual);
+        double[] direction = preconditionedResidual.clone();
+        double residualDotPreconditioned = dot(residual, preconditionedResidual);
+
+        int maxIterations = Math.max(MIN_SOLVER_ITERATIONS, numberOfTiles);
+        int iteration = 0;
+        while (iteration < maxIterations && Math.sqrt(dot(residual, residual)) > SOLVER_TOLERANCE * Math.max(1, normB)) {
+            multiplyByLaplacian(direction, product);
+            double curvature = dot(direction, product);
+            if (curvature <= 0) {
+                break;
+            }
+
+            double step = residualDotPreconditioned / curvature;
+            for (int i=0; i<numberOfTiles; i++) {
+                positions[i] += step * direction[i];
+                residual[i] -= step * product[i];
+            }
+
+            precondition(residual, degrees, preconditionedResidual);
+            double newResidualDotPreconditioned = dot(residual, preconditionedResidual);
+            double beta = newResidualDotPreconditioned / residualDotPreconditioned;
+            for (int i=0; i<numberOfTiles; i++) {
+                direction[i] = preconditionedResidual[i] + beta * direction[i];
+            }
+            residualDotPreconditioned = newResidualDotPreconditioned;
+            iteration++;
+        }
+
+        return iteration;
+    }
+
+    private void multiplyByLaplacian(double[] vector, double[] result) {
+        Arrays.fill(result, 0);
+
+        for (int i=0; i<numberOfOffsets; i++) {
+            if (!rejected[i]) {
+                double difference = weights[i] * (vector[movings[i]] - vector[references[i]]);
+                result[movings[i]] += difference;
+                result[references[i]] -= difference;
+            }
+        }
+    }
+
+    private static void precondition(double[] vector, double[] degrees, double[] result) {
+        for (int i=0; i<vector.length; i++) {
+            result[i] = degrees[i] > 0 ? vector[i] / degrees[i] : 0;
+        }
+    }
+
+    private static double dot(double[] a, double[] b) {
+        double sum = 0;
+        for (int i=0; i<a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private double computeResidual(int offset, double[] xs, double[] ys) {
+        return Math.hypot(
+                xs[movings[offset]] - xs[references[offset]] - offsetsX[offset],
+                ys[movings[offset]] - ys[references[offset]] - offsetsY[offset]
+        );
+    }
+
+    private int[] findComponents() {
+        int[] parents = new int[nominalLayout.getNumberOfTiles()];
+        for (int i=0; i<parents.length; i++) {
+            parents[i] = i;
+        }
+
+        for (int i=0; i<numberOfOffsets; i++) {
+            if (!rejected[i]) {
+                parents[findRoot(parents, movings[i])] = findRoot(parents, references[i]);
+            }
+        }
+        for (int i=0; i<parents.length; i++) {
+            parents[i] = findRoot(parents, i);
+        }
+        return parents;
+    }
+
+    private static int findRoot(int[] parents, int tile) {
+        while (parents[tile] != tile) {
+            parents[tile] = parents[parents[tile]];
+            tile = parents[tile];
+        }
+        return tile;
+    }
+
+    private void translateComponents(double[] xs, double[] ys, int[] components, double[] degrees) {
+        int numberOfTiles = xs.length;
+        double[] shiftsX = new double[numberOfTiles];
+        double[] shiftsY = new double[numberOfTiles];
+        int[] sizes = new int[numberOfTiles];
+
+        for (int i=0; i<numberOfTiles; i++) {
+            if (degrees[i] == 0) {
+                // Tiles whose offsets were all rejected may have been moved by previous iterations
+                xs[i] = nominalLayout.getX(i);
+                ys[i] = nominalLayout.getY(i);
+            }
+
+            shiftsX[components[i]] += nominalLayout.getX(i) - xs[i];
+            shiftsY[components[i]] += nominalLayout.getY(i) - ys[i];
+            sizes[components[i]]++;
+        }
+
+        for (int i=0; i<numberOfTiles; i++) {
+            xs[i] += shiftsX[components[i]] / sizes[components[i]];
+            ys[i] += shiftsY[components[i]] / sizes[components[i]];
+        }
+    }
+}
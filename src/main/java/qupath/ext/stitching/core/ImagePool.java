@@ -0,0 +1,138 @@
+package qupath.ext.stitching.core;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferDouble;
+import java.awt.image.DataBufferFloat;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferShort;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.WritableRaster;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A pool of images that are reused instead of being allocated each time a tile is created.
+ * <p>
+ * All images of a pool have the raster and color model of the template provided to the constructor, and are grouped
+ * by size. {@link #acquire(int, int)} returns a released image of the requested size if there is one, or creates
+ * a new image otherwise. At most a fixed number of released images of each size are kept, the others are left to the
+ * garbage collector.
+ * <p>
+ * Acquired images are filled with zeros (unless requested otherwise), so they can be used as empty tiles.
+ * <p>
+ * This class is thread-safe. An image can be released by another thread than the one that acquired it.
+ */
+class ImagePool {
+
+    private final BufferedImage template;
+    private final int maxRetainedImagesPerSize;
+    private final Map<Size, Deque<BufferedImage>> images = new HashMap<>();
+    private record Size(int width, int height) {}
+
+    /**
+     * Create the pool.
+     *
+     * @param template an image whose raster and color model should be used by the images of this pool
+     * @param maxRetainedImagesPerSize the maximum number of released images of a given size to keep
+     * @throws IllegalArgumentException if the provided maximum is negative
+     */
+    public ImagePool(BufferedImage template, int maxRetainedImagesPerSize) {
+        if (maxRetainedImagesPerSize < 0) {
+            throw new IllegalArgumentException(String.format(
+                    "The maximum number of retained images per size (%d) is negative",
+                    maxRetainedImagesPerSize
+            ));
+        }
+
+        this.template = template;
+        this.maxRetainedImagesPerSize = maxRetainedImagesPerSize;
+    }
+
+    /**
+     * Get an image filled with zeros, reusing a released image if possible.
+     *
+     * @param width the width of the image
+     * @param height the height of the image
+     * @return an image of the provided size filled with zeros
+     */
+    public BufferedImage acquire(int width, int height) {
+        return acquire(width, height, true);
+    }
+
+    /**
+     * Get an image, reusing a released image if possible. Not filling the image with zeros is faster, but should only
+     * be done if all pixels of the image are going to be overwritten.
+     *
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param filledWithZeros whether the returned image should be filled with zeros. If false, a reused image contains
+     *                        the pixels it had when it was released
+     * @return an image of the provided size
+     */
+    public BufferedImage acquire(int width, int height, boolean filledWithZeros) {
+        BufferedImage image;
+        synchronized (this) {
+            Deque<BufferedImage> releasedImages = images.get(new Size(width, height));
+            image = releasedImages == null ? null : releasedImages.pollLast();
+        }
+
+        if (image == null) {
+            WritableRaster raster = template.getRaster().createCompatibleWritableRaster(width, height);
+            return new BufferedImage(template.getColorModel(), raster, template.isAlphaPremultiplied(), null);
+        } else {
+            if (filledWithZeros) {
+                clear(image.getRaster());
+            }
+            return image;
+        }
+    }
+
+    /**
+     * Give back an image to this pool. The image must not be used anymore after this call.
+     *
+     * @param image an image returned by {@link #acquire(int, int)}. Can be null, in which case nothing happens
+     */
+    public void release(BufferedImage image) {
+        if (image == null) {
+            return;
+        }
+
+        synchronized (this) {
+            Deque<BufferedImage> releasedImages = images.computeIfAbsent(new Size(image.getWidth(), image.getHeight()), size -> new ArrayDeque<>());
+            if (releasedImages.size() < maxRetainedImagesPerSize) {
+                releasedImages.addLast(image);
+            }
+        }
+    }
+
+    /**
+     * @return the number of released images currently kept by this pool
+     */
+    public synchronized int getNumberOfRetainedImages() {
+        return images.values().stream().mapToInt(Deque::size).sum();
+    }
+
+    private static void clear(WritableRaster raster) {
+        DataBuffer dataBuffer = raster.getDataBuffer();
+
+        for (int bank=0; bank<dataBuffer.getNumBanks(); bank++) {
+            switch (dataBuffer) {
+                case DataBufferByte buffer -> Arrays.fill(buffer.getData(bank), (byte) 0);
+                case DataBufferUShort buffer -> Arrays.fill(buffer.getData(bank), (short) 0);
+                case DataBufferShort buffer -> Arrays.fill(buffer.getData(bank), (short) 0);
+                case DataBufferInt buffer -> Arrays.fill(buffer.getData(bank), 0);
+                case DataBufferFloat buffer -> Arrays.fill(buffer.getData(bank), 0);
+                case DataBufferDouble buffer -> Arrays.fill(buffer.getData(bank), 0);
+                default -> {
+                    raster.setRect(raster.createCompatibleWritableRaster());
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -5,28 +5,34 @@ import org.slf4j.LoggerFactory;
 import qupath.ext.stitching.core.positionfinders.FilenamePatternPositionFinder;
 import qupath.ext.stitching.core.positionfinders.PositionFinder;
 import qupath.ext.stitching.core.positionfinders.TiffTagPositionFinder;
-import qupath.lib.common.ThreadTools;
 import qupath.lib.images.servers.ImageServer;
 import qupath.lib.images.servers.ImageServerBuilder;
 import qupath.lib.images.servers.ImageServerProvider;
 import qupath.lib.images.servers.ImageServers;
-import qupath.lib.images.servers.SparseImageServer;
+import qupath.lib.images.servers.PixelCalibration;
+import qupath.lib.images.servers.PixelType;
+import qupath.lib.images.servers.bioformats.BioFormatsServerBuilder;
 import qupath.lib.images.writers.ome.OMEPyramidWriter;
-import qupath.lib.images.writers.ome.zarr.OMEZarrWriter;
-import qupath.lib.regions.ImageRegion;
 
 import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.util.HashMap;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.stream.IntStream;
 
@@ -34,116 +40,219 @@ import java.util.stream.IntStream;
  * A class to stitch TIFF images.
  * <p>
  * Use a {@link Builder} to create an instance of this class.
+ * <p>
+ * Input images are only opened when their pixels are needed, and at most {@link Builder#maxOpenInputs(int)} of them
+ * are kept open at the same time. An instance of this class must be {@link #close() closed} once it is not used
+ * anymore to release the input images that are still open.
  */
-public class ImageStitcher {
+public class ImageStitcher implements AutoCloseable {
 
     private static final Logger logger = LoggerFactory.getLogger(ImageStitcher.class);
+    private static final ImageServerBuilder<BufferedImage> TIFF_SERVER_BUILDER = new BioFormatsServerBuilder();
     private final int numberOfThreads;
+    private final boolean pyramidalize;
+    private final MemoryBudget memoryBudget;
+    private final ThreadBudget.Client cpuThreadBudget;
+    private final ZarrCodec zarrCodec;
+    private final int zarrCompressionLevel;
+    private final int zarrShardSize;
+    private final OMEPyramidWriter.CompressionType tiffCompression;
+    private final ChunkShape zarrChunkShape;
+    private final ChunkShape tiffTileShape;
+    private final StitchedImageServer stitchedServer;
     private final ImageServer<BufferedImage> server;
     private final AtomicBoolean someInputImagesNotUsed = new AtomicBoolean(false);
+    private final PendingInputs pendingInputs;
+    private final ExecutorService parsingExecutorService;
+    @FunctionalInterface
+    private interface ParsingTask {
+
+        boolean parse(int index) throws Exception;
+    }
+    private record Placement(long fileSize, long lastModifiedTime, List<String> positionFinders, int x, int y, int width, int height) {
+
+        private static Placement of(LayoutManifest.Entry entry) {
+            return new Placement(
+                    entry.fileSize(),
+                    entry.lastModifiedTime(),
+                    entry.positionFinders(),
+                    entry.x(),
+                    entry.y(),
+                    entry.width(),
+                    entry.height()
+            );
+        }
+    }
+    private static class PositionMismatchException extends IOException {
+
+        private PositionMismatchException(String message) {
+            super(message);
+        }
+    }
 
     private ImageStitcher(Builder builder) throws InterruptedException, IOException {
         logger.debug("Creating image stitcher for {}", builder.imagePaths);
+        if (builder.pipelinedParsing && (builder.registration || builder.shadingCorrection)) {
+            throw new IllegalArgumentException("Pipelined parsing cannot be used with registration or shading correction");
+        }
 
         this.numberOfThreads = builder.numberOfThreads;
+        this.pyramidalize = builder.pyramidalize;
+        this.memoryBudget = builder.memoryBudget == 0 ? null : new MemoryBudget(builder.memoryBudget);
+        this.cpuThreadBudget = builder.cpuThreadBudget;
+        this.zarrCodec = builder.zarrCodec;
+        this.zarrCompressionLevel = builder.zarrCompressionLevel;
+        this.zarrShardSize = builder.zarrShardSize;
+        this.tiffCompression = builder.tiffCompression;
 
-        SparseImageServer.Builder sparserServerBuilder = new SparseImageServer.Builder();
+        int numberOfImages = builder.imagePaths.size();
+        List<ImageServerBuilder.ServerBuilder<BufferedImage>> serverBuilders = new ArrayList<>(Collections.nCopies(numberOfImages, null));
+        List<LayoutManifest.Entry> entries = new ArrayList<>(Collections.nCopies(numberOfImages, null));
+        List<Placement> placements = new ArrayList<>(Collections.nCopies(numberOfImages, null));
+        LayoutManifest layoutManifest = builder.layoutManifestPath == null ? new LayoutManifest() : LayoutManifest.read(builder.layoutManifestPath);
+        List<String> positionFinderDescriptions = builder.positionFinders.stream()
+                .map(LayoutManifest::describePositionFinder)
+                .toList();
 
-        ExecutorService executorService = Executors.newFixedThreadPool(
-                numberOfThreads,
-                ThreadTools.createThreadFactory("stitcher-", false)
-        );
-        AtomicBoolean atLeastOneImageAdded = new AtomicBoolean(false);
+        AtomicInteger numberOfEntriesReused = new AtomicInteger(0);
+        parseInParallel(builder, index -> {
+            String imagePath = builder.imagePaths.get(index);
 
-        AtomicInteger counter = new AtomicInteger(0);
-        for (String imagePath: builder.imagePaths) {
-            executorService.execute(() -> {
-                try {
-                    logger.debug("Checking if {} is a TIFF file", imagePath);
-                    TiffFileChecker.checkTiffFile(imagePath);
-
-                    logger.debug("Parsing {}...", imagePath);
-                    ImageServerBuilder.UriImageSupport<BufferedImage> imageSupport = ImageServerProvider.getPreferredUriImageSupport(BufferedImage.class, imagePath);
-                    if (imageSupport == null || imageSupport.getBuilders().isEmpty()) {
-                        logger.warn("Cannot read image located at {}", imagePath);
-                        return;
-                    }
-                    ImageServerBuilder.ServerBuilder<BufferedImage> serverBuilder = imageSupport.getBuilders().getFirst();
-                    logger.debug("Got server builder {} for {}", serverBuilder, imagePath);
-
-                    ImageServer<BufferedImage> server = serverBuilder.build();
-                    logger.debug("Got server {} for {}", server, imagePath);
-
-                    int[] position = null;
-                    for (int i=0; i<builder.positionFinders.size(); i++) {
-                        try {
-                            position = builder.positionFinders.get(i).findPosition(server);
-                            break;
-                        } catch (IOException | RuntimeException e) {
-                            if (i < builder.positionFinders.size() - 1) {
-                                logger.debug("Cannot use {} to retrieve position. Trying following one", builder.positionFinders.get(i), e);
-                            } else {
-                                throw e;
-                            }
-                        }
-                    }
-                    if (position == null) {
-                        throw new IllegalStateException("No position finder was able to work");
-                    }
-                    int[] finalPosition = position;
-
-                    List<ImageRegion> regions = IntStream.range(0, server.getMetadata().getSizeZ())
-                            .boxed()
-                            .flatMap(z -> IntStream.range(0, server.getMetadata().getSizeT())
-                                    .mapToObj(t -> ImageRegion.createInstance(
-                                            finalPosition[0],
-                                            finalPosition[1],
-                                            server.getMetadata().getWidth(),
-                                            server.getMetadata().getHeight(),
-                                            z,
-                                            t
-                                    ))
-                            ).toList();
-                    logger.debug("Got regions {} for {}", regions, imagePath);
-
-                    synchronized (this) {
-                        for (ImageRegion region: regions) {
-                            sparserServerBuilder.serverRegion(
-                                    region,
-                                    1.0,
-                                    server
-                            );
-                        }
-                    }
-                    atLeastOneImageAdded.set(true);
-                } catch (Exception e) {
-                    logger.warn("Cannot read TIFF image located at {}", imagePath, e);
-                    someInputImagesNotUsed.set(true);
-                }
+            LayoutManifest.Entry entry = null;
+            if (builder.layoutManifestPath != null) {
+                BasicFileAttributes attributes = Files.readAttributes(Path.of(imagePath), BasicFileAttributes.class);
+                entry = layoutManifest.get(
+                        imagePath,
+                        attributes.size(),
+                        attributes.lastModifiedTime().toMillis(),
+                        positionFinderDescriptions
+                );
+            }
 
-                if (builder.onProgress != null) {
-                    builder.onProgress.accept((float) counter.incrementAndGet() / builder.imagePaths.size());
+            if (entry != null) {
+                logger.debug("Reusing {} from layout manifest for {}", entry, imagePath);
+                numberOfEntriesReused.incrementAndGet();
+
+                entries.set(index, entry);
+                placements.set(index, Placement.of(entry));
+                return true;
+            } else if (builder.pipelinedParsing) {
+                placements.set(index, placeInput(imagePath, builder.positionFinders, positionFinderDescriptions));
+                return true;
+            } else {
+                entry = parseInput(imagePath, builder.positionFinders, positionFinderDescriptions, serverBuilders, index);
+                if (entry == null) {
+                    return false;
                 }
-            });
+
+                entries.set(index, entry);
+                placements.set(index, Placement.of(entry));
+                return true;
+            }
+        });
+
+        int[] parsedImages = IntStream.range(0, numberOfImages)
+                .filter(i -> placements.get(i) != null)
+                .toArray();
+        if (parsedImages.length == 0) {
+            throw new IllegalArgumentException(String.format("No images from %s were successfully parsed", builder.imagePaths));
         }
-        executorService.close();
+        if (builder.layoutManifestPath != null) {
+            logger.debug("{} entries out of {} reused from layout manifest {}", numberOfEntriesReused.get(), numberOfImages, builder.layoutManifestPath);
+        }
+
+        List<InputDescriptor> parsedDescriptors;
+        if (builder.pipelinedParsing) {
+            parsedImages = parseFirstInput(
+                    builder.imagePaths,
+                    builder.positionFinders,
+                    sortAlongChunks(parsedImages, placements, builder.chunkSize),
+                    placements,
+                    entries,
+                    serverBuilders
+            );
+
+            // Inputs that are not parsed yet are given the channels and pixel type of the first input. They won't
+            // be used if they turn out to be different
+            InputDescriptor firstInput = entries.get(parsedImages[0]).toInputDescriptor();
+            parsedDescriptors = Arrays.stream(parsedImages)
+                    .mapToObj(i -> entries.get(i) == null ?
+                            new InputDescriptor(List.of(Path.of(builder.imagePaths.get(i)).toUri()), firstInput.sizeC(), firstInput.pixelType(), 1, 1) :
+                            entries.get(i).toInputDescriptor()
+                    )
+                    .toList();
+        } else {
+            writeLayoutManifest(builder, layoutManifest, entries);
+
+            parsedDescriptors = Arrays.stream(parsedImages)
+                    .mapToObj(i -> entries.get(i).toInputDescriptor())
+                    .toList();
+        }
+
+        int[] layoutImages = parsedImages;
+        TileLayout layout = createLayout(layoutImages, placements);
+        InputServerPool inputServerPool = new InputServerPool(
+                input -> {
+                    int index = layoutImages[input];
+                    ImageServerBuilder.ServerBuilder<BufferedImage> serverBuilder = serverBuilders.get(index);
+
+                    return serverBuilder == null ? buildServer(builder.imagePaths.get(index)) : serverBuilder.build();
+                },
+                builder.maxOpenInputs
+        );
+        this.pendingInputs = builder.pipelinedParsing ? new PendingInputs(layoutImages.length) : null;
 
         try {
-            executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-        } catch (InterruptedException e) {
-            logger.debug("Waiting interrupted. Stopping tasks", e);
-            executorService.shutdownNow();
+            if (builder.registration) {
+                layout = new TileRegistration(
+                        layout,
+                        inputServerPool,
+                        builder.maxRegistrationShift,
+                        builder.registrationDownsample,
+                        numberOfThreads,
+                        cpuThreadBudget
+                ).register();
+            }
+
+            ShadingCorrection shadingCorrection = null;
+            if (builder.shadingCorrection) {
+                shadingCorrection = ShadingCorrection.estimate(
+                        layout,
+                        inputServerPool,
+                        builder.shadingCorrectionSamples,
+                        builder.darkFieldCorrection,
+                        numberOfThreads,
+                        cpuThreadBudget
+                );
+            }
+
+            this.zarrChunkShape = getChunkShape(layout, builder.chunkSize, ChunkShape.ZARR_MULTIPLE);
+            this.tiffTileShape = getChunkShape(layout, builder.tiffTileSize, ChunkShape.TIFF_MULTIPLE);
+            logger.debug("Using {} for OME-Zarr chunks and {} for OME-TIFF tiles", zarrChunkShape, tiffTileShape);
+
+            this.stitchedServer = new StitchedImageServer.Builder(parsedDescriptors, inputServerPool, layout)
+                    .blendingMode(builder.blendingMode)
+                    .shadingCorrection(shadingCorrection)
+                    .pendingInputs(pendingInputs)
+                    .memoryBudget(memoryBudget)
+                    .tileShape(tiffTileShape)     // the OME-TIFF output is written from the tiles of this server
+                    .threadBudget(cpuThreadBudget)
+                    .build();
+        } catch (IOException | RuntimeException | InterruptedException e) {
+            inputServerPool.close();
             throw e;
         }
-
-        if (!atLeastOneImageAdded.get()) {
-            throw new IllegalArgumentException(String.format("No images from %s were successfully parsed", builder.imagePaths));
+        if (builder.pyramidalize) {
+            this.server = ImageServers.pyramidalize(stitchedServer);
+        } else {
+            this.server = stitchedServer;
         }
 
-        if (builder.pyramidalize) {
-            this.server = ImageServers.pyramidalize(sparserServerBuilder.build());
+        if (builder.pipelinedParsing) {
+            this.parsingExecutorService = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("stitcher-pipelined-parser-", 0).factory());
+            parseRemainingInputs(builder, layoutImages, placements, entries, serverBuilders, layoutManifest);
         } else {
-            this.server = sparserServerBuilder.build();
+            this.parsingExecutorService = null;
         }
         logger.debug("Created {} for {}", server, builder.imagePaths);
     }
@@ -156,8 +265,25 @@ public class ImageStitcher {
     }
 
     /**
-     * Write the resulting image to the specified path with the Zarr format. This may take some time depending on
+     * Write the resulting image to the specified path with the OME-Zarr format. This may take some time depending on
      * the number of input images.
+     * <p>
+     * If {@link Builder#pyramidalize(boolean)} is true, each lower resolution chunk is computed from the (in-memory) chunks
+     * of the level above it as soon as they are written, so the input images are only read once and all levels are
+     * written in a single pass. Chunks that don't intersect any input image are not written (they are read as zeros,
+     * the fill value of the image), which saves time and space with sparse acquisitions.
+     * <p>
+     * Chunks are compressed with the codec and level set with {@link Builder#zarrCodec(ZarrCodec)} and
+     * {@link Builder#zarrCompressionLevel(int)}. All codecs can be read back, so tiles can later be added to the image
+     * with {@link #updateZarrFile(String, Consumer)} whatever the codec used.
+     * <p>
+     * If a shard size was set with {@link Builder#zarrShardSize(int)}, the image is written with the Zarr v3 format and
+     * its chunks are packed into shard files, each shard being written with a single file handle and its index written
+     * once all its chunks are written.
+     * <p>
+     * Written chunks are recorded in a journal located inside the output image, which is deleted once the writing is
+     * complete. If the writing is interrupted (for example if the application is stopped), it can be continued with
+     * {@link #resumeZarrFile(String, Consumer)}.
      *
      * @param outputPath the path the output image should have
      * @param onProgress a function that will be called at different steps when the writing occurs. Its parameter will be a float
@@ -171,53 +297,918 @@ public class ImageStitcher {
      */
     public void writeToZarrFile(String outputPath, Consumer<Float> onProgress) throws IOException, InterruptedException {
         logger.debug("Attempting to write {} to {}", server, outputPath);
-        AtomicReference<Float> progress = new AtomicReference<>(0f);
-        Map<Integer, Float> levelProgress = new HashMap<>();        // Lower resolution tiles take more time to read, so we assume that a
-                                                                    // processed lower resolution tile provides more progress than a processed
-                                                                    // higher resolution tile
-        OMEZarrWriter.Builder builder = new OMEZarrWriter.Builder(server)
-                .parallelize(numberOfThreads);
-        if (onProgress != null) {
-            builder.onTileWritten(tileRequest -> onProgress.accept(progress.updateAndGet(p -> p + levelProgress.get(tileRequest.getLevel()))));
-        }
-        OMEZarrWriter writer = builder.build(outputPath);
-
-        for (int level=0; level<writer.getReaderServer().getMetadata().nLevels(); level++) {
-            levelProgress.put(
-                    level,
-                    1f / (writer.getReaderServer().getMetadata().nLevels() * writer.getReaderServer().getTileRequestManager().getTileRequestsForLevel(level).size())
-            );
+
+        ZarrChunkJournal journal;
+        try (OmeZarrStore store = createZarrStore(outputPath)) {
+            journal = ZarrChunkJournal.create(store, computeZarrFingerprint(store));
+            writeAllZarrChunks(store, journal, onProgress);
+        }
+
+        // The journal must only be deleted once all shards are complete, which is when the store is closed
+        journal.delete();
+    }
+
+    /**
+     * Create an OME-Zarr image that several processes can write at the same time, each process writing one partition
+     * of the image with {@link #writeZarrPartition(String, int, Consumer)}. Once all partitions are written, the image
+     * must be completed with {@link #finishPartitionedZarrFile(String, Consumer)}.
+     * <p>
+     * The full resolution level of the image is split into disjoint blocks of chunks, and each partition writes the
+     * chunks of its blocks and the lower resolution chunks containing them, up to a level where blocks are reduced to
+     * a few chunks. Blocks are aligned with the shards set with {@link Builder#zarrShardSize(int)}, so partitions never
+     * write to the same file and can be written by processes running on the same machine or on several machines sharing
+     * the output directory. Blocks are assigned so that all partitions contain about the same number of chunks covered
+     * by input images.
+     * <p>
+     * This only writes the metadata of the image, including the number of partitions. The stitchers writing the
+     * partitions must have the same input images located at the same positions as this stitcher, for example by
+     * giving them the {@link Builder#layoutManifest(Path) layout manifest} written when this stitcher was built, so that
+     * the input images are not parsed again by each process.
+     *
+     * @param outputPath the path the output image should have
+     * @param numberOfPartitions the number of partitions to split the image into. Some partitions may not contain any
+     *                           chunk if the image is small
+     * @throws IOException if the empty image cannot be created. This can happen if the provided
+     * path is incorrect or if the user doesn't have enough permissions
+     * @throws IllegalArgumentException if the number of partitions is less than 1, if the provided path doesn't end
+     * with ".ome.zarr" or if a file/directory already exists at this location
+     */
+    public void createPartitionedZarrFile(String outputPath, int numberOfPartitions) throws IOException {
+        logger.debug("Attempting to create {} with {} partitions for {}", outputPath, numberOfPartitions, server);
+        if (numberOfPartitions < 1) {
+            throw new IllegalArgumentException(String.format("The number of partitions (%d) must be at least 1", numberOfPartitions));
+        }
+
+        try (OmeZarrStore store = createZarrStore(outputPath)) {
+            // A partition is written once its journal is deleted
+            byte[] fingerprint = computeZarrFingerprint(store);
+            for (int partition=0; partition<numberOfPartitions; partition++) {
+                ZarrChunkJournal.create(store, fingerprint, partition).close();
+            }
+
+            store.setNumberOfPartitions(numberOfPartitions);
+        }
+    }
+
+    /**
+     * Write one partition of an OME-Zarr image created with {@link #createPartitionedZarrFile(String, int)}. Several
+     * processes can call this function at the same time on the same image, as long as they write different partitions.
+     * <p>
+     * Written chunks are recorded in a journal specific to the partition, so if the writing is interrupted, calling
+     * this function again only writes the chunks of the partition that were not completely written. Nothing happens
+     * if the partition is already written.
+     * <p>
+     * This stitcher must have the same input images located at the same positions as the stitcher that created the
+     * image.
+     *
+     * @param outputPath the path of the partitioned OME-Zarr image
+     * @param partition the index of the partition to write, between 0 (inclusive) and the number of partitions of the
+     *                  image (exclusive)
+     * @param onProgress a function that will be called at different steps when the writing occurs. Its parameter will be a float
+     *                   between 0 and 1 indicating the progress of the operation (0: beginning, 1: finished). This function may
+     *                   be called from any thread. Can be null
+     * @throws IOException if the image cannot be read or written
+     * @throws IllegalArgumentException if the provided path doesn't contain an image being written by partitions, if
+     * the partition index is out of bounds, or if the image was created with different input images, positions, or
+     * output parameters
+     * @throws InterruptedException if the writing is interrupted
+     */
+    public void writeZarrPartition(String outputPath, int partition, Consumer<Float> onProgress) throws IOException, InterruptedException {
+        logger.debug("Attempting to write partition {} of {} to {}", partition, server, outputPath);
+
+        ZarrChunkJournal journal;
+        try (OmeZarrStore store = OmeZarrStore.open(Path.of(outputPath))) {
+            int numberOfPartitions = getNumberOfPartitions(store, outputPath);
+            if (partition < 0 || partition >= numberOfPartitions) {
+                throw new IllegalArgumentException(String.format(
+                        "The partition %d is out of bounds, as %s has %d partitions", partition, outputPath, numberOfPartitions
+                ));
+            }
+            if (!ZarrChunkJournal.exists(store.getPath(), partition)) {
+                logger.debug("Partition {} of {} already written", partition, outputPath);
+                return;
+            }
+
+            journal = ZarrChunkJournal.open(store, computeZarrFingerprint(store), partition);
+            try (journal) {
+                ZarrPyramidWriter writer = createZarrWriter(store, 0, 0);
+                ZarrPartitioning partitioning = new ZarrPartitioning(store, writer.getChunksCoveredByInputs(), numberOfPartitions);
+                BitSet chunks = partitioning.getChunks(partition);
+                chunks.and(writer.getChunksCoveredByInputs());
+
+                writer.write(chunks, 0, partitioning.getPartitionLevel(), false, journal, onProgress);
+            }
+        }
+
+        // The journal must only be deleted once all shards of the partition are complete, which is when the store is closed
+        journal.delete();
+    }
+
+    /**
+     * Complete an OME-Zarr image created with {@link #createPartitionedZarrFile(String, int)} once all its partitions
+     * were written with {@link #writeZarrPartition(String, int, Consumer)}. This writes the lowest resolution levels of
+     * the image, which are not part of any partition, and removes the partitions from the metadata of the image.
+     * <p>
+     * This only reads a few chunks written by the partitions and doesn't read any input image, so it is fast. This
+     * stitcher must have the same input images located at the same positions as the stitcher that created the image.
+     *
+     * @param outputPath the path of the partitioned OME-Zarr image
+     * @param onProgress a function that will be called at different steps when the writing occurs. Its parameter will be a float
+     *                   between 0 and 1 indicating the progress of the operation (0: beginning, 1: finished). This function may
+     *                   be called from any thread. Can be null
+     * @throws IOException if the image cannot be read or written
+     * @throws IllegalArgumentException if the provided path doesn't contain an image being written by partitions, or
+     * if some partitions are not written yet
+     * @throws InterruptedException if the writing is interrupted
+     */
+    public void finishPartitionedZarrFile(String outputPath, Consumer<Float> onProgress) throws IOException, InterruptedException {
+        logger.debug("Attempting to complete the partitions of {} written to {}", server, outputPath);
+
+        try (OmeZarrStore store = OmeZarrStore.open(Path.of(outputPath))) {
+            int numberOfPartitions = getNumberOfPartitions(store, outputPath);
+            List<Integer> partitionsNotWritten = IntStream.range(0, numberOfPartitions)
+                    .filter(partition -> ZarrChunkJournal.exists(store.getPath(), partition))
+                    .boxed()
+                    .toList();
+            if (!partitionsNotWritten.isEmpty()) {
+                throw new IllegalArgumentException(String.format(
+                        "The partitions %s of %s are not written yet", partitionsNotWritten, outputPath
+                ));
+            }
+
+            ZarrPyramidWriter writer = createZarrWriter(store, 0, 0);
+            int firstLevel = new ZarrPartitioning(store, writer.getChunksCoveredByInputs(), numberOfPartitions).getPartitionLevel() + 1;
+            if (firstLevel < store.getNumberOfLevels()) {
+                writer.write(writer.getChunksCoveredByInputs(firstLevel), firstLevel, store.getNumberOfLevels() - 1, false, null, onProgress);
+            }
+
+            // The partitions must only be removed once all shards are complete
+            store.completeOpenShards();
+            store.setNumberOfPartitions(0);
+        }
+    }
+
+    /**
+     * Continue writing the resulting image to an OME-Zarr image whose writing with {@link #writeToZarrFile(String, Consumer)}
+     * was interrupted. Only the chunks that were not completely written are written.
+     * <p>
+     * This stitcher must have the same input images located at the same positions as the stitcher that started the
+     * writing.
+     *
+     * @param outputPath the path of the partially written OME-Zarr image
+     * @param onProgress a function that will be called at different steps when the writing occurs. Its parameter will be a float
+     *                   between 0 and 1 indicating the progress of the operation (0: beginning, 1: finished). This function may
+     *                   be called from any thread. Can be null
+     * @throws IOException if the partially written image cannot be read or written
+     * @throws IllegalArgumentException if the provided path doesn't contain a partially written image (see
+     * {@link #isZarrFileResumable(String)}), or if the image was started with different input images, positions, or
+     * output parameters
+     * @throws InterruptedException if the writing is interrupted
+     */
+    public void resumeZarrFile(String outputPath, Consumer<Float> onProgress) throws IOException, InterruptedException {
+        logger.debug("Attempting to resume writing {} to {}", server, outputPath);
+        if (!isZarrFileResumable(outputPath)) {
+            throw new IllegalArgumentException(String.format("%s doesn't contain a partially written image", outputPath));
+        }
+
+        ZarrChunkJournal journal;
+        try (OmeZarrStore store = OmeZarrStore.open(Path.of(outputPath))) {
+            journal = ZarrChunkJournal.open(store, computeZarrFingerprint(store));
+            writeAllZarrChunks(store, journal, onProgress);
+        }
+
+        // The journal must only be deleted once all shards are complete, which is when the store is closed
+        journal.delete();
+    }
+
+    /**
+     * Indicate whether the writing of an OME-Zarr image started with {@link #writeToZarrFile(String, Consumer)} was
+     * interrupted and can be continued with {@link #resumeZarrFile(String, Consumer)}.
+     *
+     * @param outputPath the path of the OME-Zarr image
+     * @return whether the provided path contains a partially written OME-Zarr image
+     */
+    public static boolean isZarrFileResumable(String outputPath) {
+        return ZarrChunkJournal.exists(Path.of(outputPath));
+    }
+
+    /**
+     * Draw the input images of this stitcher on top of an OME-Zarr image previously written with
+     * {@link #writeToZarrFile(String, Consumer)}. This is useful to add new tiles or replace some tiles of an existing
+     * image without writing it again.
+     * <p>
+     * Only the full resolution chunks intersecting the input images of this stitcher and the lower resolution chunks
+     * containing them are rewritten, so the cost of this operation is proportional to the area covered by the input
+     * images of this stitcher, not to the size of the existing image.
+     * <p>
+     * The positions of the input images of this stitcher must be expressed in the same coordinate system as the input
+     * images used to create the existing image. Images written by earlier versions of this extension don't record
+     * their position within this coordinate system, so they must be updated with
+     * {@link #updateZarrFile(String, int, int, Consumer)}.
+     *
+     * @param zarrPath the path of the existing OME-Zarr image to update
+     * @param onProgress a function that will be called at different steps when the writing occurs. Its parameter will be a float
+     *                   between 0 and 1 indicating the progress of the operation (0: beginning, 1: finished). This function may
+     *                   be called from any thread. Can be null
+     * @throws IOException if the existing image cannot be read or written
+     * @throws IllegalArgumentException if the provided path doesn't contain an OME-Zarr image written by
+     * {@link #writeToZarrFile(String, Consumer)}, if the existing image doesn't record its position, if the channels,
+     * pixel type, number of z-slices or number of timepoints of the existing image don't match the input images of this
+     * stitcher, if the input images of this stitcher are not contained in the existing image, or if the existing image
+     * is being written by partitions (see {@link #createPartitionedZarrFile(String, int)})
+     * @throws InterruptedException if the writing is interrupted
+     */
+    public void updateZarrFile(String zarrPath, Consumer<Float> onProgress) throws IOException, InterruptedException {
+        logger.debug("Attempting to draw {} on top of {}", server, zarrPath);
+        try (OmeZarrStore store = OmeZarrStore.open(Path.of(zarrPath))) {
+            if (!store.hasOrigin()) {
+                throw new IllegalArgumentException(String.format(
+                        "%s doesn't record its position within the coordinate system of the input images. It was probably " +
+                                "written by an earlier version of this extension, and its position must be provided",
+                        zarrPath
+                ));
+            }
+
+            updateZarrStore(store, zarrPath, store.getOriginX(), store.getOriginY(), onProgress);
         }
-        logger.debug("{} tiles to write to {}", writer.getReaderServer().getTileRequestManager().getAllTileRequests().size(), outputPath);
+    }
 
-        writer.writeImage();
+    /**
+     * Same as {@link #updateZarrFile(String, Consumer)}, but with the position of the existing image within the
+     * coordinate system of the input images provided. This is needed to update images written by earlier versions of
+     * this extension, which don't record their position: it is the smallest x-coordinate and the smallest y-coordinate
+     * of the input images the existing image was created with. The position is then recorded in the existing image,
+     * so that later updates don't need it.
+     *
+     * @param zarrPath the path of the existing OME-Zarr image to update
+     * @param originX the x-coordinate of the existing image within the coordinate system of the input images
+     * @param originY the y-coordinate of the existing image within the coordinate system of the input images
+     * @param onProgress a function that will be called at different steps when the writing occurs. Its parameter will be a float
+     *                   between 0 and 1 indicating the progress of the operation (0: beginning, 1: finished). This function may
+     *                   be called from any thread. Can be null
+     * @throws IOException if the existing image cannot be read or written
+     * @throws IllegalArgumentException if the provided path doesn't contain an OME-Zarr image written by this extension
+     * or by QuPath, if the existing image records a different position than the provided one, if the channels, pixel type,
+     * number of z-slices or number of timepoints of the existing image don't match the input images of this stitcher,
+     * if the input images of this stitcher are not contained in the existing image, or if the existing image is being
+     * written by partitions (see {@link #createPartitionedZarrFile(String, int)})
+     * @throws InterruptedException if the writing is interrupted
+     */
+    public void updateZarrFile(String zarrPath, int originX, int originY, Consumer<Float> onProgress) throws IOException, InterruptedException {
+        logger.debug("Attempting to draw {} on top of {} located at [{}, {}]", server, zarrPath, originX, originY);
+        try (OmeZarrStore store = OmeZarrStore.open(Path.of(zarrPath))) {
+            if (store.hasOrigin() && (store.getOriginX() != originX || store.getOriginY() != originY)) {
+                throw new IllegalArgumentException(String.format(
+                        "%s is located at [%d, %d], not at the provided position [%d, %d]",
+                        zarrPath,
+                        store.getOriginX(),
+                        store.getOriginY(),
+                        originX,
+                        originY
+                ));
+            }
+
+            updateZarrStore(store, zarrPath, originX, originY, onProgress);
+            if (!store.hasOrigin()) {
+                store.setOrigin(originX, originY);
+            }
+        }
     }
 
     /**
      * Write the resulting image to the specified path with the OME-TIFF format. This may take some time depending on
      * the number of input images.
+     * <p>
+     * Tiles are compressed with the compression set with {@link Builder#tiffCompression(OMEPyramidWriter.CompressionType)},
+     * or with the default lossless compression of the image if none was set.
+     * <p>
+     * When the stitcher is run by a {@link StitchingScheduler}, the writer threads are reserved from the CPU budget
+     * for the whole write, so the writer uses fewer than {@link Builder#numberOfThreads(int)} threads if the budget
+     * is busy when the write starts.
      *
      * @param outputPath the path the output image should have
      * @throws RuntimeException if an error occurs while writing the image
+     * @throws IllegalArgumentException if the compression is {@link OMEPyramidWriter.CompressionType#JPEG} while the
+     * resulting image is not an 8-bit RGB or single channel image
      */
     public void writeToTiffFile(String outputPath) throws Exception {
-        new OMEPyramidWriter.Builder(server)
-                .tileSize(512)
-                .channelsInterleaved()          // because SparseImageServer returns all channels in a BufferedImage, it's more efficient to write them interleaved
-                .parallelize(numberOfThreads)
-                .losslessCompression()
-                .build()
-                .writeSeries(outputPath);
+        if (tiffCompression == OMEPyramidWriter.CompressionType.JPEG &&
+                (server.getPixelType() != PixelType.UINT8 || !(server.isRGB() || server.nChannels() == 1))) {
+            throw new IllegalArgumentException(String.format(
+                    "JPEG compression requires an 8-bit RGB or single channel image, while the image has %d channels of type %s",
+                    server.nChannels(),
+                    server.getPixelType()
+            ));
+        }
+
+        // The writer threads compress tiles between the reads, so they keep their permits for the whole write
+        try (ThreadBudget.Reservation reservation = cpuThreadBudget == null ? null : cpuThreadBudget.reserve(numberOfThreads)) {
+            int writerThreads = reservation == null ? numberOfThreads : reservation.getPermits();
+            logger.debug("Writing {} to {} with {} threads", server, outputPath, writerThreads);
+
+            OMEPyramidWriter.Builder builder = new OMEPyramidWriter.Builder(server)
+                    .tileSize(tiffTileShape.width(), tiffTileShape.height())
+                    .channelsInterleaved()          // because StitchedImageServer returns all channels in a BufferedImage, it's more efficient to write them interleaved
+                    .parallelize(writerThreads);
+            if (tiffCompression == null) {
+                builder.losslessCompression();
+            } else {
+                builder.compression(tiffCompression);
+            }
+            builder.build().writeSeries(outputPath);
+        }
     }
 
     /**
      * @return whether it was not possible to use at least one image from the image paths given
-     * to {@link Builder#Builder(List)}
+     * to {@link Builder#Builder(List)}. With {@link Builder#pipelinedParsing(boolean)}, this is only final once the
+     * output image is written
      */
     public boolean areSomeInputImagesNotUsed() {
         return someInputImagesNotUsed.get();
     }
 
+    /**
+     * Close the input images that are still open. The server returned by {@link #getServer()} cannot be
+     * read and the output image cannot be written anymore once this function is called.
+     *
+     * @throws Exception if an error occurs while closing the servers
+     */
+    @Override
+    public void close() throws Exception {
+        logger.debug("Closing image stitcher of {}", server);
+
+        if (parsingExecutorService != null) {
+            parsingExecutorService.shutdownNow();
+            pendingInputs.cancel();
+        }
+        if (server != stitchedServer) {
+            server.close();
+        }
+        stitchedServer.close();
+    }
+
+    private void writeAllZarrChunks(OmeZarrStore store, ZarrChunkJournal journal, Consumer<Float> onProgress) throws IOException, InterruptedException {
+        try (journal) {
+            ZarrPyramidWriter writer = createZarrWriter(store, 0, 0);
+            // Chunks not covered by any input image are left to the fill value of the image
+            writer.write(writer.getChunksCoveredByInputs(), false, journal, onProgress);
+        }
+    }
+
+    private OmeZarrStore createZarrStore(String outputPath) throws IOException {
+        if (!outputPath.endsWith(".ome.zarr")) {
+            throw new IllegalArgumentException(String.format("The provided path %s doesn't end with \".ome.zarr\"", outputPath));
+        }
+        if (Files.exists(Path.of(outputPath))) {
+            throw new IllegalArgumentException(String.format("A file or directory already exists at %s", outputPath));
+        }
+
+        TileLayout layout = stitchedServer.getLayout();
+        return new OmeZarrStore.Builder(Path.of(outputPath), stitchedServer.getMetadata())
+                .numberOfLevels(pyramidalize ? OmeZarrStore.getNumberOfLevelsToFitInChunk(
+                        layout.getWidth(),
+                        layout.getHeight(),
+                        zarrChunkShape.width(),
+                        zarrChunkShape.height()
+                ) : 1)
+                .chunkSize(zarrChunkShape.width(), zarrChunkShape.height())
+                .origin(layout.getOriginX(), layout.getOriginY())
+                .codec(zarrCodec)
+                .compressionLevel(zarrCompressionLevel)
+                .shardSize(zarrShardSize)
+                .build();
+    }
+
+    private ZarrPyramidWriter createZarrWriter(OmeZarrStore store, int offsetX, int offsetY) {
+        return new ZarrPyramidWriter.Builder(stitchedServer, store)
+                .offset(offsetX, offsetY)
+                .numberOfThreads(numberOfThreads)
+                .memoryBudget(memoryBudget)
+                .threadBudget(cpuThreadBudget)
+                .build();
+    }
+
+    private void updateZarrStore(OmeZarrStore store, String zarrPath, int originX, int originY, Consumer<Float> onProgress) throws IOException, InterruptedException {
+        if (store.getNumberOfPartitions() > 0) {
+            throw new IllegalArgumentException(String.format("%s is being written by partitions and is not complete yet", zarrPath));
+        }
+        if (store.getSizeC() != stitchedServer.nChannels() || store.getPixelType() != stitchedServer.getPixelType()) {
+            throw new IllegalArgumentException(String.format(
+                    "%s has %d channels of type %s, while the input images have %d channels of type %s",
+                    zarrPath,
+                    store.getSizeC(),
+                    store.getPixelType(),
+                    stitchedServer.nChannels(),
+                    stitchedServer.getPixelType()
+            ));
+        }
+        if (store.getSizeZ() < stitchedServer.nZSlices() || store.getSizeT() < stitchedServer.nTimepoints()) {
+            throw new IllegalArgumentException(String.format(
+                    "%s has %d z-slices and %d timepoints, while the input images have %d z-slices and %d timepoints",
+                    zarrPath,
+                    store.getSizeZ(),
+                    store.getSizeT(),
+                    stitchedServer.nZSlices(),
+                    stitchedServer.nTimepoints()
+            ));
+        }
+
+        TileLayout layout = stitchedServer.getLayout();
+        int offsetX = layout.getOriginX() - originX;
+        int offsetY = layout.getOriginY() - originY;
+        if (offsetX < 0 || offsetY < 0 || offsetX + layout.getWidth() > store.getWidth(0) || offsetY + layout.getHeight() > store.getHeight(0)) {
+            throw new IllegalArgumentException(String.format(
+                    "The input images (located at [%d, %d] with size %dx%d) are not contained in %s (located at [%d, %d] with size %dx%d)",
+                    layout.getOriginX(),
+                    layout.getOriginY(),
+                    layout.getWidth(),
+                    layout.getHeight(),
+                    zarrPath,
+                    originX,
+                    originY,
+                    store.getWidth(0),
+                    store.getHeight(0)
+            ));
+        }
+
+        ZarrPyramidWriter writer = createZarrWriter(store, offsetX, offsetY);
+        writer.write(writer.getChunksCoveredByInputs(), true, null, onProgress);
+    }
+
+    private static int getNumberOfPartitions(OmeZarrStore store, String zarrPath) {
+        if (store.getNumberOfPartitions() == 0) {
+            throw new IllegalArgumentException(String.format(
+                    "%s was not created by partitions or its partitions were already completed", zarrPath
+            ));
+        }
+        return store.getNumberOfPartitions();
+    }
+
+    private byte[] computeZarrFingerprint(OmeZarrStore store) {
+        return ZarrChunkJournal.computeFingerprint(
+                stitchedServer.getLayout(),
+                stitchedServer.getURIs(),
+                stitchedServer.getBlendingMode(),
+                stitchedServer.getShadingCorrection(),
+                store
+        );
+    }
+
+    private void parseInParallel(Builder builder, ParsingTask parsingTask) throws InterruptedException {
+        // Parsing is mostly blocking file I/O, so each input is parsed by its own virtual thread. The number of inputs
+        // parsed at the same time is limited by a semaphore (and not by the number of threads), which also limits the
+        // number of virtual threads created
+        ExecutorService executorService = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("stitcher-parser-", 0).factory());
+        Semaphore parsingPermits = new Semaphore(builder.maxConcurrentParsing);
+
+        AtomicInteger counter = new AtomicInteger(0);
+        for (int i=0; i<builder.imagePaths.size(); i++) {
+            String imagePath = builder.imagePaths.get(i);
+            int index = i;
+
+            try {
+                parsingPermits.acquire();
+            } catch (InterruptedException e) {
+                logger.debug("Parsing interrupted. Stopping tasks", e);
+                executorService.shutdownNow();
+                throw e;
+            }
+            executorService.execute(() -> {
+                try (ThreadBudget.Permit ignored = builder.ioThreadBudget == null ? null : builder.ioThreadBudget.acquire()) {
+                    if (!parsingTask.parse(index)) {
+                        someInputImagesNotUsed.set(true);
+                    }
+                } catch (Exception e) {
+                    logger.warn("Cannot read TIFF image located at {}", imagePath, e);
+                    someInputImagesNotUsed.set(true);
+                } finally {
+                    parsingPermits.release();
+                }
+
+                if (builder.onProgress != null) {
+                    builder.onProgress.accept((float) counter.incrementAndGet() / builder.imagePaths.size());
+                }
+            });
+        }
+        executorService.close();
+
+        try {
+            executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            logger.debug("Waiting interrupted. Stopping tasks", e);
+            executorService.shutdownNow();
+            throw e;
+        }
+    }
+
+    private int[] parseFirstInput(
+            List<String> imagePaths,
+            List<PositionFinder> positionFinders,
+            int[] images,
+            List<Placement> placements,
+            List<LayoutManifest.Entry> entries,
+            List<ImageServerBuilder.ServerBuilder<BufferedImage>> serverBuilders
+    ) {
+        // The first input that can be parsed defines the metadata of the stitched image, so it must be parsed before
+        // the stitched image is created. Inputs before it are not used
+        int firstInput = 0;
+        for (; firstInput<images.length && entries.get(images[firstInput]) == null; firstInput++) {
+            int index = images[firstInput];
+
+            try {
+                LayoutManifest.Entry entry = parsePlacedInput(imagePaths.get(index), placements.get(index), positionFinders, serverBuilders, index);
+                if (entry != null) {
+                    entries.set(index, entry);
+                    break;
+                }
+            } catch (PositionMismatchException e) {
+                throw new IllegalArgumentException(e.getMessage(), e);
+            } catch (Exception e) {
+                logger.warn("Cannot read TIFF image located at {}", imagePaths.get(index), e);
+            }
+            someInputImagesNotUsed.set(true);
+        }
+        if (firstInput == images.length) {
+            throw new IllegalArgumentException(String.format("No images from %s were successfully parsed", imagePaths));
+        }
+
+        // Inputs already parsed (from the layout manifest) that don't match the first input are not used
+        InputDescriptor reference = entries.get(images[firstInput]).toInputDescriptor();
+        List<Integer> usedImages = new ArrayList<>();
+        for (int i=firstInput; i<images.length; i++) {
+            LayoutManifest.Entry entry = entries.get(images[i]);
+
+            if (entry == null || isCompatible(reference, entry.toInputDescriptor(), imagePaths.get(images[i]))) {
+                usedImages.add(images[i]);
+            } else {
+                entries.set(images[i], null);
+            }
+        }
+        return usedImages.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private void parseRemainingInputs(
+            Builder builder,
+            int[] images,
+            List<Placement> placements,
+            List<LayoutManifest.Entry> entries,
+            List<ImageServerBuilder.ServerBuilder<BufferedImage>> serverBuilders,
+            LayoutManifest layoutManifest
+    ) {
+        InputDescriptor reference = entries.get(images[0]).toInputDescriptor();
+        Semaphore parsingPermits = new Semaphore(builder.maxConcurrentParsing);
+        AtomicInteger remainingInputs = new AtomicInteger(images.length);
+
+        List<Integer> inputsToParse = new ArrayList<>();
+        for (int i=0; i<images.length; i++) {
+            if (entries.get(images[i]) == null) {
+                inputsToParse.add(i);
+            } else {
+                pendingInputs.complete(i, entries.get(images[i]).toInputDescriptor());
+                if (remainingInputs.decrementAndGet() == 0) {
+                    writeLayoutManifest(builder, layoutManifest, entries);
+                }
+            }
+        }
+
+        // A task parses the next input to parse once it gets a permit (and not a specific input), so that inputs are
+        // parsed in the order they are needed by the writers whatever the order in which the tasks get their permits
+        AtomicInteger nextInputToParse = new AtomicInteger(0);
+        for (int i=0; i<inputsToParse.size(); i++) {
+            parsingExecutorService.execute(() -> {
+                boolean permitAcquired = false;
+                try {
+                    parsingPermits.acquire();
+                    permitAcquired = true;
+                } catch (InterruptedException e) {
+                    logger.debug("Waiting for a parsing permit interrupted", e);
+                }
+
+                int input = inputsToParse.get(nextInputToParse.getAndIncrement());
+                int index = images[input];
+                String imagePath = builder.imagePaths.get(index);
+                InputDescriptor descriptor = null;
+                if (permitAcquired) {
+                    try (ThreadBudget.Permit ignored = builder.ioThreadBudget == null ? null : builder.ioThreadBudget.acquire()) {
+                        LayoutManifest.Entry entry = parsePlacedInput(imagePath, placements.get(index), builder.positionFinders, serverBuilders, index);
+
+                        if (entry != null && isCompatible(reference, entry.toInputDescriptor(), imagePath)) {
+                            descriptor = entry.toInputDescriptor();
+
+                            // The number of z-slices and timepoints of the stitched image was determined before this
+                            // input was parsed, so using this input would silently drop some of its planes
+                            if (descriptor.sizeZ() > stitchedServer.nZSlices() || descriptor.sizeT() > stitchedServer.nTimepoints()) {
+                                pendingInputs.fail(input, new IOException(String.format(
+                                        "%s has %d z-slices and %d timepoints, while the stitched image has %d z-slices and %d timepoints. " +
+                                                "Pipelined parsing requires the first parsed image to have the most z-slices and timepoints",
+                                        imagePath,
+                                        descriptor.sizeZ(),
+                                        descriptor.sizeT(),
+                                        stitchedServer.nZSlices(),
+                                        stitchedServer.nTimepoints()
+                                )));
+                            } else {
+                                entries.set(index, entry);
+                            }
+                        }
+                    } catch (PositionMismatchException e) {
+                        pendingInputs.fail(input, e);
+                    } catch (InterruptedException e) {
+                        logger.debug("Parsing of {} interrupted", imagePath, e);
+                    } catch (Exception e) {
+                        logger.warn("Cannot read TIFF image located at {}", imagePath, e);
+                    } finally {
+                        parsingPermits.release();
+                    }
+                }
+
+                if (descriptor == null) {
+                    someInputImagesNotUsed.set(true);
+                }
+                pendingInputs.complete(input, descriptor);
+
+                if (remainingInputs.decrementAndGet() == 0) {
+                    logger.debug("Pipelined parsing of {} inputs done", images.length);
+                    writeLayoutManifest(builder, layoutManifest, entries);
+                }
+            });
+        }
+    }
+
+    private void writeLayoutManifest(Builder builder, LayoutManifest layoutManifest, List<LayoutManifest.Entry> entries) {
+        if (builder.layoutManifestPath == null) {
+            return;
+        }
+
+        for (LayoutManifest.Entry entry: entries) {
+            if (entry != null) {
+                layoutManifest.put(entry);
+            }
+        }
+        layoutManifest.retainAll(builder.imagePaths);
+        try {
+            layoutManifest.write(builder.layoutManifestPath);
+        } catch (IOException e) {
+            logger.warn("Cannot write layout manifest to {}", builder.layoutManifestPath, e);
+        }
+    }
+
+    private static TileLayout createLayout(int[] images, List<Placement> placements) {
+        return new TileLayout(
+                Arrays.stream(images).map(i -> placements.get(i).x()).toArray(),
+                Arrays.stream(images).map(i -> placements.get(i).y()).toArray(),
+                Arrays.stream(images).map(i -> placements.get(i).width()).toArray(),
+                Arrays.stream(images).map(i -> placements.get(i).height()).toArray()
+        );
+    }
+
+    private static ChunkShape getChunkShape(TileLayout layout, int chunkSize, int multiple) {
+        return chunkSize == 0 ? ChunkShape.fromLayout(layout, multiple) : new ChunkShape(chunkSize, chunkSize);
+    }
+
+    private static int[] sortAlongChunks(int[] images, List<Placement> placements, int chunkSize) {
+        int originX = Arrays.stream(images).map(i -> placements.get(i).x()).min().orElse(0);
+        int originY = Arrays.stream(images).map(i -> placements.get(i).y()).min().orElse(0);
+        ChunkShape chunkShape = getChunkShape(createLayout(images, placements), chunkSize, ChunkShape.ZARR_MULTIPLE);
+
+        // Chunks are written along a Z-order curve (see ZarrPyramidWriter), so inputs are parsed in the same order
+        return Arrays.stream(images)
+                .boxed()
+                .sorted(Comparator.comparingLong(i -> ZarrPyramidWriter.getZOrderIndex(
+                        (placements.get(i).x() - originX) / chunkShape.width(),
+                        (placements.get(i).y() - originY) / chunkShape.height()
+                )))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    private static boolean isCompatible(InputDescriptor reference, InputDescriptor descriptor, String imagePath) {
+        if (descriptor.sizeC() == reference.sizeC() && descriptor.pixelType() == reference.pixelType()) {
+            return true;
+        } else {
+            logger.warn(
+                    "{} has {} channels of type {}, while the first parsed image has {} channels of type {}. It won't be used",
+                    imagePath,
+                    descriptor.sizeC(),
+                    descriptor.pixelType(),
+                    reference.sizeC(),
+                    reference.pixelType()
+            );
+            return false;
+        }
+    }
+
+    private static Placement placeInput(
+            String imagePath,
+            List<PositionFinder> positionFinders,
+            List<String> positionFinderDescriptions
+    ) throws IOException {
+        logger.debug("Probing {}...", imagePath);
+        InputProbe inputProbe = InputProbe.probe(imagePath);
+        logger.debug("Got {} for {}", inputProbe, imagePath);
+
+        if (inputProbe.getWidth() < 0 || inputProbe.getHeight() < 0) {
+            throw new IllegalArgumentException(String.format("The size of %s cannot be determined from its TIFF tags", imagePath));
+        }
+
+        for (int i=0; i<positionFinders.size(); i++) {
+            if (!positionFinders.get(i).supportsProbing()) {
+                logger.debug("{} cannot retrieve position without opening {}. Trying following one", positionFinders.get(i), imagePath);
+                continue;
+            }
+
+            try {
+                int[] position = positionFinders.get(i).findProbedPosition(inputProbe);
+                logger.debug("Got position {} for {} without opening it", position, imagePath);
+
+                return new Placement(
+                        inputProbe.getFileSize(),
+                        inputProbe.getLastModifiedTime(),
+                        List.copyOf(positionFinderDescriptions.subList(0, i + 1)),
+                        position[0],
+                        position[1],
+                        inputProbe.getWidth(),
+                        inputProbe.getHeight()
+                );
+            } catch (IOException | RuntimeException e) {
+                if (i < positionFinders.size() - 1) {
+                    logger.debug("Cannot use {} to retrieve position without opening {}. Trying following one", positionFinders.get(i), imagePath, e);
+                } else {
+                    throw e;
+                }
+            }
+        }
+        throw new IllegalArgumentException(String.format(
+                "None of %s can retrieve the position of %s without opening it",
+                positionFinders,
+                imagePath
+        ));
+    }
+
+    private static LayoutManifest.Entry parsePlacedInput(
+            String imagePath,
+            Placement placement,
+            List<PositionFinder> positionFinders,
+            List<ImageServerBuilder.ServerBuilder<BufferedImage>> serverBuilders,
+            int index
+    ) throws Exception {
+        logger.debug("Parsing {}...", imagePath);
+        try (ImageServer<BufferedImage> server = buildServer(imagePath)) {
+            if (server == null) {
+                logger.warn("Cannot read image located at {}", imagePath);
+                return null;
+            }
+            logger.debug("Got server {} for {}", server, imagePath);
+
+            if (server.getWidth() != placement.width() || server.getHeight() != placement.height()) {
+                throw new IllegalArgumentException(String.format(
+                        "%s has a size of %dx%d, while its TIFF tags indicate %dx%d",
+                        imagePath,
+                        server.getWidth(),
+                        server.getHeight(),
+                        placement.width(),
+                        placement.height()
+                ));
+            }
+
+            // The position was found without opening the image, which doesn't always give the same result as the
+            // opened image (for example, a calibration read from the TIFF tags instead of the image metadata). The
+            // stitched image is already laid out, so a different position cannot be fixed anymore
+            PositionFinder positionFinder = positionFinders.stream()
+                    .filter(finder -> LayoutManifest.describePositionFinder(finder).equals(placement.positionFinders().getLast()))
+                    .findFirst()
+                    .orElseThrow();
+            int[] position = positionFinder.findPosition(server);
+            if (position[0] != placement.x() || position[1] != placement.y()) {
+                throw new PositionMismatchException(String.format(
+                        "%s is located at (%d, %d) according to %s, while it was placed at (%d, %d) before being opened",
+                        imagePath,
+                        position[0],
+                        position[1],
+                        positionFinder,
+                        placement.x(),
+                        placement.y()
+                ));
+            }
+
+            serverBuilders.set(index, server.getBuilder());
+            return createEntry(
+                    imagePath,
+                    placement.fileSize(),
+                    placement.lastModifiedTime(),
+                    placement.positionFinders(),
+                    placement.x(),
+                    placement.y(),
+                    server
+            );
+        }
+    }
+
+    private static LayoutManifest.Entry parseInput(
+            String imagePath,
+            List<PositionFinder> positionFinders,
+            List<String> positionFinderDescriptions,
+            List<ImageServerBuilder.ServerBuilder<BufferedImage>> serverBuilders,
+            int index
+    ) throws Exception {
+        logger.debug("Probing {}...", imagePath);
+        InputProbe inputProbe = InputProbe.probe(imagePath);
+        logger.debug("Got {} for {}", inputProbe, imagePath);
+
+        logger.debug("Parsing {}...", imagePath);
+        // The server is only used to describe the input. It is closed right after, and reopened
+        // later by the input server pool if its pixels are needed
+        try (ImageServer<BufferedImage> server = buildServer(imagePath)) {
+            if (server == null) {
+                logger.warn("Cannot read image located at {}", imagePath);
+                return null;
+            }
+            logger.debug("Got server {} for {}", server, imagePath);
+
+            int[] position = null;
+            int positionFinderIndex = 0;
+            for (; positionFinderIndex<positionFinders.size(); positionFinderIndex++) {
+                try {
+                    position = positionFinders.get(positionFinderIndex).findPosition(server, inputProbe);
+                    break;
+                } catch (IOException | RuntimeException e) {
+                    if (positionFinderIndex < positionFinders.size() - 1) {
+                        logger.debug("Cannot use {} to retrieve position. Trying following one", positionFinders.get(positionFinderIndex), e);
+                    } else {
+                        throw e;
+                    }
+                }
+            }
+            if (position == null) {
+                throw new IllegalStateException("No position finder was able to work");
+            }
+            logger.debug("Got position {} for {}", position, imagePath);
+
+            serverBuilders.set(index, server.getBuilder());
+            return createEntry(
+                    imagePath,
+                    inputProbe.getFileSize(),
+                    inputProbe.getLastModifiedTime(),
+                    List.copyOf(positionFinderDescriptions.subList(0, positionFinderIndex + 1)),
+                    position[0],
+                    position[1],
+                    server
+            );
+        }
+    }
+
+    private static LayoutManifest.Entry createEntry(
+            String imagePath,
+            long fileSize,
+            long lastModifiedTime,
+            List<String> positionFinderDescriptions,
+            int x,
+            int y,
+            ImageServer<BufferedImage> server
+    ) {
+        PixelCalibration pixelCalibration = server.getPixelCalibration();
+        return new LayoutManifest.Entry(
+                imagePath,
+                fileSize,
+                lastModifiedTime,
+                positionFinderDescriptions,
+                x,
+                y,
+                server.getWidth(),
+                server.getHeight(),
+                server.getURIs().stream().map(URI::toString).toList(),
+                server.nChannels(),
+                server.getPixelType(),
+                server.nZSlices(),
+                server.nTimepoints(),
+                pixelCalibration.getPixelWidthMicrons(),
+                pixelCalibration.getPixelHeightMicrons()
+        );
+    }
+
+    private static ImageServer<BufferedImage> buildServer(String imagePath) throws Exception {
+        // The input is already known to be a TIFF file, so Bio-Formats is tried first. This avoids asking every
+        // image server builder to open the file to check whether they support it
+        try {
+            ImageServer<BufferedImage> server = TIFF_SERVER_BUILDER.buildServer(Path.of(imagePath).toUri());
+            if (server != null) {
+                return server;
+            }
+        } catch (Exception e) {
+            logger.debug("Cannot open {} directly with {}. Looking for another image server builder", imagePath, TIFF_SERVER_BUILDER, e);
+        }
+
+        ImageServerBuilder.UriImageSupport<BufferedImage> imageSupport = ImageServerProvider.getPreferredUriImageSupport(BufferedImage.class, imagePath);
+        if (imageSupport == null || imageSupport.getBuilders().isEmpty()) {
+            return null;
+        }
+        ImageServerBuilder.ServerBuilder<BufferedImage> serverBuilder = imageSupport.getBuilders().getFirst();
+        logger.debug("Got server builder {} for {}", serverBuilder, imagePath);
+
+        return serverBuilder.build();
+    }
+
     /**
      * A builder to create a {@link ImageStitcher}.
      */
@@ -232,7 +1223,27 @@ public class ImageStitcher {
                                                                                     // benchmark on several machines and taking a good score that
                                                                                     // doesn't require a lot of RAM
         private boolean pyramidalize = true;
+        private int maxOpenInputs = 128;        // well below the usual limit of open file descriptors per process
+        private int maxConcurrentParsing = 128;
+        private long memoryBudget = 0;         // 0 means that the memory is not limited
+        private ZarrCodec zarrCodec = ZarrCodec.BLOSC_LZ4;
+        private int zarrCompressionLevel = ZarrCodec.DEFAULT_LEVEL;
+        private int zarrShardSize = 1;
+        private OMEPyramidWriter.CompressionType tiffCompression = null;
+        private int chunkSize = 0;
+        private int tiffTileSize = ChunkShape.DEFAULT_SIZE;
+        private Path layoutManifestPath = null;
+        private boolean registration = false;
+        private int maxRegistrationShift = 32;
+        private double registrationDownsample = 1;
+        private BlendingMode blendingMode = BlendingMode.NONE;
+        private boolean pipelinedParsing = false;
+        private boolean shadingCorrection = false;
+        private int shadingCorrectionSamples = 50;
+        private boolean darkFieldCorrection = false;
         private Consumer<Float> onProgress = null;
+        private ThreadBudget.Client cpuThreadBudget = null;
+        private ThreadBudget.Client ioThreadBudget = null;
 
         /**
          * Create the builder.
@@ -267,7 +1278,11 @@ public class ImageStitcher {
         }
 
         /**
-         * Set the number of threads to use when parsing the input images or writing the output image.
+         * Set the number of threads to use when reading the input images or writing the output image. This doesn't
+         * apply to the parsing of the input images (see {@link #maxConcurrentParsing(int)}).
+         * <p>
+         * The memory used by these threads depends on the size of the tiles, the number of channels and the pixel type.
+         * Use {@link #memoryBudget(long)} to limit it without reducing the number of threads.
          *
          * @param numberOfThreads the number of threads to use. By default, this is equal to {@link Runtime#availableProcessors()}
          * @return this builder
@@ -278,8 +1293,12 @@ public class ImageStitcher {
         }
 
         /**
-         * Whether the downsamples of the output image should be 1, 4, 8, 16, and so on. If no, the output image
-         * will only have a single resolution. True by default.
+         * Whether the output image should contain lower resolution levels. If no, the output image will only have a
+         * single resolution. True by default.
+         * <p>
+         * The downsamples of the OME-Zarr output are 1, 4, 8, 16, and so on, until the lowest resolution fits in a single
+         * chunk. The OME-TIFF output and the server returned by {@link ImageStitcher#getServer()} use the downsamples
+         * chosen by {@link ImageServers#pyramidalize(ImageServer, double...)}.
          *
          * @param pyramidalize whether to pyramidalize the output image
          * @return this builder
@@ -289,6 +1308,372 @@ public class ImageStitcher {
             return this;
         }
 
+        /**
+         * Set the maximum number of input images that can be open at the same time. Input images are opened when their
+         * pixels are needed, and the least recently used ones are closed when this number is exceeded. This number can
+         * temporarily be exceeded if more input images are read at the same time.
+         *
+         * @param maxOpenInputs the maximum number of input images that can be open at the same time. 128 by default
+         * @return this builder
+         * @throws IllegalArgumentException if the provided number is less than 1
+         */
+        public Builder maxOpenInputs(int maxOpenInputs) {
+            if (maxOpenInputs < 1) {
+                throw new IllegalArgumentException(String.format("The maximum number of open inputs (%d) must be at least 1", maxOpenInputs));
+            }
+
+            this.maxOpenInputs = maxOpenInputs;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of input images that can be parsed at the same time when {@link #build()} is called.
+         * <p>
+         * Parsing an input image (finding its position and metadata) is mostly waiting for the file to be read, so each
+         * input image is parsed by its own virtual thread, independently of {@link #numberOfThreads(int)}. A high number
+         * can speed up parsing when the input images are located on a network drive, but each input image being parsed
+         * holds an open file.
+         *
+         * @param maxConcurrentParsing the maximum number of input images that can be parsed at the same time. 128 by default
+         * @return this builder
+         * @throws IllegalArgumentException if the provided number is less than 1
+         */
+        public Builder maxConcurrentParsing(int maxConcurrentParsing) {
+            if (maxConcurrentParsing < 1) {
+                throw new IllegalArgumentException(String.format("The maximum number of concurrent parsing (%d) must be at least 1", maxConcurrentParsing));
+            }
+
+            this.maxConcurrentParsing = maxConcurrentParsing;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of bytes that the pixels being processed can use at the same time when the output
+         * image is written or read.
+         * <p>
+         * Before reading a tile of the output image or writing a chunk of the OME-Zarr output, the bytes of the tile,
+         * of the parts of the input images it contains, and of the buffers used to encode it (for the OME-Zarr output)
+         * are reserved from this budget. A thread whose reservation would exceed the budget waits until other threads
+         * release their reservations, so all {@link #numberOfThreads(int) threads} can be used without running out of
+         * memory. A single tile needing more bytes than the budget is still processed, but alone.
+         * <p>
+         * This doesn't include the memory used by the libraries reading the input images and writing the OME-TIFF output
+         * (for example their caches), so the budget should be set below the maximum heap size.
+         *
+         * @param memoryBudget the maximum number of bytes that the pixels being processed can use at the same time. By
+         *                     default, this is not limited
+         * @return this builder
+         * @throws IllegalArgumentException if the provided number of bytes is less than 1
+         */
+        public Builder memoryBudget(long memoryBudget) {
+            if (memoryBudget < 1) {
+                throw new IllegalArgumentException(String.format("The memory budget (%d bytes) must be at least 1 byte", memoryBudget));
+            }
+
+            this.memoryBudget = memoryBudget;
+            return this;
+        }
+
+        /**
+         * Set the codec to use to compress the chunks of the OME-Zarr output. This doesn't apply when resuming or updating
+         * an existing image, which keeps its codec.
+         * <p>
+         * {@link ZarrCodec#BLOSC_LZ4} compresses chunks much faster than {@link ZarrCodec#ZLIB} and {@link ZarrCodec#GZIP},
+         * and {@link ZarrCodec#NONE} is the fastest choice when the output is written to a fast disk and its size doesn't
+         * matter.
+         *
+         * @param zarrCodec the codec to use to compress the chunks of the OME-Zarr output. {@link ZarrCodec#BLOSC_LZ4} by default
+         * @return this builder
+         * @throws NullPointerException if the provided codec is null
+         */
+        public Builder zarrCodec(ZarrCodec zarrCodec) {
+            this.zarrCodec = Objects.requireNonNull(zarrCodec);
+            return this;
+        }
+
+        /**
+         * Set the compression level to use with {@link #zarrCodec(ZarrCodec)}. A lower level compresses chunks faster
+         * but makes them larger. This doesn't apply when resuming or updating an existing image, which keeps its
+         * compression level.
+         *
+         * @param zarrCompressionLevel the compression level to use, between {@link ZarrCodec#MIN_LEVEL} and
+         *                             {@link ZarrCodec#MAX_LEVEL}. {@link ZarrCodec#DEFAULT_LEVEL} by default
+         * @return this builder
+         * @throws IllegalArgumentException if the provided level is not between {@link ZarrCodec#MIN_LEVEL} and
+         * {@link ZarrCodec#MAX_LEVEL}
+         */
+        public Builder zarrCompressionLevel(int zarrCompressionLevel) {
+            ZarrCodec.checkLevel(zarrCompressionLevel);
+
+            this.zarrCompressionLevel = zarrCompressionLevel;
+            return this;
+        }
+
+        /**
+         * Set the number of chunks along each axis of a shard of the OME-Zarr output.
+         * <p>
+         * With a shard size greater than 1, the output is written with the Zarr v3 format (and the version 0.5 of the
+         * OME-NGFF specification), and each shard file contains all channels of a square of chunks. This creates far
+         * fewer files than the default format, which stores each channel of each chunk in its own file, but requires a
+         * reader supporting Zarr v3. This doesn't apply when resuming or updating an existing image, which keeps its
+         * format.
+         *
+         * @param zarrShardSize the number of chunks along each axis of a shard, or 1 to not shard the output. 1 by default
+         * @return this builder
+         * @throws IllegalArgumentException if the provided size is less than 1
+         */
+        public Builder zarrShardSize(int zarrShardSize) {
+            if (zarrShardSize < 1) {
+                throw new IllegalArgumentException(String.format("The shard size (%d) must be at least 1", zarrShardSize));
+            }
+
+            this.zarrShardSize = zarrShardSize;
+            return this;
+        }
+
+        /**
+         * Set the compression to use for the tiles of the OME-TIFF output.
+         * <p>
+         * {@link OMEPyramidWriter.CompressionType#JPEG} is lossy and can only be used with 8-bit RGB or single channel
+         * images (for example brightfield images). The compression level of the OME-TIFF output cannot be changed.
+         *
+         * @param tiffCompression the compression to use, or null to use the default lossless compression of the
+         *                        image. Null by default
+         * @return this builder
+         */
+        public Builder tiffCompression(OMEPyramidWriter.CompressionType tiffCompression) {
+            this.tiffCompression = tiffCompression;
+            return this;
+        }
+
+        /**
+         * Set the size of the chunks of the OME-Zarr output.
+         * <p>
+         * By default (0), the size is chosen from the positions of the input images: if they are on a regular grid,
+         * chunks are aligned with the grid so that most of them are contained in a single input image, which avoids
+         * reading and decoding several input images to write one chunk. For example, input images placed every 1800
+         * pixels give chunks of 900 pixels. Chunks are then between 256 and 1024 pixels wide and high, and may not be
+         * square. Otherwise, chunks are squares of 512 pixels.
+         * <p>
+         * Larger chunks take more memory to write (see {@link #memoryBudget(long)}).
+         *
+         * @param chunkSize the width and height of the chunks, or 0 to choose them from the positions of the input
+         *                  images. 0 by default
+         * @return this builder
+         * @throws IllegalArgumentException if the provided size is negative or not a multiple of 4 (see
+         * {@link ChunkShape#ZARR_MULTIPLE})
+         */
+        public Builder chunkSize(int chunkSize) {
+            if (chunkSize < 0 || chunkSize % ChunkShape.ZARR_MULTIPLE != 0) {
+                throw new IllegalArgumentException(String.format(
+                        "The chunk size (%d) must be 0 or a positive multiple of %d",
+                        chunkSize,
+                        ChunkShape.ZARR_MULTIPLE
+                ));
+            }
+
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * Set the size of the tiles of the OME-TIFF output and of the server returned by {@link #getServer()}.
+         * <p>
+         * With 0, the size is chosen from the positions of the input images, as described in {@link #chunkSize(int)}.
+         * Tiles may then not be square, which some readers of OME-TIFF images don't support.
+         *
+         * @param tiffTileSize the width and height of the tiles, or 0 to choose them from the positions of the input
+         *                     images. 512 by default
+         * @return this builder
+         * @throws IllegalArgumentException if the provided size is negative or not a multiple of 16 (see
+         * {@link ChunkShape#TIFF_MULTIPLE})
+         */
+        public Builder tiffTileSize(int tiffTileSize) {
+            if (tiffTileSize < 0 || tiffTileSize % ChunkShape.TIFF_MULTIPLE != 0) {
+                throw new IllegalArgumentException(String.format(
+                        "The OME-TIFF tile size (%d) must be 0 or a positive multiple of %d",
+                        tiffTileSize,
+                        ChunkShape.TIFF_MULTIPLE
+                ));
+            }
+
+            this.tiffTileSize = tiffTileSize;
+            return this;
+        }
+
+        /**
+         * Whether the input images should be parsed while the output image is written. False by default.
+         * <p>
+         * If false, {@link #build()} opens every input image to find its position and metadata, and the output image
+         * can only be written after that.
+         * <p>
+         * If true, {@link #build()} only finds the position and size of every input image from the first bytes of its
+         * file (see {@link PositionFinder#findProbedPosition(InputProbe)}), and only opens the first input image. The other
+         * input images are opened in the background, in the order in which the output image is written, and each part
+         * of the output image is written as soon as the input images covering it are parsed. This reduces the time
+         * needed to stitch many input images, especially if opening them is slow.
+         * <p>
+         * With this mode:
+         * <ul>
+         *     <li>Input images whose position cannot be found without opening them (see {@link PositionFinder#supportsProbing()})
+         *     are not used.</li>
+         *     <li>Input images that don't have the same number of channels and pixel type as the first parsed input image
+         *     are not used.</li>
+         *     <li>Input images must not have more z-slices or timepoints than the first parsed input image (and the input
+         *     images reused from the {@link #layoutManifest(Path) layout manifest}), as the size of the output image is
+         *     determined before they are parsed. Writing the output image fails with an {@link IOException} when such an
+         *     input image is parsed.</li>
+         *     <li>The position of each input image is found again once it is opened, and must be the same as the one found
+         *     without opening it (which may not be the case if, for example, the pixel size stored in the TIFF tags of the
+         *     file is different from the one of the image metadata). Otherwise, {@link #build()} fails with an
+         *     {@link IllegalArgumentException} if the input image is the first parsed one, and writing the output image
+         *     fails with an {@link IOException} when the input image is parsed.</li>
+         *     <li>{@link #registration(boolean)} and {@link #shadingCorrection(boolean)} cannot be used, as they need
+         *     to read the input images before the output image can be written.</li>
+         * </ul>
+         *
+         * @param pipelinedParsing whether to parse the input images while the output image is written
+         * @return this builder
+         */
+        public Builder pipelinedParsing(boolean pipelinedParsing) {
+            this.pipelinedParsing = pipelinedParsing;
+            return this;
+        }
+
+        /**
+         * Set the path of a JSON file recording the information retrieved when parsing the input images (position,
+         * dimensions, pixel type, calibration, and position finders tried).
+         * <p>
+         * If this file already exists when {@link #build()} is called, input images whose file size and last modification
+         * time didn't change since they were recorded (and whose position finders tried are still the ones with the
+         * highest priority) are not parsed again. The file is then updated with the input images of this run.
+         * <p>
+         * An invalid or unreadable file is ignored (and overwritten).
+         *
+         * @param layoutManifestPath the path of the file recording the parsed input images, or null to always parse all
+         *                           input images. Null by default
+         * @return this builder
+         */
+        public Builder layoutManifest(Path layoutManifestPath) {
+            this.layoutManifestPath = layoutManifestPath;
+            return this;
+        }
+
+        /**
+         * Whether to refine the positions of the input images by registering overlapping input images. False by default.
+         * <p>
+         * Positions are first retrieved with the {@link #positionFinders(List) position finders}. Then, for each pair of
+         * input images overlapping at these positions, the translation between the overlapping parts of the two images is
+         * computed with phase correlation. The positions are finally corrected with the translations of the pairs that
+         * were successfully registered. Input images without any overlapping neighbour keep their original position.
+         * <p>
+         * This requires reading the overlapping parts of all input images, so it makes {@link #build()} slower.
+         *
+         * @param registration whether to refine the positions of the input images
+         * @return this builder
+         */
+        public Builder registration(boolean registration) {
+            this.registration = registration;
+            return this;
+        }
+
+        /**
+         * Set the maximum error of the retrieved positions of the input images that {@link #registration(boolean) registration}
+         * can correct.
+         *
+         * @param maxRegistrationShift the maximum error (in pixels), along each axis, of the position of an input image
+         *                             relative to its neighbours. 32 by default
+         * @return this builder
+         * @throws IllegalArgumentException if the provided number is less than 1
+         */
+        public Builder maxRegistrationShift(int maxRegistrationShift) {
+            if (maxRegistrationShift < 1) {
+                throw new IllegalArgumentException(String.format("The maximum registration shift (%d) must be at least 1", maxRegistrationShift));
+            }
+
+            this.maxRegistrationShift = maxRegistrationShift;
+            return this;
+        }
+
+        /**
+         * Set the downsample at which the overlapping parts of the input images are read during {@link #registration(boolean) registration}.
+         * Higher values make the registration faster but less accurate.
+         *
+         * @param registrationDownsample the downsample to use during registration. 1 by default
+         * @return this builder
+         * @throws IllegalArgumentException if the provided downsample is less than 1
+         */
+        public Builder registrationDownsample(double registrationDownsample) {
+            if (registrationDownsample < 1) {
+                throw new IllegalArgumentException(String.format("The registration downsample (%f) must be at least 1", registrationDownsample));
+            }
+
+            this.registrationDownsample = registrationDownsample;
+            return this;
+        }
+
+        /**
+         * Set how pixels covered by several input images are determined. See {@link BlendingMode} for the available
+         * strategies.
+         *
+         * @param blendingMode the strategy to use to resolve pixels covered by several input images. {@link BlendingMode#NONE}
+         *                     by default
+         * @return this builder
+         * @throws NullPointerException if the provided parameter is null
+         */
+        public Builder blendingMode(BlendingMode blendingMode) {
+            this.blendingMode = Objects.requireNonNull(blendingMode);
+            return this;
+        }
+
+        /**
+         * Whether to correct the uneven illumination (for example vignetting) of the input images. False by default.
+         * <p>
+         * A flat-field profile is estimated from a random sample of input images (see {@link #shadingCorrectionSamples(int)})
+         * when {@link #build()} is called, and is then applied to the input images when they are read to create the
+         * resulting image. Input images therefore don't need to be corrected before being stitched. Only the input images
+         * having the most common size are corrected.
+         *
+         * @param shadingCorrection whether to correct the illumination of the input images
+         * @return this builder
+         */
+        public Builder shadingCorrection(boolean shadingCorrection) {
+            this.shadingCorrection = shadingCorrection;
+            return this;
+        }
+
+        /**
+         * Set the number of input images used to estimate the {@link #shadingCorrection(boolean) shading correction}.
+         * A higher number gives a more accurate correction but makes {@link #build()} slower. The correction is estimated
+         * from the median of the sampled images, so the content of the images is ignored where it covers less than half
+         * of them: at least 3 samples are needed, and more if the content covers a large part of the input images.
+         *
+         * @param shadingCorrectionSamples the maximum number of input images to read to estimate the shading correction.
+         *                                 50 by default
+         * @return this builder
+         * @throws IllegalArgumentException if the provided number is less than 1
+         */
+        public Builder shadingCorrectionSamples(int shadingCorrectionSamples) {
+            if (shadingCorrectionSamples < 1) {
+                throw new IllegalArgumentException(String.format("The number of shading correction samples (%d) must be at least 1", shadingCorrectionSamples));
+            }
+
+            this.shadingCorrectionSamples = shadingCorrectionSamples;
+            return this;
+        }
+
+        /**
+         * Whether the {@link #shadingCorrection(boolean) shading correction} should also estimate and subtract a dark-field
+         * profile (for example a camera offset). This is only used if the shading correction is enabled. False by default.
+         *
+         * @param darkFieldCorrection whether to estimate and subtract a dark-field profile
+         * @return this builder
+         */
+        public Builder darkFieldCorrection(boolean darkFieldCorrection) {
+            this.darkFieldCorrection = darkFieldCorrection;
+            return this;
+        }
+
         /**
          * Set a function that will be called at different steps when {@link #build()} is called.
          * <p>
@@ -305,18 +1690,35 @@ public class ImageStitcher {
             return this;
         }
 
+        /**
+         * Share the threads of the stitcher with other stitchers, as done by a {@link StitchingScheduler}.
+         *
+         * @param cpuThreadBudget the budget to acquire a permit from before reading or writing pixels, in addition to
+         *                        the limit set by {@link #numberOfThreads(int)}. Can be null to not use any budget
+         * @param ioThreadBudget the budget to acquire a permit from before parsing an input image, in addition to the
+         *                       limit set by {@link #maxConcurrentParsing(int)}. Can be null to not use any budget
+         * @return this builder
+         */
+        Builder threadBudgets(ThreadBudget.Client cpuThreadBudget, ThreadBudget.Client ioThreadBudget) {
+            this.cpuThreadBudget = cpuThreadBudget;
+            this.ioThreadBudget = ioThreadBudget;
+            return this;
+        }
+
         /**
          * Create a {@link ImageStitcher}.
          * <p>
          * This will parse every file given to {@link #Builder(List)}, so it might take some time depending on
          * the number of elements. If a file is incorrect (e.g. it's not a TIFF file), it will be skipped and a
-         * warning message will be logged.
+         * warning message will be logged. With {@link #pipelinedParsing(boolean)}, most files are only parsed once
+         * the output image is being written.
          *
          * @return this builder
          * @throws IOException if an issue occurs while creating the output image
          * @throws InterruptedException if this operation in interrupted
          * @throws IllegalArgumentException if no image was given to {@link #Builder(List)}, or if it wasn't possible to
-         * retrieve any position from the list
+         * retrieve any position from the list, or if {@link #pipelinedParsing(boolean)} is used with
+         * {@link #registration(boolean)} or {@link #shadingCorrection(boolean)}
          */
         public ImageStitcher build() throws IOException, InterruptedException {
             return new ImageStitcher(this);
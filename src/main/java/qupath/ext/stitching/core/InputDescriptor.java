@@ -0,0 +1,48 @@
+package qupath.ext.stitching.core;
+
+import qupath.lib.images.servers.ImageServer;
+import qupath.lib.images.servers.PixelType;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A lightweight description of an input image of the stitcher. This contains the information needed to
+ * compose the stitched image without keeping the input image open.
+ *
+ * @param uris the URIs of the input image
+ * @param sizeC the number of channels of the input image
+ * @param pixelType the pixel type of the input image
+ * @param sizeZ the number of z-slices of the input image
+ * @param sizeT the number of timepoints of the input image
+ */
+record InputDescriptor(List<URI> uris, int sizeC, PixelType pixelType, int sizeZ, int sizeT) {
+
+    /**
+     * Create the descriptor.
+     *
+     * @throws NullPointerException if the provided URIs or pixel type is null
+     */
+    public InputDescriptor {
+        uris = List.copyOf(uris);
+        Objects.requireNonNull(pixelType);
+    }
+
+    /**
+     * Create a descriptor from an opened image server.
+     *
+     * @param server the server to describe
+     * @return a descriptor of the provided server
+     * @throws NullPointerException if the provided server is null
+     */
+    public static InputDescriptor of(ImageServer<?> server) {
+        return new InputDescriptor(
+                List.copyOf(server.getURIs()),
+                server.nChannels(),
+                server.getPixelType(),
+                server.nZSlices(),
+                server.nTimepoints()
+        );
+    }
+}
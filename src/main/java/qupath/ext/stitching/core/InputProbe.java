@@ -0,0 +1,127 @@
+package qupath.ext.stitching.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * Information about an input file of the stitcher that can be retrieved without opening the file with an image reader.
+ * <p>
+ * Probing a file opens it once and reads its first bytes in a single read. From these bytes (and a few more reads only
+ * if the first image file directory is located further in the file), it checks that the file is a TIFF file (classic
+ * or BigTIFF) and parses its first image file directory (see {@link TiffHeader}). The size and last modification time
+ * of the file are also retrieved.
+ * <p>
+ * This class is immutable and thread-safe.
+ */
+public class InputProbe {
+
+    private static final Logger logger = LoggerFactory.getLogger(InputProbe.class);
+    private static final int PROBE_SIZE = 16384;
+    private final String path;
+    private final long fileSize;
+    private final long lastModifiedTime;
+    private final TiffHeader tiffHeader;
+
+    private InputProbe(String path, long fileSize, long lastModifiedTime, TiffHeader tiffHeader) {
+        this.path = path;
+        this.fileSize = fileSize;
+        this.lastModifiedTime = lastModifiedTime;
+        this.tiffHeader = tiffHeader;
+    }
+
+    /**
+     * Probe the provided file. Take a look at the class documentation for more information.
+     *
+     * @param path the path of the file to probe
+     * @return information about the file
+     * @throws IOException if the path doesn't point to an existing file or if the file cannot be read
+     * @throws IllegalArgumentException if the provided file is not a TIFF file
+     * @throws NullPointerException if the provided path is null
+     */
+    public static InputProbe probe(String path) throws IOException {
+        Path filePath = Path.of(Objects.requireNonNull(path));
+
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+
+            ByteBuffer firstBytes = ByteBuffer.allocate((int) Math.min(PROBE_SIZE, fileSize));
+            while (firstBytes.hasRemaining()) {
+                if (channel.read(firstBytes, firstBytes.position()) < 0) {
+                    break;
+                }
+            }
+            firstBytes.flip();
+
+            InputProbe inputProbe = new InputProbe(
+                    path,
+                    fileSize,
+                    Files.getLastModifiedTime(filePath).toMillis(),
+                    TiffHeader.parse(path, firstBytes, channel)
+            );
+            logger.trace("Probed {}: {}", path, inputProbe);
+
+            return inputProbe;
+        }
+    }
+
+    /**
+     * @return the path of the probed file
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the size in bytes of the probed file
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * @return the last modification time of the probed file, in milliseconds since the epoch
+     */
+    public long getLastModifiedTime() {
+        return lastModifiedTime;
+    }
+
+    /**
+     * @return the first image file directory of the probed file
+     */
+    public TiffHeader getTiffHeader() {
+        return tiffHeader;
+    }
+
+    /**
+     * @return the width in pixels of the first image of the probed file, or -1 if the "ImageWidth" tag is missing
+     */
+    public int getWidth() {
+        return tiffHeader.hasTag(TiffHeader.TAG_IMAGE_WIDTH) ? (int) tiffHeader.getTagValue(TiffHeader.TAG_IMAGE_WIDTH) : -1;
+    }
+
+    /**
+     * @return the height in pixels of the first image of the probed file, or -1 if the "ImageLength" tag is missing
+     */
+    public int getHeight() {
+        return tiffHeader.hasTag(TiffHeader.TAG_IMAGE_LENGTH) ? (int) tiffHeader.getTagValue(TiffHeader.TAG_IMAGE_LENGTH) : -1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "InputProbe of %s: %d bytes, last modified %d, %s",
+                path,
+                fileSize,
+                lastModifiedTime,
+                tiffHeader
+        );
+    }
+}
@@ -0,0 +1,238 @@
+package qupath.ext.stitching.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import qupath.lib.images.servers.ImageServer;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * A size-bounded pool of opened input image servers.
+ * <p>
+ * Input servers are opened on demand with an {@link Opener} when {@link #acquire(int)} is called. When the number
+ * of opened servers exceeds the maximum provided to the constructor, the least recently used servers that are not
+ * currently used are closed. Servers currently used (i.e. acquired and not released yet) are never closed, so the
+ * maximum can temporarily be exceeded if more servers are used at the same time.
+ * <p>
+ * This class is thread-safe. Opening a server doesn't block threads using other servers.
+ */
+class InputServerPool implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(InputServerPool.class);
+    private final Opener opener;
+    private final int maxOpenServers;
+    private final Map<Integer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private boolean closed = false;
+    /**
+     * A function that opens the server of an input.
+     */
+    @FunctionalInterface
+    interface Opener {
+
+        /**
+         * Open the server of an input.
+         *
+         * @param input the index of the input to open
+         * @return the opened server
+         * @throws Exception if the server cannot be opened
+         */
+        ImageServer<BufferedImage> open(int input) throws Exception;
+    }
+    /**
+     * A server acquired from the pool. It must be closed (which doesn't close the server itself) once it is not
+     * used anymore.
+     */
+    class Lease implements AutoCloseable {
+
+        private final Entry entry;
+        private boolean released = false;
+
+        private Lease(Entry entry) {
+            this.entry = entry;
+        }
+
+        /**
+         * @return the acquired server
+         */
+        public ImageServer<BufferedImage> server() {
+            return entry.server.join();
+        }
+
+        @Override
+        public void close() {
+            List<ImageServer<BufferedImage>> serversToClose;
+            synchronized (InputServerPool.this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+
+                entry.users--;
+                serversToClose = evictIfNeeded();
+            }
+            closeServers(serversToClose);
+        }
+    }
+    private static class Entry {
+
+        private final int input;
+        private final CompletableFuture<ImageServer<BufferedImage>> server = new CompletableFuture<>();
+        private int users = 0;
+
+        private Entry(int input) {
+            this.input = input;
+        }
+    }
+
+    /**
+     * Create the pool.
+     *
+     * @param opener the function to use to open input servers
+     * @param maxOpenServers the maximum number of servers that should be open at the same time
+     * @throws NullPointerException if the provided opener is null
+     * @throws IllegalArgumentException if the provided maximum is less than 1
+     */
+    public InputServerPool(Opener opener, int maxOpenServers) {
+        if (maxOpenServers < 1) {
+            throw new IllegalArgumentException(String.format("The maximum number of open servers (%d) must be at least 1", maxOpenServers));
+        }
+
+        this.opener = Objects.requireNonNull(opener);
+        this.maxOpenServers = maxOpenServers;
+    }
+
+    /**
+     * Get the server of an input, opening it if needed. The returned lease must be closed once the server
+     * is not used anymore.
+     *
+     * @param input the index of the input to retrieve
+     * @return a lease containing the server of the input
+     * @throws IOException if the server cannot be opened
+     * @throws IllegalStateException if this pool is closed
+     */
+    public Lease acquire(int input) throws IOException {
+        Entry entry;
+        boolean shouldOpen = false;
+        synchronized (this) {
+            checkNotClosed();
+
+            entry = entries.get(input);
+            if (entry == null) {
+                entry = new Entry(input);
+                entries.put(input, entry);
+                shouldOpen = true;
+            }
+            entry.users++;
+        }
+
+        if (shouldOpen) {
+            try {
+                logger.trace("Opening server of input {}", input);
+                entry.server.complete(Objects.requireNonNull(opener.open(input), "The opened server is null"));
+            } catch (Exception e) {
+                entry.server.completeExceptionally(e);
+            }
+        }
+
+        try {
+            entry.server.join();
+        } catch (CompletionException e) {
+            synchronized (this) {
+                entry.users--;
+                entries.remove(input, entry);
+            }
+
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            } else {
+                throw new IOException(String.format("Cannot open server of input %d", input), e.getCause());
+            }
+        }
+
+        Lease lease = new Lease(entry);
+        List<ImageServer<BufferedImage>> serversToClose;
+        synchronized (this) {
+            serversToClose = evictIfNeeded();
+        }
+        closeServers(serversToClose);
+
+        return lease;
+    }
+
+    /**
+     * @return the number of servers currently open
+     */
+    public synchronized int getNumberOfOpenServers() {
+        return entries.size();
+    }
+
+    /**
+     * Close all servers of this pool. Servers currently acquired are closed as well, so this should only be called
+     * when no server is used anymore. Calling this function several times has no effect.
+     */
+    @Override
+    public void close() {
+        List<ImageServer<BufferedImage>> serversToClose = new ArrayList<>();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            for (Entry entry: entries.values()) {
+                if (entry.server.isDone() && !entry.server.isCompletedExceptionally()) {
+                    serversToClose.add(entry.server.join());
+                }
+            }
+            entries.clear();
+        }
+
+        logger.debug("Closing {} input servers", serversToClose.size());
+        closeServers(serversToClose);
+    }
+
+    private void checkNotClosed() {
+        if (closed) {
+            throw new IllegalStateException("This pool of input servers is closed");
+        }
+    }
+
+    private List<ImageServer<BufferedImage>> evictIfNeeded() {
+        List<ImageServer<BufferedImage>> serversToClose = new ArrayList<>();
+
+        Iterator<Entry> iterator = entries.values().iterator();     // from least recently used to most recently used
+        while (entries.size() > maxOpenServers && iterator.hasNext()) {
+            Entry entry = iterator.next();
+
+            if (entry.users == 0 && entry.server.isDone()) {
+                iterator.remove();
+
+                if (!entry.server.isCompletedExceptionally()) {
+                    logger.trace("Evicting server of input {}", entry.input);
+                    serversToClose.add(entry.server.join());
+                }
+            }
+        }
+
+        return serversToClose;
+    }
+
+    private static void closeServers(List<ImageServer<BufferedImage>> servers) {
+        for (ImageServer<BufferedImage> server: servers) {
+            try {
+                server.close();
+            } catch (Exception e) {
+                logger.warn("Cannot close {}", server, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package qupath.ext.stitching.core;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import qupath.ext.stitching.core.positionfinders.PositionFinder;
+import qupath.lib.images.servers.PixelType;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A record of the information retrieved when parsing input images, that can be saved to and read from a JSON file.
+ * <p>
+ * Each {@link Entry} is keyed by the path of its input image, and is only considered valid if the file size and last
+ * modification time of the input image haven't changed, and if the position finders tried to find its position are
+ * still the ones with the highest priority, in the same order. This allows to skip parsing input images that were
+ * already parsed in a previous run.
+ * <p>
+ * This class is thread-safe.
+ */
+class LayoutManifest {
+
+    private static final Logger logger = LoggerFactory.getLogger(LayoutManifest.class);
+    private static final int VERSION = 3;
+    private static final Gson gson = new GsonBuilder()
+            .serializeSpecialFloatingPointValues()      // calibrations can be NaN
+            .setPrettyPrinting()
+            .create();
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    /**
+     * Information about an input image.
+     *
+     * @param path the path of the input image
+     * @param fileSize the size in bytes of the input image file
+     * @param lastModifiedTime the last modification time of the input image file, in milliseconds since the epoch
+     * @param positionFinders descriptions of the position finders tried to find the position of the input image, in
+     *                        order of priority (see {@link #describePositionFinder(PositionFinder)}). The last one found
+     *                        the position, and the previous ones couldn't find it
+     * @param x the x-coordinate in pixels of the input image
+     * @param y the y-coordinate in pixels of the input image
+     * @param width the width in pixels of the input image
+     * @param height the height in pixels of the input image
+     * @param uris the URIs of the input image
+     * @param sizeC the number of channels of the input image
+     * @param pixelType the pixel type of the input image
+     * @param sizeZ the number of z-slices of the input image
+     * @param sizeT the number of timepoints of the input image
+     * @param pixelWidthMicrons the pixel width in microns of the input image, or NaN if unknown
+     * @param pixelHeightMicrons the pixel height in microns of the input image, or NaN if unknown
+     */
+    public record Entry(
+            String path,
+            long fileSize,
+            long lastModifiedTime,
+            List<String> positionFinders,
+            int x,
+            int y,
+            int width,
+            int height,
+            List<String> uris,
+            int sizeC,
+            PixelType pixelType,
+            int sizeZ,
+            int sizeT,
+            double pixelWidthMicrons,
+            double pixelHeightMicrons
+    ) {
+
+        /**
+         * @return a description of the input image of this entry
+         */
+        public InputDescriptor toInputDescriptor() {
+            return new InputDescriptor(uris.stream().map(URI::create).toList(), sizeC, pixelType, sizeZ, sizeT);
+        }
+    }
+    private record Content(int version, Collection<Entry> inputs) {}
+
+    /**
+     * Read a manifest from a file. If the file doesn't exist or cannot be parsed, an empty manifest is returned.
+     *
+     * @param path the path of the file containing the manifest
+     * @return the manifest contained in the provided file, or an empty manifest if the file doesn't exist or is invalid
+     * @throws NullPointerException if the provided path is null
+     */
+    public static LayoutManifest read(Path path) {
+        LayoutManifest manifest = new LayoutManifest();
+
+        try (Reader reader = Files.newBufferedReader(path)) {
+            Content content = gson.fromJson(reader, Content.class);
+
+            if (content == null || content.version() != VERSION || content.inputs() == null) {
+                logger.warn("The layout manifest {} has an unsupported format. Ignoring it", path);
+            } else {
+                for (Entry entry: content.inputs()) {
+                    if (entry != null && entry.path() != null) {
+                        manifest.entries.put(entry.path(), entry);
+                    }
+                }
+                logger.debug("Read {} entries from layout manifest {}", manifest.entries.size(), path);
+            }
+        } catch (NoSuchFileException e) {
+            logger.debug("No layout manifest found at {}. Starting from an empty one", path);
+        } catch (IOException | JsonParseException e) {
+            logger.warn("Cannot read layout manifest {}. Ignoring it", path, e);
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Get a string describing the provided position finder. It is used to check whether an entry was created with
+     * a position finder that is still used, so position finders that don't override {@link Object#toString()} (such
+     * as lambdas) will never be considered still used by a later run.
+     *
+     * @param positionFinder the position finder to describe
+     * @return a string describing the provided position finder
+     * @throws NullPointerException if the provided position finder is null
+     */
+    public static String describePositionFinder(PositionFinder positionFinder) {
+        return positionFinder.getClass().getName() + ": " + positionFinder;
+    }
+
+    /**
+     * Get the entry of an input image if it is still valid.
+     *
+     * @param path the path of the input image
+     * @param fileSize the current size in bytes of the input image file
+     * @param lastModifiedTime the current last modification time of the input image file, in milliseconds since the epoch
+     * @param positionFinders descriptions of the position finders currently used, in order of priority (see
+     *                        {@link #describePositionFinder(PositionFinder)})
+     * @return the entry of the provided input image, or null if there is no entry for this image, if the entry was
+     * created with a different file size or last modification time, or if the position finders tried to create the entry
+     * are not the first of the provided position finders (in which case a position finder with a higher priority than
+     * the one that found the position may now find a different position)
+     */
+    public Entry get(String path, long fileSize, long lastModifiedTime, List<String> positionFinders) {
+        Entry entry = entries.get(path);
+
+        if (entry == null) {
+            return null;
+        } else if (entry.fileSize() != fileSize || entry.lastModifiedTime() != lastModifiedTime || !isPrefix(entry.positionFinders(), positionFinders)) {
+            logger.debug("Entry of {} in layout manifest is outdated", path);
+            return null;
+        } else {
+            return entry;
+        }
+    }
+
+    /**
+     * Add an entry to this manifest, replacing any existing entry with the same path.
+     *
+     * @param entry the entry to add
+     * @throws NullPointerException if the provided entry or its path is null
+     */
+    public void put(Entry entry) {
+        entries.put(Objects.requireNonNull(entry.path()), entry);
+    }
+
+    /**
+     * Only keep the entries whose path is part of the provided collection.
+     *
+     * @param paths the paths of the entries to keep
+     */
+    public void retainAll(Collection<String> paths) {
+        entries.keySet().retainAll(paths);
+    }
+
+    /**
+     * @return the number of entries of this manifest
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Write this manifest to a file. The file is first written to a temporary file next to the provided path and then
+     * moved to it, so an existing manifest is never left partially written, even if several processes write it at the
+     * same time.
+     *
+     * @param path the path of the file that should contain the manifest. It will be overwritten if it already exists
+     * @throws IOException if an error occurs while writing the file
+     * @throws NullPointerException if the provided path is null
+     */
+    public void write(Path path) throws IOException {
+        Path absolutePath = path.toAbsolutePath();
+        // Each writer has its own temporary file, so that processes sharing a manifest don't overwrite each other's
+        Path temporaryPath = Files.createTempFile(absolutePath.getParent(), absolutePath.getFileName().toString(), ".tmp");
+
+        try (Writer writer = Files.newBufferedWriter(temporaryPath)) {
+            gson.toJson(new Content(VERSION, List.copyOf(entries.values())), writer);
+        }
+        try {
+            Files.move(temporaryPath, absolutePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            logger.debug("Cannot atomically move {} to {}. Using a non atomic move", temporaryPath, absolutePath, e);
+            Files.move(temporaryPath, absolutePath, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        logger.debug("Wrote {} entries to layout manifest {}", entries.size(), absolutePath);
+    }
+
+    private static boolean isPrefix(List<String> prefix, List<String> list) {
+        return prefix != null && !prefix.isEmpty() && prefix.size() <= list.size() && list.subList(0, prefix.size()).equals(prefix);
+    }
+}
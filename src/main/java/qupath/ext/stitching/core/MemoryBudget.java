@@ -0,0 +1,158 @@
+package qupath.ext.stitching.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import qupath.lib.images.servers.PixelType;
+
+/**
+ * A limit on the number of bytes that pixel buffers can use at the same time.
+ * <p>
+ * Producers of pixel buffers (decoded input images, composed output tiles, encoding buffers) {@link #reserve(long) reserve}
+ * the size of their buffers before creating them, and release the reservation once the buffers are not used anymore.
+ * A reservation blocks while it would make the reserved bytes exceed the budget, so the memory used by pixel buffers
+ * doesn't depend on the number of threads producing them.
+ * <p>
+ * Buffers that must be created to let other reservations be released (for example the image of a pyramid chunk
+ * whose children are being written) can be {@link #forceReserve(long) reserved without blocking}. They are still
+ * counted, so that the following reservations wait for them to be released.
+ * <p>
+ * A reservation is always granted when no other (not forced) reservation is active, even if it exceeds the budget.
+ * This prevents a reservation larger than the budget, or a reservation waiting for forced reservations that can only
+ * be released once it is granted, from blocking forever.
+ * <p>
+ * This class is thread-safe.
+ */
+class MemoryBudget {
+
+    private static final Logger logger = LoggerFactory.getLogger(MemoryBudget.class);
+    private final long maxBytes;
+    private long reservedBytes = 0;
+    private int numberOfBlockingReservations = 0;
+    /**
+     * Bytes reserved from a {@link MemoryBudget}. They must be released by closing this reservation once the
+     * corresponding buffers are not used anymore.
+     */
+    class Reservation implements AutoCloseable {
+
+        private final long bytes;
+        private final boolean forced;
+        private boolean released = false;
+
+        private Reservation(long bytes, boolean forced) {
+            this.bytes = bytes;
+            this.forced = forced;
+        }
+
+        /**
+         * @return the number of bytes of this reservation
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public void close() {
+            synchronized (MemoryBudget.this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+
+                reservedBytes -= bytes;
+                if (!forced) {
+                    numberOfBlockingReservations--;
+                }
+                MemoryBudget.this.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Create the budget.
+     *
+     * @param maxBytes the maximum number of bytes that can be reserved at the same time
+     * @throws IllegalArgumentException if the provided number of bytes is less than 1
+     */
+    public MemoryBudget(long maxBytes) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException(String.format("The memory budget (%d bytes) must be at least 1 byte", maxBytes));
+        }
+
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Reserve bytes from this budget, waiting until enough bytes are released if needed.
+     *
+     * @param bytes the number of bytes to reserve
+     * @return the reservation, which must be closed once the reserved bytes are not used anymore
+     * @throws IllegalArgumentException if the provided number of bytes is negative
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public synchronized Reservation reserve(long bytes) throws InterruptedException {
+        checkNotNegative(bytes);
+
+        if (mustWait(bytes)) {
+            logger.trace("Waiting for {} bytes to be available ({} bytes reserved out of {})", bytes, reservedBytes, maxBytes);
+
+            while (mustWait(bytes)) {
+                wait();
+            }
+        }
+
+        reservedBytes += bytes;
+        numberOfBlockingReservations++;
+        return new Reservation(bytes, false);
+    }
+
+    /**
+     * Reserve bytes from this budget without waiting, even if this makes the reserved bytes exceed the budget.
+     *
+     * @param bytes the number of bytes to reserve
+     * @return the reservation, which must be closed once the reserved bytes are not used anymore
+     * @throws IllegalArgumentException if the provided number of bytes is negative
+     */
+    public synchronized Reservation forceReserve(long bytes) {
+        checkNotNegative(bytes);
+
+        reservedBytes += bytes;
+        return new Reservation(bytes, true);
+    }
+
+    /**
+     * @return the maximum number of bytes that can be reserved at the same time
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return the number of bytes currently reserved. This can exceed {@link #getMaxBytes()}
+     */
+    public synchronized long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    /**
+     * Get the number of bytes used by the pixels of an image.
+     *
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param numberOfChannels the number of channels of the image
+     * @param pixelType the type of the pixels of the image
+     * @return the number of bytes used by the pixels of the image
+     */
+    public static long getImageBytes(int width, int height, int numberOfChannels, PixelType pixelType) {
+        return (long) width * height * numberOfChannels * pixelType.getBytesPerPixel();
+    }
+
+    private boolean mustWait(long bytes) {
+        return numberOfBlockingReservations > 0 && reservedBytes + bytes > maxBytes;
+    }
+
+    private static void checkNotNegative(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException(String.format("The number of bytes to reserve (%d) is negative", bytes));
+        }
+    }
+}
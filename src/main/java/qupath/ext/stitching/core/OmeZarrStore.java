@@ -0,0 +1,1728 @@
+package qupath.ext.stitching.core;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import loci.common.services.DependencyException;
+import loci.common.services.ServiceException;
+import loci.common.services.ServiceFactory;
+import loci.formats.MetadataTools;
+import loci.formats.ome.OMEXMLMetadata;
+import loci.formats.services.OMEXMLService;
+import ome.units.UNITS;
+import ome.units.quantity.Length;
+import ome.xml.model.primitives.Color;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import qupath.lib.images.servers.ImageChannel;
+import qupath.lib.images.servers.ImageServerMetadata;
+import qupath.lib.images.servers.PixelCalibration;
+import qupath.lib.images.servers.PixelType;
+
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * An OME-Zarr image (following the version 0.4 of the OME-NGFF specification) whose chunks can be written and read
+ * individually.
+ * <p>
+ * The image is stored as one Zarr v2 array per resolution level, with the (t, c, z, y, x) dimensions. Chunks contain
+ * a single channel of a single z-slice and timepoint. Created images have the downsamples of the pyramids QuPath
+ * writes (1, 4, 8, 16, and then doubling at each level, see {@link #getDefaultDownsample(int)}), and the downsamples of
+ * opened images are read from their metadata. The downsample of a level is always a multiple of the downsample of the
+ * previous level.
+ * <p>
+ * The metadata of the image is also saved as OME-XML in the {@code OME/METADATA.ome.xml} file, like QuPath does, so
+ * that readers relying on it (such as Bio-Formats) get the channels and the pixel size of the image.
+ * <p>
+ * The position of the stitched image within the coordinate system of the input images (see {@link TileLayout#getOriginX()})
+ * is saved in the attributes of the image, so that tiles can later be added to it. Images written by earlier versions
+ * of this extension (with the QuPath OME-Zarr writer) don't have this attribute, which can be added with
+ * {@link #setOrigin(int, int)}.
+ * <p>
+ * Chunks are encoded with a {@link ZarrCodec} and a compression level, so only images written with one of these codecs
+ * can be opened. Images written by QuPath can be opened too: their t, c and z axes may be missing when they only
+ * contain one element, and their data type may be big endian.
+ * <p>
+ * The buffers used to convert and encode chunks are reused by each thread, so writing a chunk doesn't allocate
+ * buffers proportional to its size.
+ * <p>
+ * An image can also be sharded, to avoid creating one file per chunk and channel. It is then stored with the version
+ * 0.5 of the OME-NGFF specification as one Zarr v3 array per resolution level, whose shards contain all channels of
+ * a square of chunks (see {@link ZarrShard}). All channels of a chunk are written to their shard with a single write,
+ * and a shard is completed (its index written and its file closed) as soon as all its chunks were written. Shards
+ * that are not complete when the writing ends are completed by {@link #close()}.
+ * <p>
+ * Chunks that are never written are read as the fill value (0) of the arrays by Zarr readers, so chunks without any
+ * content don't need to be written.
+ * <p>
+ * An image being written by several processes records the number of partitions it is split into (see
+ * {@link ZarrPartitioning}) in its attributes, until all partitions are written.
+ * <p>
+ * This class is thread-safe as long as the same chunk is not written concurrently.
+ */
+class OmeZarrStore implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(OmeZarrStore.class);
+    private static final Gson gson = new GsonBuilder()
+            .serializeNulls()      // the Zarr specification requires some null fields to be present
+            .setPrettyPrinting()
+            .create();
+    private static final String STITCHING_ATTRIBUTE = "stitching";
+    private static final String PARTITIONS_ATTRIBUTE = "partitions";
+    private static final String ZARR_JSON = "zarr.json";
+    private static final String OME_GROUP = "OME";
+    private static final String OME_XML = "METADATA.ome.xml";
+    private static final List<String> AXES = List.of("t", "c", "z", "y", "x");
+    private final Path path;
+    private final PixelType pixelType;
+    private final int sizeC;
+    private final int sizeZ;
+    private final int sizeT;
+    private final int[] downsamples;
+    private final int[] widths;
+    private final int[] heights;
+    private final int chunkWidth;
+    private final int chunkHeight;
+    private final ZarrCodec codec;
+    private final int compressionLevel;
+    private final String dimensionSeparator;
+    private final List<String> levelPaths;
+    private final List<String> axes;
+    private final ByteOrder byteOrder;
+    private final int shardSize;
+    private final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+    private final Map<Path, ZarrShard> openShards = new ConcurrentHashMap<>();
+    private final BitSet[] chunksToWrite;
+    private int numberOfPartitions = 0;
+    private int originX;
+    private int originY;
+    private boolean hasOrigin = true;
+
+    private static class Buffers {
+
+        private byte[] bytes = new byte[0];
+        private int[] intSamples = new int[0];
+        private float[] floatSamples = new float[0];
+        private double[] doubleSamples = new double[0];
+        private final EncodedBytes encodedBytes = new EncodedBytes();
+
+        private byte[] getBytes(int length) {
+            // The bytes are encoded as a whole, so they must have the exact length (which is the same for all chunks)
+            if (bytes.length != length) {
+                bytes = new byte[length];
+            }
+            return bytes;
+        }
+
+        private int[] getIntSamples(int length) {
+            if (intSamples.length < length) {
+                intSamples = new int[length];
+            }
+            return intSamples;
+        }
+
+        private float[] getFloatSamples(int length) {
+            if (floatSamples.length < length) {
+                floatSamples = new float[length];
+            }
+            return floatSamples;
+        }
+
+        private double[] getDoubleSamples(int length) {
+            if (doubleSamples.length < length) {
+                doubleSamples = new double[length];
+            }
+            return doubleSamples;
+        }
+    }
+
+    private static class EncodedBytes extends ByteArrayOutputStream {
+
+        private ByteBuffer toByteBuffer() {
+            // This wraps the internal array instead of copying it like toByteArray()
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    private OmeZarrStore(
+            Path path,
+            PixelType pixelType,
+            int sizeC,
+            int sizeZ,
+            int sizeT,
+            int[] downsamples,
+            int[] widths,
+            int[] heights,
+            int chunkWidth,
+            int chunkHeight,
+            ZarrCodec codec,
+            int compressionLevel,
+            String dimensionSeparator,
+            List<String> levelPaths,
+            List<String> axes,
+            ByteOrder byteOrder,
+            int originX,
+            int originY,
+            int shardSize
+    ) {
+        this.path = path;
+        this.pixelType = pixelType;
+        this.sizeC = sizeC;
+        this.sizeZ = sizeZ;
+        this.sizeT = sizeT;
+        this.downsamples = downsamples;
+        this.widths = widths;
+        this.heights = heights;
+        this.chunkWidth = chunkWidth;
+        this.chunkHeight = chunkHeight;
+        this.codec = codec;
+        this.compressionLevel = compressionLevel;
+        this.dimensionSeparator = dimensionSeparator;
+        this.levelPaths = levelPaths;
+        this.axes = axes;
+        this.byteOrder = byteOrder;
+        this.originX = originX;
+        this.originY = originY;
+        this.shardSize = shardSize;
+        this.chunksToWrite = new BitSet[widths.length];
+    }
+
+    private static OmeZarrStore create(Builder builder) throws IOException {
+        Path path = builder.path;
+        ImageServerMetadata metadata = builder.metadata;
+        int nLevels = builder.nLevels;
+        int chunkWidth = builder.chunkWidth;
+        int chunkHeight = builder.chunkHeight;
+        int shardSize = builder.shardSize;
+        // A chunk of a level is created from the chunks of the previous level, which must fall on whole pixels
+        int maxDownsampleFactor = nLevels > 1 ? getDefaultDownsample(1) : 1;
+        if (chunkWidth % maxDownsampleFactor != 0 || chunkHeight % maxDownsampleFactor != 0) {
+            throw new IllegalArgumentException(String.format(
+                    "The chunk size (%dx%d) must be a multiple of %d to create several levels", chunkWidth, chunkHeight, maxDownsampleFactor
+            ));
+        }
+
+        int[] downsamples = new int[nLevels];
+        int[] widths = new int[nLevels];
+        int[] heights = new int[nLevels];
+        List<String> levelPaths = new ArrayList<>();
+        for (int level=0; level<nLevels; level++) {
+            levelPaths.add(String.valueOf(level));
+            downsamples[level] = getDefaultDownsample(level);
+            widths[level] = Math.ceilDiv(metadata.getWidth(), downsamples[level]);
+            heights[level] = Math.ceilDiv(metadata.getHeight(), downsamples[level]);
+        }
+        OmeZarrStore store = new OmeZarrStore(
+                path,
+                metadata.getPixelType(),
+                metadata.getSizeC(),
+                metadata.getSizeZ(),
+                metadata.getSizeT(),
+                downsamples,
+                widths,
+                heights,
+                chunkWidth,
+                chunkHeight,
+                builder.codec,
+                builder.compressionLevel,
+                "/",
+                levelPaths,
+                AXES,
+                ByteOrder.LITTLE_ENDIAN,
+                builder.originX,
+                builder.originY,
+                shardSize
+        );
+
+        Files.createDirectories(path);
+        if (shardSize == 1) {
+            JsonObject group = new JsonObject();
+            group.addProperty("zarr_format", 2);
+            writeJson(path.resolve(".zgroup"), group);
+            writeJson(path.resolve(".zattrs"), store.createAttributes(metadata));
+            for (int level=0; level<nLevels; level++) {
+                Files.createDirectories(path.resolve(String.valueOf(level)));
+                writeJson(path.resolve(String.valueOf(level)).resolve(".zarray"), store.createArrayMetadata(level));
+            }
+        } else {
+            JsonObject group = new JsonObject();
+            group.addProperty("zarr_format", 3);
+            group.addProperty("node_type", "group");
+            group.add("attributes", store.createShardedAttributes(metadata));
+            writeJson(path.resolve(ZARR_JSON), group);
+            for (int level=0; level<nLevels; level++) {
+                Files.createDirectories(path.resolve(String.valueOf(level)));
+                writeJson(path.resolve(String.valueOf(level)).resolve(ZARR_JSON), store.createShardedArrayMetadata(level));
+            }
+        }
+        writeOmeXml(path, metadata, shardSize > 1);
+        logger.debug("Created {}", store);
+
+        return store;
+    }
+
+    /**
+     * Open an existing image, sharded or not.
+     *
+     * @param path the path of the directory containing the image
+     * @return the opened image
+     * @throws IOException if the metadata of the image cannot be read
+     * @throws IllegalArgumentException if the provided directory doesn't contain an OME-Zarr image with the
+     * (t, c, z, y, x) dimensions (t, c and z can be missing if the image is not sharded), chunks containing a single
+     * channel, z-slice and timepoint, and one of the {@link ZarrCodec} compressors, or if the image is sharded
+     * differently than the images created by this class
+     * @throws NullPointerException if the provided path is null
+     */
+    public static OmeZarrStore open(Path path) throws IOException {
+        Objects.requireNonNull(path);
+        if (Files.exists(path.resolve(ZARR_JSON))) {
+            return openSharded(path);
+        }
+
+        try {
+            JsonObject attributes = readJson(path.resolve(".zattrs"));
+            JsonObject multiscale = attributes.getAsJsonArray("multiscales").get(0).getAsJsonObject();
+            List<String> axes = readAxes(path, multiscale);
+
+            JsonArray datasets = multiscale.getAsJsonArray("datasets");
+            int[] downsamples = readDownsamples(path, datasets);
+            int[] widths = new int[datasets.size()];
+            int[] heights = new int[datasets.size()];
+            List<String> levelPaths = new ArrayList<>();
+            JsonObject firstArray = null;
+            for (int level=0; level<datasets.size(); level++) {
+                // The levels of images written by QuPath are named "s0", "s1"... instead of "0", "1"...
+                String datasetPath = datasets.get(level).getAsJsonObject().get("path").getAsString();
+                levelPaths.add(datasetPath);
+
+                JsonObject array = readJson(path.resolve(datasetPath).resolve(".zarray"));
+                JsonArray shape = array.getAsJsonArray("shape");
+                JsonArray chunks = array.getAsJsonArray("chunks");
+                if (getSize(chunks, axes, "t") != 1 || getSize(chunks, axes, "c") != 1 || getSize(chunks, axes, "z") != 1) {
+                    throw new IllegalArgumentException(String.format(
+                            "The chunks of %s are %s, while chunks containing a single channel, z-slice and timepoint were expected", path, chunks
+                    ));
+                }
+                if (firstArray != null && (!chunks.equals(firstArray.getAsJsonArray("chunks")) ||
+                        !array.get("dtype").equals(firstArray.get("dtype")) ||
+                        !Objects.equals(array.get("compressor"), firstArray.get("compressor")))
+                ) {
+                    throw new IllegalArgumentException(String.format("The levels of %s don't have the same chunks, data type and compressor", path));
+                }
+                if (firstArray == null) {
+                    firstArray = array;
+                }
+
+                widths[level] = getSize(shape, axes, "x");
+                heights[level] = getSize(shape, axes, "y");
+            }
+            if (firstArray == null) {
+                throw new IllegalArgumentException(String.format("No level found in %s", path));
+            }
+
+            JsonArray shape = firstArray.getAsJsonArray("shape");
+            JsonArray chunks = firstArray.getAsJsonArray("chunks");
+            String dataType = firstArray.get("dtype").getAsString();
+
+            OmeZarrStore store = new OmeZarrStore(
+                    path,
+                    getPixelType(dataType),
+                    getSize(shape, axes, "c"),
+                    getSize(shape, axes, "z"),
+                    getSize(shape, axes, "t"),
+                    downsamples,
+                    widths,
+                    heights,
+                    getSize(chunks, axes, "x"),
+                    getSize(chunks, axes, "y"),
+                    ZarrCodec.fromJson(firstArray.get("compressor")),
+                    ZarrCodec.levelFromJson(firstArray.get("compressor")),
+                    firstArray.has("dimension_separator") ? firstArray.get("dimension_separator").getAsString() : ".",
+                    levelPaths,
+                    axes,
+                    dataType.startsWith(">") ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN,
+                    0,
+                    0,
+                    1
+            );
+            store.numberOfPartitions = readNumberOfPartitions(attributes);
+            store.readOrigin(attributes);
+            logger.debug("Opened {}", store);
+
+            return store;
+        } catch (JsonParseException | IllegalStateException | NullPointerException | IndexOutOfBoundsException |
+                 ClassCastException e) {
+            throw new IllegalArgumentException(String.format("%s doesn't contain a valid OME-Zarr image", path), e);
+        }
+    }
+
+    /**
+     * Get the downsample of a level of the images created by this class, which is the one of the pyramids written by
+     * QuPath: 1 for the full resolution level, 4 for the first level, and then doubling at each level (8, 16, 32...).
+     *
+     * @param level the resolution level
+     * @return the downsample of the provided level compared to the full resolution level
+     */
+    public static int getDefaultDownsample(int level) {
+        return level == 0 ? 1 : 2 << level;
+    }
+
+    /**
+     * Get the number of levels needed so that the lowest resolution level of an image fits in a single chunk.
+     *
+     * @param width the width of the full resolution image
+     * @param height the height of the full resolution image
+     * @param chunkWidth the width of the chunks
+     * @param chunkHeight the height of the chunks
+     * @return the number of levels needed so that the lowest resolution level of the image fits in a single chunk
+     */
+    public static int getNumberOfLevelsToFitInChunk(int width, int height, int chunkWidth, int chunkHeight) {
+        int nLevels = 1;
+        while (Math.ceilDiv(width, getDefaultDownsample(nLevels - 1)) > chunkWidth ||
+                Math.ceilDiv(height, getDefaultDownsample(nLevels - 1)) > chunkHeight) {
+            nLevels++;
+        }
+        return nLevels;
+    }
+
+    /**
+     * @return the path of the directory containing this image
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return the pixel type of this image
+     */
+    public PixelType getPixelType() {
+        return pixelType;
+    }
+
+    /**
+     * @return the number of channels of this image
+     */
+    public int getSizeC() {
+        return sizeC;
+    }
+
+    /**
+     * @return the number of z-slices of this image
+     */
+    public int getSizeZ() {
+        return sizeZ;
+    }
+
+    /**
+     * @return the number of timepoints of this image
+     */
+    public int getSizeT() {
+        return sizeT;
+    }
+
+    /**
+     * @return the number of resolution levels of this image
+     */
+    public int getNumberOfLevels() {
+        return widths.length;
+    }
+
+    /**
+     * @param level the resolution level
+     * @return the downsample of the provided level compared to the full resolution level
+     */
+    public int getDownsample(int level) {
+        return downsamples[level];
+    }
+
+    /**
+     * Get the number of chunks of a level along each axis that a chunk of the next level is created from.
+     *
+     * @param level the resolution level of the parent chunk. Must be greater than 0
+     * @return the downsample of the provided level compared to the previous level
+     */
+    public int getDownsampleFactor(int level) {
+        return downsamples[level] / downsamples[level - 1];
+    }
+
+    /**
+     * @param level the resolution level
+     * @return the width in pixels of the provided level
+     */
+    public int getWidth(int level) {
+        return widths[level];
+    }
+
+    /**
+     * @param level the resolution level
+     * @return the height in pixels of the provided level
+     */
+    public int getHeight(int level) {
+        return heights[level];
+    }
+
+    /**
+     * @return the width of the chunks of this image
+     */
+    public int getChunkWidth() {
+        return chunkWidth;
+    }
+
+    /**
+     * @return the height of the chunks of this image
+     */
+    public int getChunkHeight() {
+        return chunkHeight;
+    }
+
+    /**
+     * @param level the resolution level
+     * @return the number of chunks along the x-axis of the provided level
+     */
+    public int getNumberOfChunksX(int level) {
+        return Math.ceilDiv(widths[level], chunkWidth);
+    }
+
+    /**
+     * @param level the resolution level
+     * @return the number of chunks along the y-axis of the provided level
+     */
+    public int getNumberOfChunksY(int level) {
+        return Math.ceilDiv(heights[level], chunkHeight);
+    }
+
+    /**
+     * @return the codec used to encode the chunks of this image
+     */
+    public ZarrCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * @return the compression level used to encode the chunks of this image
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * @return the number of chunks along each axis of a shard of this image, or 1 if this image is not sharded
+     */
+    public int getShardSize() {
+        return shardSize;
+    }
+
+    /**
+     * @return the x-coordinate of this image within the coordinate system of the input images, or 0 if it is not
+     * recorded in the attributes of this image (see {@link #hasOrigin()})
+     */
+    public synchronized int getOriginX() {
+        return originX;
+    }
+
+    /**
+     * @return the y-coordinate of this image within the coordinate system of the input images, or 0 if it is not
+     * recorded in the attributes of this image (see {@link #hasOrigin()})
+     */
+    public synchronized int getOriginY() {
+        return originY;
+    }
+
+    /**
+     * @return whether the position of this image within the coordinate system of the input images is recorded in the
+     * attributes of this image. This is not the case for images written by earlier versions of this extension
+     */
+    public synchronized boolean hasOrigin() {
+        return hasOrigin;
+    }
+
+    /**
+     * Record the position of this image within the coordinate system of the input images in the attributes of this
+     * image, so that tiles can later be added to it. This is needed for images whose position is not recorded
+     * (see {@link #hasOrigin()}).
+     *
+     * @param originX the x-coordinate of this image within the coordinate system of the input images
+     * @param originY the y-coordinate of this image within the coordinate system of the input images
+     * @throws IOException if an error occurs while reading or writing the attributes of this image
+     */
+    public synchronized void setOrigin(int originX, int originY) throws IOException {
+        updateStitchingAttribute(stitching -> {
+            stitching.addProperty("originX", originX);
+            stitching.addProperty("originY", originY);
+        });
+
+        this.originX = originX;
+        this.originY = originY;
+        this.hasOrigin = true;
+        logger.debug("Origin of {} set to [{}, {}]", this, originX, originY);
+    }
+
+    /**
+     * @return the number of partitions this image is being written with (see {@link ZarrPartitioning}), or 0 if it
+     * is not being written by partitions
+     */
+    public synchronized int getNumberOfPartitions() {
+        return numberOfPartitions;
+    }
+
+    /**
+     * Record the number of partitions this image is being written with (see {@link ZarrPartitioning}) in the attributes
+     * of this image, so that the processes writing the partitions can retrieve it when opening the image.
+     *
+     * @param numberOfPartitions the number of partitions this image is being written with, or 0 to remove the partitions
+     *                           from the attributes once all of them are written
+     * @throws IOException if an error occurs while reading or writing the attributes of this image
+     * @throws IllegalArgumentException if the provided number is negative
+     */
+    public synchronized void setNumberOfPartitions(int numberOfPartitions) throws IOException {
+        if (numberOfPartitions < 0) {
+            throw new IllegalArgumentException(String.format("The number of partitions (%d) cannot be negative", numberOfPartitions));
+        }
+
+        updateStitchingAttribute(stitching -> {
+            if (numberOfPartitions == 0) {
+                stitching.remove(PARTITIONS_ATTRIBUTE);
+            } else {
+                stitching.addProperty(PARTITIONS_ATTRIBUTE, numberOfPartitions);
+            }
+        });
+
+        this.numberOfPartitions = numberOfPartitions;
+        logger.debug("Number of partitions of {} set to {}", this, numberOfPartitions);
+    }
+
+    /**
+     * Write all channels of a chunk. The provided raster can be smaller than a chunk (e.g. for chunks located on the
+     * right or bottom border of the image), in which case the rest of the chunk is filled with zeros.
+     *
+     * @param level the resolution level of the chunk
+     * @param t the timepoint of the chunk
+     * @param z the z-slice of the chunk
+     * @param chunkX the index of the chunk along the x-axis
+     * @param chunkY the index of the chunk along the y-axis
+     * @param raster the pixels of the chunk. It must contain one band per channel
+     * @throws IOException if an error occurs while writing the chunk
+     */
+    public void writeChunk(int level, int t, int z, int chunkX, int chunkY, Raster raster) throws IOException {
+        Buffers buffers = this.buffers.get();
+        if (shardSize > 1) {
+            writeShardedChunk(level, t, z, chunkX, chunkY, raster, buffers);
+            return;
+        }
+
+        for (int c=0; c<sizeC; c++) {
+            Path chunkPath = getChunkPath(level, t, c, z, chunkX, chunkY);
+
+            // The chunk is encoded in memory before being written, so that a failed encoding doesn't leave a partial file
+            buffers.encodedBytes.reset();
+            codec.encode(toBytes(raster, c, buffers), buffers.encodedBytes, compressionLevel);
+
+            Files.createDirectories(chunkPath.getParent());
+            try (OutputStream outputStream = Files.newOutputStream(chunkPath)) {
+                buffers.encodedBytes.writeTo(outputStream);
+            }
+        }
+    }
+
+    /**
+     * Force all channels of a written chunk to the storage device, so that the chunk is not lost if the system stops
+     * after this call. Channels whose chunk was not written are skipped.
+     * <p>
+     * Nothing happens if this image is sharded: the chunks of a shard are only saved once the index of the shard is
+     * written (see {@link #getSavedChunks(int, int, int)}), and a shard is forced before and after its index is written.
+     *
+     * @param level the resolution level of the chunk
+     * @param t the timepoint of the chunk
+     * @param z the z-slice of the chunk
+     * @param chunkX the index of the chunk along the x-axis
+     * @param chunkY the index of the chunk along the y-axis
+     * @throws IOException if an error occurs while forcing the chunk
+     */
+    public void forceChunk(int level, int t, int z, int chunkX, int chunkY) throws IOException {
+        if (shardSize > 1) {
+            return;
+        }
+
+        for (int c=0; c<sizeC; c++) {
+            try (FileChannel channel = FileChannel.open(getChunkPath(level, t, c, z, chunkX, chunkY), StandardOpenOption.WRITE)) {
+                channel.force(false);
+            } catch (NoSuchFileException e) {
+                logger.trace("Chunk {} of level {} not found, so not forced", getChunkPath(level, t, c, z, chunkX, chunkY), level, e);
+            }
+        }
+    }
+
+    /**
+     * Read all channels of a chunk. The provided raster can be smaller than a chunk, in which case only the top left
+     * part of the chunk is read.
+     *
+     * @param level the resolution level of the chunk
+     * @param t the timepoint of the chunk
+     * @param z the z-slice of the chunk
+     * @param chunkX the index of the chunk along the x-axis
+     * @param chunkY the index of the chunk along the y-axis
+     * @param raster the raster that should contain the pixels of the chunk. It must contain one band per channel.
+     *               Channels whose chunk was not written are left unchanged
+     * @return whether all channels of the chunk were read
+     * @throws IOException if an error occurs while reading the chunk
+     */
+    public boolean readChunk(int level, int t, int z, int chunkX, int chunkY, WritableRaster raster) throws IOException {
+        boolean allChannelsRead = true;
+
+        for (int c=0; c<sizeC; c++) {
+            byte[] bytes = readChunkBytes(level, t, c, z, chunkX, chunkY);
+            if (bytes == null) {
+                allChannelsRead = false;
+                continue;
+            }
+
+            fromBytes(codec.decode(bytes, getChunkByteLength()), raster, c, buffers.get());
+        }
+
+        return allChannelsRead;
+    }
+
+    /**
+     * Indicate which chunks of a level are going to be written. A shard is then complete as soon as these chunks are
+     * written, instead of when all its chunks are written. This should be called before writing chunks when some
+     * chunks are never written, for example because they are not covered by any input image and are left to the fill
+     * value. Nothing happens if this image is not sharded.
+     *
+     * @param level the resolution level of the chunks
+     * @param chunks the chunks of the level that are going to be written. Chunk (x, y) of the plane (t, z) is
+     *               represented by the bit ((t * sizeZ + z) * (number of chunks along the y-axis) + y) *
+     *               (number of chunks along the x-axis) + x. Can be null to expect all chunks of the level
+     */
+    public void setChunksToWrite(int level, BitSet chunks) {
+        chunksToWrite[level] = chunks == null ? null : (BitSet) chunks.clone();
+    }
+
+    /**
+     * Get the chunks of a plane whose channels were all saved. For a sharded image, the chunks of a shard are only saved
+     * once the shard is complete or closed.
+     *
+     * @param level the resolution level of the plane
+     * @param t the timepoint of the plane
+     * @param z the z-slice of the plane
+     * @return the saved chunks of the plane. Chunk (x, y) is represented by the bit y * (number of chunks along the
+     * x-axis) + x
+     * @throws IOException if an error occurs while reading the shards of the plane
+     */
+    public BitSet getSavedChunks(int level, int t, int z) throws IOException {
+        int nChunksX = getNumberOfChunksX(level);
+        int nChunksY = getNumberOfChunksY(level);
+        BitSet savedChunks = new BitSet();
+
+        if (shardSize > 1) {
+            for (int shardY=0; shardY<Math.ceilDiv(nChunksY, shardSize); shardY++) {
+                for (int shardX=0; shardX<Math.ceilDiv(nChunksX, shardSize); shardX++) {
+                    Path shardPath = getShardPath(level, t, z, shardX * shardSize, shardY * shardSize);
+                    ZarrShard openShard = openShards.get(shardPath);
+                    BitSet chunksPresent = openShard == null ?
+                            ZarrShard.getChunksPresent(shardPath, getNumberOfChunksPerShard()) :
+                            openShard.getChunksPresent();
+
+                    for (int chunkY=shardY*shardSize; chunkY<Math.min(nChunksY, (shardY+1)*shardSize); chunkY++) {
+                        for (int chunkX=shardX*shardSize; chunkX<Math.min(nChunksX, (shardX+1)*shardSize); chunkX++) {
+                            boolean saved = true;
+                            for (int c=0; c<sizeC; c++) {
+                                saved &= chunksPresent.get(getIndexInShard(c, chunkX, chunkY));
+                            }
+                            if (saved) {
+                                savedChunks.set(chunkY * nChunksX + chunkX);
+                            }
+                        }
+                    }
+                }
+            }
+        } else {
+            for (int chunkY=0; chunkY<nChunksY; chunkY++) {
+                for (int chunkX=0; chunkX<nChunksX; chunkX++) {
+                    boolean saved = true;
+                    for (int c=0; c<sizeC; c++) {
+                        saved &= Files.exists(getChunkPath(level, t, c, z, chunkX, chunkY));
+                    }
+                    if (saved) {
+                        savedChunks.set(chunkY * nChunksX + chunkX);
+                    }
+                }
+            }
+        }
+
+        return savedChunks;
+    }
+
+    /**
+     * Complete the shards that are still open (see {@link #completeOpenShards()}).
+     *
+     * @throws IOException if an error occurs while writing the index of a shard
+     */
+    @Override
+    public void close() throws IOException {
+        completeOpenShards();
+    }
+
+    /**
+     * Complete the shards that are still open, so that all chunks written to this image are saved. Chunks can still
+     * be written after this call, which opens their shard again. Nothing happens if this image is not sharded.
+     *
+     * @throws IOException if an error occurs while writing the index of a shard
+     */
+    public void completeOpenShards() throws IOException {
+        IOException exception = null;
+
+        for (Path shardPath: List.copyOf(openShards.keySet())) {
+            ZarrShard shard = openShards.remove(shardPath);
+            if (shard != null) {
+                try {
+                    shard.close();
+                } catch (IOException e) {
+                    if (exception == null) {
+                        exception = e;
+                    } else {
+                        exception.addSuppressed(e);
+                    }
+                }
+            }
+        }
+
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "OME-Zarr image at %s of %d levels (downsamples %s), full resolution %dx%d, chunks %dx%d, %s, %d channels of type %s, codec %s (level %d)",
+                path,
+                widths.length,
+                Arrays.toString(downsamples),
+                widths[0],
+                heights[0],
+                chunkWidth,
+                chunkHeight,
+                shardSize > 1 ? String.format("shards of %dx%d chunks", shardSize, shardSize) : "not sharded",
+                sizeC,
+                pixelType,
+                codec,
+                compressionLevel
+        );
+    }
+
+    private static OmeZarrStore openSharded(Path path) throws IOException {
+        try {
+            JsonObject attributes = readJson(path.resolve(ZARR_JSON)).getAsJsonObject("attributes");
+            JsonObject multiscale = attributes.getAsJsonObject("ome").getAsJsonArray("multiscales").get(0).getAsJsonObject();
+            checkAxes(path, multiscale);
+
+            JsonArray datasets = multiscale.getAsJsonArray("datasets");
+            int[] downsamples = readDownsamples(path, datasets);
+            int[] widths = new int[datasets.size()];
+            int[] heights = new int[datasets.size()];
+            List<String> levelPaths = new ArrayList<>();
+            JsonObject firstArray = null;
+            for (int level=0; level<datasets.size(); level++) {
+                String datasetPath = datasets.get(level).getAsJsonObject().get("path").getAsString();
+                levelPaths.add(datasetPath);
+                if (!datasetPath.equals(String.valueOf(level))) {
+                    throw new IllegalArgumentException(String.format("Unexpected path %s for level %d of %s", datasetPath, level, path));
+                }
+
+                JsonObject array = readJson(path.resolve(datasetPath).resolve(ZARR_JSON));
+                if (firstArray != null && (!array.get("chunk_grid").equals(firstArray.get("chunk_grid")) ||
+                        !array.get("data_type").equals(firstArray.get("data_type")) ||
+                        !array.get("codecs").equals(firstArray.get("codecs")))
+                ) {
+                    throw new IllegalArgumentException(String.format("The levels of %s don't have the same shards, data type and codecs", path));
+                }
+                if (firstArray == null) {
+                    firstArray = array;
+                }
+
+                JsonArray shape = array.getAsJsonArray("shape");
+                widths[level] = shape.get(4).getAsInt();
+                heights[level] = shape.get(3).getAsInt();
+            }
+            if (firstArray == null) {
+                throw new IllegalArgumentException(String.format("No level found in %s", path));
+            }
+
+            JsonArray shape = firstArray.getAsJsonArray("shape");
+            JsonArray shardShape = firstArray.getAsJsonObject("chunk_grid").getAsJsonObject("configuration").getAsJsonArray("chunk_shape");
+            JsonObject sharding = firstArray.getAsJsonArray("codecs").get(0).getAsJsonObject();
+            JsonObject shardingConfiguration = sharding.getAsJsonObject("configuration");
+            JsonArray chunks = shardingConfiguration.getAsJsonArray("chunk_shape");
+            int chunkWidth = chunks.get(4).getAsInt();
+            int chunkHeight = chunks.get(3).getAsInt();
+            int shardSize = shardShape.get(4).getAsInt() / chunkWidth;
+            if (!sharding.get("name").getAsString().equals("sharding_indexed") ||
+                    firstArray.getAsJsonArray("codecs").size() != 1 ||
+                    chunks.get(0).getAsInt() != 1 || chunks.get(1).getAsInt() != 1 || chunks.get(2).getAsInt() != 1 ||
+                    shardShape.get(0).getAsInt() != 1 || shardShape.get(1).getAsInt() != shape.get(1).getAsInt() || shardShape.get(2).getAsInt() != 1 ||
+                    shardSize < 2 || shardShape.get(4).getAsInt() != shardSize * chunkWidth || shardShape.get(3).getAsInt() != shardSize * chunkHeight ||
+                    !shardingConfiguration.get("index_location").getAsString().equals("start") ||
+                    !shardingConfiguration.get("index_codecs").equals(createIndexCodecs())
+            ) {
+                throw new IllegalArgumentException(String.format(
+                        "The shards of %s are not supported. Shards containing all channels of a square of chunks, each chunk " +
+                                "containing a single channel, z-slice and timepoint, and an index with a checksum located at " +
+                                "the start of the shard were expected",
+                        path
+                ));
+            }
+
+            JsonObject compressor = null;
+            for (JsonElement codec: shardingConfiguration.getAsJsonArray("codecs")) {
+                if (!codec.getAsJsonObject().get("name").getAsString().equals("bytes")) {
+                    compressor = codec.getAsJsonObject();
+                }
+            }
+            OmeZarrStore store = new OmeZarrStore(
+                    path,
+                    getShardedPixelType(firstArray.get("data_type").getAsString()),
+                    shape.get(1).getAsInt(),
+                    shape.get(2).getAsInt(),
+                    shape.get(0).getAsInt(),
+                    downsamples,
+                    widths,
+                    heights,
+                    chunkWidth,
+                    chunkHeight,
+                    ZarrCodec.fromCodecJson(compressor),
+                    compressor == null ? ZarrCodec.DEFAULT_LEVEL : ZarrCodec.levelFromJson(compressor.get("configuration")),
+                    "/",
+                    levelPaths,
+                    AXES,
+                    ByteOrder.LITTLE_ENDIAN,
+                    0,
+                    0,
+                    shardSize
+            );
+            store.numberOfPartitions = readNumberOfPartitions(attributes);
+            store.readOrigin(attributes);
+            logger.debug("Opened {}", store);
+
+            return store;
+        } catch (JsonParseException | IllegalStateException | NullPointerException | IndexOutOfBoundsException |
+                 ClassCastException | ArithmeticException e) {
+            throw new IllegalArgumentException(String.format("%s doesn't contain a valid OME-Zarr image", path), e);
+        }
+    }
+
+    private void readOrigin(JsonObject attributes) {
+        if (attributes.has(STITCHING_ATTRIBUTE) && attributes.getAsJsonObject(STITCHING_ATTRIBUTE).has("originX")) {
+            originX = attributes.getAsJsonObject(STITCHING_ATTRIBUTE).get("originX").getAsInt();
+            originY = attributes.getAsJsonObject(STITCHING_ATTRIBUTE).get("originY").getAsInt();
+        } else {
+            hasOrigin = false;
+        }
+    }
+
+    private void updateStitchingAttribute(Consumer<JsonObject> update) throws IOException {
+        // The OME attributes are kept as they are, only the stitching attribute is changed
+        Path attributesPath = shardSize > 1 ? path.resolve(ZARR_JSON) : path.resolve(".zattrs");
+        JsonObject json = readJson(attributesPath);
+        JsonObject attributes = shardSize > 1 ? json.getAsJsonObject("attributes") : json;
+        if (!attributes.has(STITCHING_ATTRIBUTE)) {
+            attributes.add(STITCHING_ATTRIBUTE, new JsonObject());
+        }
+        update.accept(attributes.getAsJsonObject(STITCHING_ATTRIBUTE));
+        writeJson(attributesPath, json);
+    }
+
+    private static int readNumberOfPartitions(JsonObject attributes) {
+        if (attributes.has(STITCHING_ATTRIBUTE) && attributes.getAsJsonObject(STITCHING_ATTRIBUTE).has(PARTITIONS_ATTRIBUTE)) {
+            return attributes.getAsJsonObject(STITCHING_ATTRIBUTE).get(PARTITIONS_ATTRIBUTE).getAsInt();
+        } else {
+            return 0;
+        }
+    }
+
+    private static int[] readDownsamples(Path path, JsonArray datasets) {
+        // The downsample of a level is the ratio between the x scale (always the last one) of the level and the one of the
+        // full resolution level
+        int[] downsamples = new int[datasets.size()];
+        double fullResolutionScale = 0;
+        for (int level=0; level<datasets.size(); level++) {
+            double scale = 0;
+            for (JsonElement transformation: datasets.get(level).getAsJsonObject().getAsJsonArray("coordinateTransformations")) {
+                if (transformation.getAsJsonObject().get("type").getAsString().equals("scale")) {
+                    JsonArray scales = transformation.getAsJsonObject().getAsJsonArray("scale");
+                    scale = scales.get(scales.size() - 1).getAsDouble();
+                }
+            }
+            if (level == 0) {
+                fullResolutionScale = scale;
+            }
+
+            double downsample = scale / fullResolutionScale;
+            downsamples[level] = (int) Math.round(downsample);
+            if (!(scale > 0) || Math.abs(downsample - downsamples[level]) > 1e-3 * downsample ||
+                    level > 0 && (downsamples[level] <= downsamples[level - 1] || downsamples[level] % downsamples[level - 1] != 0)
+            ) {
+                throw new IllegalArgumentException(String.format(
+                        "The downsample of level %d of %s is %f, while a multiple of the downsample of the previous level was expected",
+                        level,
+                        path,
+                        downsample
+                ));
+            }
+        }
+        return downsamples;
+    }
+
+    private static void checkAxes(Path path, JsonObject multiscale) {
+        List<String> axes = readAxes(path, multiscale);
+        if (!axes.equals(AXES)) {
+            throw new IllegalArgumentException(String.format("The axes of %s are %s, while %s were expected", path, axes, AXES));
+        }
+    }
+
+    private static List<String> readAxes(Path path, JsonObject multiscale) {
+        // QuPath omits the t, c and z axes when they only contain one element
+        List<String> axes = new ArrayList<>();
+        for (JsonElement axis: multiscale.getAsJsonArray("axes")) {
+            axes.add(axis.isJsonObject() ? axis.getAsJsonObject().get("name").getAsString() : axis.getAsString());
+        }
+        if (!axes.equals(AXES.stream().filter(axes::contains).toList()) || axes.size() < 2 ||
+                !axes.subList(axes.size() - 2, axes.size()).equals(List.of("y", "x"))
+        ) {
+            throw new IllegalArgumentException(String.format(
+                    "The axes of %s are %s, while %s (with t, c and z being optional) were expected", path, axes, AXES
+            ));
+        }
+        return List.copyOf(axes);
+    }
+
+    private static int getSize(JsonArray sizes, List<String> axes, String axis) {
+        int index = axes.indexOf(axis);
+        return index == -1 ? 1 : sizes.get(index).getAsInt();
+    }
+
+    private void writeShardedChunk(int level, int t, int z, int chunkX, int chunkY, Raster raster, Buffers buffers) throws IOException {
+        // All channels are encoded one after the other, and then written to the shard with a single write
+        int[] chunks = new int[sizeC];
+        int[] lengths = new int[sizeC];
+        buffers.encodedBytes.reset();
+        for (int c=0; c<sizeC; c++) {
+            int start = buffers.encodedBytes.size();
+            codec.encode(toBytes(raster, c, buffers), buffers.encodedBytes, compressionLevel);
+
+            chunks[c] = getIndexInShard(c, chunkX, chunkY);
+            lengths[c] = buffers.encodedBytes.size() - start;
+        }
+
+        Path shardPath = getShardPath(level, t, z, chunkX, chunkY);
+        ZarrShard shard = openShard(level, t, z, shardPath, chunkX, chunkY);
+        if (shard.write(chunks, buffers.encodedBytes.toByteBuffer(), lengths)) {
+            openShards.remove(shardPath, shard);
+        }
+    }
+
+    private ZarrShard openShard(int level, int t, int z, Path shardPath, int chunkX, int chunkY) throws IOException {
+        try {
+            return openShards.computeIfAbsent(shardPath, p -> {
+                try {
+                    return ZarrShard.open(p, getNumberOfChunksPerShard(), getNumberOfChunksToWrite(level, t, z, chunkX, chunkY));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private int getNumberOfChunksToWrite(int level, int t, int z, int chunkX, int chunkY) {
+        // A shard is complete once all channels of its chunks located inside the image (and going to be written, if
+        // known) are written
+        int nChunksX = getNumberOfChunksX(level);
+        int nChunksY = getNumberOfChunksY(level);
+        int planeOffset = (t * sizeZ + z) * nChunksX * nChunksY;
+        BitSet levelChunksToWrite = chunksToWrite[level];
+
+        int numberOfChunksToWrite = 0;
+        for (int y=chunkY/shardSize*shardSize; y<Math.min(nChunksY, (chunkY/shardSize+1)*shardSize); y++) {
+            for (int x=chunkX/shardSize*shardSize; x<Math.min(nChunksX, (chunkX/shardSize+1)*shardSize); x++) {
+                if (levelChunksToWrite == null || levelChunksToWrite.get(planeOffset + y * nChunksX + x)) {
+                    numberOfChunksToWrite += sizeC;
+                }
+            }
+        }
+        return numberOfChunksToWrite;
+    }
+
+    private byte[] readChunkBytes(int level, int t, int c, int z, int chunkX, int chunkY) throws IOException {
+        if (shardSize > 1) {
+            Path shardPath = getShardPath(level, t, z, chunkX, chunkY);
+            ZarrShard openShard = openShards.get(shardPath);
+
+            byte[] bytes = openShard == null ?
+                    ZarrShard.readChunk(shardPath, getIndexInShard(c, chunkX, chunkY), getNumberOfChunksPerShard()) :
+                    openShard.read(getIndexInShard(c, chunkX, chunkY));
+            if (bytes == null) {
+                logger.trace("Chunk ({}, {}) of channel {} not found in shard {}", chunkX, chunkY, c, shardPath);
+            }
+            return bytes;
+        } else {
+            try {
+                return Files.readAllBytes(getChunkPath(level, t, c, z, chunkX, chunkY));
+            } catch (NoSuchFileException e) {
+                logger.trace("Chunk {} of level {} not found", getChunkPath(level, t, c, z, chunkX, chunkY), level, e);
+                return null;
+            }
+        }
+    }
+
+    private Path getShardPath(int level, int t, int z, int chunkX, int chunkY) {
+        // Zarr v3 chunk keys start with "c", and shards contain all channels
+        return path.resolve(levelPaths.get(level))
+                .resolve("c")
+                .resolve(String.valueOf(t))
+                .resolve("0")
+                .resolve(String.valueOf(z))
+                .resolve(String.valueOf(chunkY / shardSize))
+                .resolve(String.valueOf(chunkX / shardSize));
+    }
+
+    private int getIndexInShard(int c, int chunkX, int chunkY) {
+        // Chunks are indexed in C order within the (c, y, x) grid of chunks of the shard
+        return (c * shardSize + chunkY % shardSize) * shardSize + chunkX % shardSize;
+    }
+
+    private int getNumberOfChunksPerShard() {
+        return sizeC * shardSize * shardSize;
+    }
+
+    private Path getChunkPath(int level, int t, int c, int z, int chunkX, int chunkY) {
+        // Missing axes are not part of the chunk key
+        List<String> indices = new ArrayList<>(axes.size());
+        for (String axis: axes) {
+            indices.add(String.valueOf(switch (axis) {
+                case "t" -> t;
+                case "c" -> c;
+                case "z" -> z;
+                case "y" -> chunkY;
+                default -> chunkX;
+            }));
+        }
+
+        Path levelPath = path.resolve(levelPaths.get(level));
+        if (dimensionSeparator.equals("/")) {
+            for (String index: indices) {
+                levelPath = levelPath.resolve(index);
+            }
+            return levelPath;
+        } else {
+            return levelPath.resolve(String.join(dimensionSeparator, indices));
+        }
+    }
+
+    private int getChunkByteLength() {
+        return chunkWidth * chunkHeight * pixelType.getBytesPerPixel();
+    }
+
+    private byte[] toBytes(Raster raster, int band, Buffers buffers) {
+        int width = Math.min(raster.getWidth(), chunkWidth);
+        int height = Math.min(raster.getHeight(), chunkHeight);
+        int x = raster.getMinX();
+        int y = raster.getMinY();
+        byte[] bytes = buffers.getBytes(getChunkByteLength());
+        if (width < chunkWidth || height < chunkHeight) {
+            // Parts of edge chunks outside the image are not set below, and must be zeros
+            Arrays.fill(bytes, (byte) 0);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(byteOrder);
+
+        switch (pixelType) {
+            case UINT8, INT8 -> {
+                int[] samples = raster.getSamples(x, y, width, height, band, buffers.getIntSamples(width * height));
+                for (int j=0; j<height; j++) {
+                    for (int i=0; i<width; i++) {
+                        buffer.put(j*chunkWidth + i, (byte) samples[j*width + i]);
+                    }
+                }
+            }
+            case UINT16, INT16 -> {
+                int[] samples = raster.getSamples(x, y, width, height, band, buffers.getIntSamples(width * height));
+                for (int j=0; j<height; j++) {
+                    for (int i=0; i<width; i++) {
+                        buffer.putShort((j*chunkWidth + i) * Short.BYTES, (short) samples[j*width + i]);
+                    }
+                }
+            }
+            case UINT32, INT32 -> {
+                int[] samples = raster.getSamples(x, y, width, height, band, buffers.getIntSamples(width * height));
+                for (int j=0; j<height; j++) {
+                    for (int i=0; i<width; i++) {
+                        buffer.putInt((j*chunkWidth + i) * Integer.BYTES, samples[j*width + i]);
+                    }
+                }
+            }
+            case FLOAT32 -> {
+                float[] samples = raster.getSamples(x, y, width, height, band, buffers.getFloatSamples(width * height));
+                for (int j=0; j<height; j++) {
+                    for (int i=0; i<width; i++) {
+                        buffer.putFloat((j*chunkWidth + i) * Float.BYTES, samples[j*width + i]);
+                    }
+                }
+            }
+            case FLOAT64 -> {
+                double[] samples = raster.getSamples(x, y, width, height, band, buffers.getDoubleSamples(width * height));
+                for (int j=0; j<height; j++) {
+                    for (int i=0; i<width; i++) {
+                        buffer.putDouble((j*chunkWidth + i) * Double.BYTES, samples[j*width + i]);
+                    }
+                }
+            }
+        }
+
+        return bytes;
+    }
+
+    private void fromBytes(byte[] bytes, WritableRaster raster, int band, Buffers buffers) {
+        int width = Math.min(raster.getWidth(), chunkWidth);
+        int height = Math.min(raster.getHeight(), chunkHeight);
+        int x = raster.getMinX();
+        int y = raster.getMinY();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(byteOrder);
+
+        switch (pixelType) {
+            case UINT8, INT8 -> {
+                int[] samples = buffers.getIntSamples(width * height);
+                for (int j=0; j<height; j++) {
+                    for (int i=0; i<width; i++) {
+                        byte value = buffer.get(j*chunkWidth + i);
+                        samples[j*width + i] = pixelType == PixelType.UINT8 ? Byte.toUnsignedInt(value) : value;
+                    }
+                }
+                raster.setSamples(x, y, width, height, band, samples);
+            }
+            case UINT16, INT16 -> {
+                int[] samples = buffers.getIntSamples(width * height);
+                for (int j=0; j<height; j++) {
+                    for (int i=0; i<width; i++) {
+                        short value = buffer.getShort((j*chunkWidth + i) * Short.BYTES);
+                        samples[j*width + i] = pixelType == PixelType.UINT16 ? Short.toUnsignedInt(value) : value;
+                    }
+                }
+                raster.setSamples(x, y, width, height, band, samples);
+            }
+            case UINT32, INT32 -> {
+                int[] samples = buffers.getIntSamples(width * height);
+                for (int j=0; j<height; j++) {
+                    for (int i=0; i<width; i++) {
+                        samples[j*width + i] = buffer.getInt((j*chunkWidth + i) * Integer.BYTES);
+                    }
+                }
+                raster.setSamples(x, y, width, height, band, samples);
+            }
+            case FLOAT32 -> {
+                float[] samples = buffers.getFloatSamples(width * height);
+                for (int j=0; j<height; j++) {
+                    for (int i=0; i<width; i++) {
+                        samples[j*width + i] = buffer.getFloat((j*chunkWidth + i) * Float.BYTES);
+                    }
+                }
+                raster.setSamples(x, y, width, height, band, samples);
+            }
+            case FLOAT64 -> {
+                double[] samples = buffers.getDoubleSamples(width * height);
+                for (int j=0; j<height; j++) {
+                    for (int i=0; i<width; i++) {
+                        samples[j*width + i] = buffer.getDouble((j*chunkWidth + i) * Double.BYTES);
+                    }
+                }
+                raster.setSamples(x, y, width, height, band, samples);
+            }
+        }
+    }
+
+    private JsonObject createAttributes(ImageServerMetadata metadata) {
+        PixelCalibration pixelCalibration = metadata.getPixelCalibration();
+        boolean calibrated = pixelCalibration != null && pixelCalibration.hasPixelSizeMicrons();
+        boolean zCalibrated = pixelCalibration != null && pixelCalibration.hasZSpacingMicrons();
+
+        JsonArray axes = new JsonArray();
+        for (String name: AXES) {
+            JsonObject axis = new JsonObject();
+            axis.addProperty("name", name);
+            axis.addProperty("type", switch (name) {
+                case "t" -> "time";
+                case "c" -> "channel";
+                default -> "space";
+            });
+            if ((name.equals("x") || name.equals("y")) && calibrated || name.equals("z") && zCalibrated) {
+                axis.addProperty("unit", "micrometer");
+            }
+            axes.add(axis);
+        }
+
+        JsonArray datasets = new JsonArray();
+        for (int level=0; level<widths.length; level++) {
+            JsonArray scale = new JsonArray();
+            scale.add(1);
+            scale.add(1);
+            scale.add(zCalibrated ? pixelCalibration.getZSpacingMicrons() : 1);
+            scale.add((calibrated ? pixelCalibration.getPixelHeightMicrons() : 1) * downsamples[level]);
+            scale.add((calibrated ? pixelCalibration.getPixelWidthMicrons() : 1) * downsamples[level]);
+
+            JsonObject transformation = new JsonObject();
+            transformation.addProperty("type", "scale");
+            transformation.add("scale", scale);
+            JsonArray transformations = new JsonArray();
+            transformations.add(transformation);
+
+            JsonObject dataset = new JsonObject();
+            dataset.addProperty("path", String.valueOf(level));
+            dataset.add("coordinateTransformations", transformations);
+            datasets.add(dataset);
+        }
+
+        JsonObject multiscale = new JsonObject();
+        multiscale.addProperty("version", "0.4");
+        if (metadata.getName() != null) {
+            multiscale.addProperty("name", metadata.getName());
+        }
+        multiscale.add("axes", axes);
+        multiscale.add("datasets", datasets);
+        JsonArray multiscales = new JsonArray();
+        multiscales.add(multiscale);
+
+        JsonArray channels = new JsonArray();
+        for (ImageChannel imageChannel: metadata.getChannels()) {
+            JsonObject channel = new JsonObject();
+            channel.addProperty("label", imageChannel.getName());
+            if (imageChannel.getColor() != null) {
+                channel.addProperty("color", String.format("%06X", imageChannel.getColor() & 0xFFFFFF));
+            }
+            channel.addProperty("active", true);
+            channels.add(channel);
+        }
+        JsonObject omero = new JsonObject();
+        omero.addProperty("version", "0.4");
+        omero.add("channels", channels);
+
+        JsonObject stitching = new JsonObject();
+        stitching.addProperty("originX", originX);
+        stitching.addProperty("originY", originY);
+
+        JsonObject attributes = new JsonObject();
+        attributes.add("multiscales", multiscales);
+        attributes.add("omero", omero);
+        attributes.add(STITCHING_ATTRIBUTE, stitching);
+        return attributes;
+    }
+
+    private JsonObject createShardedAttributes(ImageServerMetadata metadata) {
+        // The version 0.5 of the OME-NGFF specification groups the OME attributes in an "ome" attribute containing
+        // the version
+        JsonObject attributes = createAttributes(metadata);
+        JsonObject ome = new JsonObject();
+        ome.addProperty("version", "0.5");
+        for (String name: List.of("multiscales", "omero")) {
+            JsonElement element = attributes.remove(name);
+            for (JsonElement object: element.isJsonArray() ? element.getAsJsonArray() : List.of(element)) {
+                object.getAsJsonObject().remove("version");
+            }
+            ome.add(name, element);
+        }
+
+        JsonObject shardedAttributes = new JsonObject();
+        shardedAttributes.add("ome", ome);
+        shardedAttributes.add(STITCHING_ATTRIBUTE, attributes.get(STITCHING_ATTRIBUTE));
+        return shardedAttributes;
+    }
+
+    private JsonObject createShardedArrayMetadata(int level) {
+        JsonObject chunkGridConfiguration = new JsonObject();
+        chunkGridConfiguration.add("chunk_shape", createShape(1, sizeC, 1, shardSize * chunkHeight, shardSize * chunkWidth));
+        JsonObject chunkGrid = new JsonObject();
+        chunkGrid.addProperty("name", "regular");
+        chunkGrid.add("configuration", chunkGridConfiguration);
+
+        JsonObject chunkKeyEncodingConfiguration = new JsonObject();
+        chunkKeyEncodingConfiguration.addProperty("separator", "/");
+        JsonObject chunkKeyEncoding = new JsonObject();
+        chunkKeyEncoding.addProperty("name", "default");
+        chunkKeyEncoding.add("configuration", chunkKeyEncodingConfiguration);
+
+        JsonArray chunkCodecs = new JsonArray();
+        chunkCodecs.add(createBytesCodec());
+        if (codec != ZarrCodec.NONE) {
+            chunkCodecs.add(codec.toCodecJson(compressionLevel));
+        }
+        JsonObject shardingConfiguration = new JsonObject();
+        shardingConfiguration.add("chunk_shape", createShape(1, 1, 1, chunkHeight, chunkWidth));
+        shardingConfiguration.add("codecs", chunkCodecs);
+        shardingConfiguration.add("index_codecs", createIndexCodecs());
+        shardingConfiguration.addProperty("index_location", "start");
+        JsonObject sharding = new JsonObject();
+        sharding.addProperty("name", "sharding_indexed");
+        sharding.add("configuration", shardingConfiguration);
+        JsonArray codecs = new JsonArray();
+        codecs.add(sharding);
+
+        JsonArray dimensionNames = new JsonArray();
+        AXES.forEach(dimensionNames::add);
+
+        JsonObject array = new JsonObject();
+        array.addProperty("zarr_format", 3);
+        array.addProperty("node_type", "array");
+        array.add("shape", createShape(sizeT, sizeC, sizeZ, heights[level], widths[level]));
+        array.addProperty("data_type", getShardedDataType(pixelType));
+        array.add("chunk_grid", chunkGrid);
+        array.add("chunk_key_encoding", chunkKeyEncoding);
+        array.addProperty("fill_value", 0);
+        array.add("codecs", codecs);
+        array.add("dimension_names", dimensionNames);
+        return array;
+    }
+
+    private static void writeOmeXml(Path path, ImageServerMetadata metadata, boolean sharded) throws IOException {
+        String omeXml;
+        try {
+            omeXml = createOmeXml(metadata);
+        } catch (DependencyException | ServiceException e) {
+            // The OME-XML metadata duplicates the OME-Zarr attributes, so the image can still be read without it
+            logger.warn("Cannot create the OME-XML metadata of {}. It won't be written", path, e);
+            return;
+        }
+
+        // The OME group lists the images of the root group (here, only the root group itself)
+        JsonArray series = new JsonArray();
+        series.add("");
+        Path omePath = path.resolve(OME_GROUP);
+        Files.createDirectories(omePath);
+        if (sharded) {
+            JsonObject ome = new JsonObject();
+            ome.addProperty("version", "0.5");
+            ome.add("series", series);
+            JsonObject attributes = new JsonObject();
+            attributes.add("ome", ome);
+            JsonObject group = new JsonObject();
+            group.addProperty("zarr_format", 3);
+            group.addProperty("node_type", "group");
+            group.add("attributes", attributes);
+            writeJson(omePath.resolve(ZARR_JSON), group);
+        } else {
+            JsonObject group = new JsonObject();
+            group.addProperty("zarr_format", 2);
+            writeJson(omePath.resolve(".zgroup"), group);
+            JsonObject attributes = new JsonObject();
+            attributes.add("series", series);
+            writeJson(omePath.resolve(".zattrs"), attributes);
+        }
+        Files.writeString(omePath.resolve(OME_XML), omeXml);
+    }
+
+    private static String createOmeXml(ImageServerMetadata metadata) throws DependencyException, ServiceException {
+        OMEXMLService service = new ServiceFactory().getInstance(OMEXMLService.class);
+        OMEXMLMetadata omeMetadata = service.createOMEXMLMetadata();
+
+        // Zarr arrays have the (t, c, z, y, x) dimensions, which is the XYZCT order of OME
+        MetadataTools.populateMetadata(
+                omeMetadata,
+                0,
+                metadata.getName(),
+                true,
+                "XYZCT",
+                switch (metadata.getPixelType()) {
+                    case UINT8 -> "uint8";
+                    case INT8 -> "int8";
+                    case UINT16 -> "uint16";
+                    case INT16 -> "int16";
+                    case UINT32 -> "uint32";
+                    case INT32 -> "int32";
+                    case FLOAT32 -> "float";
+                    case FLOAT64 -> "double";
+                },
+                metadata.getWidth(),
+                metadata.getHeight(),
+                metadata.getSizeZ(),
+                metadata.getSizeC(),
+                metadata.getSizeT(),
+                1
+        );
+
+        PixelCalibration pixelCalibration = metadata.getPixelCalibration();
+        if (pixelCalibration != null && pixelCalibration.hasPixelSizeMicrons()) {
+            omeMetadata.setPixelsPhysicalSizeX(new Length(pixelCalibration.getPixelWidthMicrons(), UNITS.MICROMETER), 0);
+            omeMetadata.setPixelsPhysicalSizeY(new Length(pixelCalibration.getPixelHeightMicrons(), UNITS.MICROMETER), 0);
+        }
+        if (pixelCalibration != null && pixelCalibration.hasZSpacingMicrons()) {
+            omeMetadata.setPixelsPhysicalSizeZ(new Length(pixelCalibration.getZSpacingMicrons(), UNITS.MICROMETER), 0);
+        }
+
+        for (int c=0; c<metadata.getSizeC(); c++) {
+            ImageChannel channel = metadata.getChannel(c);
+            omeMetadata.setChannelName(channel.getName(), 0, c);
+            if (channel.getColor() != null) {
+                int color = channel.getColor();
+                omeMetadata.setChannelColor(new Color((color >> 16) & 0xFF, (color >> 8) & 0xFF, color & 0xFF, 255), 0, c);
+            }
+        }
+
+        return service.getOMEXML(omeMetadata);
+    }
+
+    private static JsonArray createIndexCodecs() {
+        JsonObject checksum = new JsonObject();
+        checksum.addProperty("name", "crc32c");
+
+        JsonArray indexCodecs = new JsonArray();
+        indexCodecs.add(createBytesCodec());
+        indexCodecs.add(checksum);
+        return indexCodecs;
+    }
+
+    private static JsonObject createBytesCodec() {
+        JsonObject configuration = new JsonObject();
+        configuration.addProperty("endian", "little");
+
+        JsonObject codec = new JsonObject();
+        codec.addProperty("name", "bytes");
+        codec.add("configuration", configuration);
+        return codec;
+    }
+
+    private static JsonArray createShape(int sizeT, int sizeC, int sizeZ, int height, int width) {
+        JsonArray shape = new JsonArray();
+        shape.add(sizeT);
+        shape.add(sizeC);
+        shape.add(sizeZ);
+        shape.add(height);
+        shape.add(width);
+        return shape;
+    }
+
+    private JsonObject createArrayMetadata(int level) {
+        JsonObject array = new JsonObject();
+        array.addProperty("zarr_format", 2);
+        array.add("shape", createShape(sizeT, sizeC, sizeZ, heights[level], widths[level]));
+        array.add("chunks", createShape(1, 1, 1, chunkHeight, chunkWidth));
+        array.addProperty("dtype", getDataType(pixelType));
+        array.add("compressor", codec.toJson(compressionLevel));
+        array.addProperty("fill_value", 0);
+        array.addProperty("order", "C");
+        array.add("filters", null);
+        array.addProperty("dimension_separator", dimensionSeparator);
+        return array;
+    }
+
+    private static String getDataType(PixelType pixelType) {
+        return switch (pixelType) {
+            case UINT8 -> "|u1";
+            case INT8 -> "|i1";
+            case UINT16 -> "<u2";
+            case INT16 -> "<i2";
+            case UINT32 -> "<u4";
+            case INT32 -> "<i4";
+            case FLOAT32 -> "<f4";
+            case FLOAT64 -> "<f8";
+        };
+    }
+
+    private static String getShardedDataType(PixelType pixelType) {
+        // Zarr v3 data types are little endian by default (set by the "bytes" codec)
+        return switch (pixelType) {
+            case UINT8 -> "uint8";
+            case INT8 -> "int8";
+            case UINT16 -> "uint16";
+            case INT16 -> "int16";
+            case UINT32 -> "uint32";
+            case INT32 -> "int32";
+            case FLOAT32 -> "float32";
+            case FLOAT64 -> "float64";
+        };
+    }
+
+    private static PixelType getShardedPixelType(String dataType) {
+        for (PixelType pixelType: PixelType.values()) {
+            if (getShardedDataType(pixelType).equals(dataType)) {
+                return pixelType;
+            }
+        }
+        throw new IllegalArgumentException(String.format(
+                "The %s data type is not supported. Only data types corresponding to a QuPath pixel type can be read",
+                dataType
+        ));
+    }
+
+    private static PixelType getPixelType(String dataType) {
+        // The first character is the byte order, which can be big endian (">") for images written by QuPath
+        for (PixelType pixelType: PixelType.values()) {
+            if (!dataType.isEmpty() && getDataType(pixelType).substring(1).equals(dataType.substring(1))) {
+                return pixelType;
+            }
+        }
+        throw new IllegalArgumentException(String.format(
+                "The %s data type is not supported. Only data types corresponding to a QuPath pixel type can be read",
+                dataType
+        ));
+    }
+
+    private static JsonObject readJson(Path path) throws IOException {
+        return gson.fromJson(Files.readString(path), JsonObject.class);
+    }
+
+    private static void writeJson(Path path, JsonElement json) throws IOException {
+        Files.writeString(path, gson.toJson(json));
+    }
+
+    /**
+     * A builder to create an empty {@link OmeZarrStore}.
+     */
+    public static class Builder {
+
+        private final Path path;
+        private final ImageServerMetadata metadata;
+        private int nLevels = 1;
+        private int chunkWidth = 512;
+        private int chunkHeight = 512;
+        private int originX = 0;
+        private int originY = 0;
+        private ZarrCodec codec = ZarrCodec.BLOSC_LZ4;
+        private int compressionLevel = ZarrCodec.DEFAULT_LEVEL;
+        private int shardSize = 1;
+
+        /**
+         * Create the builder.
+         *
+         * @param path the path of the directory that should contain the image. It will be created if it doesn't exist
+         * @param metadata the metadata of the full resolution image. Its size, channels, pixel type and calibration are used
+         * @throws NullPointerException if one of the provided parameters is null
+         */
+        public Builder(Path path, ImageServerMetadata metadata) {
+            this.path = Objects.requireNonNull(path);
+            this.metadata = Objects.requireNonNull(metadata);
+        }
+
+        /**
+         * Set the number of resolution levels to create. 1 by default.
+         *
+         * @param nLevels the number of resolution levels to create
+         * @return this builder
+         * @throws IllegalArgumentException if the provided number is less than 1
+         */
+        public Builder numberOfLevels(int nLevels) {
+            if (nLevels < 1) {
+                throw new IllegalArgumentException(String.format("The number of levels (%d) must be at least 1", nLevels));
+            }
+
+            this.nLevels = nLevels;
+            return this;
+        }
+
+        /**
+         * Set the size of the chunks. 512x512 by default.
+         *
+         * @param chunkWidth the width of the chunks
+         * @param chunkHeight the height of the chunks
+         * @return this builder
+         * @throws IllegalArgumentException if the provided size is less than 1
+         */
+        public Builder chunkSize(int chunkWidth, int chunkHeight) {
+            if (chunkWidth < 1 || chunkHeight < 1) {
+                throw new IllegalArgumentException(String.format("The chunk size (%dx%d) must be at least 1", chunkWidth, chunkHeight));
+            }
+
+            this.chunkWidth = chunkWidth;
+            this.chunkHeight = chunkHeight;
+            return this;
+        }
+
+        /**
+         * Set the position of the image within the coordinate system of the input images. (0, 0) by default.
+         *
+         * @param originX the x-coordinate of the image within the coordinate system of the input images
+         * @param originY the y-coordinate of the image within the coordinate system of the input images
+         * @return this builder
+         */
+        public Builder origin(int originX, int originY) {
+            this.originX = originX;
+            this.originY = originY;
+            return this;
+        }
+
+        /**
+         * Set the codec to use to encode chunks. {@link ZarrCodec#BLOSC_LZ4} by default.
+         *
+         * @param codec the codec to use to encode chunks
+         * @return this builder
+         * @throws NullPointerException if the provided parameter is null
+         */
+        public Builder codec(ZarrCodec codec) {
+            this.codec = Objects.requireNonNull(codec);
+            return this;
+        }
+
+        /**
+         * Set the compression level to use to encode chunks. {@link ZarrCodec#DEFAULT_LEVEL} by default.
+         *
+         * @param compressionLevel the compression level to use to encode chunks. Ignored by {@link ZarrCodec#NONE}
+         * @return this builder
+         * @throws IllegalArgumentException if the provided level is not between {@link ZarrCodec#MIN_LEVEL} and
+         * {@link ZarrCodec#MAX_LEVEL}
+         */
+        public Builder compressionLevel(int compressionLevel) {
+            ZarrCodec.checkLevel(compressionLevel);
+
+            this.compressionLevel = compressionLevel;
+            return this;
+        }
+
+        /**
+         * Set the number of chunks along each axis of a shard. 1 by default, in which case the image is not sharded and
+         * each channel of each chunk is stored in its own file with the Zarr v2 format.
+         *
+         * @param shardSize the number of chunks along each axis of a shard
+         * @return this builder
+         * @throws IllegalArgumentException if the provided size is less than 1
+         */
+        public Builder shardSize(int shardSize) {
+            if (shardSize < 1) {
+                throw new IllegalArgumentException(String.format("The shard size (%d) must be at least 1", shardSize));
+            }
+
+            this.shardSize = shardSize;
+            return this;
+        }
+
+        /**
+         * Create the empty image. This only writes the metadata of the image, no chunk is written.
+         *
+         * @return the created image
+         * @throws IOException if an error occurs while writing the metadata
+         * @throws IllegalArgumentException if the chunk size is not a multiple of the downsample of the first level (4)
+         * while several levels are requested
+         */
+        public OmeZarrStore build() throws IOException {
+            return create(this);
+        }
+    }
+}
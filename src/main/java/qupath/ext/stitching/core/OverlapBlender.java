@@ -0,0 +1,334 @@
+package qupath.ext.stitching.core;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Combine parts of input images into a raster, resolving pixels covered by several input images with a {@link BlendingMode}.
+ * <p>
+ * All parts are first copied to the raster, which gives the final value of pixels covered by a single part. Then, only
+ * the runs of pixels (within a row) covered by several parts are blended.
+ * <p>
+ * Weights only depend on the position of a pixel within its input image and are separable, so they are described by one
+ * profile per axis. Profiles are computed once for each input image size and shared by all input images of this size.
+ * <p>
+ * Pixels are blended channel by channel on primitive (float) arrays. These arrays are reused by each thread between calls,
+ * so no memory is allocated per pixel (or per call once the arrays are large enough).
+ * <p>
+ * This class is thread-safe.
+ */
+class OverlapBlender {
+
+    private final BlendingMode blendingMode;
+    private final Map<Integer, float[]> profiles = new ConcurrentHashMap<>();
+    private final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+
+    /**
+     * A part of an input image to draw.
+     *
+     * @param raster the pixels of the part
+     * @param x the x-coordinate, in the destination raster, where the part should be drawn. Must be positive
+     * @param y the y-coordinate, in the destination raster, where the part should be drawn. Must be positive
+     * @param inputX the x-coordinate, in full resolution pixels of the input image, of the top left corner of the part
+     * @param inputY the y-coordinate, in full resolution pixels of the input image, of the top left corner of the part
+     * @param inputWidth the full resolution width of the input image
+     * @param inputHeight the full resolution height of the input image
+     * @param downsample the downsample of the part (and of the destination raster) relative to the input image
+     */
+    record Part(Raster raster, int x, int y, int inputX, int inputY, int inputWidth, int inputHeight, double downsample) {}
+
+    private static class Buffers {
+
+        private int[] coverage = new int[0];
+        private float[] columnWeights = new float[0];
+        private float[] accumulator = new float[0];
+        private float[] weights = new float[0];
+        private float[] partWeights = new float[0];
+        private int[] owners = new int[0];
+        private float[] samples = new float[0];
+        private int[] packedPixels = new int[0];
+
+        private void ensureCapacity(int width, int numberOfBands, int numberOfParts) {
+            if (coverage.length < width) {
+                coverage = new int[width];
+                weights = new float[width];
+                partWeights = new float[width];
+                owners = new int[width];
+                samples = new float[width];
+                packedPixels = new int[width];
+            }
+            if (columnWeights.length < width * numberOfParts) {
+                columnWeights = new float[width * numberOfParts];
+            }
+            if (accumulator.length < width * numberOfBands) {
+                accumulator = new float[width * numberOfBands];
+            }
+        }
+    }
+
+    /**
+     * Create the blender.
+     *
+     * @param blendingMode the strategy to use to resolve pixels covered by several input images
+     * @throws NullPointerException if the provided mode is null
+     */
+    public OverlapBlender(BlendingMode blendingMode) {
+        this.blendingMode = Objects.requireNonNull(blendingMode);
+    }
+
+    /**
+     * Draw the provided parts on the provided raster. Parts are drawn in the order of the provided list, which matters
+     * if the blending mode is {@link BlendingMode#NONE}. Pixels of the raster not covered by any part are left unchanged.
+     * Parts must have the same number of bands and sample model type as the raster.
+     *
+     * @param parts the parts to draw
+     * @param destination the raster to draw on
+     */
+    public void blend(List<Part> parts, WritableRaster destination) {
+        for (Part part: parts) {
+            copyInto(part.raster(), destination, part.x(), part.y());
+        }
+        if (blendingMode == BlendingMode.NONE || parts.size() < 2) {
+            return;
+        }
+
+        Buffers buffers = this.buffers.get();
+        buffers.ensureCapacity(destination.getWidth(), destination.getNumBands(), parts.size());
+        for (int p=0; p<parts.size(); p++) {
+            computeColumnWeights(parts.get(p), destination, buffers.columnWeights, p * destination.getWidth());
+        }
+
+        for (int y=0; y<destination.getHeight(); y++) {
+            Arrays.fill(buffers.coverage, 0, destination.getWidth(), 0);
+            int numberOfPartsInRow = 0;
+            for (Part part: parts) {
+                if (y >= part.y() && y < part.y() + getHeight(part, destination)) {
+                    for (int x=part.x(); x<part.x() + getWidth(part, destination); x++) {
+                        buffers.coverage[x]++;
+                    }
+                    numberOfPartsInRow++;
+                }
+            }
+            if (numberOfPartsInRow < 2) {
+                continue;
+            }
+
+            int start = 0;
+            while (start < destination.getWidth()) {
+                if (buffers.coverage[start] < 2) {
+                    start++;
+                } else {
+                    int end = start;
+                    while (end < destination.getWidth() && buffers.coverage[end] >= 2) {
+                        end++;
+                    }
+
+                    switch (blendingMode) {
+                        case FEATHER -> accumulateWeightedParts(parts, destination, start, end, y, buffers);
+                        case NEAREST_CENTER -> accumulateNearestParts(parts, destination, start, end, y, buffers);
+                        case NONE -> {}
+                    }
+                    writeRun(destination, start, end, y, buffers);
+
+                    start = end;
+                }
+            }
+        }
+    }
+
+    private void accumulateWeightedParts(List<Part> parts, WritableRaster destination, int start, int end, int y, Buffers buffers) {
+        int length = end - start;
+        Arrays.fill(buffers.weights, 0, length, 0);
+        Arrays.fill(buffers.accumulator, 0, length * destination.getNumBands(), 0);
+
+        for (int p=0; p<parts.size(); p++) {
+            Part part = parts.get(p);
+            int partStart = Math.max(start, part.x());
+            int partEnd = Math.min(end, part.x() + getWidth(part, destination));
+            if (y < part.y() || y >= part.y() + getHeight(part, destination) || partStart >= partEnd) {
+                continue;
+            }
+            computeWeights(part, p * destination.getWidth(), partStart, partEnd, y, buffers);
+
+            int offset = partStart - start;
+            for (int i=0; i<partEnd - partStart; i++) {
+                buffers.weights[offset + i] += buffers.partWeights[i];
+            }
+            for (int b=0; b<destination.getNumBands(); b++) {
+                readSamples(part, partStart, partEnd, y, b, buffers.samples);
+
+                int bandOffset = b * length + offset;
+                for (int i=0; i<partEnd - partStart; i++) {
+                    buffers.accumulator[bandOffset + i] += buffers.partWeights[i] * buffers.samples[i];
+                }
+            }
+        }
+    }
+
+    private void accumulateNearestParts(List<Part> parts, WritableRaster destination, int start, int end, int y, Buffers buffers) {
+        int length = end - start;
+        Arrays.fill(buffers.weights, 0, length, Float.POSITIVE_INFINITY);
+        Arrays.fill(buffers.owners, 0, length, -1);
+
+        // The weights first contain the (normalized) squared distance to the center of the closest part
+        for (int p=0; p<parts.size(); p++) {
+            Part part = parts.get(p);
+            int partStart = Math.max(start, part.x());
+            int partEnd = Math.min(end, part.x() + getWidth(part, destination));
+            if (y < part.y() || y >= part.y() + getHeight(part, destination) || partStart >= partEnd) {
+                continue;
+            }
+            computeWeights(part, p * destination.getWidth(), partStart, partEnd, y, buffers);
+
+            int offset = partStart - start;
+            for (int i=0; i<partEnd - partStart; i++) {
+                if (buffers.partWeights[i] < buffers.weights[offset + i]) {
+                    buffers.weights[offset + i] = buffers.partWeights[i];
+                    buffers.owners[offset + i] = p;
+                }
+            }
+        }
+
+        for (int p=0; p<parts.size(); p++) {
+            Part part = parts.get(p);
+            int partStart = Math.max(start, part.x());
+            int partEnd = Math.min(end, part.x() + getWidth(part, destination));
+            if (y < part.y() || y >= part.y() + getHeight(part, destination) || partStart >= partEnd) {
+                continue;
+            }
+
+            int offset = partStart - start;
+            for (int b=0; b<destination.getNumBands(); b++) {
+                readSamples(part, partStart, partEnd, y, b, buffers.samples);
+
+                int bandOffset = b * length + offset;
+                for (int i=0; i<partEnd - partStart; i++) {
+                    if (buffers.owners[offset + i] == p) {
+                        buffers.accumulator[bandOffset + i] = buffers.samples[i];
+                    }
+                }
+            }
+        }
+
+        // Each pixel of the run is covered by a part, so the accumulator can be written as it is
+        Arrays.fill(buffers.weights, 0, length, 1);
+    }
+
+    private static void writeRun(WritableRaster destination, int start, int end, int y, Buffers buffers) {
+        int length = end - start;
+        int dataType = destination.getSampleModel().getDataType();
+
+        if (destination.getSampleModel() instanceof SinglePixelPackedSampleModel sampleModel && dataType == DataBuffer.TYPE_INT) {
+            // Setting samples of packed pixels band by band is slow, so whole pixels are set at once. Packed samples
+            // are never negative, so they can be rounded by truncation
+            int[] bitMasks = sampleModel.getBitMasks();
+            int[] bitOffsets = sampleModel.getBitOffsets();
+
+            for (int i=0; i<length; i++) {
+                int pixel = 0;
+                for (int b=0; b<destination.getNumBands(); b++) {
+                    int value = (int) (buffers.accumulator[b * length + i] / buffers.weights[i] + 0.5f);
+                    pixel |= (value << bitOffsets[b]) & bitMasks[b];
+                }
+                buffers.packedPixels[i] = pixel;
+            }
+
+            destination.setDataElements(start, y, length, 1, buffers.packedPixels);
+        } else {
+            boolean roundValues = dataType != DataBuffer.TYPE_FLOAT && dataType != DataBuffer.TYPE_DOUBLE;
+
+            for (int b=0; b<destination.getNumBands(); b++) {
+                for (int i=0; i<length; i++) {
+                    float value = buffers.accumulator[b * length + i] / buffers.weights[i];
+                    buffers.samples[i] = roundValues ? Math.round(value) : value;
+                }
+
+                destination.setSamples(start, y, length, 1, b, buffers.samples);
+            }
+        }
+    }
+
+    private void computeColumnWeights(Part part, Raster destination, float[] columnWeights, int offset) {
+        float[] columnProfile = getProfile(part.inputWidth());
+
+        for (int x=part.x(); x<part.x() + getWidth(part, destination); x++) {
+            columnWeights[offset + x] = columnProfile[
+                    getInputCoordinate(part.inputX(), x - part.x(), part.downsample(), part.inputWidth())
+            ];
+        }
+    }
+
+    private void computeWeights(Part part, int columnWeightsOffset, int start, int end, int y, Buffers buffers) {
+        float rowWeight = getProfile(part.inputHeight())[
+                getInputCoordinate(part.inputY(), y - part.y(), part.downsample(), part.inputHeight())
+        ];
+        int offset = columnWeightsOffset + start;
+
+        if (blendingMode == BlendingMode.FEATHER) {
+            for (int i=0; i<end - start; i++) {
+                buffers.partWeights[i] = buffers.columnWeights[offset + i] * rowWeight;
+            }
+        } else {
+            for (int i=0; i<end - start; i++) {
+                buffers.partWeights[i] = buffers.columnWeights[offset + i] + rowWeight;
+            }
+        }
+    }
+
+    private float[] getProfile(int size) {
+        return profiles.computeIfAbsent(size, s -> {
+            float[] profile = new float[s];
+
+            for (int i=0; i<s; i++) {
+                profile[i] = switch (blendingMode) {
+                    // Distance to the closest border of the image, so that the weight is never 0 inside the image
+                    case FEATHER -> Math.min(i + 1, s - i);
+                    // Squared distance to the center of the image, relative to the size of the image
+                    case NEAREST_CENTER -> (float) Math.pow((i + 0.5) / s - 0.5, 2);
+                    case NONE -> 1;
+                };
+            }
+            return profile;
+        });
+    }
+
+    private static void readSamples(Part part, int start, int end, int y, int band, float[] samples) {
+        part.raster().getSamples(
+                part.raster().getMinX() + start - part.x(),
+                part.raster().getMinY() + y - part.y(),
+                end - start,
+                1,
+                band,
+                samples
+        );
+    }
+
+    private static int getWidth(Part part, Raster destination) {
+        return Math.min(part.raster().getWidth(), destination.getWidth() - part.x());
+    }
+
+    private static int getHeight(Part part, Raster destination) {
+        return Math.min(part.raster().getHeight(), destination.getHeight() - part.y());
+    }
+
+    private static int getInputCoordinate(int start, int index, double downsample, int size) {
+        return Math.min(size - 1, (int) (start + (index + 0.5) * downsample));
+    }
+
+    private static void copyInto(Raster source, WritableRaster destination, int x, int y) {
+        int width = Math.min(source.getWidth(), destination.getWidth() - x);
+        int height = Math.min(source.getHeight(), destination.getHeight() - y);
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+
+        destination.setDataElements(x, y, source.createChild(source.getMinX(), source.getMinY(), width, height, 0, 0, null));
+    }
+}
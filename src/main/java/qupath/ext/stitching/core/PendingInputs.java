@@ -0,0 +1,94 @@
+package qupath.ext.stitching.core;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.IntStream;
+
+/**
+ * The descriptors of input images that are still being parsed.
+ * <p>
+ * This allows to use an input image as soon as it is parsed, without waiting for all input images to be parsed.
+ * Each input is {@link #complete(int, InputDescriptor) completed} once, either with its descriptor or with null if
+ * it cannot be used, or {@link #fail(int, IOException) failed} if it prevents the stitching from being done, and
+ * {@link #await(int)} blocks until the provided input is completed.
+ * <p>
+ * This class is thread-safe.
+ */
+class PendingInputs {
+
+    private final List<CompletableFuture<InputDescriptor>> descriptors;
+
+    /**
+     * Create the pending inputs. No input is completed at first.
+     *
+     * @param numberOfInputs the number of inputs
+     */
+    public PendingInputs(int numberOfInputs) {
+        this.descriptors = IntStream.range(0, numberOfInputs)
+                .mapToObj(i -> new CompletableFuture<InputDescriptor>())
+                .toList();
+    }
+
+    /**
+     * Complete an input. This has no effect if the input was already completed.
+     *
+     * @param input the index of the input to complete
+     * @param descriptor the descriptor of the input, or null if the input cannot be used
+     * @throws IndexOutOfBoundsException if the provided index is out of bounds
+     */
+    public void complete(int input, InputDescriptor descriptor) {
+        descriptors.get(input).complete(descriptor);
+    }
+
+    /**
+     * Complete an input with an error, so that the threads waiting for it fail with this error. This has no effect if
+     * the input was already completed.
+     *
+     * @param input the index of the input to complete
+     * @param error the reason why the input prevents the stitching from being done
+     * @throws IndexOutOfBoundsException if the provided index is out of bounds
+     */
+    public void fail(int input, IOException error) {
+        descriptors.get(input).completeExceptionally(error);
+    }
+
+    /**
+     * Complete all inputs that are not completed yet with null, so that no thread waits for them anymore.
+     */
+    public void cancel() {
+        for (CompletableFuture<InputDescriptor> descriptor: descriptors) {
+            descriptor.complete(null);
+        }
+    }
+
+    /**
+     * Wait for an input to be completed.
+     *
+     * @param input the index of the input to wait for
+     * @return the descriptor of the input, or null if the input cannot be used
+     * @throws InterruptedIOException if the calling thread is interrupted while waiting. Its interrupted status is restored
+     * @throws IOException if the input was {@link #fail(int, IOException) failed}
+     * @throws IndexOutOfBoundsException if the provided index is out of bounds
+     */
+    public InputDescriptor await(int input) throws IOException {
+        try {
+            return descriptors.get(input).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(String.format("Interrupted while waiting for input %d to be parsed", input));
+        } catch (ExecutionException e) {
+            // Inputs are only completed exceptionally by fail()
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * @return the number of inputs that are completed
+     */
+    public int getNumberOfCompletedInputs() {
+        return (int) descriptors.stream().filter(CompletableFuture::isDone).count();
+    }
+}
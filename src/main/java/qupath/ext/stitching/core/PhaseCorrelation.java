@@ -0,0 +1,180 @@
+package qupath.ext.stitching.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Find the translation between two images of the same size showing (mostly) the same content, using phase correlation.
+ * <p>
+ * Images are zero-padded to a power of two size before being transformed. As the phase correlation surface is
+ * periodic, each of the highest peaks of the surface corresponds to several possible translations. These candidates
+ * are evaluated with the normalized cross-correlation of the two images on their overlap, and the best one is kept.
+ * <p>
+ * Images are represented as grayscale float arrays stored row by row.
+ */
+class PhaseCorrelation {
+
+    private static final int NUMBER_OF_PEAKS = 5;
+    private static final double MIN_OVERLAP_FRACTION = 0.25;
+    private static final double EPSILON = 1e-12;
+
+    private PhaseCorrelation() {
+        throw new AssertionError("This class is not instantiable.");
+    }
+
+    /**
+     * The translation between two images.
+     *
+     * @param dx the translation along the x-axis, such that moving(x, y) ≈ reference(x - dx, y - dy)
+     * @param dy the translation along the y-axis, such that moving(x, y) ≈ reference(x - dx, y - dy)
+     * @param correlation the normalized cross-correlation (between -1 and 1) of the two images on their overlap once
+     *                    the translation is applied
+     */
+    public record Translation(int dx, int dy, double correlation) {}
+
+    /**
+     * Find the translation between two images.
+     *
+     * @param reference the pixels of the reference image
+     * @param moving the pixels of the image that is translated compared to the reference image
+     * @param width the width of both images
+     * @param height the height of both images
+     * @param maxShift the maximum translation to consider along each axis
+     * @return the translation between the two images, or null if no translation within the provided bounds gives a
+     * sufficient overlap or a defined correlation (e.g. if one of the images is uniform)
+     * @throws IllegalArgumentException if the provided arrays don't have width * height elements
+     */
+    public static Translation findTranslation(float[] reference, float[] moving, int width, int height, int maxShift) {
+        if (reference.length != width * height || moving.length != width * height) {
+            throw new IllegalArgumentException(String.format(
+                    "The images have %d and %d pixels, while %d were expected", reference.length, moving.length, width * height
+            ));
+        }
+
+        int paddedWidth = Fft.nextPowerOfTwo(width);
+        int paddedHeight = Fft.nextPowerOfTwo(height);
+        double[] referenceReal = pad(reference, width, height, paddedWidth, paddedHeight);
+        double[] referenceImaginary = new double[referenceReal.length];
+        double[] movingReal = pad(moving, width, height, paddedWidth, paddedHeight);
+        double[] movingImaginary = new double[movingReal.length];
+
+        Fft.transform2D(referenceReal, referenceImaginary, paddedWidth, paddedHeight, false);
+        Fft.transform2D(movingReal, movingImaginary, paddedWidth, paddedHeight, false);
+
+        // Normalized cross-power spectrum conj(F(reference)) * F(moving) / |conj(F(reference)) * F(moving)|,
+        // stored in the arrays of the reference image
+        for (int i=0; i<referenceReal.length; i++) {
+            double real = referenceReal[i] * movingReal[i] + referenceImaginary[i] * movingImaginary[i];
+            double imaginary = referenceReal[i] * movingImaginary[i] - referenceImaginary[i] * movingReal[i];
+            double magnitude = Math.hypot(real, imaginary);
+
+            if (magnitude > EPSILON) {
+                referenceReal[i] = real / magnitude;
+                referenceImaginary[i] = imaginary / magnitude;
+            } else {
+                referenceReal[i] = 0;
+                referenceImaginary[i] = 0;
+            }
+        }
+        Fft.transform2D(referenceReal, referenceImaginary, paddedWidth, paddedHeight, true);
+
+        Translation bestTranslation = null;
+        for (int peak: findHighestPeaks(referenceReal, NUMBER_OF_PEAKS)) {
+            int peakX = peak % paddedWidth;
+            int peakY = peak / paddedWidth;
+
+            for (int dx: new int[] {peakX, peakX - paddedWidth}) {
+                for (int dy: new int[] {peakY, peakY - paddedHeight}) {
+                    if (Math.abs(dx) > maxShift || Math.abs(dy) > maxShift) {
+                        continue;
+                    }
+
+                    double correlation = computeCorrelation(reference, moving, width, height, dx, dy);
+                    if (!Double.isNaN(correlation) && (bestTranslation == null || correlation > bestTranslation.correlation())) {
+                        bestTranslation = new Translation(dx, dy, correlation);
+                    }
+                }
+            }
+        }
+        return bestTranslation;
+    }
+
+    private static double[] pad(float[] pixels, int width, int height, int paddedWidth, int paddedHeight) {
+        double mean = 0;
+        for (float pixel: pixels) {
+            mean += pixel;
+        }
+        mean /= pixels.length;
+
+        // The mean is removed so that the padding doesn't create a strong edge
+        double[] padded = new double[paddedWidth * paddedHeight];
+        for (int y=0; y<height; y++) {
+            for (int x=0; x<width; x++) {
+                padded[y * paddedWidth + x] = pixels[y * width + x] - mean;
+            }
+        }
+        return padded;
+    }
+
+    private static List<Integer> findHighestPeaks(double[] surface, int numberOfPeaks) {
+        List<Integer> peaks = new ArrayList<>(numberOfPeaks);
+
+        for (int i=0; i<surface.length; i++) {
+            if (peaks.size() < numberOfPeaks || surface[i] > surface[peaks.getLast()]) {
+                int position = peaks.size();
+                while (position > 0 && surface[peaks.get(position - 1)] < surface[i]) {
+                    position--;
+                }
+                peaks.add(position, i);
+
+                if (peaks.size() > numberOfPeaks) {
+                    peaks.removeLast();
+                }
+            }
+        }
+        return peaks;
+    }
+
+    private static double computeCorrelation(float[] reference, float[] moving, int width, int height, int dx, int dy) {
+        // moving(x, y) is compared to reference(x - dx, y - dy) on the overlap of the two images
+        int minX = Math.max(0, dx);
+        int maxX = Math.min(width, width + dx);
+        int minY = Math.max(0, dy);
+        int maxY = Math.min(height, height + dy);
+        int numberOfPixels = Math.max(0, maxX - minX) * Math.max(0, maxY - minY);
+        if (numberOfPixels < MIN_OVERLAP_FRACTION * width * height) {
+            return Double.NaN;
+        }
+
+        double sumReference = 0;
+        double sumMoving = 0;
+        for (int y=minY; y<maxY; y++) {
+            for (int x=minX; x<maxX; x++) {
+                sumReference += reference[(y - dy) * width + x - dx];
+                sumMoving += moving[y * width + x];
+            }
+        }
+        double meanReference = sumReference / numberOfPixels;
+        double meanMoving = sumMoving / numberOfPixels;
+
+        double covariance = 0;
+        double varianceReference = 0;
+        double varianceMoving = 0;
+        for (int y=minY; y<maxY; y++) {
+            for (int x=minX; x<maxX; x++) {
+                double referenceValue = reference[(y - dy) * width + x - dx] - meanReference;
+                double movingValue = moving[y * width + x] - meanMoving;
+
+                covariance += referenceValue * movingValue;
+                varianceReference += referenceValue * referenceValue;
+                varianceMoving += movingValue * movingValue;
+            }
+        }
+
+        if (varianceReference < EPSILON || varianceMoving < EPSILON) {
+            return Double.NaN;
+        } else {
+            return covariance / Math.sqrt(varianceReference * varianceMoving);
+        }
+    }
+}
@@ -0,0 +1,538 @@
+package qupath.ext.stitching.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import qupath.lib.common.ThreadTools;
+import qupath.lib.images.servers.ImageServer;
+import qupath.lib.regions.RegionRequest;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+/**
+ * A correction of the uneven illumination (for example vignetting) of input images.
+ * <p>
+ * The correction is described by a flat-field and an optional dark-field profile per channel, which have the size of
+ * the (full resolution) input images. A pixel is corrected with {@code (value - darkField) / flatField}, and the
+ * flat-field has a mean of 1, so that the mean intensity of input images is kept.
+ * <p>
+ * The profiles can be estimated from a random sample of input images with {@link #estimate(TileLayout, InputServerPool, int, boolean, int)}.
+ * The correction is then applied to each part of an input image when it is read, so input images don't need to be
+ * corrected (and written) before being stitched.
+ * <p>
+ * This class is thread-safe.
+ */
+class ShadingCorrection {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShadingCorrection.class);
+    private static final long SEED = 0;
+    private static final int SMOOTHING_FRACTION = 20;
+    private static final int PROFILE_RESOLUTION = 128;
+    private static final int MIN_ROBUST_NUMBER_OF_SAMPLES = 3;
+    private static final float MIN_FLAT_FIELD = 0.05f;
+    private final int width;
+    private final int height;
+    private final float[][] flatFields;
+    private final float[][] darkFields;
+
+    /**
+     * Create the correction.
+     *
+     * @param width the width of the input images to correct
+     * @param height the height of the input images to correct
+     * @param flatFields the flat-field profile of each channel, as arrays of {@code width * height} values in row-major
+     *                   order. Values must be positive
+     * @param darkFields the dark-field profile of each channel, as arrays of {@code width * height} values in row-major
+     *                   order. Can be null to only use the flat-field
+     * @throws NullPointerException if the provided flat-fields are null or contain null elements, or if the provided
+     * dark-fields are not null and contain null elements
+     * @throws IllegalArgumentException if the size is not positive, if a profile doesn't have {@code width * height}
+     * values, if the dark-fields and the flat-fields don't have the same number of channels, or if there are no channels
+     */
+    public ShadingCorrection(int width, int height, float[][] flatFields, float[][] darkFields) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException(String.format("The size (%dx%d) must be positive", width, height));
+        }
+        if (flatFields.length == 0) {
+            throw new IllegalArgumentException("No flat-field provided");
+        }
+        if (darkFields != null && darkFields.length != flatFields.length) {
+            throw new IllegalArgumentException(String.format(
+                    "The number of dark-fields (%d) doesn't match the number of flat-fields (%d)",
+                    darkFields.length,
+                    flatFields.length
+            ));
+        }
+        checkProfiles(flatFields, width, height);
+        if (darkFields != null) {
+            checkProfiles(darkFields, width, height);
+        }
+
+        this.width = width;
+        this.height = height;
+        this.flatFields = flatFields;
+        this.darkFields = darkFields;
+    }
+
+    /**
+     * Estimate the correction from a random sample of input images.
+     * <p>
+     * Only the input images having the most common size are sampled (and can then be corrected). The first z-slice and
+     * timepoint of each sampled image is read at full resolution.
+     * <p>
+     * The sampled images are first binned to about {@value #PROFILE_RESOLUTION} pixels on their smallest side, as
+     * the illumination varies slowly. The flat-field is the median of the binned samples at each position (minus the
+     * dark-field), smoothed, upsampled to the size of the input images, and divided by its mean. The median ignores the
+     * content of the images at a position as long as less than half of the samples have content there, so at least
+     * {@value #MIN_ROBUST_NUMBER_OF_SAMPLES} samples are needed for the content of the images not to leak into the
+     * flat-field, and more are needed when the content covers a large part of the images (a warning is logged when
+     * fewer samples are available). The dark-field is the smoothed minimum of the binned samples, which assumes that
+     * each position is dark in at least one of them. The sample is drawn with a fixed seed, so the same inputs always
+     * give the same correction.
+     *
+     * @param layout the positions and sizes of the input images
+     * @param inputServerPool the pool to use to open the input images. The input at index i of the pool must correspond
+     *                        to the tile at index i of the layout
+     * @param numberOfSamples the maximum number of input images to read. Using more images gives a more accurate
+     *                        estimation but takes more time. At least {@value #MIN_ROBUST_NUMBER_OF_SAMPLES} should be
+     *                        used
+     * @param darkField whether to estimate a dark-field. If false, the dark-field is considered to be zero
+     * @param numberOfThreads the number of threads to use to read the sampled input images
+     * @return the estimated correction
+     * @throws IllegalArgumentException if the number of samples is less than 1
+     * @throws IOException if a sampled input image cannot be read
+     * @throws InterruptedException if this operation is interrupted
+     */
+    public static ShadingCorrection estimate(
+            TileLayout layout,
+            InputServerPool inputServerPool,
+            int numberOfSamples,
+            boolean darkField,
+            int numberOfThreads
+    ) throws IOException, InterruptedException {
+        return estimate(layout, inputServerPool, numberOfSamples, darkField, numberOfThreads, null);
+    }
+
+    /**
+     * Estimate the shading of input images from a sample of them (see
+     * {@link #estimate(TileLayout, InputServerPool, int, boolean, int)}), sharing the threads reading them with other jobs.
+     *
+     * @param layout the positions and sizes of the input images
+     * @param inputServerPool the pool to use to open the input images. The input at index i of the pool must correspond
+     *                        to the tile at index i of the layout
+     * @param numberOfSamples the maximum number of input images to read. Using more images gives a more accurate
+     *                        estimation but takes more time
+     * @param darkField whether to estimate a dark-field. If false, the dark-field is considered to be zero
+     * @param numberOfThreads the number of threads to use to read the sampled input images
+     * @param threadBudget the budget to acquire a permit from before reading a sampled input image. Can be null to only
+     *                     limit the number of threads to the provided number of threads
+     * @return the estimated correction
+     * @throws IllegalArgumentException if the number of samples is less than 1
+     * @throws IOException if a sampled input image cannot be read
+     * @throws InterruptedException if this operation is interrupted
+     */
+    public static ShadingCorrection estimate(
+            TileLayout layout,
+            InputServerPool inputServerPool,
+            int numberOfSamples,
+            boolean darkField,
+            int numberOfThreads,
+            ThreadBudget.Client threadBudget
+    ) throws IOException, InterruptedException {
+        if (numberOfSamples < 1) {
+            throw new IllegalArgumentException(String.format("The number of samples (%d) must be at least 1", numberOfSamples));
+        }
+
+        int[] size = findMostCommonSize(layout);
+        int width = size[0];
+        int height = size[1];
+        List<Integer> candidates = new ArrayList<>(IntStream.range(0, layout.getNumberOfTiles())
+                .filter(i -> layout.getWidth(i) == width && layout.getHeight(i) == height)
+                .boxed()
+                .toList());
+        Collections.shuffle(candidates, new Random(SEED));
+        List<Integer> samples = candidates.subList(0, Math.min(numberOfSamples, candidates.size())).stream().sorted().toList();
+        logger.debug("Estimating shading correction of {}x{} input images from {} samples", width, height, samples.size());
+        if (samples.size() < MIN_ROBUST_NUMBER_OF_SAMPLES) {
+            logger.warn(
+                    "Only {} input images are used to estimate the shading correction, while at least {} are needed for the content of the images not to appear in it",
+                    samples.size(),
+                    MIN_ROBUST_NUMBER_OF_SAMPLES
+            );
+        }
+
+        int binSize = Math.max(1, Math.min(width, height) / PROFILE_RESOLUTION);
+        int binnedWidth = Math.ceilDiv(width, binSize);
+        int binnedHeight = Math.ceilDiv(height, binSize);
+        List<float[][]> binnedSamples = new ArrayList<>(samples.size());
+        try (ExecutorService executorService = Executors.newFixedThreadPool(
+                numberOfThreads,
+                ThreadTools.createThreadFactory("stitcher-shading-", false)
+        )) {
+            // Samples are read in batches and accumulated in a fixed order, so that the result doesn't depend on
+            // which sample is read first, and so that only a batch of samples is in memory at once
+            for (int batchStart=0; batchStart<samples.size(); batchStart+=numberOfThreads) {
+                List<Future<Raster>> futures = samples.subList(batchStart, Math.min(batchStart + numberOfThreads, samples.size())).stream()
+                        .map(sample -> executorService.submit(() -> readInput(inputServerPool, sample, width, height, threadBudget)))
+                        .toList();
+
+                for (Future<Raster> future: futures) {
+                    Raster raster;
+                    try {
+                        raster = future.get();
+                    } catch (ExecutionException e) {
+                        throw new IOException(e.getCause());
+                    } catch (InterruptedException e) {
+                        logger.debug("Shading estimation interrupted. Stopping tasks", e);
+                        executorService.shutdownNow();
+                        throw e;
+                    }
+
+                    binnedSamples.add(bin(raster, width, height, binSize));
+                }
+            }
+        }
+
+        int numberOfChannels = binnedSamples.getFirst().length;
+        float[][] flatFields = new float[numberOfChannels][];
+        float[][] darkFields = darkField ? new float[numberOfChannels][] : null;
+        float[] values = new float[binnedSamples.size()];
+        for (int c=0; c<numberOfChannels; c++) {
+            float[] median = new float[binnedWidth * binnedHeight];
+            float[] minimum = darkField ? new float[binnedWidth * binnedHeight] : null;
+            for (int i=0; i<median.length; i++) {
+                for (int s=0; s<values.length; s++) {
+                    values[s] = binnedSamples.get(s)[c][i];
+                }
+                Arrays.sort(values);
+
+                median[i] = values.length % 2 == 1 ?
+                        values[values.length / 2] :
+                        (values[values.length / 2 - 1] + values[values.length / 2]) / 2;
+                if (minimum != null) {
+                    minimum[i] = values[0];
+                }
+            }
+
+            if (minimum != null) {
+                smooth(minimum, binnedWidth, binnedHeight);
+                for (int i=0; i<median.length; i++) {
+                    median[i] -= minimum[i];
+                }
+                darkFields[c] = upsample(minimum, binnedWidth, binnedHeight, binSize, width, height);
+            }
+            smooth(median, binnedWidth, binnedHeight);
+            flatFields[c] = normalize(upsample(median, binnedWidth, binnedHeight, binSize, width, height));
+        }
+
+        return new ShadingCorrection(width, height, flatFields, darkFields);
+    }
+
+    /**
+     * @return the width of the input images this correction applies to
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height of the input images this correction applies to
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Add the size and the profiles of this correction to the provided digest, so that two corrections giving the
+     * same corrected images update it in the same way.
+     *
+     * @param digest the digest to update
+     */
+    public void updateDigest(MessageDigest digest) {
+        ByteBuffer buffer = ByteBuffer.allocate(Float.BYTES * width * height);
+        digest.update(ByteBuffer.allocate(3 * Integer.BYTES).putInt(width).putInt(height).putInt(darkFields == null ? 0 : 1).array());
+        for (float[][] profiles: darkFields == null ? List.of(flatFields) : List.of(flatFields, darkFields)) {
+            for (float[] profile: profiles) {
+                buffer.clear();
+                buffer.asFloatBuffer().put(profile);
+                digest.update(buffer.array());
+            }
+        }
+    }
+
+    /**
+     * Correct a part of an input image. The provided image is not modified.
+     * <p>
+     * Corrected values are rounded and clamped to the range of the pixel type of the image if it is an integer type.
+     *
+     * @param image the part of the input image to correct. It must have as many bands as this correction has channels
+     * @param x the x-coordinate, in full resolution pixels of the input image, of the top left corner of the part
+     * @param y the y-coordinate, in full resolution pixels of the input image, of the top left corner of the part
+     * @param downsample the downsample of the part relative to the input image
+     * @return a new corrected image
+     * @throws IllegalArgumentException if the image doesn't have as many bands as this correction has channels
+     */
+    public BufferedImage apply(BufferedImage image, int x, int y, double downsample) {
+        WritableRaster corrected = image.getRaster().createCompatibleWritableRaster();
+
+        apply(image.getRaster(), corrected, x, y, downsample);
+
+        return new BufferedImage(image.getColorModel(), corrected, image.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Correct a part of an input image and write the corrected pixels to the provided raster, so that the caller
+     * can reuse its rasters. The provided source is not modified.
+     * <p>
+     * Corrected values are rounded and clamped to the range of the pixel type of the source if it is an integer type.
+     *
+     * @param source the part of the input image to correct. It must have as many bands as this correction has channels
+     * @param destination the raster to write the corrected pixels to. It must have the size, the number of bands and
+     *                    the sample model type of the source. Can be the source itself to correct it in place
+     * @param x the x-coordinate, in full resolution pixels of the input image, of the top left corner of the part
+     * @param y the y-coordinate, in full resolution pixels of the input image, of the top left corner of the part
+     * @param downsample the downsample of the part relative to the input image
+     * @throws IllegalArgumentException if the source doesn't have as many bands as this correction has channels, or if
+     * the destination doesn't have the size of the source
+     */
+    public void apply(Raster source, WritableRaster destination, int x, int y, double downsample) {
+        if (source.getNumBands() != flatFields.length) {
+            throw new IllegalArgumentException(String.format(
+                    "The image has %d bands, while the correction has %d channels",
+                    source.getNumBands(),
+                    flatFields.length
+            ));
+        }
+        if (destination.getWidth() != source.getWidth() || destination.getHeight() != source.getHeight()) {
+            throw new IllegalArgumentException(String.format(
+                    "The destination (%dx%d) doesn't have the size of the source (%dx%d)",
+                    destination.getWidth(),
+                    destination.getHeight(),
+                    source.getWidth(),
+                    source.getHeight()
+            ));
+        }
+
+        int[] columns = new int[source.getWidth()];
+        for (int i=0; i<columns.length; i++) {
+            columns[i] = getInputCoordinate(x, i, downsample, width);
+        }
+        float[] samples = new float[source.getWidth()];
+
+        for (int b=0; b<source.getNumBands(); b++) {
+            double[] range = getRange(source.getSampleModel(), b);
+
+            for (int j=0; j<source.getHeight(); j++) {
+                int offset = getInputCoordinate(y, j, downsample, height) * width;
+                source.getSamples(source.getMinX(), source.getMinY() + j, source.getWidth(), 1, b, samples);
+
+                for (int i=0; i<samples.length; i++) {
+                    float value = darkFields == null ? samples[i] : samples[i] - darkFields[b][offset + columns[i]];
+                    value /= flatFields[b][offset + columns[i]];
+
+                    samples[i] = range == null ? value : (float) Math.clamp(Math.round(value), range[0], range[1]);
+                }
+
+                destination.setSamples(destination.getMinX(), destination.getMinY() + j, source.getWidth(), 1, b, samples);
+            }
+        }
+    }
+
+    private static int[] findMostCommonSize(TileLayout layout) {
+        Map<List<Integer>, Integer> counts = new HashMap<>();
+        for (int i=0; i<layout.getNumberOfTiles(); i++) {
+            counts.merge(List.of(layout.getWidth(i), layout.getHeight(i)), 1, Integer::sum);
+        }
+
+        List<Integer> size = Collections.max(counts.entrySet(), Map.Entry.comparingByValue()).getKey();
+        return new int[] {size.get(0), size.get(1)};
+    }
+
+    private static Raster readInput(
+            InputServerPool inputServerPool,
+            int input,
+            int width,
+            int height,
+            ThreadBudget.Client threadBudget
+    ) throws IOException, InterruptedException {
+        try (
+                ThreadBudget.Permit ignored = threadBudget == null ? null : threadBudget.acquire();
+                InputServerPool.Lease lease = inputServerPool.acquire(input)
+        ) {
+            ImageServer<BufferedImage> server = lease.server();
+
+            return server.readRegion(RegionRequest.createInstance(server.getPath(), 1, 0, 0, width, height, 0, 0)).getRaster();
+        }
+    }
+
+    /**
+     * Reduce the size of each band of the provided raster by averaging square bins of the provided size. Bins on the
+     * right and bottom borders may be truncated to the raster.
+     */
+    private static float[][] bin(Raster raster, int width, int height, int binSize) {
+        int binnedWidth = Math.ceilDiv(width, binSize);
+        int binnedHeight = Math.ceilDiv(height, binSize);
+        float[][] binned = new float[raster.getNumBands()][binnedWidth * binnedHeight];
+        float[] samples = new float[width];
+
+        for (int b=0; b<binned.length; b++) {
+            for (int j=0; j<height; j++) {
+                raster.getSamples(raster.getMinX(), raster.getMinY() + j, width, 1, b, samples);
+
+                int offset = j / binSize * binnedWidth;
+                for (int i=0; i<width; i++) {
+                    binned[b][offset + i / binSize] += samples[i];
+                }
+            }
+
+            for (int j=0; j<binnedHeight; j++) {
+                int binHeight = Math.min(height, (j + 1) * binSize) - j * binSize;
+                for (int i=0; i<binnedWidth; i++) {
+                    int binWidth = Math.min(width, (i + 1) * binSize) - i * binSize;
+                    binned[b][j * binnedWidth + i] /= binWidth * binHeight;
+                }
+            }
+        }
+
+        return binned;
+    }
+
+    /**
+     * Bilinearly interpolate a profile binned with {@link #bin(Raster, int, int, int)} back to the provided size. The
+     * value of each bin is located at the center of the bin.
+     */
+    private static float[] upsample(float[] profile, int binnedWidth, int binnedHeight, int binSize, int width, int height) {
+        if (binSize == 1) {
+            return profile;
+        }
+
+        float[] upsampled = new float[width * height];
+        for (int j=0; j<height; j++) {
+            double y = Math.clamp((j + 0.5) / binSize - 0.5, 0, binnedHeight - 1);
+            int y0 = (int) y;
+            int y1 = Math.min(y0 + 1, binnedHeight - 1);
+            double dy = y - y0;
+
+            for (int i=0; i<width; i++) {
+                double x = Math.clamp((i + 0.5) / binSize - 0.5, 0, binnedWidth - 1);
+                int x0 = (int) x;
+                int x1 = Math.min(x0 + 1, binnedWidth - 1);
+                double dx = x - x0;
+
+                double top = profile[y0 * binnedWidth + x0] * (1 - dx) + profile[y0 * binnedWidth + x1] * dx;
+                double bottom = profile[y1 * binnedWidth + x0] * (1 - dx) + profile[y1 * binnedWidth + x1] * dx;
+                upsampled[j * width + i] = (float) (top * (1 - dy) + bottom * dy);
+            }
+        }
+        return upsampled;
+    }
+
+    /**
+     * Smooth the provided profile in place by applying twice a box filter whose size depends on the size of the
+     * profile. Near the borders, the box is truncated to the profile.
+     */
+    private static void smooth(float[] profile, int width, int height) {
+        int radius = Math.max(1, Math.min(width, height) / SMOOTHING_FRACTION);
+        float[] line = new float[Math.max(width, height)];
+
+        for (int pass=0; pass<2; pass++) {
+            for (int j=0; j<height; j++) {
+                boxFilter(profile, j * width, 1, width, radius, line);
+            }
+            for (int i=0; i<width; i++) {
+                boxFilter(profile, i, width, height, radius, line);
+            }
+        }
+    }
+
+    private static void boxFilter(float[] values, int start, int stride, int length, int radius, float[] line) {
+        for (int i=0; i<length; i++) {
+            line[i] = values[start + i * stride];
+        }
+
+        double sum = 0;
+        for (int i=0; i<Math.min(radius, length); i++) {
+            sum += line[i];
+        }
+        for (int i=0; i<length; i++) {
+            if (i + radius < length) {
+                sum += line[i + radius];
+            }
+            if (i - radius - 1 >= 0) {
+                sum -= line[i - radius - 1];
+            }
+
+            int count = Math.min(length - 1, i + radius) - Math.max(0, i - radius) + 1;
+            values[start + i * stride] = (float) (sum / count);
+        }
+    }
+
+    private static float[] normalize(float[] profile) {
+        double mean = 0;
+        for (float value: profile) {
+            mean += value;
+        }
+        mean /= profile.length;
+
+        if (mean <= 0) {
+            logger.warn("The sampled input images are empty. Their illumination won't be corrected");
+            Arrays.fill(profile, 1);
+        } else {
+            for (int i=0; i<profile.length; i++) {
+                profile[i] = (float) Math.max(MIN_FLAT_FIELD, profile[i] / mean);
+            }
+        }
+        return profile;
+    }
+
+    private static void checkProfiles(float[][] profiles, int width, int height) {
+        for (float[] profile: profiles) {
+            if (profile.length != width * height) {
+                throw new IllegalArgumentException(String.format(
+                        "A profile has %d values, while %d (%dx%d) were expected",
+                        profile.length,
+                        width * height,
+                        width,
+                        height
+                ));
+            }
+        }
+    }
+
+    private static double[] getRange(SampleModel sampleModel, int band) {
+        if (sampleModel instanceof SinglePixelPackedSampleModel) {
+            return new double[] {0, (1L << sampleModel.getSampleSize(band)) - 1};
+        }
+
+        return switch (sampleModel.getDataType()) {
+            case DataBuffer.TYPE_BYTE -> new double[] {0, 255};
+            case DataBuffer.TYPE_USHORT -> new double[] {0, 65535};
+            case DataBuffer.TYPE_SHORT -> new double[] {Short.MIN_VALUE, Short.MAX_VALUE};
+            case DataBuffer.TYPE_INT -> new double[] {Integer.MIN_VALUE, Integer.MAX_VALUE};
+            default -> null;
+        };
+    }
+
+    private static int getInputCoordinate(int start, int index, double downsample, int size) {
+        return Math.min(size - 1, (int) (start + (index + 0.5) * downsample));
+    }
+}
@@ -0,0 +1,593 @@
+package qupath.ext.stitching.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import qupath.lib.images.servers.AbstractTileableImageServer;
+import qupath.lib.images.servers.ImageServer;
+import qupath.lib.images.servers.ImageServerBuilder;
+import qupath.lib.images.servers.ImageServerMetadata;
+import qupath.lib.images.servers.TileRequest;
+import qupath.lib.regions.RegionRequest;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * An image server that combines several input images placed at fixed positions into a single image. Parts of the
+ * image not covered by any input image are filled with zeros.
+ * <p>
+ * Input images are only opened (through an {@link InputServerPool}) when one of their pixels is needed, and closing
+ * this server closes the pool.
+ */
+class StitchedImageServer extends AbstractTileableImageServer {
+
+    private static final Logger logger = LoggerFactory.getLogger(StitchedImageServer.class);
+    private static final int TILE_SIZE = 512;
+    private final List<InputDescriptor> inputs;
+    private final InputServerPool inputServerPool;
+    private final TileLayout layout;
+    private final BlendingMode blendingMode;
+    private final OverlapBlender overlapBlender;
+    private final ShadingCorrection shadingCorrection;
+    private final PendingInputs pendingInputs;
+    private final MemoryBudget memoryBudget;
+    private final ThreadBudget.Client threadBudget;
+    private final ImageServerMetadata metadata;
+    private final String id = UUID.randomUUID().toString();
+    private final ThreadLocal<List<WritableRaster>> correctedPartBuffers = ThreadLocal.withInitial(ArrayList::new);
+    private volatile BufferedImage emptyTileTemplate;
+
+    private StitchedImageServer(Builder builder) throws IOException {
+        if (builder.inputs.size() != builder.layout.getNumberOfTiles()) {
+            throw new IllegalArgumentException(String.format(
+                    "The number of inputs (%d) doesn't match the number of tiles of the layout (%d)",
+                    builder.inputs.size(),
+                    builder.layout.getNumberOfTiles()
+            ));
+        }
+        this.inputs = List.copyOf(builder.inputs);
+        this.inputServerPool = builder.inputServerPool;
+        this.layout = builder.layout;
+        this.blendingMode = builder.blendingMode;
+        this.overlapBlender = new OverlapBlender(builder.blendingMode);
+        this.shadingCorrection = builder.shadingCorrection;
+        this.pendingInputs = builder.pendingInputs;
+        this.memoryBudget = builder.memoryBudget;
+        this.threadBudget = builder.threadBudget;
+
+        InputDescriptor firstInput = this.inputs.getFirst();
+        int sizeZ = 1;
+        int sizeT = 1;
+        for (InputDescriptor input: this.inputs) {
+            if (input.sizeC() != firstInput.sizeC() || input.pixelType() != firstInput.pixelType()) {
+                throw new IllegalArgumentException(String.format(
+                        "%s has %d channels of type %s, while %s has %d channels of type %s",
+                        input.uris(),
+                        input.sizeC(),
+                        input.pixelType(),
+                        firstInput.uris(),
+                        firstInput.sizeC(),
+                        firstInput.pixelType()
+                ));
+            }
+
+            sizeZ = Math.max(sizeZ, input.sizeZ());
+            sizeT = Math.max(sizeT, input.sizeT());
+        }
+
+        ImageServerMetadata firstMetadata;
+        try (InputServerPool.Lease lease = inputServerPool.acquire(0)) {
+            firstMetadata = lease.server().getMetadata();
+        }
+
+        this.metadata = new ImageServerMetadata.Builder(firstMetadata)
+                .width(layout.getWidth())
+                .height(layout.getHeight())
+                .sizeZ(sizeZ)
+                .sizeT(sizeT)
+                .preferredTileSize(builder.tileShape.width(), builder.tileShape.height())
+                .levelsFromDownsamples(1)
+                .build();
+        logger.debug("Created stitched image server of size {}x{} from {} inputs", layout.getWidth(), layout.getHeight(), this.inputs.size());
+    }
+
+    /**
+     * Create a tile by copying the parts of the input images that intersect it (found with the spatial index of the
+     * {@link TileLayout}) into a new raster. Tiles are kept by the tile cache of QuPath and by the writers using this
+     * server, so their rasters cannot be reused (see {@link #drawInputs(WritableRaster, int, int, int, int)} otherwise).
+     * <p>
+     * This first waits until the input images intersecting the tile are parsed, and then acquires a permit from the
+     * thread budget and reserves the bytes of the tile and of the parts it contains from the memory budget (if they
+     * were provided to the {@link Builder}). Both are released once the tile is returned.
+     *
+     * @param tileRequest the tile to read
+     * @return a new image containing the tile
+     * @throws IOException if an input image cannot be read, or if the calling thread is interrupted while waiting
+     */
+    @Override
+    protected BufferedImage readTile(TileRequest tileRequest) throws IOException {
+        int tileX = tileRequest.getImageX();
+        int tileY = tileRequest.getImageY();
+        double downsample = tileRequest.getDownsample();
+        int[] intersectingInputs = layout.findTiles(tileX, tileY, tileRequest.getImageWidth(), tileRequest.getImageHeight());
+
+        awaitInputs(intersectingInputs);
+
+        long bytes = MemoryBudget.getImageBytes(tileRequest.getTileWidth(), tileRequest.getTileHeight(), nChannels(), getPixelType()) +
+                getInputBytes(intersectingInputs, tileX, tileY, tileRequest.getImageWidth(), tileRequest.getImageHeight(), downsample);
+        try (ThreadBudget.Permit ignoredPermit = acquirePermit(); MemoryBudget.Reservation ignoredReservation = reserve(bytes)) {
+            List<OverlapBlender.Part> parts = new ArrayList<>();
+            BufferedImage template = null;
+            for (int i: intersectingInputs) {
+                int x1 = Math.max(tileX, layout.getX(i));
+                int y1 = Math.max(tileY, layout.getY(i));
+
+                BufferedImage part = readInput(
+                        i,
+                        x1,
+                        y1,
+                        Math.min(tileX + tileRequest.getImageWidth(), layout.getX(i) + layout.getWidth(i)),
+                        Math.min(tileY + tileRequest.getImageHeight(), layout.getY(i) + layout.getHeight(i)),
+                        downsample,
+                        tileRequest.getZ(),
+                        tileRequest.getT(),
+                        parts.size()
+                );
+                if (part == null) {
+                    continue;
+                }
+
+                if (template == null) {
+                    template = part;
+                }
+                parts.add(createPart(
+                        i,
+                        part,
+                        (int) Math.round((x1 - tileX) / downsample),
+                        (int) Math.round((y1 - tileY) / downsample),
+                        x1,
+                        y1,
+                        downsample
+                ));
+            }
+
+            if (template == null) {
+                return createEmptyImage(tileRequest.getTileWidth(), tileRequest.getTileHeight());
+            } else {
+                BufferedImage tile = createTile(template, tileRequest.getTileWidth(), tileRequest.getTileHeight());
+                overlapBlender.blend(parts, tile.getRaster());
+                return tile;
+            }
+        }
+    }
+
+    @Override
+    protected ImageServerBuilder.ServerBuilder<BufferedImage> createServerBuilder() {
+        // This server is built from an input server pool and positions that are not serializable
+        return null;
+    }
+
+    @Override
+    protected String createID() {
+        return getClass().getName() + ": " + id;
+    }
+
+    @Override
+    public Collection<URI> getURIs() {
+        return inputs.stream()
+                .flatMap(input -> input.uris().stream())
+                .toList();
+    }
+
+    @Override
+    public String getServerType() {
+        return "Stitched image server";
+    }
+
+    @Override
+    public ImageServerMetadata getOriginalMetadata() {
+        return metadata;
+    }
+
+    @Override
+    public void close() throws Exception {
+        super.close();
+
+        inputServerPool.close();
+    }
+
+    /**
+     * @return the positions and sizes of the input images of this server
+     */
+    TileLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * @return the strategy used to resolve pixels covered by several input images
+     */
+    BlendingMode getBlendingMode() {
+        return blendingMode;
+    }
+
+    /**
+     * @return the correction applied to the input images, or null if they are not corrected
+     */
+    ShadingCorrection getShadingCorrection() {
+        return shadingCorrection;
+    }
+
+    /**
+     * Get the number of bytes used by the parts of the input images intersecting the provided region when they are read.
+     * This includes the copies created by the shading correction.
+     * <p>
+     * {@link #drawInputs(WritableRaster, int, int, int, int)} doesn't reserve these bytes from the memory budget, so its
+     * caller should reserve them before.
+     *
+     * @param x the x-coordinate of the region, in the coordinates of this server. Can be negative
+     * @param y the y-coordinate of the region, in the coordinates of this server. Can be negative
+     * @param width the width of the region
+     * @param height the height of the region
+     * @param downsample the downsample at which the input images are read
+     * @return the number of bytes used by the parts of the input images intersecting the provided region
+     */
+    long getInputBytes(int x, int y, int width, int height, double downsample) {
+        return getInputBytes(layout.findTiles(x, y, width, height), x, y, width, height, downsample);
+    }
+
+    /**
+     * Wait until the input images intersecting the provided region are parsed. This should be called before acquiring
+     * a permit from a thread budget or reserving memory to draw the region, so that no permit or memory is held while
+     * waiting for the parsing.
+     *
+     * @param x the x-coordinate of the region, in the coordinates of this server. Can be negative
+     * @param y the y-coordinate of the region, in the coordinates of this server. Can be negative
+     * @param width the width of the region
+     * @param height the height of the region
+     * @throws IOException if the calling thread is interrupted while waiting
+     */
+    void awaitInputs(int x, int y, int width, int height) throws IOException {
+        awaitInputs(layout.findTiles(x, y, width, height));
+    }
+
+    /**
+     * Draw the full resolution pixels of the input images intersecting the provided region on top of the provided raster.
+     * Pixels of the raster not covered by any input image are left unchanged.
+     * <p>
+     * Unlike {@link #readTile(TileRequest)}, this lets callers that control the lifetime of their rasters reuse them.
+     * Each part of an input image is still read into a new image (or a tile cached by its input server), as QuPath
+     * servers cannot read pixels into an existing raster.
+     *
+     * @param destination the raster to draw on. Its width and height define the size of the region
+     * @param x the x-coordinate of the region, in the coordinates of this server. Can be negative
+     * @param y the y-coordinate of the region, in the coordinates of this server. Can be negative
+     * @param z the z-slice of the region
+     * @param t the timepoint of the region
+     * @return whether all input images intersecting the region were drawn. This is false if an input image could not
+     * be used or doesn't have the provided z-slice or timepoint
+     * @throws IOException if an input image cannot be read
+     */
+    boolean drawInputs(WritableRaster destination, int x, int y, int z, int t) throws IOException {
+        List<OverlapBlender.Part> parts = new ArrayList<>();
+        boolean allInputsDrawn = true;
+        for (int i: layout.findTiles(x, y, destination.getWidth(), destination.getHeight())) {
+            int x1 = Math.max(x, layout.getX(i));
+            int y1 = Math.max(y, layout.getY(i));
+
+            BufferedImage part = readInput(
+                    i,
+                    x1,
+                    y1,
+                    Math.min(x + destination.getWidth(), layout.getX(i) + layout.getWidth(i)),
+                    Math.min(y + destination.getHeight(), layout.getY(i) + layout.getHeight(i)),
+                    1,
+                    z,
+                    t,
+                    parts.size()
+            );
+            if (part == null) {
+                allInputsDrawn = false;
+            } else {
+                parts.add(createPart(i, part, x1 - x, y1 - y, x1, y1, 1));
+            }
+        }
+
+        overlapBlender.blend(parts, destination);
+        return allInputsDrawn;
+    }
+
+    /**
+     * Create an image filled with zeros that has the same raster and color model as the tiles of this server.
+     *
+     * @param width the width of the image to create
+     * @param height the height of the image to create
+     * @return an empty image of the provided size
+     * @throws IOException if the first input image cannot be read to determine the raster and color model to use
+     */
+    BufferedImage createEmptyImage(int width, int height) throws IOException {
+        return createTile(getEmptyTileTemplate(), width, height);
+    }
+
+    private long getInputBytes(int[] intersectingInputs, int x, int y, int width, int height, double downsample) {
+        long bytes = 0;
+        for (int i: intersectingInputs) {
+            int partWidth = Math.min(x + width, layout.getX(i) + layout.getWidth(i)) - Math.max(x, layout.getX(i));
+            int partHeight = Math.min(y + height, layout.getY(i) + layout.getHeight(i)) - Math.max(y, layout.getY(i));
+
+            bytes += MemoryBudget.getImageBytes(
+                    (int) Math.ceil(partWidth / downsample),
+                    (int) Math.ceil(partHeight / downsample),
+                    nChannels(),
+                    getPixelType()
+            );
+        }
+
+        // The shading correction writes a corrected copy of each part to the buffers of the reading thread
+        return shadingCorrection == null ? bytes : 2 * bytes;
+    }
+
+    private void awaitInputs(int[] intersectingInputs) throws IOException {
+        if (pendingInputs != null) {
+            for (int i: intersectingInputs) {
+                pendingInputs.await(i);
+            }
+        }
+    }
+
+    private ThreadBudget.Permit acquirePermit() throws IOException {
+        if (threadBudget == null) {
+            return null;
+        }
+
+        try {
+            return threadBudget.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a thread to read a tile");
+        }
+    }
+
+    private MemoryBudget.Reservation reserve(long bytes) throws IOException {
+        if (memoryBudget == null) {
+            return null;
+        }
+
+        try {
+            return memoryBudget.reserve(bytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(String.format("Interrupted while reserving %d bytes to read a tile", bytes));
+        }
+    }
+
+    /**
+     * Read a part of an input image. If it is corrected, the returned image uses the corrected part buffer of the
+     * calling thread at the provided index, so it must not be used once the parts of the current tile are blended.
+     */
+    private BufferedImage readInput(int input, int x1, int y1, int x2, int y2, double downsample, int z, int t, int part) throws IOException {
+        InputDescriptor descriptor = pendingInputs == null ? inputs.get(input) : pendingInputs.await(input);
+        if (descriptor == null || z >= descriptor.sizeZ() || t >= descriptor.sizeT()) {
+            return null;
+        }
+
+        BufferedImage image;
+        try (InputServerPool.Lease lease = inputServerPool.acquire(input)) {
+            ImageServer<BufferedImage> server = lease.server();
+
+            image = server.readRegion(RegionRequest.createInstance(
+                    server.getPath(),
+                    downsample,
+                    x1 - layout.getX(input),
+                    y1 - layout.getY(input),
+                    x2 - x1,
+                    y2 - y1,
+                    z,
+                    t
+            ));
+        }
+
+        if (image != null && shadingCorrection != null &&
+                layout.getWidth(input) == shadingCorrection.getWidth() && layout.getHeight(input) == shadingCorrection.getHeight()) {
+            // The corrected image is a copy, because the read image may be cached by the input server
+            WritableRaster corrected = getCorrectedPartBuffer(part, image.getRaster());
+            shadingCorrection.apply(image.getRaster(), corrected, x1 - layout.getX(input), y1 - layout.getY(input), downsample);
+
+            return new BufferedImage(image.getColorModel(), corrected, image.isAlphaPremultiplied(), null);
+        } else {
+            return image;
+        }
+    }
+
+    private WritableRaster getCorrectedPartBuffer(int part, Raster raster) {
+        List<WritableRaster> buffers = correctedPartBuffers.get();
+        while (buffers.size() <= part) {
+            buffers.add(null);
+        }
+
+        WritableRaster buffer = buffers.get(part);
+        if (buffer == null || buffer.getWidth() < raster.getWidth() || buffer.getHeight() < raster.getHeight() ||
+                buffer.getNumBands() != raster.getNumBands() ||
+                buffer.getSampleModel().getClass() != raster.getSampleModel().getClass() ||
+                buffer.getSampleModel().getDataType() != raster.getSampleModel().getDataType()
+        ) {
+            buffer = raster.createCompatibleWritableRaster(
+                    buffer == null ? raster.getWidth() : Math.max(buffer.getWidth(), raster.getWidth()),
+                    buffer == null ? raster.getHeight() : Math.max(buffer.getHeight(), raster.getHeight())
+            );
+            buffers.set(part, buffer);
+        }
+
+        return buffer.createWritableChild(0, 0, raster.getWidth(), raster.getHeight(), 0, 0, null);
+    }
+
+    private BufferedImage getEmptyTileTemplate() throws IOException {
+        if (emptyTileTemplate == null) {
+            try (InputServerPool.Lease lease = inputServerPool.acquire(0)) {
+                ImageServer<BufferedImage> server = lease.server();
+                emptyTileTemplate = server.readRegion(RegionRequest.createInstance(server.getPath(), 1, 0, 0, 1, 1, 0, 0));
+            }
+        }
+        return emptyTileTemplate;
+    }
+
+    private static BufferedImage createTile(BufferedImage template, int width, int height) {
+        WritableRaster raster = template.getRaster().createCompatibleWritableRaster(width, height);
+
+        return new BufferedImage(template.getColorModel(), raster, template.isAlphaPremultiplied(), null);
+    }
+
+    private OverlapBlender.Part createPart(int input, BufferedImage part, int x, int y, int x1, int y1, double downsample) {
+        return new OverlapBlender.Part(
+                part.getRaster(),
+                x,
+                y,
+                x1 - layout.getX(input),
+                y1 - layout.getY(input),
+                layout.getWidth(input),
+                layout.getHeight(input),
+                downsample
+        );
+    }
+
+    /**
+     * A builder to create a {@link StitchedImageServer}.
+     */
+    public static class Builder {
+
+        private final List<InputDescriptor> inputs;
+        private final InputServerPool inputServerPool;
+        private final TileLayout layout;
+        private BlendingMode blendingMode = BlendingMode.NONE;
+        private ShadingCorrection shadingCorrection = null;
+        private PendingInputs pendingInputs = null;
+        private MemoryBudget memoryBudget = null;
+        private ChunkShape tileShape = new ChunkShape(TILE_SIZE, TILE_SIZE);
+        private ThreadBudget.Client threadBudget = null;
+
+        /**
+         * Create the builder. All input images must have the same number of channels and the same pixel type, and the
+         * metadata of the first input image is used as a basis for the metadata of the server.
+         *
+         * @param inputs descriptions of the input images to combine. If {@link #pendingInputs(PendingInputs) pending inputs}
+         *               are provided, these descriptions are provisional and only used to determine the metadata of the
+         *               server. The input at index i corresponds to the tile i of the provided layout
+         * @param inputServerPool the pool to use to open the input images. The input at index i of the pool must correspond
+         *                        to the input at index i of the provided list. It will be closed when the server is closed
+         * @param layout the positions and sizes of the input images
+         * @throws NullPointerException if one of the provided parameters is null
+         */
+        public Builder(List<InputDescriptor> inputs, InputServerPool inputServerPool, TileLayout layout) {
+            this.inputs = Objects.requireNonNull(inputs);
+            this.inputServerPool = Objects.requireNonNull(inputServerPool);
+            this.layout = Objects.requireNonNull(layout);
+        }
+
+        /**
+         * Set the strategy to use to resolve pixels covered by several input images. {@link BlendingMode#NONE} by default,
+         * in which case the input image with the highest index in the {@link TileLayout} is drawn on top.
+         *
+         * @param blendingMode the strategy to use to resolve pixels covered by several input images
+         * @return this builder
+         * @throws NullPointerException if the provided parameter is null
+         */
+        public Builder blendingMode(BlendingMode blendingMode) {
+            this.blendingMode = Objects.requireNonNull(blendingMode);
+            return this;
+        }
+
+        /**
+         * Set the correction to apply to the input images. The input images are not corrected by default.
+         * <p>
+         * The correction is applied to each part of an input image as soon as it is read. The read part may be a tile
+         * cached by the input server, so it is not corrected in place but in rasters reused by each thread between calls.
+         *
+         * @param shadingCorrection the correction to apply to the input images. Can be null to not correct them
+         * @return this builder
+         */
+        public Builder shadingCorrection(ShadingCorrection shadingCorrection) {
+            this.shadingCorrection = shadingCorrection;
+            return this;
+        }
+
+        /**
+         * Set the final descriptions of input images that may still be parsed. All input images are considered parsed
+         * by default.
+         * <p>
+         * Each input image is only read once it is completed in the provided pending inputs, which replace the
+         * descriptors given to {@link #Builder(List, InputServerPool, TileLayout)}. Inputs completed with null are
+         * considered not to cover any pixel. The first input image must already be parsed, as its metadata is used by
+         * the server.
+         *
+         * @param pendingInputs the final descriptions of the input images, which must have as many inputs as the
+         *                      descriptions given to {@link #Builder(List, InputServerPool, TileLayout)}. Can be null if
+         *                      all input images are already parsed
+         * @return this builder
+         */
+        public Builder pendingInputs(PendingInputs pendingInputs) {
+            this.pendingInputs = pendingInputs;
+            return this;
+        }
+
+        /**
+         * Limit the memory used when reading tiles. The memory is not limited by default. Reading a tile waits if the
+         * budget is reached.
+         *
+         * @param memoryBudget the budget to reserve the bytes of a tile and of the input images it contains from before
+         *                     reading it. Can be null to not limit the memory used
+         * @return this builder
+         */
+        public Builder memoryBudget(MemoryBudget memoryBudget) {
+            this.memoryBudget = memoryBudget;
+            return this;
+        }
+
+        /**
+         * Set the preferred size of the tiles of the server. Tiles aligned with the input images (see
+         * {@link ChunkShape#fromLayout(TileLayout, int)}) are faster to read. 512x512 by default.
+         *
+         * @param tileShape the preferred size of the tiles of the server
+         * @return this builder
+         * @throws NullPointerException if the provided parameter is null
+         */
+        public Builder tileShape(ChunkShape tileShape) {
+            this.tileShape = Objects.requireNonNull(tileShape);
+            return this;
+        }
+
+        /**
+         * Limit the threads reading tiles, so that the threads reading tiles of several servers at the same time share
+         * the same budget. The number of threads is not limited by default.
+         *
+         * @param threadBudget the budget to acquire a permit from before reading a tile (and before reserving its bytes
+         *                     from the memory budget). Can be null to not limit the number of threads reading tiles
+         * @return this builder
+         */
+        public Builder threadBudget(ThreadBudget.Client threadBudget) {
+            this.threadBudget = threadBudget;
+            return this;
+        }
+
+        /**
+         * Create the server. This opens the first input image to retrieve its metadata.
+         *
+         * @return a new server
+         * @throws NullPointerException if the list given to {@link #Builder(List, InputServerPool, TileLayout)} contains
+         * null elements
+         * @throws IllegalArgumentException if the number of inputs doesn't match the number of tiles of the layout, or if
+         * the input images don't all have the same number of channels and pixel type
+         * @throws IOException if the first input image cannot be opened to retrieve its metadata
+         */
+        public StitchedImageServer build() throws IOException {
+            return new StitchedImageServer(this);
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package qupath.ext.stitching.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import qupath.lib.common.ThreadTools;
+
+import java.util.Objects;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A scheduler running many stitching jobs while sharing one thread budget between them.
+ * <p>
+ * Each job creates an {@link ImageStitcher} from a {@link ImageStitcher.Builder} and does something with it (for
+ * example writing the stitched image). At most {@link Builder#maxConcurrentJobs(int)} jobs run at the same time, and
+ * the other jobs wait in a queue (see {@link #getQueueDepth()}).
+ * <p>
+ * Running jobs share two budgets: a CPU budget limiting the number of threads reading and writing images (see
+ * {@link ImageStitcher.Builder#numberOfThreads(int)}) across all jobs, and an I/O budget limiting the number of input
+ * images parsed at the same time (see {@link ImageStitcher.Builder#maxConcurrentParsing(int)}) across all jobs. A job
+ * can then parse its input images while another one writes its output image, without the jobs running more threads
+ * than the machine can handle. The threads of the OME-TIFF writer (which compress tiles between reads) hold their
+ * CPU permits for the whole write, so an OME-TIFF write uses as many threads as the CPU budget could give it when it
+ * started.
+ * <p>
+ * The {@link SchedulingPolicy} determines which job starts first and which job gets a thread when one is released.
+ * <p>
+ * An instance of this class must be {@link #close() closed} once it is not used anymore.
+ * <p>
+ * This class is thread-safe.
+ */
+public class StitchingScheduler implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(StitchingScheduler.class);
+    private final SchedulingPolicy schedulingPolicy;
+    private final ThreadBudget cpuBudget;
+    private final ThreadBudget ioBudget;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong submissionCounter = new AtomicLong(0);
+    /**
+     * How jobs are ordered by a {@link StitchingScheduler}.
+     */
+    public enum SchedulingPolicy {
+        /**
+         * Jobs start in the order they were submitted, and a released thread is given to the running job using the
+         * fewest threads, so that running jobs progress at the same pace.
+         */
+        FAIR,
+        /**
+         * Jobs with the highest priority start first (then in the order they were submitted), and a released thread
+         * is given to the running job with the highest priority, so that urgent jobs finish as soon as possible.
+         */
+        PRIORITY
+    }
+    /**
+     * Something to do with the stitcher of a job.
+     */
+    @FunctionalInterface
+    public interface Job {
+
+        /**
+         * Run the job. The stitcher is closed once this function returns.
+         *
+         * @param imageStitcher the stitcher created for the job
+         * @throws Exception if the job fails
+         */
+        void run(ImageStitcher imageStitcher) throws Exception;
+    }
+    private class ScheduledJob extends FutureTask<Void> implements Comparable<ScheduledJob> {
+
+        private final int priority;
+        private final long submissionIndex;
+
+        public ScheduledJob(ImageStitcher.Builder builder, Job job, int priority) {
+            super(() -> {
+                try (
+                        ThreadBudget.Client cpuClient = cpuBudget.register(priority);
+                        ThreadBudget.Client ioClient = ioBudget.register(priority);
+                        ImageStitcher imageStitcher = builder.threadBudgets(cpuClient, ioClient).build()
+                ) {
+                    job.run(imageStitcher);
+                }
+                return null;
+            });
+
+            this.priority = priority;
+            this.submissionIndex = submissionCounter.getAndIncrement();
+        }
+
+        @Override
+        public int compareTo(ScheduledJob other) {
+            if (schedulingPolicy == SchedulingPolicy.PRIORITY && priority != other.priority) {
+                return Integer.compare(other.priority, priority);
+            }
+            return Long.compare(submissionIndex, other.submissionIndex);
+        }
+    }
+
+    private StitchingScheduler(Builder builder) {
+        this.schedulingPolicy = builder.schedulingPolicy;
+        this.cpuBudget = new ThreadBudget(builder.cpuThreads, schedulingPolicy);
+        this.ioBudget = new ThreadBudget(builder.ioThreads, schedulingPolicy);
+        this.executor = new ThreadPoolExecutor(
+                builder.maxConcurrentJobs,
+                builder.maxConcurrentJobs,
+                0,
+                TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(),
+                ThreadTools.createThreadFactory("stitching-scheduler-", false)
+        );
+        logger.debug(
+                "Created scheduler with {} CPU threads, {} I/O threads and {} concurrent jobs ({} policy)",
+                builder.cpuThreads,
+                builder.ioThreads,
+                builder.maxConcurrentJobs,
+                schedulingPolicy
+        );
+    }
+
+    /**
+     * Submit a job with a priority of 0.
+     *
+     * @param builder the builder to create the stitcher of the job from. It must not be used anymore once submitted
+     * @param job what to do with the stitcher
+     * @return a future completing when the job is done, or completing exceptionally if the stitcher cannot be created
+     * or if the job fails. Cancelling it interrupts the job
+     * @throws NullPointerException if one of the provided parameters is null
+     * @throws java.util.concurrent.RejectedExecutionException if this scheduler is closed
+     */
+    public Future<Void> submit(ImageStitcher.Builder builder, Job job) {
+        return submit(builder, job, 0);
+    }
+
+    /**
+     * Submit a job.
+     *
+     * @param builder the builder to create the stitcher of the job from. It must not be used anymore once submitted
+     * @param job what to do with the stitcher
+     * @param priority the priority of the job. Jobs with a higher priority start first and get threads first with the
+     *                 {@link SchedulingPolicy#PRIORITY} policy. Not used with the {@link SchedulingPolicy#FAIR} policy
+     * @return a future completing when the job is done, or completing exceptionally if the stitcher cannot be created
+     * or if the job fails. Cancelling it interrupts the job
+     * @throws NullPointerException if one of the provided parameters is null
+     * @throws java.util.concurrent.RejectedExecutionException if this scheduler is closed
+     */
+    public Future<Void> submit(ImageStitcher.Builder builder, Job job, int priority) {
+        ScheduledJob scheduledJob = new ScheduledJob(Objects.requireNonNull(builder), Objects.requireNonNull(job), priority);
+        logger.debug("Submitting job with priority {} ({} jobs waiting)", priority, getQueueDepth());
+
+        executor.execute(scheduledJob);
+        return scheduledJob;
+    }
+
+    /**
+     * @return the number of submitted jobs that haven't started yet (not counting cancelled jobs)
+     */
+    public int getQueueDepth() {
+        executor.purge();
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return the number of jobs currently running
+     */
+    public int getNumberOfRunningJobs() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return the maximum number of threads reading and writing images at the same time across all jobs
+     */
+    public int getCpuThreads() {
+        return cpuBudget.getMaxThreads();
+    }
+
+    /**
+     * @return the maximum number of input images parsed at the same time across all jobs
+     */
+    public int getIoThreads() {
+        return ioBudget.getMaxThreads();
+    }
+
+    /**
+     * Stop accepting jobs and wait for the submitted jobs to be done. Use {@link Future#cancel(boolean)} on the futures
+     * returned by {@link #submit(ImageStitcher.Builder, Job, int)} to not wait for some jobs.
+     */
+    @Override
+    public void close() {
+        logger.debug("Closing scheduler and waiting for {} running jobs and {} waiting jobs", getNumberOfRunningJobs(), getQueueDepth());
+        executor.close();
+    }
+
+    /**
+     * A builder to create a {@link StitchingScheduler}.
+     */
+    public static class Builder {
+
+        private int cpuThreads = Runtime.getRuntime().availableProcessors();
+        private int ioThreads = 128;            // same as the default maximum number of inputs parsed by a stitcher
+        private int maxConcurrentJobs = 2;      // one job can parse its inputs while another one writes its output
+        private SchedulingPolicy schedulingPolicy = SchedulingPolicy.FAIR;
+
+        /**
+         * Set the maximum number of threads that can read and write images at the same time, across all jobs. Each job
+         * still uses at most {@link ImageStitcher.Builder#numberOfThreads(int)} threads.
+         *
+         * @param cpuThreads the maximum number of threads reading and writing images across all jobs. By default, this
+         *                   is equal to {@link Runtime#availableProcessors()}
+         * @return this builder
+         * @throws IllegalArgumentException if the provided number is less than 1
+         */
+        public Builder cpuThreads(int cpuThreads) {
+            if (cpuThreads < 1) {
+                throw new IllegalArgumentException(String.format("The number of CPU threads (%d) must be at least 1", cpuThreads));
+            }
+
+            this.cpuThreads = cpuThreads;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of input images that can be parsed at the same time, across all jobs. Each job still
+         * parses at most {@link ImageStitcher.Builder#maxConcurrentParsing(int)} input images at the same time.
+         *
+         * @param ioThreads the maximum number of input images parsed at the same time across all jobs. 128 by default
+         * @return this builder
+         * @throws IllegalArgumentException if the provided number is less than 1
+         */
+        public Builder ioThreads(int ioThreads) {
+            if (ioThreads < 1) {
+                throw new IllegalArgumentException(String.format("The number of I/O threads (%d) must be at least 1", ioThreads));
+            }
+
+            this.ioThreads = ioThreads;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of jobs that can run at the same time. Other jobs wait until a running job is done.
+         * <p>
+         * Running several jobs lets one job parse its input images (which mostly waits for files to be read) while
+         * another one writes its output image, but each running job keeps the layout of its input images and its
+         * buffers in memory.
+         *
+         * @param maxConcurrentJobs the maximum number of jobs running at the same time. 2 by default
+         * @return this builder
+         * @throws IllegalArgumentException if the provided number is less than 1
+         */
+        public Builder maxConcurrentJobs(int maxConcurrentJobs) {
+            if (maxConcurrentJobs < 1) {
+                throw new IllegalArgumentException(String.format("The maximum number of concurrent jobs (%d) must be at least 1", maxConcurrentJobs));
+            }
+
+            this.maxConcurrentJobs = maxConcurrentJobs;
+            return this;
+        }
+
+        /**
+         * Set how jobs are ordered when they start and when they get threads.
+         *
+         * @param schedulingPolicy the policy to use. {@link SchedulingPolicy#FAIR} by default
+         * @return this builder
+         * @throws NullPointerException if the provided policy is null
+         */
+        public Builder schedulingPolicy(SchedulingPolicy schedulingPolicy) {
+            this.schedulingPolicy = Objects.requireNonNull(schedulingPolicy);
+            return this;
+        }
+
+        /**
+         * Create the scheduler. It must be closed once it is not used anymore.
+         *
+         * @return a new scheduler
+         */
+        public StitchingScheduler build() {
+            return new StitchingScheduler(this);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package qupath.ext.stitching.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A limit on the number of threads that several stitching jobs can run at the same time.
+ * <p>
+ * Each job {@link #register(int) registers} a client, and its threads {@link Client#acquire() acquire} a permit from
+ * the client before running a task. Jobs can create as many threads as they want, but only as many of them as the
+ * budget allows run at the same time, so several jobs don't oversubscribe the machine.
+ * <p>
+ * When a permit is released, it is given to a thread of the client chosen by the {@link StitchingScheduler.SchedulingPolicy
+ * scheduling policy}: the client holding the fewest permits with {@link StitchingScheduler.SchedulingPolicy#FAIR}, or
+ * the client with the highest priority with {@link StitchingScheduler.SchedulingPolicy#PRIORITY} (then the one holding
+ * the fewest permits).
+ * <p>
+ * Permits are reentrant: a thread acquiring a permit while it already holds one (for example when a task reads a tile
+ * that itself acquires a permit) gets it without waiting, and it is only released with the outermost permit.
+ * <p>
+ * A client can also {@link Client#reserve(int) reserve} several permits at once for threads it doesn't control (for
+ * example the threads of an image writer). Its threads then acquire permits from the reservation first.
+ * <p>
+ * This class is thread-safe.
+ */
+class ThreadBudget {
+
+    private static final Logger logger = LoggerFactory.getLogger(ThreadBudget.class);
+    private final int maxThreads;
+    private final Comparator<Client> clientOrder;
+    private final List<Client> clients = new ArrayList<>();
+    private final ThreadLocal<int[]> permitsHeldByThread = ThreadLocal.withInitial(() -> new int[1]);
+    private int usedThreads = 0;
+    /**
+     * A job using threads of a {@link ThreadBudget}. It must be closed once the job is done.
+     */
+    class Client implements AutoCloseable {
+
+        private final int priority;
+        private int heldPermits = 0;
+        private int waitingThreads = 0;
+        private int reservedPermits = 0;
+        private int usedReservedPermits = 0;
+
+        private Client(int priority) {
+            this.priority = priority;
+        }
+
+        /**
+         * Acquire a permit to run a task, waiting until this client is given a permit if needed. If this client has
+         * unused {@link #reserve(int) reserved} permits, one of them is used without waiting.
+         *
+         * @return the permit, which must be closed once the task is done
+         * @throws InterruptedException if the calling thread is interrupted while waiting
+         */
+        public Permit acquire() throws InterruptedException {
+            int[] permitsHeld = permitsHeldByThread.get();
+            if (permitsHeld[0] > 0) {
+                permitsHeld[0]++;
+                return new Permit(this, false);
+            }
+
+            synchronized (ThreadBudget.this) {
+                if (usedReservedPermits < reservedPermits) {
+                    usedReservedPermits++;
+                    permitsHeld[0]++;
+                    return new Permit(this, true);
+                }
+
+                waitingThreads++;
+                try {
+                    if (mustWait(this)) {
+                        logger.trace("Waiting for a thread to be available ({} threads used out of {})", usedThreads, maxThreads);
+
+                        while (mustWait(this)) {
+                            ThreadBudget.this.wait();
+                        }
+                    }
+                } finally {
+                    waitingThreads--;
+                    // Giving a permit to this client (or giving up waiting) can let another client be chosen
+                    ThreadBudget.this.notifyAll();
+                }
+
+                usedThreads++;
+                heldPermits++;
+            }
+            permitsHeld[0]++;
+            return new Permit(this, false);
+        }
+
+        /**
+         * Reserve permits for threads that run for a long time and cannot acquire a permit for each of their tasks.
+         * This waits until this client is given a first permit, and then also takes the permits that are available
+         * right away (without taking the ones other clients are waiting for), up to the provided number.
+         * <p>
+         * The permits stay held until the reservation is closed, and threads of this client acquiring a permit in the
+         * meantime use the reserved permits first.
+         *
+         * @param maxPermits the maximum number of permits to reserve
+         * @return the reservation, which must be closed once the threads using it are done
+         * @throws IllegalArgumentException if the provided number is less than 1
+         * @throws InterruptedException if the calling thread is interrupted while waiting
+         */
+        public Reservation reserve(int maxPermits) throws InterruptedException {
+            if (maxPermits < 1) {
+                throw new IllegalArgumentException(String.format("The number of permits to reserve (%d) must be at least 1", maxPermits));
+            }
+
+            synchronized (ThreadBudget.this) {
+                waitingThreads++;
+                try {
+                    while (mustWait(this)) {
+                        ThreadBudget.this.wait();
+                    }
+                } finally {
+                    waitingThreads--;
+                    ThreadBudget.this.notifyAll();
+                }
+
+                int threadsWaitingForOtherClients = clients.stream()
+                        .filter(client -> client != this)
+                        .mapToInt(client -> client.waitingThreads)
+                        .sum();
+                int permits = Math.max(1, Math.min(maxPermits, maxThreads - usedThreads - threadsWaitingForOtherClients));
+
+                usedThreads += permits;
+                heldPermits += permits;
+                reservedPermits += permits;
+                logger.trace("Reserved {} permits ({} threads used out of {})", permits, usedThreads, maxThreads);
+
+                return new Reservation(this, permits);
+            }
+        }
+
+        /**
+         * @return the priority of this client. Clients with a higher priority get permits first with the
+         * {@link StitchingScheduler.SchedulingPolicy#PRIORITY} policy
+         */
+        public int getPriority() {
+            return priority;
+        }
+
+        /**
+         * Unregister this client from the budget. Permits still held by its threads are still released when closed.
+         */
+        @Override
+        public void close() {
+            synchronized (ThreadBudget.this) {
+                clients.remove(this);
+                ThreadBudget.this.notifyAll();
+            }
+        }
+    }
+    /**
+     * A permit to run a task, acquired from a {@link Client}. It must be closed by the thread that acquired it once
+     * the task is done.
+     */
+    class Permit implements AutoCloseable {
+
+        private final Client client;
+        private final boolean reserved;
+        private boolean released = false;
+
+        private Permit(Client client, boolean reserved) {
+            this.client = client;
+            this.reserved = reserved;
+        }
+
+        @Override
+        public void close() {
+            if (released) {
+                return;
+            }
+            released = true;
+
+            int[] permitsHeld = permitsHeldByThread.get();
+            permitsHeld[0]--;
+            if (permitsHeld[0] > 0) {
+                return;
+            }
+
+            synchronized (ThreadBudget.this) {
+                if (reserved) {
+                    client.usedReservedPermits--;
+                } else {
+                    usedThreads--;
+                    client.heldPermits--;
+                }
+                ThreadBudget.this.notifyAll();
+            }
+        }
+    }
+    /**
+     * Permits reserved by a {@link Client} (see {@link Client#reserve(int)}). It must be closed once the threads
+     * using it are done.
+     */
+    class Reservation implements AutoCloseable {
+
+        private final Client client;
+        private final int permits;
+        private boolean released = false;
+
+        private Reservation(Client client, int permits) {
+            this.client = client;
+            this.permits = permits;
+        }
+
+        /**
+         * @return the number of permits of this reservation
+         */
+        public int getPermits() {
+            return permits;
+        }
+
+        @Override
+        public void close() {
+            synchronized (ThreadBudget.this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+
+                usedThreads -= permits;
+                client.heldPermits -= permits;
+                client.reservedPermits -= permits;
+                ThreadBudget.this.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Create the budget.
+     *
+     * @param maxThreads the maximum number of threads that can hold a permit at the same time
+     * @param schedulingPolicy how to choose the client receiving a released permit
+     * @throws IllegalArgumentException if the provided number of threads is less than 1
+     * @throws NullPointerException if the provided policy is null
+     */
+    public ThreadBudget(int maxThreads, StitchingScheduler.SchedulingPolicy schedulingPolicy) {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException(String.format("The thread budget (%d threads) must be at least 1 thread", maxThreads));
+        }
+
+        this.maxThreads = maxThreads;
+        this.clientOrder = switch (schedulingPolicy) {
+            case FAIR -> Comparator.comparingInt(client -> client.heldPermits);
+            case PRIORITY -> Comparator.<Client>comparingInt(client -> -client.priority).thenComparingInt(client -> client.heldPermits);
+        };
+    }
+
+    /**
+     * Register a job using threads of this budget.
+     *
+     * @param priority the priority of the job. Only used with the {@link StitchingScheduler.SchedulingPolicy#PRIORITY}
+     *                 policy
+     * @return a client to acquire permits from, which must be closed once the job is done
+     */
+    public synchronized Client register(int priority) {
+        Client client = new Client(priority);
+        clients.add(client);
+        return client;
+    }
+
+    /**
+     * @return the maximum number of threads that can hold a permit at the same time
+     */
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    /**
+     * @return the number of threads currently holding a permit
+     */
+    public synchronized int getUsedThreads() {
+        return usedThreads;
+    }
+
+    private boolean mustWait(Client client) {
+        if (usedThreads >= maxThreads) {
+            return true;
+        }
+
+        // Clients are sorted by registration order, so the first registered client wins ties
+        Client chosenClient = clients.stream()
+                .filter(candidate -> candidate.waitingThreads > 0)
+                .min(clientOrder)
+                .orElse(client);
+        return chosenClient != client && clients.contains(client);
+    }
+}
@@ -2,15 +2,24 @@ package qupath.ext.stitching.core;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 import java.util.Objects;
 
 /**
  * A class that checks whether a file represents a TIFF file. This is done by looking at the first four bytes of the
- * provided file, which must match: [0x49, 0x49, 0x2A, 0x00] or [0x4D, 0x4D, 0x00, 0x2A].
+ * provided file, which must match: [0x49, 0x49, 0x2A, 0x00] or [0x4D, 0x4D, 0x00, 0x2A] for a classic TIFF file, or
+ * [0x49, 0x49, 0x2B, 0x00] or [0x4D, 0x4D, 0x00, 0x2B] for a BigTIFF file.
+ * <p>
+ * The check can also be done on bytes already read from a file, which is what {@link InputProbe} does with the first
+ * bytes of each input image.
  */
 public class TiffFileChecker {
 
+    static final int CLASSIC_TIFF_MAGIC = 42;
+    static final int BIG_TIFF_MAGIC = 43;
+
     private TiffFileChecker() {
         throw new AssertionError("This class is not instantiable");
     }
@@ -29,17 +38,41 @@ public class TiffFileChecker {
             bytes = inputStream.readNBytes(4);
         }
 
-        if (bytes.length < 4) {
+        checkTiffBytes(path, ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Check if the provided first bytes of a file correspond to a TIFF file. Take a look at the class documentation
+     * for more information.
+     *
+     * @param path the path of the file the bytes come from. Only used in error messages
+     * @param firstBytes the first bytes of the file, from index 0 to the limit of the buffer. The position and byte
+     *                   order of the buffer are not changed
+     * @return the byte order of the file
+     * @throws IllegalArgumentException if the provided bytes don't correspond to a TIFF file
+     * @throws NullPointerException if the provided buffer is null
+     */
+    public static ByteOrder checkTiffBytes(String path, ByteBuffer firstBytes) {
+        if (firstBytes.limit() < 4) {
             throw new IllegalArgumentException(String.format("%s contains less than 4 bytes, so it cannot be a TIFF file", path));
         }
+        ByteBuffer bytes = firstBytes.duplicate();
+
+        ByteOrder byteOrder = null;
+        if (bytes.get(0) == 0x49 && bytes.get(1) == 0x49) {
+            byteOrder = ByteOrder.LITTLE_ENDIAN;
+        } else if (bytes.get(0) == 0x4D && bytes.get(1) == 0x4D) {
+            byteOrder = ByteOrder.BIG_ENDIAN;
+        }
+        int magic = byteOrder == null ? -1 : Short.toUnsignedInt(bytes.order(byteOrder).getShort(2));
 
-        if (!((bytes[0] == 0x49 && bytes[1] == 0x49 && bytes[2] == 0x2A && bytes[3] == 0x00) ||
-                (bytes[0] == 0x4D && bytes[1] == 0x4D && bytes[2] == 0x00 && bytes[3] == 0x2A))) {
+        if (magic != CLASSIC_TIFF_MAGIC && magic != BIG_TIFF_MAGIC) {
             throw new IllegalArgumentException(String.format(
                     "The first four bytes of %s (%s) don't match the TIFF specifications",
                     path,
-                    Arrays.toString(bytes)
+                    Arrays.toString(new byte[] {bytes.get(0), bytes.get(1), bytes.get(2), bytes.get(3)})
             ));
         }
+        return byteOrder;
     }
 }
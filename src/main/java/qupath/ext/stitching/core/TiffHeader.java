@@ -0,0 +1,356 @@
+package qupath.ext.stitching.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * A minimal reader of the first image file directory (IFD) of a TIFF file.
+ * <p>
+ * Only a few tags are parsed (see the TAG_* constants of this class), and only the first value of each tag is kept.
+ * Both byte orders and BigTIFF files are supported.
+ * <p>
+ * The file is read with a {@link FileChannel} and a few small positional reads: one for the file header, one for the
+ * IFD (which usually contains or is followed by the values of the tags), and one for each tag value located elsewhere
+ * in the file. This is much cheaper than parsing the whole metadata tree of the file.
+ * <p>
+ * This class is immutable and thread-safe.
+ */
+public class TiffHeader {
+
+    /**
+     * The "ImageWidth" tag.
+     */
+    public static final int TAG_IMAGE_WIDTH = 256;
+    /**
+     * The "ImageLength" tag.
+     */
+    public static final int TAG_IMAGE_LENGTH = 257;
+    /**
+     * The "BitsPerSample" tag.
+     */
+    public static final int TAG_BITS_PER_SAMPLE = 258;
+    /**
+     * The "SamplesPerPixel" tag.
+     */
+    public static final int TAG_SAMPLES_PER_PIXEL = 277;
+    /**
+     * The "XResolution" tag.
+     */
+    public static final int TAG_X_RESOLUTION = 282;
+    /**
+     * The "YResolution" tag.
+     */
+    public static final int TAG_Y_RESOLUTION = 283;
+    /**
+     * The "XPosition" tag.
+     */
+    public static final int TAG_X_POSITION = 286;
+    /**
+     * The "YPosition" tag.
+     */
+    public static final int TAG_Y_POSITION = 287;
+    /**
+     * The "ResolutionUnit" tag.
+     */
+    public static final int TAG_RESOLUTION_UNIT = 296;
+    /**
+     * The "SampleFormat" tag.
+     */
+    public static final int TAG_SAMPLE_FORMAT = 339;
+    private static final Logger logger = LoggerFactory.getLogger(TiffHeader.class);
+    private static final int[] PARSED_TAGS = {
+            TAG_IMAGE_WIDTH,
+            TAG_IMAGE_LENGTH,
+            TAG_BITS_PER_SAMPLE,
+            TAG_SAMPLES_PER_PIXEL,
+            TAG_X_RESOLUTION,
+            TAG_Y_RESOLUTION,
+            TAG_X_POSITION,
+            TAG_Y_POSITION,
+            TAG_RESOLUTION_UNIT,
+            TAG_SAMPLE_FORMAT
+    };
+    private static final int IFD_READ_SIZE = 4096;
+    private static final int MAX_NUMBER_OF_ENTRIES = 4096;
+    private final String path;
+    private final ByteOrder byteOrder;
+    private final boolean bigTiff;
+    private final double[] values;
+    private final boolean[] present;
+
+    private TiffHeader(String path, ByteOrder byteOrder, boolean bigTiff, double[] values, boolean[] present) {
+        this.path = path;
+        this.byteOrder = byteOrder;
+        this.bigTiff = bigTiff;
+        this.values = values;
+        this.present = present;
+    }
+
+    /**
+     * Read the first IFD of the provided TIFF file.
+     *
+     * @param path the path of the TIFF file to read
+     * @return the parsed header of the file
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the path doesn't point to an existing file, or if the file is not a valid TIFF file
+     * @throws NullPointerException if the provided path is null
+     */
+    public static TiffHeader read(String path) throws IOException {
+        Path filePath = Path.of(Objects.requireNonNull(path));
+        if (!Files.isRegularFile(filePath)) {
+            throw new IllegalArgumentException(String.format("No file found at %s", path));
+        }
+
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            return read(path, channel);
+        }
+    }
+
+    /**
+     * Read the first IFD of the TIFF file represented by the provided channel. The position of the channel
+     * is not modified.
+     *
+     * @param path the path of the TIFF file. Only used for logging and error messages
+     * @param channel the channel to read from
+     * @return the parsed header of the file
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is not a valid TIFF file
+     * @throws NullPointerException if one of the provided parameters is null
+     */
+    public static TiffHeader read(String path, FileChannel channel) throws IOException {
+        ByteBuffer header = readAt(channel, 0, 16);
+        return parse(path, header, channel);
+    }
+
+    /**
+     * Parse the first IFD of a TIFF file whose first bytes are already available. Bytes that are not contained in
+     * the provided buffer are read from the provided channel.
+     *
+     * @param path the path of the TIFF file. Only used for logging and error messages
+     * @param firstBytes a buffer containing the first bytes of the file, starting at position 0 of the buffer and ending
+     *                   at its limit. It must contain at least the 16 first bytes of the file (or the whole file if the
+     *                   file is smaller)
+     * @param channel the channel to read missing bytes from
+     * @return the parsed header of the file
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is not a valid TIFF file
+     * @throws NullPointerException if one of the provided parameters is null
+     */
+    public static TiffHeader parse(String path, ByteBuffer firstBytes, FileChannel channel) throws IOException {
+        Objects.requireNonNull(channel);
+        ByteBuffer buffer = firstBytes.duplicate();
+        if (buffer.limit() < 8) {
+            throw new IllegalArgumentException(String.format("%s contains less than 8 bytes, so it cannot be a TIFF file", path));
+        }
+
+        ByteOrder byteOrder = TiffFileChecker.checkTiffBytes(path, buffer);
+        buffer.order(byteOrder);
+
+        boolean bigTiff;
+        long ifdOffset;
+        if (Short.toUnsignedInt(buffer.getShort(2)) == TiffFileChecker.BIG_TIFF_MAGIC) {
+            if (buffer.limit() < 16) {
+                throw new IllegalArgumentException(String.format("%s is too small to be a BigTIFF file", path));
+            }
+            if (buffer.getShort(4) != 8) {
+                throw new IllegalArgumentException(String.format("Unsupported BigTIFF offset size in %s", path));
+            }
+            bigTiff = true;
+            ifdOffset = buffer.getLong(8);
+        } else {
+            bigTiff = false;
+            ifdOffset = Integer.toUnsignedLong(buffer.getInt(4));
+        }
+        logger.trace("{} is a {} {} TIFF file with first IFD at {}", path, byteOrder, bigTiff ? "BigTIFF" : "classic", ifdOffset);
+
+        int countSize = bigTiff ? 8 : 2;
+        int entrySize = bigTiff ? 20 : 12;
+        int inlineValueSize = bigTiff ? 8 : 4;
+
+        ByteBuffer ifd = getRange(path, buffer, channel, ifdOffset, IFD_READ_SIZE, byteOrder);
+        if (ifd.limit() < countSize) {
+            throw new IllegalArgumentException(String.format("The first IFD of %s is truncated", path));
+        }
+        long numberOfEntries = bigTiff ? ifd.getLong(0) : Short.toUnsignedInt(ifd.getShort(0));
+        if (numberOfEntries <= 0 || numberOfEntries > MAX_NUMBER_OF_ENTRIES) {
+            throw new IllegalArgumentException(String.format("Invalid number of entries (%d) in the first IFD of %s", numberOfEntries, path));
+        }
+        int ifdSize = countSize + (int) numberOfEntries * entrySize;
+        if (ifd.limit() < ifdSize) {
+            ifd = readAt(channel, ifdOffset, ifdSize).order(byteOrder);
+            if (ifd.limit() < ifdSize) {
+                throw new IllegalArgumentException(String.format("The first IFD of %s is truncated", path));
+            }
+        }
+
+        double[] values = new double[PARSED_TAGS.length];
+        boolean[] present = new boolean[PARSED_TAGS.length];
+        for (int i=0; i<numberOfEntries; i++) {
+            int entryOffset = countSize + i * entrySize;
+            int tag = Short.toUnsignedInt(ifd.getShort(entryOffset));
+            int tagIndex = indexOfTag(tag);
+            if (tagIndex == -1) {
+                continue;
+            }
+
+            int type = Short.toUnsignedInt(ifd.getShort(entryOffset + 2));
+            long count = bigTiff ? ifd.getLong(entryOffset + 4) : Integer.toUnsignedLong(ifd.getInt(entryOffset + 4));
+            int typeSize = getTypeSize(type);
+            if (typeSize == 0 || count < 1) {
+                logger.debug("Tag {} of {} has unsupported type {} or count {}. Skipping it", tag, path, type, count);
+                continue;
+            }
+
+            int valueFieldOffset = entryOffset + (bigTiff ? 12 : 8);
+            ByteBuffer value;
+            int valueOffset;
+            // The values of a tag are stored in the entry only if all of them fit in it
+            if (count * typeSize <= inlineValueSize) {
+                value = ifd;
+                valueOffset = valueFieldOffset;
+            } else {
+                long offset = bigTiff ? ifd.getLong(valueFieldOffset) : Integer.toUnsignedLong(ifd.getInt(valueFieldOffset));
+                long relativeOffset = offset - ifdOffset;
+
+                if (relativeOffset >= 0 && relativeOffset + typeSize <= ifd.limit()) {
+                    value = ifd;
+                    valueOffset = (int) relativeOffset;
+                } else {
+                    value = getRange(path, buffer, channel, offset, typeSize, byteOrder);
+                    valueOffset = 0;
+                    if (value.limit() < typeSize) {
+                        throw new IllegalArgumentException(String.format("The value of tag %d of %s is truncated", tag, path));
+                    }
+                }
+            }
+
+            values[tagIndex] = getValue(value, valueOffset, type);
+            present[tagIndex] = true;
+        }
+
+        return new TiffHeader(path, byteOrder, bigTiff, values, present);
+    }
+
+    /**
+     * @return the byte order of the TIFF file
+     */
+    public ByteOrder getByteOrder() {
+        return byteOrder;
+    }
+
+    /**
+     * @return whether the TIFF file is a BigTIFF file
+     */
+    public boolean isBigTiff() {
+        return bigTiff;
+    }
+
+    /**
+     * @param tag the tag to check. Should be one of the TAG_* constants of this class
+     * @return whether the first IFD of the file contains the provided tag. This will always be false for tags
+     * that are not one of the TAG_* constants of this class
+     */
+    public boolean hasTag(int tag) {
+        int tagIndex = indexOfTag(tag);
+        return tagIndex != -1 && present[tagIndex];
+    }
+
+    /**
+     * Get the first value of a tag.
+     *
+     * @param tag the tag to retrieve. Must be one of the TAG_* constants of this class
+     * @return the first value of the tag, converted to a double. Rational values are divided
+     * @throws IllegalArgumentException if the first IFD of the file doesn't contain the provided tag
+     */
+    public double getTagValue(int tag) {
+        if (!hasTag(tag)) {
+            throw new IllegalArgumentException(String.format("The provided file %s does not contain the %d tag", path, tag));
+        }
+        return values[indexOfTag(tag)];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder tags = new StringBuilder();
+        for (int i=0; i<PARSED_TAGS.length; i++) {
+            if (present[i]) {
+                tags.append(tags.isEmpty() ? "" : ", ").append(PARSED_TAGS[i]).append('=').append(values[i]);
+            }
+        }
+
+        return String.format("TiffHeader of %s: %s, %s, {%s}", path, byteOrder, bigTiff ? "BigTIFF" : "classic TIFF", tags);
+    }
+
+    private static int indexOfTag(int tag) {
+        for (int i=0; i<PARSED_TAGS.length; i++) {
+            if (PARSED_TAGS[i] == tag) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static ByteBuffer getRange(String path, ByteBuffer firstBytes, FileChannel channel, long offset, int length, ByteOrder byteOrder) throws IOException {
+        if (offset < 0) {
+            throw new IllegalArgumentException(String.format("Invalid offset %d in %s", offset, path));
+        }
+
+        if (offset < firstBytes.limit() && offset + length <= firstBytes.limit()) {
+            return firstBytes.slice((int) offset, length).order(byteOrder);
+        } else {
+            return readAt(channel, offset, length).order(byteOrder);
+        }
+    }
+
+    private static ByteBuffer readAt(FileChannel channel, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                break;
+            }
+        }
+
+        return buffer.flip();
+    }
+
+    private static int getTypeSize(int type) {
+        return switch (type) {
+            case 1, 2, 6, 7 -> 1;       // BYTE, ASCII, SBYTE, UNDEFINED
+            case 3, 8 -> 2;             // SHORT, SSHORT
+            case 4, 9, 11, 13 -> 4;     // LONG, SLONG, FLOAT, IFD
+            case 5, 10, 12, 16, 17, 18 -> 8;    // RATIONAL, SRATIONAL, DOUBLE, LONG8, SLONG8, IFD8
+            default -> 0;
+        };
+    }
+
+    private static double getValue(ByteBuffer buffer, int offset, int type) {
+        return switch (type) {
+            case 1, 2, 7 -> Byte.toUnsignedInt(buffer.get(offset));
+            case 6 -> buffer.get(offset);
+            case 3 -> Short.toUnsignedInt(buffer.getShort(offset));
+            case 8 -> buffer.getShort(offset);
+            case 4, 13 -> Integer.toUnsignedLong(buffer.getInt(offset));
+            case 9 -> buffer.getInt(offset);
+            case 11 -> buffer.getFloat(offset);
+            case 5 -> divide(Integer.toUnsignedLong(buffer.getInt(offset)), Integer.toUnsignedLong(buffer.getInt(offset + 4)));
+            case 10 -> divide(buffer.getInt(offset), buffer.getInt(offset + 4));
+            case 12 -> buffer.getDouble(offset);
+            case 16, 17, 18 -> buffer.getLong(offset);
+            default -> throw new IllegalArgumentException(String.format("Unsupported TIFF type %d", type));
+        };
+    }
+
+    private static double divide(long numerator, long denominator) {
+        return denominator == 0 ? Double.NaN : (double) numerator / denominator;
+    }
+}
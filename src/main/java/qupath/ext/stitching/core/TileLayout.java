@@ -0,0 +1,487 @@
+package qupath.ext.stitching.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+/**
+ * The positions and sizes of the tiles composing a stitched image.
+ * <p>
+ * Tiles are stored in parallel primitive arrays and identified by their index in these arrays. The origin
+ * of the layout is the top left corner of the bounding box of all tiles, so the provided positions are
+ * translated to make the minimum x and y coordinates equal to 0.
+ * <p>
+ * A spatial index is created to quickly find tiles intersecting a region:
+ * <ul>
+ *     <li>
+ *         If all tiles have the same size and are placed on a regular grid (with some tolerance for small
+ *         position variations), tiles are directly retrieved from their row and column.
+ *     </li>
+ *     <li>
+ *         Otherwise, tiles are registered in the cells of a uniform grid whose cell size is the maximum tile size.
+ *     </li>
+ * </ul>
+ * In both cases, finding the tiles intersecting a region doesn't depend on the total number of tiles.
+ * <p>
+ * This class is immutable and thread-safe.
+ */
+class TileLayout {
+
+    private static final Logger logger = LoggerFactory.getLogger(TileLayout.class);
+    private static final int MIN_GRID_TOLERANCE = 2;
+    private final int[] xs;
+    private final int[] ys;
+    private final int[] widths;
+    private final int[] heights;
+    private final int originX;
+    private final int originY;
+    private final int width;
+    private final int height;
+    private final Index index;
+
+    /**
+     * Create the layout. The four provided arrays must have the same length, and the element at index i of each
+     * array describes the tile of index i.
+     *
+     * @param xs the x-coordinates (in pixels) of the top left corner of each tile
+     * @param ys the y-coordinates (in pixels) of the top left corner of each tile
+     * @param widths the width (in pixels) of each tile
+     * @param heights the height (in pixels) of each tile
+     * @throws NullPointerException if one of the provided arrays is null
+     * @throws IllegalArgumentException if the provided arrays are empty, don't have the same length, or if a width
+     * or height is not strictly positive
+     */
+    public TileLayout(int[] xs, int[] ys, int[] widths, int[] heights) {
+        if (xs.length == 0) {
+            throw new IllegalArgumentException("The layout must contain at least one tile");
+        }
+        if (ys.length != xs.length || widths.length != xs.length || heights.length != xs.length) {
+            throw new IllegalArgumentException(String.format(
+                    "The provided arrays don't have the same length (%d, %d, %d, %d)",
+                    xs.length,
+                    ys.length,
+                    widths.length,
+                    heights.length
+            ));
+        }
+
+        this.originX = Arrays.stream(xs).min().orElse(0);
+        this.originY = Arrays.stream(ys).min().orElse(0);
+        this.xs = new int[xs.length];
+        this.ys = new int[ys.length];
+        this.widths = widths.clone();
+        this.heights = heights.clone();
+
+        int maxX = 0;
+        int maxY = 0;
+        for (int i=0; i<xs.length; i++) {
+            if (widths[i] <= 0 || heights[i] <= 0) {
+                throw new IllegalArgumentException(String.format("The tile %d has an invalid size %dx%d", i, widths[i], heights[i]));
+            }
+
+            this.xs[i] = xs[i] - originX;
+            this.ys[i] = ys[i] - originY;
+            maxX = Math.max(maxX, this.xs[i] + widths[i]);
+            maxY = Math.max(maxY, this.ys[i] + heights[i]);
+        }
+        this.width = maxX;
+        this.height = maxY;
+
+        Index regularGridIndex = createRegularGridIndex();
+        if (regularGridIndex == null) {
+            this.index = new BucketIndex();
+        } else {
+            this.index = regularGridIndex;
+        }
+        logger.debug("Created layout of {} tiles with size {}x{} and index {}", xs.length, width, height, index);
+    }
+
+    /**
+     * @return the number of tiles of this layout
+     */
+    public int getNumberOfTiles() {
+        return xs.length;
+    }
+
+    /**
+     * @param tile the index of the tile
+     * @return the x-coordinate of the top left corner of the tile, relative to the origin of this layout
+     * @throws IndexOutOfBoundsException if the provided index is out of bounds
+     */
+    public int getX(int tile) {
+        return xs[tile];
+    }
+
+    /**
+     * @param tile the index of the tile
+     * @return the y-coordinate of the top left corner of the tile, relative to the origin of this layout
+     * @throws IndexOutOfBoundsException if the provided index is out of bounds
+     */
+    public int getY(int tile) {
+        return ys[tile];
+    }
+
+    /**
+     * @param tile the index of the tile
+     * @return the width of the tile
+     * @throws IndexOutOfBoundsException if the provided index is out of bounds
+     */
+    public int getWidth(int tile) {
+        return widths[tile];
+    }
+
+    /**
+     * @param tile the index of the tile
+     * @return the height of the tile
+     * @throws IndexOutOfBoundsException if the provided index is out of bounds
+     */
+    public int getHeight(int tile) {
+        return heights[tile];
+    }
+
+    /**
+     * @return the x-coordinate that was subtracted from the provided positions to make the layout start at 0
+     */
+    public int getOriginX() {
+        return originX;
+    }
+
+    /**
+     * @return the y-coordinate that was subtracted from the provided positions to make the layout start at 0
+     */
+    public int getOriginY() {
+        return originY;
+    }
+
+    /**
+     * @return the width of the bounding box of all tiles
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height of the bounding box of all tiles
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return whether the tiles of this layout were detected to be on a regular grid
+     */
+    public boolean isRegularGrid() {
+        return index instanceof RegularGridIndex;
+    }
+
+    /**
+     * @return the horizontal distance between two adjacent columns of the grid, or 0 if the tiles of this layout
+     * are not on a {@link #isRegularGrid() regular grid}
+     */
+    public int getGridStepX() {
+        return index instanceof RegularGridIndex regularGridIndex ? regularGridIndex.stepX : 0;
+    }
+
+    /**
+     * @return the vertical distance between two adjacent rows of the grid, or 0 if the tiles of this layout
+     * are not on a {@link #isRegularGrid() regular grid}
+     */
+    public int getGridStepY() {
+        return index instanceof RegularGridIndex regularGridIndex ? regularGridIndex.stepY : 0;
+    }
+
+    /**
+     * Find the tiles intersecting the provided region.
+     *
+     * @param x the x-coordinate of the top left corner of the region, relative to the origin of this layout
+     * @param y the y-coordinate of the top left corner of the region, relative to the origin of this layout
+     * @param width the width of the region
+     * @param height the height of the region
+     * @return the indices of the tiles intersecting the provided region, sorted in ascending order
+     */
+    public int[] findTiles(int x, int y, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return new int[0];
+        }
+
+        int[] tiles = index.findTiles(x, y, x + width, y + height);
+        Arrays.sort(tiles);
+        return tiles;
+    }
+
+    /**
+     * Indicate whether the provided region is entirely covered by the union of the tiles.
+     *
+     * @param x the x-coordinate of the top left corner of the region, relative to the origin of this layout
+     * @param y the y-coordinate of the top left corner of the region, relative to the origin of this layout
+     * @param width the width of the region
+     * @param height the height of the region
+     * @return whether each pixel of the provided region belongs to at least one tile. This is false for an empty region
+     */
+    public boolean covers(int x, int y, int width, int height) {
+        int[] tiles = findTiles(x, y, width, height);
+        for (int tile: tiles) {
+            if (contains(tile, x, y, x + width, y + height)) {
+                return true;
+            }
+        }
+        if (tiles.length < 2) {
+            return false;
+        }
+
+        // The edges of the tiles split the region into cells that are either inside or outside each tile, so the
+        // region is covered if each cell is inside a tile
+        int[] cellXs = getCellBoundaries(tiles, xs, widths, x, x + width);
+        int[] cellYs = getCellBoundaries(tiles, ys, heights, y, y + height);
+        for (int j=0; j<cellYs.length-1; j++) {
+            for (int i=0; i<cellXs.length-1; i++) {
+                boolean cellCovered = false;
+                for (int tile: tiles) {
+                    if (contains(tile, cellXs[i], cellYs[j], cellXs[i+1], cellYs[j+1])) {
+                        cellCovered = true;
+                        break;
+                    }
+                }
+                if (!cellCovered) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Attempt to place the provided tiles on a regular grid. Tiles must all have the same size, and each
+     * tile position must be within a small tolerance of a grid node.
+     *
+     * @return the grid index, or null if the tiles are not on a regular grid
+     */
+    private Index createRegularGridIndex() {
+        for (int i=1; i<xs.length; i++) {
+            if (widths[i] != widths[0] || heights[i] != heights[0]) {
+                return null;
+            }
+        }
+
+        int toleranceX = Math.max(MIN_GRID_TOLERANCE, widths[0] / 100);
+        int toleranceY = Math.max(MIN_GRID_TOLERANCE, heights[0] / 100);
+        int stepX = findStep(xs, toleranceX, widths[0]);
+        int stepY = findStep(ys, toleranceY, heights[0]);
+        if (stepX <= 0 || stepY <= 0) {
+            return null;
+        }
+
+        int nColumns = 0;
+        int nRows = 0;
+        int[] columns = new int[xs.length];
+        int[] rows = new int[ys.length];
+        for (int i=0; i<xs.length; i++) {
+            columns[i] = Math.round((float) xs[i] / stepX);
+            rows[i] = Math.round((float) ys[i] / stepY);
+            if (Math.abs(xs[i] - columns[i] * stepX) > toleranceX || Math.abs(ys[i] - rows[i] * stepY) > toleranceY) {
+                return null;
+            }
+
+            nColumns = Math.max(nColumns, columns[i] + 1);
+            nRows = Math.max(nRows, rows[i] + 1);
+        }
+        if ((long) nColumns * nRows > 4L * xs.length) {
+            return null;        // the grid would be mostly empty, so the bucket index is more compact
+        }
+
+        int[] cells = new int[nColumns * nRows];
+        Arrays.fill(cells, -1);
+        for (int i=0; i<xs.length; i++) {
+            int cell = rows[i] * nColumns + columns[i];
+            if (cells[cell] != -1) {
+                return null;
+            }
+            cells[cell] = i;
+        }
+
+        return new RegularGridIndex(stepX, stepY, nColumns, nRows, cells);
+    }
+
+    private static int findStep(int[] positions, int tolerance, int tileSize) {
+        int[] sortedPositions = positions.clone();
+        Arrays.sort(sortedPositions);
+
+        // Positions closer than the tolerance are considered to belong to the same row/column
+        int[] steps = new int[sortedPositions.length];
+        int nSteps = 0;
+        int groupStart = sortedPositions[0];
+        for (int position: sortedPositions) {
+            if (position - groupStart > tolerance) {
+                steps[nSteps++] = position - groupStart;
+                groupStart = position;
+            }
+        }
+        if (nSteps == 0) {
+            return tileSize;
+        }
+
+        // The median is robust to missing rows/columns, and averaging over the whole span then prevents
+        // position variations from accumulating along the grid
+        Arrays.sort(steps, 0, nSteps);
+        int step = steps[nSteps / 2];
+        int span = groupStart - sortedPositions[0];
+        return Math.round((float) span / Math.max(1, Math.round((float) span / step)));
+    }
+
+    private boolean intersects(int tile, int x1, int y1, int x2, int y2) {
+        return xs[tile] < x2 && xs[tile] + widths[tile] > x1 && ys[tile] < y2 && ys[tile] + heights[tile] > y1;
+    }
+
+    private boolean contains(int tile, int x1, int y1, int x2, int y2) {
+        return xs[tile] <= x1 && xs[tile] + widths[tile] >= x2 && ys[tile] <= y1 && ys[tile] + heights[tile] >= y2;
+    }
+
+    private static int[] getCellBoundaries(int[] tiles, int[] positions, int[] sizes, int start, int end) {
+        int[] boundaries = new int[2 * tiles.length + 2];
+        int n = 0;
+        boundaries[n++] = start;
+        boundaries[n++] = end;
+        for (int tile: tiles) {
+            boundaries[n++] = Math.clamp(positions[tile], start, end);
+            boundaries[n++] = Math.clamp(positions[tile] + sizes[tile], start, end);
+        }
+
+        return Arrays.stream(boundaries, 0, n).sorted().distinct().toArray();
+    }
+
+    private interface Index {
+
+        int[] findTiles(int x1, int y1, int x2, int y2);
+    }
+
+    private class RegularGridIndex implements Index {
+
+        private final int stepX;
+        private final int stepY;
+        private final int nColumns;
+        private final int nRows;
+        private final int[] cells;
+
+        private RegularGridIndex(int stepX, int stepY, int nColumns, int nRows, int[] cells) {
+            this.stepX = stepX;
+            this.stepY = stepY;
+            this.nColumns = nColumns;
+            this.nRows = nRows;
+            this.cells = cells;
+        }
+
+        @Override
+        public int[] findTiles(int x1, int y1, int x2, int y2) {
+            // The range is extended by one cell in each direction to account for the position tolerance
+            // and for tiles larger than the grid step (overlapping tiles)
+            int overlapColumns = widths[0] / stepX + 1;
+            int overlapRows = heights[0] / stepY + 1;
+            int minColumn = Math.max(0, Math.floorDiv(x1, stepX) - overlapColumns);
+            int minRow = Math.max(0, Math.floorDiv(y1, stepY) - overlapRows);
+            int maxColumn = Math.min(nColumns - 1, Math.floorDiv(x2 - 1, stepX) + 1);
+            int maxRow = Math.min(nRows - 1, Math.floorDiv(y2 - 1, stepY) + 1);
+
+            int[] tiles = new int[Math.max(0, (maxColumn - minColumn + 1) * (maxRow - minRow + 1))];
+            int n = 0;
+            for (int row=minRow; row<=maxRow; row++) {
+                for (int column=minColumn; column<=maxColumn; column++) {
+                    int tile = cells[row * nColumns + column];
+                    if (tile != -1 && intersects(tile, x1, y1, x2, y2)) {
+                        tiles[n++] = tile;
+                    }
+                }
+            }
+            return Arrays.copyOf(tiles, n);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("regular grid of %dx%d cells with step %dx%d", nColumns, nRows, stepX, stepY);
+        }
+    }
+
+    private class BucketIndex implements Index {
+
+        private final int bucketWidth;
+        private final int bucketHeight;
+        private final int nBucketColumns;
+        private final int nBucketRows;
+        private final int[] bucketStarts;
+        private final int[] bucketTiles;
+
+        private BucketIndex() {
+            this.bucketWidth = Math.max(1, Arrays.stream(widths).max().orElse(1));
+            this.bucketHeight = Math.max(1, Arrays.stream(heights).max().orElse(1));
+            this.nBucketColumns = Math.max(1, (width + bucketWidth - 1) / bucketWidth);
+            this.nBucketRows = Math.max(1, (height + bucketHeight - 1) / bucketHeight);
+
+            // Compressed storage: the tiles of bucket b are bucketTiles[bucketStarts[b]..bucketStarts[b+1]]
+            this.bucketStarts = new int[nBucketColumns * nBucketRows + 1];
+            for (int i=0; i<xs.length; i++) {
+                for (int row=ys[i] / bucketHeight; row<=(ys[i] + heights[i] - 1) / bucketHeight; row++) {
+                    for (int column=xs[i] / bucketWidth; column<=(xs[i] + widths[i] - 1) / bucketWidth; column++) {
+                        bucketStarts[row * nBucketColumns + column + 1]++;
+                    }
+                }
+            }
+            for (int b=0; b<nBucketColumns * nBucketRows; b++) {
+                bucketStarts[b+1] += bucketStarts[b];
+            }
+
+            this.bucketTiles = new int[bucketStarts[bucketStarts.length - 1]];
+            int[] fill = Arrays.copyOf(bucketStarts, bucketStarts.length - 1);
+            for (int i=0; i<xs.length; i++) {
+                for (int row=ys[i] / bucketHeight; row<=(ys[i] + heights[i] - 1) / bucketHeight; row++) {
+                    for (int column=xs[i] / bucketWidth; column<=(xs[i] + widths[i] - 1) / bucketWidth; column++) {
+                        bucketTiles[fill[row * nBucketColumns + column]++] = i;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public int[] findTiles(int x1, int y1, int x2, int y2) {
+            int minColumn = Math.max(0, Math.floorDiv(x1, bucketWidth));
+            int minRow = Math.max(0, Math.floorDiv(y1, bucketHeight));
+            int maxColumn = Math.min(nBucketColumns - 1, Math.floorDiv(x2 - 1, bucketWidth));
+            int maxRow = Math.min(nBucketRows - 1, Math.floorDiv(y2 - 1, bucketHeight));
+
+            int[] tiles = new int[8];
+            int n = 0;
+            for (int row=minRow; row<=maxRow; row++) {
+                for (int column=minColumn; column<=maxColumn; column++) {
+                    int bucket = row * nBucketColumns + column;
+
+                    for (int j=bucketStarts[bucket]; j<bucketStarts[bucket+1]; j++) {
+                        int tile = bucketTiles[j];
+
+                        // A tile can be registered in several buckets, so it is only reported by the bucket
+                        // containing the top left corner of its intersection with the region
+                        if (intersects(tile, x1, y1, x2, y2) &&
+                                Math.max(xs[tile], x1) / bucketWidth == column &&
+                                Math.max(ys[tile], y1) / bucketHeight == row
+                        ) {
+                            if (n == tiles.length) {
+                                tiles = Arrays.copyOf(tiles, n * 2);
+                            }
+                            tiles[n++] = tile;
+                        }
+                    }
+                }
+            }
+            return Arrays.copyOf(tiles, n);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "buckets of %dx%d cells with size %dx%d",
+                    nBucketColumns,
+                    nBucketRows,
+                    bucketWidth,
+                    bucketHeight
+            );
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package qupath.ext.stitching.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import qupath.lib.common.ThreadTools;
+import qupath.lib.images.servers.ImageServer;
+import qupath.lib.regions.RegionRequest;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Refine the positions of the tiles of a layout by registering overlapping tiles with {@link PhaseCorrelation}.
+ * <p>
+ * Only pairs of tiles overlapping in the provided (nominal) layout are registered. For each pair, the overlap of the
+ * two tiles is read from both tiles (on the first z-stack and timepoint, and optionally at a lower resolution) and
+ * the translation between the two strips gives the correction to apply to the relative position of the two tiles.
+ * Pairs are registered in parallel.
+ * <p>
+ * A pair is only used if the correlation of the two strips once corrected is high enough. The positions of all tiles
+ * are then computed globally from the corrected offsets of the accepted pairs (weighted by their correlation) with a
+ * {@link GlobalPositionSolver}, which also rejects pairs that don't agree with the other ones.
+ */
+class TileRegistration {
+
+    private static final Logger logger = LoggerFactory.getLogger(TileRegistration.class);
+    private static final double MIN_CORRELATION = 0.3;
+    private static final double MAX_RESIDUAL = 3;
+    private final TileLayout layout;
+    private final InputServerPool inputServerPool;
+    private final int maxShift;
+    private final double downsample;
+    private final int numberOfThreads;
+    private final ThreadBudget.Client threadBudget;
+
+    private record Pair(int reference, int moving, int dx, int dy, double correlation) {}
+
+    /**
+     * Create the registration.
+     *
+     * @param layout the nominal positions and sizes of the tiles
+     * @param inputServerPool the pool to use to open the input images. The input at index i of the pool must correspond
+     *                        to the tile at index i of the layout
+     * @param maxShift the maximum error (in pixels of the full resolution image) of the nominal position of a tile
+     *                 relative to its neighbours, along each axis
+     * @param downsample the downsample to use when reading the overlap of tiles. Higher values make the registration
+     *                   faster but less accurate
+     * @param numberOfThreads the number of threads to use to register pairs of tiles
+     * @throws IllegalArgumentException if the maximum shift is less than 1 or if the downsample is less than 1
+     */
+    public TileRegistration(TileLayout layout, InputServerPool inputServerPool, int maxShift, double downsample, int numberOfThreads) {
+        this(layout, inputServerPool, maxShift, downsample, numberOfThreads, null);
+    }
+
+    /**
+     * Create the registration, sharing its threads with other jobs.
+     *
+     * @param layout the nominal positions and sizes of the tiles
+     * @param inputServerPool the pool to use to open the input images. The input at index i of the pool must correspond
+     *                        to the tile at index i of the layout
+     * @param maxShift the maximum error (in pixels of the full resolution image) of the nominal position of a tile
+     *                 relative to its neighbours, along each axis
+     * @param downsample the downsample to use when reading the overlap of tiles. Higher values make the registration
+     *                   faster but less accurate
+     * @param numberOfThreads the number of threads to use to register pairs of tiles
+     * @param threadBudget the budget to acquire a permit from before registering a pair of tiles. Can be null to only
+     *                     limit the number of threads to the provided number of threads
+     * @throws IllegalArgumentException if the maximum shift is less than 1 or if the downsample is less than 1
+     */
+    public TileRegistration(
+            TileLayout layout,
+            InputServerPool inputServerPool,
+            int maxShift,
+            double downsample,
+            int numberOfThreads,
+            ThreadBudget.Client threadBudget
+    ) {
+        if (maxShift < 1) {
+            throw new IllegalArgumentException(String.format("The maximum shift (%d) must be at least 1", maxShift));
+        }
+        if (downsample < 1) {
+            throw new IllegalArgumentException(String.format("The downsample (%f) must be at least 1", downsample));
+        }
+
+        this.layout = layout;
+        this.inputServerPool = inputServerPool;
+        this.maxShift = maxShift;
+        this.downsample = downsample;
+        this.numberOfThreads = numberOfThreads;
+        this.threadBudget = threadBudget;
+    }
+
+    /**
+     * Register all pairs of overlapping tiles and compute the refined positions of the tiles. Pairs that cannot be read
+     * are skipped (and a warning is logged).
+     *
+     * @return a layout containing the refined positions of the tiles, with the same tile indices and sizes as the nominal
+     * layout
+     * @throws InterruptedException if this operation is interrupted
+     */
+    public TileLayout register() throws InterruptedException {
+        List<int[]> candidates = findOverlappingPairs();
+        logger.debug("Registering {} pairs of overlapping tiles", candidates.size());
+
+        List<Pair> pairs = new ArrayList<>();
+        try (ExecutorService executorService = Executors.newFixedThreadPool(
+                numberOfThreads,
+                ThreadTools.createThreadFactory("stitcher-registration-", false)
+        )) {
+            List<Future<Pair>> futures = candidates.stream()
+                    .map(candidate -> executorService.submit(() -> registerPair(candidate[0], candidate[1])))
+                    .toList();
+
+            try {
+                for (int i=0; i<futures.size(); i++) {
+                    try {
+                        Pair pair = futures.get(i).get();
+                        if (pair != null) {
+                            pairs.add(pair);
+                        }
+                    } catch (ExecutionException e) {
+                        logger.warn("Cannot register tiles {} and {}", candidates.get(i)[0], candidates.get(i)[1], e.getCause());
+                    }
+                }
+            } catch (InterruptedException e) {
+                logger.debug("Registration interrupted. Stopping tasks", e);
+                executorService.shutdownNow();
+                throw e;
+            }
+        }
+        logger.debug("{} pairs of tiles out of {} accepted", pairs.size(), candidates.size());
+
+        return placeTiles(pairs);
+    }
+
+    private List<int[]> findOverlappingPairs() {
+        List<int[]> pairs = new ArrayList<>();
+
+        for (int i=0; i<layout.getNumberOfTiles(); i++) {
+            for (int j: layout.findTiles(layout.getX(i), layout.getY(i), layout.getWidth(i), layout.getHeight(i))) {
+                if (j > i) {
+                    pairs.add(new int[] {i, j});
+                }
+            }
+        }
+        return pairs;
+    }
+
+    private Pair registerPair(int reference, int moving) throws IOException, InterruptedException {
+        if (threadBudget == null) {
+            return readAndRegisterPair(reference, moving);
+        }
+
+        try (ThreadBudget.Permit ignored = threadBudget.acquire()) {
+            return readAndRegisterPair(reference, moving);
+        }
+    }
+
+    private Pair readAndRegisterPair(int reference, int moving) throws IOException {
+        int x1 = Math.max(layout.getX(reference), layout.getX(moving));
+        int y1 = Math.max(layout.getY(reference), layout.getY(moving));
+        int x2 = Math.min(layout.getX(reference) + layout.getWidth(reference), layout.getX(moving) + layout.getWidth(moving));
+        int y2 = Math.min(layout.getY(reference) + layout.getHeight(reference), layout.getY(moving) + layout.getHeight(moving));
+
+        BufferedImage referenceImage = readOverlap(reference, x1, y1, x2, y2);
+        BufferedImage movingImage = readOverlap(moving, x1, y1, x2, y2);
+        int width = Math.min(referenceImage.getWidth(), movingImage.getWidth());
+        int height = Math.min(referenceImage.getHeight(), movingImage.getHeight());
+        if (width < 2 || height < 2) {
+            return null;
+        }
+
+        PhaseCorrelation.Translation translation = PhaseCorrelation.findTranslation(
+                toGrayscale(referenceImage.getRaster(), width, height),
+                toGrayscale(movingImage.getRaster(), width, height),
+                width,
+                height,
+                (int) Math.ceil(maxShift / downsample)
+        );
+        if (translation == null || translation.correlation() < MIN_CORRELATION) {
+            logger.trace("Tiles {} and {} not registered ({})", reference, moving, translation);
+            return null;
+        }
+
+        // The moving strip is the reference strip translated by (dx, dy), so the moving tile must be moved
+        // by (-dx, -dy) relative to the reference tile
+        logger.trace("Tiles {} and {} registered with {}", reference, moving, translation);
+        return new Pair(
+                reference,
+                moving,
+                (int) Math.round(-translation.dx() * downsample),
+                (int) Math.round(-translation.dy() * downsample),
+                translation.correlation()
+        );
+    }
+
+    private BufferedImage readOverlap(int tile, int x1, int y1, int x2, int y2) throws IOException {
+        try (InputServerPool.Lease lease = inputServerPool.acquire(tile)) {
+            ImageServer<BufferedImage> server = lease.server();
+
+            return server.readRegion(RegionRequest.createInstance(
+                    server.getPath(),
+                    downsample,
+                    x1 - layout.getX(tile),
+                    y1 - layout.getY(tile),
+                    x2 - x1,
+                    y2 - y1,
+                    0,
+                    0
+            ));
+        }
+    }
+
+    private static float[] toGrayscale(Raster raster, int width, int height) {
+        float[] pixels = new float[width * height];
+        float[] band = new float[width * height];
+
+        for (int b=0; b<raster.getNumBands(); b++) {
+            raster.getSamples(raster.getMinX(), raster.getMinY(), width, height, b, band);
+            for (int i=0; i<pixels.length; i++) {
+                pixels[i] += band[i] / raster.getNumBands();
+            }
+        }
+        return pixels;
+    }
+
+    private TileLayout placeTiles(List<Pair> pairs) {
+        GlobalPositionSolver solver = new GlobalPositionSolver(layout, MAX_RESIDUAL * downsample);
+
+        for (Pair pair: pairs) {
+            solver.addOffset(
+                    pair.reference(),
+                    pair.moving(),
+                    layout.getX(pair.moving()) - layout.getX(pair.reference()) + pair.dx(),
+                    layout.getY(pair.moving()) - layout.getY(pair.reference()) + pair.dy(),
+                    pair.correlation()
+            );
+        }
+
+        return solver.solve();
+    }
+}
@@ -0,0 +1,432 @@
+package qupath.ext.stitching.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A record of the chunks of an {@link OmeZarrStore} that were completely written, allowing an interrupted writing to be
+ * resumed without writing the same chunks again.
+ * <p>
+ * The journal is kept in memory as one bitmap per resolution level, and is saved to a file located inside the image
+ * directory. This file starts with a header containing a fingerprint of the stitching layout, and each written chunk
+ * then appends a (level, chunk index) record to it. A chunk is only recorded once all its channels were written, so
+ * a chunk being written when the process stopped is not recorded and will be written again. A partially written
+ * record at the end of the file is ignored.
+ * <p>
+ * Records are appended to the file by batches, at checkpoints: the chunks of a batch are first forced to the storage
+ * device (see {@link OmeZarrStore#forceChunk(int, int, int, int, int)}), and the file is forced after the records are
+ * appended. A record found in the file therefore always corresponds to a chunk whose content reached the storage
+ * device, even if the system stopped, and chunks written after the last checkpoint are written again.
+ * <p>
+ * An image written by several processes (see {@link ZarrPartitioning}) has one journal per partition, so that each
+ * process only appends records to its own file.
+ * <p>
+ * This class is thread-safe.
+ */
+class ZarrChunkJournal implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ZarrChunkJournal.class);
+    private static final String FILE_NAME = ".stitching-journal";
+    private static final int MAGIC = 0x53544a31;     // "STJ1"
+    private static final int FINGERPRINT_LENGTH = 32;
+    private static final int HEADER_LENGTH = Integer.BYTES + FINGERPRINT_LENGTH;
+    private static final int RECORD_LENGTH = 2 * Integer.BYTES;
+    private static final int CHECKPOINT_INTERVAL = 256;     // in number of records
+    private final OmeZarrStore store;
+    private final Path path;
+    private final FileChannel channel;
+    private final List<BitSet> writtenChunks;
+    private final ByteBuffer records = ByteBuffer.allocate(CHECKPOINT_INTERVAL * RECORD_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+    private final List<int[]> pendingChunks = new ArrayList<>();
+
+    private ZarrChunkJournal(OmeZarrStore store, Path path, FileChannel channel, List<BitSet> writtenChunks) {
+        this.store = store;
+        this.path = path;
+        this.channel = channel;
+        this.writtenChunks = writtenChunks;
+    }
+
+    /**
+     * Create an empty journal for the provided image. If a journal already exists for this image, it is replaced.
+     *
+     * @param store the image whose chunks should be recorded
+     * @param fingerprint the fingerprint of the stitching, as returned by {@link #computeFingerprint(TileLayout, Collection, BlendingMode, ShadingCorrection, OmeZarrStore)}
+     * @return the created journal
+     * @throws IOException if the journal file cannot be created
+     * @throws IllegalArgumentException if the fingerprint doesn't have the expected length
+     */
+    public static ZarrChunkJournal create(OmeZarrStore store, byte[] fingerprint) throws IOException {
+        return create(store, fingerprint, store.getPath().resolve(FILE_NAME));
+    }
+
+    /**
+     * Create an empty journal for a partition of the provided image. If a journal already exists for this partition,
+     * it is replaced.
+     *
+     * @param store the image whose chunks should be recorded
+     * @param fingerprint the fingerprint of the stitching, as returned by {@link #computeFingerprint(TileLayout, Collection, BlendingMode, ShadingCorrection, OmeZarrStore)}
+     * @param partition the index of the partition whose chunks should be recorded
+     * @return the created journal
+     * @throws IOException if the journal file cannot be created
+     * @throws IllegalArgumentException if the fingerprint doesn't have the expected length
+     */
+    public static ZarrChunkJournal create(OmeZarrStore store, byte[] fingerprint, int partition) throws IOException {
+        return create(store, fingerprint, getPartitionPath(store.getPath(), partition));
+    }
+
+    /**
+     * Open the existing journal of the provided image.
+     *
+     * @param store the image whose chunks were recorded
+     * @param fingerprint the fingerprint of the stitching, as returned by {@link #computeFingerprint(TileLayout, Collection, BlendingMode, ShadingCorrection, OmeZarrStore)}.
+     *                    It must match the fingerprint given when the journal was created
+     * @return the opened journal
+     * @throws IOException if the journal file doesn't exist or cannot be read
+     * @throws IllegalArgumentException if the journal file is not valid, or if it was created with a different fingerprint
+     */
+    public static ZarrChunkJournal open(OmeZarrStore store, byte[] fingerprint) throws IOException {
+        return open(store, fingerprint, store.getPath().resolve(FILE_NAME));
+    }
+
+    /**
+     * Open the existing journal of a partition of the provided image.
+     *
+     * @param store the image whose chunks were recorded
+     * @param fingerprint the fingerprint of the stitching, as returned by {@link #computeFingerprint(TileLayout, Collection, BlendingMode, ShadingCorrection, OmeZarrStore)}.
+     *                    It must match the fingerprint given when the journal was created
+     * @param partition the index of the partition whose chunks were recorded
+     * @return the opened journal
+     * @throws IOException if the journal file doesn't exist or cannot be read
+     * @throws IllegalArgumentException if the journal file is not valid, or if it was created with a different fingerprint
+     */
+    public static ZarrChunkJournal open(OmeZarrStore store, byte[] fingerprint, int partition) throws IOException {
+        return open(store, fingerprint, getPartitionPath(store.getPath(), partition));
+    }
+
+    /**
+     * Indicate whether a journal exists for the provided image.
+     *
+     * @param imagePath the path of the directory containing the image
+     * @return whether a journal exists for the image, meaning that the writing of the image didn't complete
+     */
+    public static boolean exists(Path imagePath) {
+        return Files.isRegularFile(imagePath.resolve(FILE_NAME));
+    }
+
+    /**
+     * Indicate whether a journal exists for a partition of the provided image.
+     *
+     * @param imagePath the path of the directory containing the image
+     * @param partition the index of the partition
+     * @return whether a journal exists for the partition, meaning that the writing of the partition didn't complete
+     */
+    public static boolean exists(Path imagePath, int partition) {
+        return Files.isRegularFile(getPartitionPath(imagePath, partition));
+    }
+
+    /**
+     * Compute a fingerprint identifying a stitching and the image it is written to. Two stitchings with the same input
+     * images located at the same positions, combined in the same way, and written to images with the same structure and
+     * compression have the same fingerprint.
+     * <p>
+     * Any new option changing the written pixels should be added to this fingerprint, so that a writing is never
+     * resumed with different pixels.
+     *
+     * @param layout the positions and sizes of the input images
+     * @param uris the URIs of the input images
+     * @param blendingMode the strategy used to resolve pixels covered by several input images
+     * @param shadingCorrection the correction applied to the input images. Can be null if they are not corrected
+     * @param store the image the input images are written to
+     * @return the fingerprint of the provided parameters
+     */
+    public static byte[] computeFingerprint(
+            TileLayout layout,
+            Collection<URI> uris,
+            BlendingMode blendingMode,
+            ShadingCorrection shadingCorrection,
+            OmeZarrStore store
+    ) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);      // SHA-256 is required to be supported by all Java implementations
+        }
+
+        ByteBuffer tiles = ByteBuffer.allocate(4 * Integer.BYTES * layout.getNumberOfTiles() + 2 * Integer.BYTES);
+        tiles.putInt(layout.getOriginX()).putInt(layout.getOriginY());
+        for (int i=0; i<layout.getNumberOfTiles(); i++) {
+            tiles.putInt(layout.getX(i)).putInt(layout.getY(i)).putInt(layout.getWidth(i)).putInt(layout.getHeight(i));
+        }
+        digest.update(tiles.array());
+
+        for (URI uri: uris) {
+            digest.update(uri.toString().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+
+        digest.update(blendingMode.name().getBytes(StandardCharsets.UTF_8));
+        if (shadingCorrection == null) {
+            digest.update((byte) 0);
+        } else {
+            digest.update((byte) 1);
+            shadingCorrection.updateDigest(digest);
+        }
+
+        StringBuilder structure = new StringBuilder()
+                .append(store.getPixelType()).append(',')
+                .append(store.getSizeC()).append(',')
+                .append(store.getSizeZ()).append(',')
+                .append(store.getSizeT()).append(',')
+                .append(store.getChunkWidth()).append(',')
+                .append(store.getChunkHeight()).append(',')
+                .append(store.getCodec()).append(',')
+                .append(store.getCompressionLevel()).append(',')
+                .append(store.getShardSize()).append(',')
+                .append(store.getOriginX()).append(',')
+                .append(store.getOriginY());
+        for (int level=0; level<store.getNumberOfLevels(); level++) {
+            structure.append(',').append(store.getWidth(level)).append('x').append(store.getHeight(level));
+        }
+        digest.update(structure.toString().getBytes(StandardCharsets.UTF_8));
+
+        return digest.digest();
+    }
+
+    /**
+     * Indicate whether a chunk was recorded as written.
+     *
+     * @param level the resolution level of the chunk
+     * @param t the timepoint of the chunk
+     * @param z the z-slice of the chunk
+     * @param chunkX the index of the chunk along the x-axis
+     * @param chunkY the index of the chunk along the y-axis
+     * @return whether the chunk was recorded as written
+     */
+    public synchronized boolean isWritten(int level, int t, int z, int chunkX, int chunkY) {
+        return writtenChunks.get(level).get(getChunkIndex(level, t, z, chunkX, chunkY));
+    }
+
+    /**
+     * Record that all channels of a chunk were written. The record is saved to the journal file at the next checkpoint,
+     * which happens every few records and when this journal is closed.
+     *
+     * @param level the resolution level of the chunk
+     * @param t the timepoint of the chunk
+     * @param z the z-slice of the chunk
+     * @param chunkX the index of the chunk along the x-axis
+     * @param chunkY the index of the chunk along the y-axis
+     * @throws IOException if a checkpoint occurs and fails (see {@link #checkpoint()})
+     */
+    public synchronized void markWritten(int level, int t, int z, int chunkX, int chunkY) throws IOException {
+        int chunk = getChunkIndex(level, t, z, chunkX, chunkY);
+        if (writtenChunks.get(level).get(chunk)) {
+            return;
+        }
+
+        records.putInt(level).putInt(chunk);
+        pendingChunks.add(new int[] {level, t, z, chunkX, chunkY});
+        writtenChunks.get(level).set(chunk);
+
+        if (!records.hasRemaining()) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Force the chunks recorded since the last checkpoint to the storage device, and then save their records to the
+     * journal file and force it too. Nothing happens if no chunk was recorded since the last checkpoint.
+     *
+     * @throws IOException if the chunks cannot be forced or if the records cannot be written to the journal file
+     */
+    public synchronized void checkpoint() throws IOException {
+        if (pendingChunks.isEmpty()) {
+            return;
+        }
+
+        // The records must not reach the storage device before the chunks they describe
+        for (int[] chunk: pendingChunks) {
+            store.forceChunk(chunk[0], chunk[1], chunk[2], chunk[3], chunk[4]);
+        }
+
+        records.flip();
+        while (records.hasRemaining()) {
+            channel.write(records);
+        }
+        channel.force(false);
+
+        logger.trace("Checkpoint of {} chunks saved to {}", pendingChunks.size(), path);
+        records.clear();
+        pendingChunks.clear();
+    }
+
+    /**
+     * @return the number of chunks recorded as written, all levels included
+     */
+    public synchronized int getNumberOfWrittenChunks() {
+        return writtenChunks.stream().mapToInt(BitSet::cardinality).sum();
+    }
+
+    /**
+     * Close this journal and delete its file. This should be called once all chunks of the image are written.
+     *
+     * @throws IOException if the journal file cannot be deleted
+     */
+    public synchronized void delete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+        logger.debug("Deleted chunk journal {}", path);
+    }
+
+    /**
+     * Save the records not saved yet (see {@link #checkpoint()}) and close this journal while keeping its file, so that
+     * the writing can be resumed later.
+     *
+     * @throws IOException if the records cannot be saved or if the journal file cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel.isOpen()) {
+            try (channel) {
+                checkpoint();
+            }
+        }
+    }
+
+    private static ZarrChunkJournal create(OmeZarrStore store, byte[] fingerprint, Path path) throws IOException {
+        checkFingerprint(fingerprint);
+
+        FileChannel channel = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE
+        );
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).put(fingerprint).flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            channel.force(false);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        logger.debug("Created chunk journal {}", path);
+
+        return new ZarrChunkJournal(store, path, channel, createEmptyBitmaps(store));
+    }
+
+    private static ZarrChunkJournal open(OmeZarrStore store, byte[] fingerprint, Path path) throws IOException {
+        checkFingerprint(fingerprint);
+
+        ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE);
+        try {
+            if (content.remaining() < HEADER_LENGTH || content.getInt() != MAGIC) {
+                throw new IllegalArgumentException(String.format("%s is not a valid chunk journal", path));
+            }
+            byte[] journalFingerprint = new byte[FINGERPRINT_LENGTH];
+            content.get(journalFingerprint);
+            if (!Arrays.equals(fingerprint, journalFingerprint)) {
+                throw new IllegalArgumentException(String.format(
+                        "%s was created for different input images, positions or output parameters", path
+                ));
+            }
+
+            List<BitSet> writtenChunks = createEmptyBitmaps(store);
+            while (content.remaining() >= RECORD_LENGTH) {
+                int level = content.getInt();
+                int chunk = content.getInt();
+
+                if (level < 0 || level >= writtenChunks.size() || chunk < 0) {
+                    throw new IllegalArgumentException(String.format(
+                            "%s contains the invalid record (%d, %d)", path, level, chunk
+                    ));
+                }
+                writtenChunks.get(level).set(chunk);
+            }
+
+            // Drop a record that was being written when the previous writing stopped
+            channel.truncate(content.position());
+            channel.position(content.position());
+
+            // A chunk of a sharded image is only saved once the index of its shard is written, so the chunks recorded
+            // in a shard that was not completed when the previous writing stopped must be written again
+            if (store.getShardSize() > 1) {
+                retainSavedChunks(store, writtenChunks);
+            }
+
+            logger.debug(
+                    "Opened chunk journal {} with {} written chunks",
+                    path,
+                    writtenChunks.stream().mapToInt(BitSet::cardinality).sum()
+            );
+            return new ZarrChunkJournal(store, path, channel, writtenChunks);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static void checkFingerprint(byte[] fingerprint) {
+        if (fingerprint.length != FINGERPRINT_LENGTH) {
+            throw new IllegalArgumentException(String.format(
+                    "The fingerprint has %d bytes, while %d were expected", fingerprint.length, FINGERPRINT_LENGTH
+            ));
+        }
+    }
+
+    private static Path getPartitionPath(Path imagePath, int partition) {
+        return imagePath.resolve(FILE_NAME + "-" + partition);
+    }
+
+    private static List<BitSet> createEmptyBitmaps(OmeZarrStore store) {
+        List<BitSet> bitmaps = new ArrayList<>();
+        for (int level=0; level<store.getNumberOfLevels(); level++) {
+            bitmaps.add(new BitSet());
+        }
+        return bitmaps;
+    }
+
+    private static void retainSavedChunks(OmeZarrStore store, List<BitSet> writtenChunks) throws IOException {
+        for (int level=0; level<store.getNumberOfLevels(); level++) {
+            int chunksPerPlane = store.getNumberOfChunksX(level) * store.getNumberOfChunksY(level);
+            BitSet savedChunks = new BitSet();
+
+            for (int t=0; t<store.getSizeT(); t++) {
+                for (int z=0; z<store.getSizeZ(); z++) {
+                    int planeOffset = (t * store.getSizeZ() + z) * chunksPerPlane;
+                    store.getSavedChunks(level, t, z).stream().forEach(chunk -> savedChunks.set(planeOffset + chunk));
+                }
+            }
+
+            writtenChunks.get(level).and(savedChunks);
+        }
+    }
+
+    private int getChunkIndex(int level, int t, int z, int chunkX, int chunkY) {
+        int nChunksX = store.getNumberOfChunksX(level);
+        int nChunksY = store.getNumberOfChunksY(level);
+
+        return ((t * store.getSizeZ() + z) * nChunksY + chunkY) * nChunksX + chunkX;
+    }
+}
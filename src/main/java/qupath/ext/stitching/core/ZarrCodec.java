@@ -0,0 +1,353 @@
+package qupath.ext.stitching.core;
+
+import com.bc.zarr.Compressor;
+import com.bc.zarr.CompressorFactory;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A compressor of Zarr chunks.
+ * <p>
+ * The Blosc codecs are the ones written by QuPath's OME-Zarr writer, and use the native Blosc library through jzarr.
+ * zlib and gzip only rely on the JDK.
+ * <p>
+ * Compressed codecs accept a compression level between {@link #MIN_LEVEL} (fastest) and {@link #MAX_LEVEL} (smallest
+ * chunks), which is saved with the image.
+ */
+public enum ZarrCodec {
+    /**
+     * Chunks are not compressed. This is the fastest codec, but the image takes the most space.
+     */
+    NONE,
+    /**
+     * Chunks are compressed with zlib.
+     */
+    ZLIB,
+    /**
+     * Chunks are compressed with gzip. This gives the same compression as {@link #ZLIB} with slightly larger chunks,
+     * but some readers only support this codec.
+     */
+    GZIP,
+    /**
+     * Chunks are compressed with Blosc using the LZ4 compressor and byte shuffling, like QuPath's OME-Zarr writer does
+     * by default. This is the fastest compressed codec.
+     */
+    BLOSC_LZ4,
+    /**
+     * Chunks are compressed with Blosc using the Zstandard compressor and byte shuffling. This gives smaller chunks
+     * than {@link #BLOSC_LZ4} but is slower.
+     */
+    BLOSC_ZSTD;
+
+    /**
+     * The compression level giving the fastest compression
+     */
+    public static final int MIN_LEVEL = 1;
+    /**
+     * The compression level giving the smallest chunks
+     */
+    public static final int MAX_LEVEL = 9;
+    /**
+     * The compression level used by default
+     */
+    public static final int DEFAULT_LEVEL = 5;     // a good compromise between compression speed and ratio
+    // Creating a deflater allocates its (native) state, so each thread reuses the same one
+    private static final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(() -> new Deflater(DEFAULT_LEVEL));
+    private static final int BLOSC_BYTE_SHUFFLE = 1;
+    // Blosc compressors only hold their parameters, so they are shared by all threads
+    private static final Map<String, Compressor> bloscCompressors = new ConcurrentHashMap<>();
+
+    /**
+     * Compress the provided bytes with the {@link #DEFAULT_LEVEL default level}.
+     *
+     * @param data the bytes to compress
+     * @return the compressed bytes
+     * @throws IOException if an error occurs while compressing
+     */
+    byte[] encode(byte[] data) throws IOException {
+        return encode(data, DEFAULT_LEVEL);
+    }
+
+    /**
+     * Compress the provided bytes.
+     *
+     * @param data the bytes to compress
+     * @param level the compression level to use. Ignored by {@link #NONE}
+     * @return the compressed bytes
+     * @throws IOException if an error occurs while compressing
+     * @throws IllegalArgumentException if the provided level is not between {@link #MIN_LEVEL} and {@link #MAX_LEVEL}
+     */
+    byte[] encode(byte[] data, int level) throws IOException {
+        if (this == NONE) {
+            return data;
+        }
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(data.length / 2);
+        encode(data, outputStream, level);
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Compress the provided bytes into a stream. This avoids allocating an array for the compressed bytes.
+     *
+     * @param data the bytes to compress
+     * @param outputStream the stream to write the compressed bytes to. It is closed by this function
+     * @param level the compression level to use. Ignored by {@link #NONE}
+     * @throws IOException if an error occurs while compressing or writing to the stream
+     * @throws IllegalArgumentException if the provided level is not between {@link #MIN_LEVEL} and {@link #MAX_LEVEL}
+     */
+    void encode(byte[] data, OutputStream outputStream, int level) throws IOException {
+        checkLevel(level);
+
+        switch (this) {
+            case NONE -> {
+                try (outputStream) {
+                    outputStream.write(data);
+                }
+            }
+            case ZLIB -> {
+                Deflater deflater = deflaters.get();
+                deflater.reset();
+                deflater.setLevel(level);
+
+                try (OutputStream compressedStream = new DeflaterOutputStream(outputStream, deflater)) {
+                    compressedStream.write(data);
+                }
+            }
+            case GZIP -> {
+                try (OutputStream compressedStream = new GZIPOutputStream(outputStream) {{ def.setLevel(level); }}) {
+                    compressedStream.write(data);
+                }
+            }
+            case BLOSC_LZ4, BLOSC_ZSTD -> {
+                try (outputStream) {
+                    getBloscCompressor(getBloscCompressorName(), level).compress(new ByteArrayInputStream(data), outputStream);
+                }
+            }
+        }
+    }
+
+    /**
+     * Decompress the provided bytes.
+     *
+     * @param data the bytes to decompress
+     * @param expectedLength the expected number of decompressed bytes
+     * @return the decompressed bytes
+     * @throws IOException if an error occurs while decompressing or if the provided bytes were not
+     * compressed with this codec
+     */
+    byte[] decode(byte[] data, int expectedLength) throws IOException {
+        if (this == NONE) {
+            return data;
+        }
+
+        byte[] decompressed;
+        if (this == BLOSC_LZ4 || this == BLOSC_ZSTD) {
+            // The header of a Blosc chunk describes how it was compressed, so any Blosc compressor can decompress it
+            ByteArrayOutputStream decompressedStream = new ByteArrayOutputStream(expectedLength);
+            getBloscCompressor(getBloscCompressorName(), DEFAULT_LEVEL).uncompress(new ByteArrayInputStream(data), decompressedStream);
+            decompressed = decompressedStream.toByteArray();
+        } else {
+            try (InputStream decompressedStream = this == ZLIB ?
+                    new InflaterInputStream(new ByteArrayInputStream(data)) :
+                    new GZIPInputStream(new ByteArrayInputStream(data))
+            ) {
+                decompressed = decompressedStream.readNBytes(expectedLength);
+            }
+        }
+
+        if (decompressed.length != expectedLength) {
+            throw new IOException(String.format("Expected %d decompressed bytes, got %d", expectedLength, decompressed.length));
+        }
+        return decompressed;
+    }
+
+    /**
+     * @return the JSON representation of this codec with the {@link #DEFAULT_LEVEL default level}, as expected by the
+     * "compressor" field of a Zarr v2 array
+     */
+    JsonElement toJson() {
+        return toJson(DEFAULT_LEVEL);
+    }
+
+    /**
+     * Get the JSON representation of this codec, as expected by the "compressor" field of a Zarr v2 array.
+     *
+     * @param level the compression level used. Ignored by {@link #NONE}
+     * @return the JSON representation of this codec
+     */
+    JsonElement toJson(int level) {
+        if (this == NONE) {
+            return JsonNull.INSTANCE;
+        }
+
+        JsonObject compressor = new JsonObject();
+        if (this == BLOSC_LZ4 || this == BLOSC_ZSTD) {
+            // The fields written by numcodecs and jzarr
+            compressor.addProperty("id", "blosc");
+            compressor.addProperty("cname", getBloscCompressorName());
+            compressor.addProperty("clevel", level);
+            compressor.addProperty("shuffle", BLOSC_BYTE_SHUFFLE);
+            compressor.addProperty("blocksize", 0);
+        } else {
+            compressor.addProperty("id", name().toLowerCase());
+            compressor.addProperty("level", level);
+        }
+        return compressor;
+    }
+
+    /**
+     * Get the codec described by the "compressor" field of a Zarr v2 array.
+     *
+     * @param compressor the "compressor" field of a Zarr v2 array. Can be null
+     * @return the codec corresponding to the provided field
+     * @throws IllegalArgumentException if the provided compressor is not supported
+     */
+    static ZarrCodec fromJson(JsonElement compressor) {
+        if (compressor == null || compressor.isJsonNull()) {
+            return NONE;
+        }
+
+        String id = compressor.isJsonObject() && compressor.getAsJsonObject().has("id") ?
+                compressor.getAsJsonObject().get("id").getAsString() :
+                compressor.toString();
+        return switch (id) {
+            case "zlib" -> ZLIB;
+            case "gzip" -> GZIP;
+            case "blosc" -> fromBloscCompressorName(compressor.getAsJsonObject().get("cname"));
+            default -> throw new IllegalArgumentException(String.format(
+                    "The %s compressor is not supported. Only uncompressed, zlib, gzip and blosc chunks can be read",
+                    id
+            ));
+        };
+    }
+
+    /**
+     * Get the compression level described by the "compressor" field of a Zarr v2 array.
+     *
+     * @param compressor the "compressor" field of a Zarr v2 array. Can be null
+     * @return the compression level of the provided field, or {@link #DEFAULT_LEVEL} if it doesn't contain a valid level
+     */
+    static int levelFromJson(JsonElement compressor) {
+        // Blosc names the level "clevel"
+        String key = compressor != null && compressor.isJsonObject() && compressor.getAsJsonObject().has("clevel") ? "clevel" : "level";
+
+        if (compressor != null && compressor.isJsonObject() && compressor.getAsJsonObject().has(key)) {
+            try {
+                int level = compressor.getAsJsonObject().get(key).getAsInt();
+                if (level >= MIN_LEVEL && level <= MAX_LEVEL) {
+                    return level;
+                }
+            } catch (RuntimeException ignored) {
+                // The level is not a number, the default level is used
+            }
+        }
+        return DEFAULT_LEVEL;
+    }
+
+    /**
+     * Get the JSON representation of this codec, as expected in the "codecs" field of a Zarr v3 array. zlib is not
+     * part of the Zarr v3 specification, so {@link #ZLIB} is described with the name registered by numcodecs. Blosc
+     * chunks are described with a type size of 1 byte, which is the one jzarr compresses them with.
+     *
+     * @param level the compression level used. Ignored by {@link #NONE}
+     * @return the JSON representation of this codec, or null for {@link #NONE} (which doesn't need any codec)
+     */
+    JsonObject toCodecJson(int level) {
+        if (this == NONE) {
+            return null;
+        }
+
+        JsonObject configuration = new JsonObject();
+        JsonObject codec = new JsonObject();
+        if (this == BLOSC_LZ4 || this == BLOSC_ZSTD) {
+            configuration.addProperty("cname", getBloscCompressorName());
+            configuration.addProperty("clevel", level);
+            configuration.addProperty("shuffle", "shuffle");
+            configuration.addProperty("typesize", 1);
+            configuration.addProperty("blocksize", 0);
+            codec.addProperty("name", "blosc");
+        } else {
+            configuration.addProperty("level", level);
+            codec.addProperty("name", this == GZIP ? "gzip" : "numcodecs.zlib");
+        }
+        codec.add("configuration", configuration);
+        return codec;
+    }
+
+    /**
+     * Get the codec described by an element of the "codecs" field of a Zarr v3 array.
+     *
+     * @param codec an element of the "codecs" field of a Zarr v3 array (after the "bytes" codec). Can be null if
+     *              there is no such element
+     * @return the codec corresponding to the provided element
+     * @throws IllegalArgumentException if the provided codec is not supported
+     */
+    static ZarrCodec fromCodecJson(JsonObject codec) {
+        if (codec == null) {
+            return NONE;
+        }
+
+        String name = codec.has("name") ? codec.get("name").getAsString() : codec.toString();
+        return switch (name) {
+            case "zlib", "numcodecs.zlib" -> ZLIB;
+            case "gzip" -> GZIP;
+            case "blosc" -> fromBloscCompressorName(codec.has("configuration") ? codec.getAsJsonObject("configuration").get("cname") : null);
+            default -> throw new IllegalArgumentException(String.format(
+                    "The %s codec is not supported. Only uncompressed, zlib, gzip and blosc chunks can be read",
+                    name
+            ));
+        };
+    }
+
+    private String getBloscCompressorName() {
+        return this == BLOSC_ZSTD ? "zstd" : "lz4";
+    }
+
+    private static ZarrCodec fromBloscCompressorName(JsonElement name) {
+        // Chunks compressed with other Blosc compressors (such as blosclz) are read as LZ4 ones, which is possible as
+        // decompression doesn't depend on the compressor. Chunks written to such images are then compressed with LZ4
+        return name != null && name.isJsonPrimitive() && name.getAsString().equals("zstd") ? BLOSC_ZSTD : BLOSC_LZ4;
+    }
+
+    private static Compressor getBloscCompressor(String name, int level) {
+        return bloscCompressors.computeIfAbsent(name + level, key -> CompressorFactory.create(
+                "blosc",
+                "cname", name,
+                "clevel", level,
+                "shuffle", BLOSC_BYTE_SHUFFLE,
+                "blocksize", 0
+        ));
+    }
+
+    /**
+     * Check that a compression level is valid.
+     *
+     * @param level the compression level to check
+     * @throws IllegalArgumentException if the provided level is not between {@link #MIN_LEVEL} and {@link #MAX_LEVEL}
+     */
+    static void checkLevel(int level) {
+        if (level < MIN_LEVEL || level > MAX_LEVEL) {
+            throw new IllegalArgumentException(String.format(
+                    "The compression level (%d) must be between %d and %d",
+                    level,
+                    MIN_LEVEL,
+                    MAX_LEVEL
+            ));
+        }
+    }
+}
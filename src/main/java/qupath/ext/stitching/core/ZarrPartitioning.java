@@ -0,0 +1,133 @@
+package qupath.ext.stitching.core;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * A split of the chunks of an {@link OmeZarrStore} into disjoint partitions, so that several processes can write the
+ * same image at the same time, each process writing one partition.
+ * <p>
+ * The full resolution level is divided into square blocks of chunks, and each block is assigned to a partition. A
+ * partition writes the full resolution chunks of its blocks and the lower resolution chunks containing them, up to
+ * the {@link #getPartitionLevel() partition level}. Blocks are aligned with the chunks and the shards of all these
+ * levels, so two partitions never write the same chunk or the same shard file. The levels above the partition level
+ * only contain a few chunks, which are written once all partitions are written.
+ * <p>
+ * Blocks are sorted along a Z-order curve, and each partition receives a contiguous range of blocks containing about
+ * the same number of covered chunks. Partitions therefore take similar times to write, and each of them reads input
+ * images located close to each other.
+ * <p>
+ * The partitioning only depends on the structure of the image, the covered chunks and the number of partitions, so
+ * processes using the same stitching layout compute the same partitioning.
+ * <p>
+ * This class is immutable.
+ */
+class ZarrPartitioning {
+
+    private static final int MIN_BLOCKS_PER_PARTITION = 4;      // so that blocks can be balanced between partitions
+    private final int partitionLevel;
+    private final List<BitSet> chunksPerPartition;
+
+    /**
+     * Split the chunks of the provided image into partitions.
+     *
+     * @param store the image whose chunks should be split
+     * @param coveredChunks the chunks of the full resolution level that contain pixels to write, used to balance the
+     *                      partitions. Chunk (x, y) is represented by the bit y * (number of chunks along the x-axis) + x
+     * @param numberOfPartitions the number of partitions to create. Some partitions may be empty if the image
+     *                           contains fewer blocks than partitions
+     * @throws IllegalArgumentException if the number of partitions is less than 1
+     */
+    public ZarrPartitioning(OmeZarrStore store, BitSet coveredChunks, int numberOfPartitions) {
+        if (numberOfPartitions < 1) {
+            throw new IllegalArgumentException(String.format("The number of partitions (%d) must be at least 1", numberOfPartitions));
+        }
+        int nChunksX = store.getNumberOfChunksX(0);
+        int nChunksY = store.getNumberOfChunksY(0);
+
+        // A higher partition level leaves fewer chunks to write once the partitions are written, but gives larger
+        // blocks that are harder to balance
+        int level = store.getNumberOfLevels() - 1;
+        while (level > 0 && getNumberOfBlocks(nChunksX, nChunksY, getBlockSize(store, level)) < MIN_BLOCKS_PER_PARTITION * numberOfPartitions) {
+            level--;
+        }
+        this.partitionLevel = level;
+
+        int blockSize = getBlockSize(store, level);
+        int nBlocksX = Math.ceilDiv(nChunksX, blockSize);
+        int nBlocksY = Math.ceilDiv(nChunksY, blockSize);
+        int[] coveredChunksPerBlock = new int[nBlocksX * nBlocksY];
+        for (int chunk=coveredChunks.nextSetBit(0); chunk>=0; chunk=coveredChunks.nextSetBit(chunk+1)) {
+            coveredChunksPerBlock[(chunk / nChunksX / blockSize) * nBlocksX + (chunk % nChunksX) / blockSize]++;
+        }
+        // Blocks are given the same weight if no chunk is covered
+        boolean weighted = !coveredChunks.isEmpty();
+        long totalWeight = weighted ? coveredChunks.cardinality() : coveredChunksPerBlock.length;
+
+        List<Integer> blocks = IntStream.range(0, coveredChunksPerBlock.length)
+                .boxed()
+                .sorted(Comparator.comparingLong(block -> ZarrPyramidWriter.getZOrderIndex(block % nBlocksX, block / nBlocksX)))
+                .toList();
+        this.chunksPerPartition = new ArrayList<>(numberOfPartitions);
+        for (int partition=0; partition<numberOfPartitions; partition++) {
+            chunksPerPartition.add(new BitSet());
+        }
+
+        long weightBefore = 0;
+        for (int block: blocks) {
+            int weight = weighted ? coveredChunksPerBlock[block] : 1;
+            // Each block goes to the partition containing its middle
+            int partition = (int) Math.min(numberOfPartitions - 1, (2 * weightBefore + weight) * numberOfPartitions / (2 * totalWeight));
+
+            BitSet chunks = chunksPerPartition.get(partition);
+            int blockX = block % nBlocksX;
+            int blockY = block / nBlocksX;
+            for (int chunkY=blockY*blockSize; chunkY<Math.min(nChunksY, (blockY+1)*blockSize); chunkY++) {
+                chunks.set(chunkY * nChunksX + blockX * blockSize, chunkY * nChunksX + Math.min(nChunksX, (blockX+1) * blockSize));
+            }
+
+            weightBefore += weight;
+        }
+    }
+
+    /**
+     * @return the number of partitions of the image
+     */
+    public int getNumberOfPartitions() {
+        return chunksPerPartition.size();
+    }
+
+    /**
+     * @return the lowest resolution level whose chunks are written by the partitions. Chunks of the levels above are
+     * not part of any partition
+     */
+    public int getPartitionLevel() {
+        return partitionLevel;
+    }
+
+    /**
+     * Get the full resolution chunks of a partition.
+     *
+     * @param partition the index of the partition
+     * @return the chunks of the full resolution level belonging to the provided partition, whether they are covered or
+     * not. Chunk (x, y) is represented by the bit y * (number of chunks along the x-axis) + x. This is a copy that can
+     * be modified
+     * @throws IndexOutOfBoundsException if the provided index is out of bounds
+     */
+    public BitSet getChunks(int partition) {
+        return (BitSet) chunksPerPartition.get(partition).clone();
+    }
+
+    private static int getBlockSize(OmeZarrStore store, int level) {
+        // A block must contain whole shards of each level up to the partition level, and a chunk of this level
+        // corresponds to (downsample of the level) chunks of the full resolution level along each axis
+        return store.getShardSize() * store.getDownsample(level);
+    }
+
+    private static long getNumberOfBlocks(int nChunksX, int nChunksY, int blockSize) {
+        return (long) Math.ceilDiv(nChunksX, blockSize) * Math.ceilDiv(nChunksY, blockSize);
+    }
+}
@@ -0,0 +1,709 @@
+package qupath.ext.stitching.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import qupath.lib.common.ThreadTools;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * A class to write the pixels of a {@link StitchedImageServer} to the chunks of an {@link OmeZarrStore}.
+ * <p>
+ * Chunks of the full resolution level are created by drawing the input images of the server. Chunks of the level n
+ * are then created by downsampling the chunks of the level n-1 they contain (up to f x f chunks, where f is the
+ * {@link OmeZarrStore#getDownsampleFactor(int) downsample factor} of the level n). So the input images are only read
+ * once, whatever the number of levels.
+ * <p>
+ * All levels are written in a single pass: as soon as a chunk is written, it is downsampled into the (in-memory) image
+ * of its parent chunk and released, and the thread writing the last child of a parent chunk then writes the parent chunk.
+ * Full resolution chunks are processed along a Z-order curve, so that only a few parent chunks are kept in memory at
+ * the same time. Children that are not written during the run (because they were already written) are read back from
+ * the store.
+ * <p>
+ * Only the provided full resolution chunks and the chunks of the lower resolution levels containing them are written.
+ * This allows to update a part of an existing image without rewriting all of it, and to skip the chunks that are not
+ * covered by any input image (see {@link ChunkCoverage}), which are then left to the fill value of the store. The
+ * images of fully covered chunks are not filled with zeros before being drawn, as all their pixels are overwritten.
+ * <p>
+ * Written chunks can be recorded to a {@link ZarrChunkJournal}, so that an interrupted writing can be resumed. Since
+ * a chunk is only written once all its children are written, a chunk recorded as written always has all its children
+ * recorded as well.
+ * <p>
+ * If a {@link MemoryBudget} is provided, writing a full resolution chunk (and the parent chunks it completes) first
+ * reserves the bytes of the chunk, of the parts of the input images it contains, and of the buffers used to encode
+ * it, and waits if the budget is reached. The images of parent chunks that are waiting for their other children are
+ * reserved without waiting (as they are needed to release the other reservations) until they are written.
+ * <p>
+ * If a {@link ThreadBudget} client is provided, writing a full resolution chunk (and the parent chunks it completes)
+ * first acquires a permit from it, so that several writers running at the same time share the same threads.
+ * <p>
+ * The images of chunks are taken from an {@link ImagePool} and given back once they are written (and downsampled into
+ * their parent), and the buffers used to downsample chunks are reused by each thread, so the only pixel buffers
+ * allocated when writing a chunk once the first chunks are written are the parts of the input images returned by their
+ * input servers (see {@link StitchedImageServer}).
+ */
+class ZarrPyramidWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ZarrPyramidWriter.class);
+    private static final ThreadLocal<DownsamplingBuffers> downsamplingBuffers = ThreadLocal.withInitial(DownsamplingBuffers::new);
+    private final StitchedImageServer server;
+    private final OmeZarrStore store;
+    private final int offsetX;
+    private final int offsetY;
+    private final int numberOfThreads;
+    private final MemoryBudget memoryBudget;
+    private final ThreadBudget.Client threadBudget;
+    private final ChunkCoverage coverage;
+
+    private ZarrPyramidWriter(Builder builder) {
+        this.server = builder.server;
+        this.store = builder.store;
+        this.offsetX = builder.offsetX;
+        this.offsetY = builder.offsetY;
+        this.numberOfThreads = builder.numberOfThreads;
+        this.memoryBudget = builder.memoryBudget;
+        this.threadBudget = builder.threadBudget;
+        this.coverage = new ChunkCoverage(server.getLayout(), store, offsetX, offsetY);
+    }
+
+    /**
+     * @return all chunks of the full resolution level of the store. Chunk (x, y) is represented by the bit
+     * y * (number of chunks along the x-axis) + x
+     */
+    public BitSet getAllChunks() {
+        BitSet chunks = new BitSet();
+        chunks.set(0, store.getNumberOfChunksX(0) * store.getNumberOfChunksY(0));
+        return chunks;
+    }
+
+    /**
+     * @return the chunks of the full resolution level of the store that intersect at least one input image of the server.
+     * Chunk (x, y) is represented by the bit y * (number of chunks along the x-axis) + x
+     */
+    public BitSet getChunksCoveredByInputs() {
+        return getChunksCoveredByInputs(0);
+    }
+
+    /**
+     * Get the chunks of a level that intersect at least one input image of the server.
+     *
+     * @param level the resolution level of the chunks
+     * @return the chunks of the provided level that intersect at least one input image of the server. Chunk (x, y) is
+     * represented by the bit y * (number of chunks along the x-axis) + x
+     */
+    public BitSet getChunksCoveredByInputs(int level) {
+        return coverage.getCoveredChunks(level);
+    }
+
+    /**
+     * Write the provided full resolution chunks and the chunks of all lower resolution levels containing them.
+     *
+     * @param chunks the chunks of the full resolution level to write (see {@link #getAllChunks()})
+     * @param drawOnExistingChunks whether the input images should be drawn on top of the full resolution chunks already
+     *                             present in the store (to update an existing image), or on empty chunks. If false,
+     *                             the chunks of the store not covered by any input image are considered empty and
+     *                             are not read
+     * @param journal a journal to record written chunks to. Chunks already recorded as written in this journal are
+     *                skipped. Can be null
+     * @param onProgress a function that will be called each time a chunk is written. Its parameter will be a float
+     *                   between 0 and 1 indicating the progress of the operation. This function may be called from any
+     *                   thread. Can be null
+     * @throws IOException if an error occurs while reading the input images or writing a chunk
+     * @throws InterruptedException if the writing is interrupted
+     */
+    public void write(
+            BitSet chunks,
+            boolean drawOnExistingChunks,
+            ZarrChunkJournal journal,
+            Consumer<Float> onProgress
+    ) throws IOException, InterruptedException {
+        write(chunks, 0, store.getNumberOfLevels() - 1, drawOnExistingChunks, journal, onProgress);
+    }
+
+    /**
+     * Write the provided chunks of a level and the chunks of the lower resolution levels containing them, up to a
+     * maximum level. Chunks of the levels above the provided level are not written, and are read from the store
+     * when needed. This allows to write a part of the levels of an image (see {@link ZarrPartitioning}).
+     *
+     * @param chunks the chunks of the provided level to write. Chunk (x, y) is represented by the bit
+     *               y * (number of chunks along the x-axis) + x
+     * @param minLevel the resolution level of the provided chunks
+     * @param maxLevel the lowest resolution level to write
+     * @param drawOnExistingChunks whether the input images should be drawn on top of the full resolution chunks already
+     *                             present in the store (to update an existing image), or on empty chunks. If false,
+     *                             the chunks of the store not covered by any input image are considered empty and
+     *                             are not read
+     * @param journal a journal to record written chunks to. Chunks already recorded as written in this journal are
+     *                skipped. Can be null
+     * @param onProgress a function that will be called each time a chunk is written. Its parameter will be a float
+     *                   between 0 and 1 indicating the progress of the operation. This function may be called from any
+     *                   thread. Can be null
+     * @throws IOException if an error occurs while reading the input images or writing a chunk
+     * @throws InterruptedException if the writing is interrupted
+     * @throws IllegalArgumentException if the provided levels are not levels of the store, or if the minimum level is
+     * greater than the maximum level
+     */
+    public void write(
+            BitSet chunks,
+            int minLevel,
+            int maxLevel,
+            boolean drawOnExistingChunks,
+            ZarrChunkJournal journal,
+            Consumer<Float> onProgress
+    ) throws IOException, InterruptedException {
+        if (minLevel < 0 || maxLevel >= store.getNumberOfLevels() || minLevel > maxLevel) {
+            throw new IllegalArgumentException(String.format(
+                    "The levels to write (%d to %d) must be between 0 and %d", minLevel, maxLevel, store.getNumberOfLevels() - 1
+            ));
+        }
+        int sizeZ = Math.min(server.nZSlices(), store.getSizeZ());
+        int sizeT = Math.min(server.nTimepoints(), store.getSizeT());
+
+        List<BitSet> chunksPerLevel = new ArrayList<>();
+        for (int level=0; level<store.getNumberOfLevels(); level++) {
+            if (level < minLevel || level > maxLevel) {
+                chunksPerLevel.add(new BitSet());
+            } else if (level == minLevel) {
+                chunksPerLevel.add(chunks);
+            } else {
+                chunksPerLevel.add(getParentChunks(chunksPerLevel.get(level - 1), level - 1));
+            }
+        }
+
+        // The journal is only read here, as chunks written during this run will be added to it
+        List<BitSet> chunksToWrite = new ArrayList<>();
+        for (int level=0; level<store.getNumberOfLevels(); level++) {
+            BitSet levelChunks = new BitSet();
+            for (int t=0; t<sizeT; t++) {
+                for (int z=0; z<sizeZ; z++) {
+                    BitSet planeChunks = chunksPerLevel.get(level);
+                    for (int chunk=planeChunks.nextSetBit(0); chunk>=0; chunk=planeChunks.nextSetBit(chunk+1)) {
+                        ChunkKey key = new ChunkKey(level, t, z, chunk);
+
+                        if (journal == null || !journal.isWritten(level, t, z, getChunkX(key), getChunkY(key))) {
+                            levelChunks.set(getIndex(key));
+                        }
+                    }
+                }
+            }
+            chunksToWrite.add(levelChunks);
+            store.setChunksToWrite(level, levelChunks);
+        }
+
+        // Chunks having children written during this run are only written once their last child is written.
+        // The others can be written right away
+        Map<ChunkKey, PendingChunk> pendingChunks = new ConcurrentHashMap<>();
+        List<ChunkKey> readyChunks = new ArrayList<>();
+        for (int t=0; t<sizeT; t++) {
+            for (int z=0; z<sizeZ; z++) {
+                for (int level=0; level<store.getNumberOfLevels(); level++) {
+                    for (int chunk: getChunksInZOrder(chunksPerLevel.get(level), level)) {
+                        ChunkKey key = new ChunkKey(level, t, z, chunk);
+                        if (!isWrittenDuringRun(key, chunksToWrite)) {
+                            continue;
+                        }
+
+                        int numberOfChildren = (int) getChildren(key).stream()
+                                .filter(child -> isWrittenDuringRun(child, chunksToWrite))
+                                .count();
+                        if (numberOfChildren == 0) {
+                            readyChunks.add(key);
+                        } else {
+                            pendingChunks.put(key, new PendingChunk(numberOfChildren));
+                        }
+                    }
+                }
+            }
+        }
+
+        int numberOfTasks = chunksPerLevel.stream().mapToInt(BitSet::cardinality).sum() * sizeZ * sizeT;
+        int numberOfTasksAlreadyDone = journal == null ? 0 : journal.getNumberOfWrittenChunks();
+        logger.debug(
+                "{} chunks to write to {}, {} of them already written, {} of them can be written right away",
+                numberOfTasks,
+                store,
+                numberOfTasksAlreadyDone,
+                readyChunks.size()
+        );
+
+        AtomicInteger numberOfTasksDone = new AtomicInteger(numberOfTasksAlreadyDone);
+        // Each thread uses at most two images at the same time (a chunk and a child read from the store), and the pending
+        // parent chunks are created from released images
+        ImagePool imagePool = new ImagePool(server.createEmptyImage(1, 1), 2 * numberOfThreads);
+        try (ExecutorService executorService = Executors.newFixedThreadPool(
+                numberOfThreads,
+                ThreadTools.createThreadFactory("zarr-writer-", false)
+        )) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (ChunkKey readyChunk: readyChunks) {
+                futures.add(executorService.submit(() -> {
+                    ChunkKey key = readyChunk;
+
+                    // The input images are awaited before acquiring the thread permit and the memory, so that a thread
+                    // waiting for the parsing of an input image doesn't prevent other threads from running
+                    if (key.level() == 0) {
+                        server.awaitInputs(
+                                getChunkX(key) * store.getChunkWidth() - offsetX,
+                                getChunkY(key) * store.getChunkHeight() - offsetY,
+                                store.getChunkWidth(),
+                                store.getChunkHeight()
+                        );
+                    }
+
+                    // The thread permit is acquired before the memory, so that a thread waiting for memory doesn't
+                    // prevent the threads holding memory from running
+                    try (
+                            ThreadBudget.Permit ignoredPermit = threadBudget == null ? null : threadBudget.acquire();
+                            MemoryBudget.Reservation ignoredReservation = memoryBudget == null ? null : memoryBudget.reserve(getBytesToWrite(key))
+                    ) {
+                        // Writing a chunk may complete its parent, which is then written by the same thread, and so on
+                        while (key != null) {
+                            PendingChunk pendingChunk = pendingChunks.remove(key);
+                            BufferedImage image = key.level() == 0 ?
+                                    createFullResolutionChunk(key, drawOnExistingChunks, imagePool) :
+                                    createDownsampledChunk(key, pendingChunk, chunksToWrite, drawOnExistingChunks, imagePool);
+
+                            store.writeChunk(key.level(), key.t(), key.z(), getChunkX(key), getChunkY(key), image.getRaster());
+                            if (journal != null) {
+                                journal.markWritten(key.level(), key.t(), key.z(), getChunkX(key), getChunkY(key));
+                            }
+                            if (onProgress != null) {
+                                onProgress.accept((float) numberOfTasksDone.incrementAndGet() / numberOfTasks);
+                            }
+
+                            key = addToParent(key, image, pendingChunks, imagePool);
+                            imagePool.release(image);
+                            if (pendingChunk != null) {
+                                pendingChunk.release();
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            try {
+                for (Future<?> future: futures) {
+                    future.get();
+                }
+            } catch (ExecutionException e) {
+                executorService.shutdownNow();
+
+                switch (e.getCause()) {
+                    case IOException ioException -> throw ioException;
+                    case RuntimeException runtimeException -> throw runtimeException;
+                    default -> throw new IOException(e.getCause());
+                }
+            } catch (InterruptedException e) {
+                executorService.shutdownNow();
+                throw e;
+            } finally {
+                // Chunks not written because of an error must not keep their bytes reserved
+                for (PendingChunk pendingChunk: pendingChunks.values()) {
+                    pendingChunk.release();
+                }
+            }
+        }
+
+        if (!pendingChunks.isEmpty()) {
+            throw new IllegalStateException(String.format("%d chunks were not written to %s", pendingChunks.size(), store));
+        }
+        logger.debug("Chunks of {} written", store);
+    }
+
+    private BitSet getParentChunks(BitSet chunks, int level) {
+        int nChunksX = store.getNumberOfChunksX(level);
+        int nParentChunksX = store.getNumberOfChunksX(level + 1);
+        int factor = store.getDownsampleFactor(level + 1);
+
+        BitSet parentChunks = new BitSet();
+        for (int chunk=chunks.nextSetBit(0); chunk>=0; chunk=chunks.nextSetBit(chunk+1)) {
+            parentChunks.set((chunk / nChunksX / factor) * nParentChunksX + (chunk % nChunksX) / factor);
+        }
+        return parentChunks;
+    }
+
+    private List<Integer> getChunksInZOrder(BitSet chunks, int level) {
+        int nChunksX = store.getNumberOfChunksX(level);
+
+        // Following a Z-order curve makes the children of a chunk written close in time, so that the chunk can be
+        // written and its children released early
+        return chunks.stream()
+                .boxed()
+                .sorted(Comparator.comparingLong(chunk -> getZOrderIndex(chunk % nChunksX, chunk / nChunksX)))
+                .toList();
+    }
+
+    private List<ChunkKey> getChildren(ChunkKey key) {
+        if (key.level() == 0) {
+            return List.of();
+        }
+
+        int nChildChunksX = store.getNumberOfChunksX(key.level() - 1);
+        int nChildChunksY = store.getNumberOfChunksY(key.level() - 1);
+        int factor = store.getDownsampleFactor(key.level());
+        List<ChunkKey> children = new ArrayList<>(factor * factor);
+        for (int dy=0; dy<factor; dy++) {
+            for (int dx=0; dx<factor; dx++) {
+                int childX = factor * getChunkX(key) + dx;
+                int childY = factor * getChunkY(key) + dy;
+
+                if (childX < nChildChunksX && childY < nChildChunksY) {
+                    children.add(new ChunkKey(key.level() - 1, key.t(), key.z(), childY * nChildChunksX + childX));
+                }
+            }
+        }
+        return children;
+    }
+
+    private BufferedImage createFullResolutionChunk(ChunkKey key, boolean drawOnExistingChunk, ImagePool imagePool) throws IOException {
+        int x = getChunkX(key) * store.getChunkWidth();
+        int y = getChunkY(key) * store.getChunkHeight();
+        boolean overwritten = !drawOnExistingChunk && coverage.getCoverage(0, key.chunk()) == ChunkCoverage.Coverage.FULL;
+        BufferedImage chunk = overwritten ? createUnclearedChunk(key, imagePool) : createEmptyChunk(key, imagePool);
+
+        if (drawOnExistingChunk) {
+            store.readChunk(0, key.t(), key.z(), getChunkX(key), getChunkY(key), chunk.getRaster());
+        }
+        if (!server.drawInputs(chunk.getRaster(), x - offsetX, y - offsetY, key.z(), key.t()) && overwritten) {
+            // An input image was not drawn (for example because it doesn't have this z-slice), so some pixels of the
+            // reused image may not have been overwritten
+            imagePool.release(chunk);
+            chunk = createEmptyChunk(key, imagePool);
+            server.drawInputs(chunk.getRaster(), x - offsetX, y - offsetY, key.z(), key.t());
+        }
+
+        return chunk;
+    }
+
+    private BufferedImage createDownsampledChunk(
+            ChunkKey key,
+            PendingChunk pendingChunk,
+            List<BitSet> chunksToWrite,
+            boolean drawOnExistingChunks,
+            ImagePool imagePool
+    ) throws IOException {
+        BufferedImage chunk = pendingChunk == null ? createEmptyChunk(key, imagePool) : pendingChunk.getImage();
+
+        // Children written during this run were already added to the chunk. The others are read from the store, except
+        // when they were never written because they are not covered
+        for (ChunkKey child: getChildren(key)) {
+            boolean childEmpty = !drawOnExistingChunks && coverage.getCoverage(child.level(), child.chunk()) == ChunkCoverage.Coverage.UNCOVERED;
+
+            if (!isWrittenDuringRun(child, chunksToWrite) && !childEmpty) {
+                BufferedImage childImage = createEmptyChunk(child, imagePool);
+                store.readChunk(child.level(), child.t(), child.z(), getChunkX(child), getChunkY(child), childImage.getRaster());
+
+                downsampleInto(
+                        childImage.getRaster(),
+                        chunk.getRaster(),
+                        getPositionInParentX(child),
+                        getPositionInParentY(child),
+                        store.getDownsampleFactor(key.level())
+                );
+                imagePool.release(childImage);
+            }
+        }
+
+        return chunk;
+    }
+
+    private ChunkKey addToParent(
+            ChunkKey key,
+            BufferedImage image,
+            Map<ChunkKey, PendingChunk> pendingChunks,
+            ImagePool imagePool
+    ) {
+        if (key.level() + 1 >= store.getNumberOfLevels()) {
+            return null;
+        }
+
+        int nParentChunksX = store.getNumberOfChunksX(key.level() + 1);
+        int factor = store.getDownsampleFactor(key.level() + 1);
+        ChunkKey parentKey = new ChunkKey(
+                key.level() + 1,
+                key.t(),
+                key.z(),
+                (getChunkY(key) / factor) * nParentChunksX + getChunkX(key) / factor
+        );
+        PendingChunk parent = pendingChunks.get(parentKey);
+        if (parent == null) {
+            return null;
+        }
+
+        synchronized (parent) {
+            if (parent.image == null) {
+                // All children of a fully covered chunk are drawn into it, either during this run or from the store
+                parent.image = coverage.getCoverage(parentKey.level(), parentKey.chunk()) == ChunkCoverage.Coverage.FULL ?
+                        createUnclearedChunk(parentKey, imagePool) :
+                        createEmptyChunk(parentKey, imagePool);
+                if (memoryBudget != null) {
+                    parent.reservation = memoryBudget.forceReserve(getChunkBytes());
+                }
+            }
+            downsampleInto(image.getRaster(), parent.image.getRaster(), getPositionInParentX(key), getPositionInParentY(key), factor);
+
+            parent.remainingChildren--;
+            return parent.remainingChildren == 0 ? parentKey : null;
+        }
+    }
+
+    private long getBytesToWrite(ChunkKey key) {
+        long chunkBytes = getChunkBytes();
+        // Each channel is converted to samples (of up to 8 bytes), then to bytes, then encoded. The encoded bytes of
+        // all channels are kept together when the store is sharded
+        long encodedChannels = store.getShardSize() > 1 ? store.getSizeC() : 1;
+        long encodingBytes = (long) store.getChunkWidth() * store.getChunkHeight() *
+                (Double.BYTES + (1 + encodedChannels) * store.getPixelType().getBytesPerPixel());
+
+        if (key.level() == 0) {
+            return chunkBytes + encodingBytes + server.getInputBytes(
+                    getChunkX(key) * store.getChunkWidth() - offsetX,
+                    getChunkY(key) * store.getChunkHeight() - offsetY,
+                    store.getChunkWidth(),
+                    store.getChunkHeight(),
+                    1
+            );
+        } else {
+            // The image of a chunk whose children are not written during this run and the image of one child read from the store
+            return 2 * chunkBytes + encodingBytes;
+        }
+    }
+
+    private long getChunkBytes() {
+        return MemoryBudget.getImageBytes(store.getChunkWidth(), store.getChunkHeight(), store.getSizeC(), store.getPixelType());
+    }
+
+    private BufferedImage createEmptyChunk(ChunkKey key, ImagePool imagePool) {
+        return imagePool.acquire(
+                Math.min(store.getChunkWidth(), store.getWidth(key.level()) - getChunkX(key) * store.getChunkWidth()),
+                Math.min(store.getChunkHeight(), store.getHeight(key.level()) - getChunkY(key) * store.getChunkHeight())
+        );
+    }
+
+    private BufferedImage createUnclearedChunk(ChunkKey key, ImagePool imagePool) {
+        return imagePool.acquire(
+                Math.min(store.getChunkWidth(), store.getWidth(key.level()) - getChunkX(key) * store.getChunkWidth()),
+                Math.min(store.getChunkHeight(), store.getHeight(key.level()) - getChunkY(key) * store.getChunkHeight()),
+                false
+        );
+    }
+
+    private int getChunkX(ChunkKey key) {
+        return key.chunk() % store.getNumberOfChunksX(key.level());
+    }
+
+    private int getChunkY(ChunkKey key) {
+        return key.chunk() / store.getNumberOfChunksX(key.level());
+    }
+
+    private int getPositionInParentX(ChunkKey key) {
+        int factor = store.getDownsampleFactor(key.level() + 1);
+        return (getChunkX(key) % factor) * store.getChunkWidth() / factor;
+    }
+
+    private int getPositionInParentY(ChunkKey key) {
+        int factor = store.getDownsampleFactor(key.level() + 1);
+        return (getChunkY(key) % factor) * store.getChunkHeight() / factor;
+    }
+
+    private boolean isWrittenDuringRun(ChunkKey key, List<BitSet> chunksToWrite) {
+        return chunksToWrite.get(key.level()).get(getIndex(key));
+    }
+
+    private int getIndex(ChunkKey key) {
+        int numberOfChunks = store.getNumberOfChunksX(key.level()) * store.getNumberOfChunksY(key.level());
+        return (key.t() * store.getSizeZ() + key.z()) * numberOfChunks + key.chunk();
+    }
+
+    /**
+     * Get the index of a cell along a Z-order curve. Cells close to each other usually have close indices.
+     *
+     * @param x the x-coordinate of the cell
+     * @param y the y-coordinate of the cell
+     * @return the index of the cell along the Z-order curve
+     */
+    static long getZOrderIndex(int x, int y) {
+        long index = 0;
+        for (int bit=0; bit<Integer.SIZE; bit++) {
+            index |= ((long) (x >> bit) & 1) << (2 * bit);
+            index |= ((long) (y >> bit) & 1) << (2 * bit + 1);
+        }
+        return index;
+    }
+
+    private void downsampleInto(Raster source, WritableRaster destination, int x, int y, int factor) {
+        int width = Math.min(Math.ceilDiv(source.getWidth(), factor), destination.getWidth() - x);
+        int height = Math.min(Math.ceilDiv(source.getHeight(), factor), destination.getHeight() - y);
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        boolean round = !store.getPixelType().isFloatingPoint();
+
+        DownsamplingBuffers buffers = downsamplingBuffers.get();
+        buffers.ensureCapacity(source.getWidth() * source.getHeight(), width * height);
+        double[] sourceSamples = buffers.sourceSamples;
+        double[] destinationSamples = buffers.destinationSamples;
+        for (int band=0; band<source.getNumBands(); band++) {
+            source.getSamples(0, 0, source.getWidth(), source.getHeight(), band, sourceSamples);
+
+            for (int j=0; j<height; j++) {
+                for (int i=0; i<width; i++) {
+                    // Each destination pixel is the mean of the (up to) factor x factor source pixels it covers
+                    double sum = 0;
+                    int n = 0;
+                    for (int sourceY=factor*j; sourceY<Math.min(factor*(j+1), source.getHeight()); sourceY++) {
+                        for (int sourceX=factor*i; sourceX<Math.min(factor*(i+1), source.getWidth()); sourceX++) {
+                            sum += sourceSamples[sourceY * source.getWidth() + sourceX];
+                            n++;
+                        }
+                    }
+                    destinationSamples[j*width + i] = round ? Math.round(sum / n) : sum / n;
+                }
+            }
+
+            destination.setSamples(x, y, width, height, band, destinationSamples);
+        }
+    }
+
+    private record ChunkKey(int level, int t, int z, int chunk) {}
+
+    private static class DownsamplingBuffers {
+
+        private double[] sourceSamples = new double[0];
+        private double[] destinationSamples = new double[0];
+
+        private void ensureCapacity(int sourceLength, int destinationLength) {
+            if (sourceSamples.length < sourceLength) {
+                sourceSamples = new double[sourceLength];
+            }
+            if (destinationSamples.length < destinationLength) {
+                destinationSamples = new double[destinationLength];
+            }
+        }
+    }
+
+    private static class PendingChunk {
+
+        private int remainingChildren;
+        private BufferedImage image;
+        private MemoryBudget.Reservation reservation;
+
+        public PendingChunk(int remainingChildren) {
+            this.remainingChildren = remainingChildren;
+        }
+
+        public synchronized BufferedImage getImage() {
+            return image;
+        }
+
+        public synchronized void release() {
+            if (reservation != null) {
+                reservation.close();
+            }
+        }
+    }
+
+    /**
+     * A builder to create a {@link ZarrPyramidWriter}.
+     */
+    public static class Builder {
+
+        private final StitchedImageServer server;
+        private final OmeZarrStore store;
+        private int offsetX = 0;
+        private int offsetY = 0;
+        private int numberOfThreads = Runtime.getRuntime().availableProcessors();
+        private MemoryBudget memoryBudget = null;
+        private ThreadBudget.Client threadBudget = null;
+
+        /**
+         * Create the builder.
+         *
+         * @param server the server whose pixels should be written
+         * @param store the image to write to
+         * @throws NullPointerException if one of the provided parameters is null
+         */
+        public Builder(StitchedImageServer server, OmeZarrStore store) {
+            this.server = Objects.requireNonNull(server);
+            this.store = Objects.requireNonNull(store);
+        }
+
+        /**
+         * Set the position of the server within the full resolution level of the store. (0, 0) by default.
+         *
+         * @param offsetX the x-coordinate of the server within the full resolution level of the store
+         * @param offsetY the y-coordinate of the server within the full resolution level of the store
+         * @return this builder
+         */
+        public Builder offset(int offsetX, int offsetY) {
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+            return this;
+        }
+
+        /**
+         * Set the number of threads to use when writing chunks. The number of available processors by default.
+         *
+         * @param numberOfThreads the number of threads to use when writing chunks
+         * @return this builder
+         * @throws IllegalArgumentException if the provided number is less than 1
+         */
+        public Builder numberOfThreads(int numberOfThreads) {
+            if (numberOfThreads < 1) {
+                throw new IllegalArgumentException(String.format("The number of threads (%d) must be at least 1", numberOfThreads));
+            }
+
+            this.numberOfThreads = numberOfThreads;
+            return this;
+        }
+
+        /**
+         * Limit the memory used when writing chunks. The memory is not limited by default.
+         *
+         * @param memoryBudget the budget to reserve the bytes of the chunks being written from. Can be null to not
+         *                     limit the memory used
+         * @return this builder
+         */
+        public Builder memoryBudget(MemoryBudget memoryBudget) {
+            this.memoryBudget = memoryBudget;
+            return this;
+        }
+
+        /**
+         * Share the threads of the writer with other writers. The threads are not shared by default.
+         *
+         * @param threadBudget the budget to acquire a permit from before writing a chunk, so that writers of other jobs
+         *                     don't run more threads than the budget allows. Can be null to only limit the number of
+         *                     threads to the {@link #numberOfThreads(int) number of threads} of the writer
+         * @return this builder
+         */
+        public Builder threadBudget(ThreadBudget.Client threadBudget) {
+            this.threadBudget = threadBudget;
+            return this;
+        }
+
+        /**
+         * @return a new writer
+         */
+        public ZarrPyramidWriter build() {
+            return new ZarrPyramidWriter(this);
+        }
+    }
+}
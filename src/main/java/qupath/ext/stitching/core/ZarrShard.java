@@ -0,0 +1,303 @@
+package qupath.ext.stitching.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.zip.CRC32C;
+
+/**
+ * A shard of a Zarr v3 array using the "sharding_indexed" codec, which packs several chunks into a single file.
+ * <p>
+ * The file starts with an index containing the offset and length of each chunk (both equal to 2^64-1 for chunks not
+ * present), encoded as little endian 64-bit integers and followed by the CRC32C checksum of the index. Chunks are
+ * stored after the index, in the order in which they were written.
+ * <p>
+ * Chunks are written to a single {@link FileChannel} with positional writes: a thread writing chunks only reserves the
+ * range of the file it writes to, so several threads can write chunks of the same shard at the same time. The index is
+ * kept in memory and written once, when the expected number of chunks was written or when the shard is closed. A shard
+ * file whose index was not written (for example because the process stopped) is considered empty. The chunks are
+ * forced to the storage device before the index is written, and the index is forced too, so a shard whose index
+ * reached the storage device contains all the chunks it references.
+ * <p>
+ * An existing shard can be opened to replace some of its chunks. Replaced chunks are appended to the file, and the
+ * space taken by their previous version is not reclaimed.
+ * <p>
+ * This class is thread-safe.
+ */
+class ZarrShard implements AutoCloseable {
+
+    private static final long MISSING = -1;     // 2^64-1 when read as an unsigned integer
+    private static final int ENTRY_LENGTH = 2 * Long.BYTES;
+    private final Path path;
+    private final FileChannel channel;
+    private final long[] offsets;
+    private final long[] lengths;
+    private final int numberOfChunksToWrite;
+    private final BitSet writtenChunks = new BitSet();
+    private long end;
+
+    private ZarrShard(Path path, FileChannel channel, long[] offsets, long[] lengths, int numberOfChunksToWrite, long end) {
+        this.path = path;
+        this.channel = channel;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.numberOfChunksToWrite = numberOfChunksToWrite;
+        this.end = end;
+    }
+
+    /**
+     * Open a shard to write chunks to it. The shard file is created if it doesn't exist. If it exists and has a valid
+     * index, its chunks are kept. Otherwise, it is emptied.
+     *
+     * @param path the path of the shard file
+     * @param numberOfChunks the number of chunks the shard can contain
+     * @param numberOfChunksToWrite the number of distinct chunks after which the shard is complete. The index is then
+     *                              written and the shard closed
+     * @return the opened shard
+     * @throws IOException if the shard file cannot be opened or read
+     */
+    public static ZarrShard open(Path path, int numberOfChunks, int numberOfChunksToWrite) throws IOException {
+        Files.createDirectories(path.getParent());
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            long[] offsets = new long[numberOfChunks];
+            long[] lengths = new long[numberOfChunks];
+            long end = getIndexLength(numberOfChunks);
+
+            if (readIndex(channel, offsets, lengths)) {
+                end = Math.max(end, channel.size());
+            } else {
+                Arrays.fill(offsets, MISSING);
+                Arrays.fill(lengths, MISSING);
+                channel.truncate(0);
+            }
+
+            return new ZarrShard(path, channel, offsets, lengths, numberOfChunksToWrite, end);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Read a chunk of a shard file that is not open.
+     *
+     * @param path the path of the shard file
+     * @param chunk the index of the chunk within the shard
+     * @param numberOfChunks the number of chunks the shard can contain
+     * @return the bytes of the chunk, or null if the shard file doesn't exist, doesn't have a valid index, or doesn't
+     * contain the chunk
+     * @throws IOException if the shard file cannot be read
+     */
+    public static byte[] readChunk(Path path, int chunk, int numberOfChunks) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long[] offsets = new long[numberOfChunks];
+            long[] lengths = new long[numberOfChunks];
+
+            return readIndex(channel, offsets, lengths) ? readChunk(channel, offsets[chunk], lengths[chunk]) : null;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the chunks present in a shard file that is not open.
+     *
+     * @param path the path of the shard file
+     * @param numberOfChunks the number of chunks the shard can contain
+     * @return the indices of the chunks present in the shard. This is empty if the shard file doesn't exist or doesn't
+     * have a valid index
+     * @throws IOException if the shard file cannot be read
+     */
+    public static BitSet getChunksPresent(Path path, int numberOfChunks) throws IOException {
+        BitSet chunks = new BitSet();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long[] offsets = new long[numberOfChunks];
+            long[] lengths = new long[numberOfChunks];
+
+            if (readIndex(channel, offsets, lengths)) {
+                for (int chunk=0; chunk<numberOfChunks; chunk++) {
+                    if (offsets[chunk] != MISSING) {
+                        chunks.set(chunk);
+                    }
+                }
+            }
+        } catch (NoSuchFileException ignored) {
+            // No chunk was saved to this shard
+        }
+        return chunks;
+    }
+
+    /**
+     * Write several chunks with a single write operation.
+     *
+     * @param chunks the indices of the chunks within the shard
+     * @param bytes the encoded chunks, one after the other, between the position and the limit of the buffer
+     * @param chunkLengths the number of bytes of each chunk. The element at index i corresponds to the chunk at index
+     *                     i of the provided chunks
+     * @return whether this shard is complete after this write, in which case its index was written and it was closed
+     * @throws IOException if an error occurs while writing the chunks or the index
+     * @throws IllegalStateException if this shard is closed
+     */
+    public boolean write(int[] chunks, ByteBuffer bytes, int[] chunkLengths) throws IOException {
+        long position;
+        synchronized (this) {
+            if (!channel.isOpen()) {
+                throw new IllegalStateException(String.format("The shard %s is closed", path));
+            }
+
+            position = end;
+            end += bytes.remaining();
+        }
+
+        // The reserved range of the file is only written by this thread, so the write doesn't need to be synchronized
+        long filePosition = position;
+        while (bytes.hasRemaining()) {
+            filePosition += channel.write(bytes, filePosition);
+        }
+
+        synchronized (this) {
+            long offset = position;
+            for (int i=0; i<chunks.length; i++) {
+                offsets[chunks[i]] = offset;
+                lengths[chunks[i]] = chunkLengths[i];
+                writtenChunks.set(chunks[i]);
+                offset += chunkLengths[i];
+            }
+
+            if (writtenChunks.cardinality() >= numberOfChunksToWrite) {
+                close();
+                return true;
+            } else {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Read a chunk of this shard, including the chunks written since it was opened.
+     *
+     * @param chunk the index of the chunk within the shard
+     * @return the bytes of the chunk, or null if this shard doesn't contain the chunk
+     * @throws IOException if an error occurs while reading the chunk
+     */
+    public synchronized byte[] read(int chunk) throws IOException {
+        if (channel.isOpen()) {
+            return readChunk(channel, offsets[chunk], lengths[chunk]);
+        } else {
+            return readChunk(path, chunk, offsets.length);
+        }
+    }
+
+    /**
+     * Get the chunks present in this shard, including the chunks written since it was opened.
+     *
+     * @return the indices of the chunks present in this shard
+     */
+    public synchronized BitSet getChunksPresent() {
+        BitSet chunks = new BitSet();
+        for (int chunk=0; chunk<offsets.length; chunk++) {
+            if (offsets[chunk] != MISSING) {
+                chunks.set(chunk);
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * Force the chunks of this shard to the storage device, write its index, force it, and close the file. Nothing
+     * happens if this shard is already closed.
+     *
+     * @throws IOException if an error occurs while forcing the chunks, writing the index or closing the file
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+
+        try (channel) {
+            channel.force(false);
+
+            ByteBuffer index = ByteBuffer.allocate(getIndexLength(offsets.length)).order(ByteOrder.LITTLE_ENDIAN);
+            for (int chunk=0; chunk<offsets.length; chunk++) {
+                index.putLong(offsets[chunk]).putLong(lengths[chunk]);
+            }
+            index.putInt(computeChecksum(index.array(), offsets.length * ENTRY_LENGTH)).flip();
+
+            long position = 0;
+            while (index.hasRemaining()) {
+                position += channel.write(index, position);
+            }
+            channel.force(false);
+        }
+    }
+
+    private static int getIndexLength(int numberOfChunks) {
+        return numberOfChunks * ENTRY_LENGTH + Integer.BYTES;
+    }
+
+    private static boolean readIndex(FileChannel channel, long[] offsets, long[] lengths) throws IOException {
+        long size = channel.size();
+        ByteBuffer index = ByteBuffer.allocate(getIndexLength(offsets.length)).order(ByteOrder.LITTLE_ENDIAN);
+        if (size < index.capacity()) {
+            return false;
+        }
+
+        long position = 0;
+        while (index.hasRemaining()) {
+            int read = channel.read(index, position);
+            if (read < 0) {
+                return false;
+            }
+            position += read;
+        }
+        if (index.getInt(offsets.length * ENTRY_LENGTH) != computeChecksum(index.array(), offsets.length * ENTRY_LENGTH)) {
+            return false;
+        }
+
+        index.flip();
+        for (int chunk=0; chunk<offsets.length; chunk++) {
+            offsets[chunk] = index.getLong();
+            lengths[chunk] = index.getLong();
+
+            boolean missing = offsets[chunk] == MISSING && lengths[chunk] == MISSING;
+            if (!missing && (offsets[chunk] < 0 || lengths[chunk] < 0 || offsets[chunk] + lengths[chunk] > size)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] readChunk(FileChannel channel, long offset, long length) throws IOException {
+        if (offset == MISSING) {
+            return null;
+        }
+
+        ByteBuffer bytes = ByteBuffer.allocate(Math.toIntExact(length));
+        long position = offset;
+        while (bytes.hasRemaining()) {
+            int read = channel.read(bytes, position);
+            if (read < 0) {
+                throw new IOException(String.format("Unexpected end of shard at position %d", position));
+            }
+            position += read;
+        }
+        return bytes.array();
+    }
+
+    private static int computeChecksum(byte[] bytes, int length) {
+        CRC32C checksum = new CRC32C();
+        checksum.update(bytes, 0, length);
+        return (int) checksum.getValue();
+    }
+}
@@ -2,6 +2,8 @@ package qupath.ext.stitching.core.positionfinders;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import qupath.ext.stitching.core.InputProbe;
+import qupath.ext.stitching.core.TiffHeader;
 import qupath.lib.images.servers.ImageServer;
 import qupath.lib.images.servers.ImageServerMetadata;
 import qupath.lib.images.servers.PixelCalibration;
@@ -21,11 +23,15 @@ import java.util.regex.Pattern;
  * Float coordinates are rounded to the nearest integer.
  * <p>
  * Some pre-defined standards patterns are provided (see {@link Unit} and {@link #FilenamePatternPositionFinder(StandardPattern)}).
+ * <p>
+ * Positions can also be found from a probe only (see {@link #findProbedPosition(InputProbe)}).
  */
 public class FilenamePatternPositionFinder implements PositionFinder {
 
     private static final Logger logger = LoggerFactory.getLogger(FilenamePatternPositionFinder.class);
     private static final Pattern VECTRA_PATTERN = Pattern.compile("\\[([\\d.]+),([\\d.]+)]");
+    private static final double MICRONS_PER_INCH = 25400;
+    private static final double MICRONS_PER_CENTIMETER = 10000;
     private final Pattern pattern;
     private final Unit unit;
     /**
@@ -94,6 +100,55 @@ public class FilenamePatternPositionFinder implements PositionFinder {
             }
             path = server.getURIs().iterator().next().getPath();
         }
+        float[] coordinates = findCoordinates(path);
+
+        ImageServerMetadata metadata = server.getMetadata();
+        PixelCalibration pixelCalibration = metadata.getPixelCalibration();
+        return getPixelCoordinates(
+                coordinates[0],
+                coordinates[1],
+                pixelCalibration.getPixelWidth() == null ? null : pixelCalibration.getPixelWidth().floatValue(),
+                pixelCalibration.getPixelHeight() == null ? null : pixelCalibration.getPixelHeight().floatValue(),
+                metadata.getWidth(),
+                metadata.getHeight()
+        );
+    }
+
+    @Override
+    public boolean supportsProbing() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The pattern is used on the path of the probed file. With {@link Unit#CALIBRATED}, the pixel size (in micrometers)
+     * is computed from the "XResolution", "YResolution", and "ResolutionUnit" TIFF tags of the file. If the file doesn't
+     * contain these tags or if they don't have a physical unit, coordinates are considered to be in pixel units. This
+     * pixel size may be different from the one of the image metadata used by {@link #findPosition(ImageServer)}, so
+     * the two functions may not return the same position.
+     */
+    @Override
+    public int[] findProbedPosition(InputProbe inputProbe) {
+        float[] coordinates = findCoordinates(inputProbe.getPath());
+        TiffHeader tiffHeader = inputProbe.getTiffHeader();
+
+        return getPixelCoordinates(
+                coordinates[0],
+                coordinates[1],
+                getPixelSizeMicrons(tiffHeader, TiffHeader.TAG_X_RESOLUTION),
+                getPixelSizeMicrons(tiffHeader, TiffHeader.TAG_Y_RESOLUTION),
+                inputProbe.getWidth(),
+                inputProbe.getHeight()
+        );
+    }
+
+    @Override
+    public String toString() {
+        return String.format("FilenamePatternPositionFinder with pattern %s and unit %s", pattern, unit);
+    }
+
+    private float[] findCoordinates(String path) {
         Matcher matcher = pattern.matcher(path);
 
         String x = null;
@@ -108,30 +163,40 @@ public class FilenamePatternPositionFinder implements PositionFinder {
             throw new IllegalArgumentException(String.format("No X or Y position found in %s", path));
         }
 
-        return getPixelCoordinates(Float.parseFloat(x), Float.parseFloat(y), server.getMetadata());
+        return new float[] {Float.parseFloat(x), Float.parseFloat(y)};
     }
 
-    private int[] getPixelCoordinates(float x, float y, ImageServerMetadata metadata) {
+    private int[] getPixelCoordinates(float x, float y, Float pixelWidth, Float pixelHeight, int width, int height) {
         return switch (unit) {
             case PIXEL -> new int[] { Math.round(x), Math.round(y) };
-            case CALIBRATED -> {
-                PixelCalibration pixelCalibration = metadata.getPixelCalibration();
+            case CALIBRATED -> new int[] {
+                    Math.round(pixelWidth == null ? x : x / pixelWidth),
+                    Math.round(pixelHeight == null ? y : y / pixelHeight)
+            };
+            case GRID -> {
+                if (width < 0 || height < 0) {
+                    throw new IllegalArgumentException("The size of the image is unknown");
+                }
 
                 yield new int[] {
-                        Math.round(pixelCalibration.getPixelWidth() == null ?
-                                x :
-                                x / pixelCalibration.getPixelWidth().floatValue()
-                        ),
-                        Math.round(pixelCalibration.getPixelHeight() == null ?
-                                y :
-                                y / pixelCalibration.getPixelHeight().floatValue()
-                        ),
+                        Math.round(x * width),
+                        Math.round(y * height)
                 };
             }
-            case GRID -> new int[] {
-                    Math.round(x * metadata.getWidth()),
-                    Math.round(y * metadata.getHeight())
-            };
+        };
+    }
+
+    private static Float getPixelSizeMicrons(TiffHeader tiffHeader, int resolutionTag) {
+        if (!tiffHeader.hasTag(resolutionTag) || tiffHeader.getTagValue(resolutionTag) <= 0) {
+            return null;
+        }
+
+        // The default resolution unit of the TIFF specification is the inch
+        int resolutionUnit = tiffHeader.hasTag(TiffHeader.TAG_RESOLUTION_UNIT) ? (int) tiffHeader.getTagValue(TiffHeader.TAG_RESOLUTION_UNIT) : 2;
+        return switch (resolutionUnit) {
+            case 2 -> (float) (MICRONS_PER_INCH / tiffHeader.getTagValue(resolutionTag));
+            case 3 -> (float) (MICRONS_PER_CENTIMETER / tiffHeader.getTagValue(resolutionTag));
+            default -> null;
         };
     }
 }
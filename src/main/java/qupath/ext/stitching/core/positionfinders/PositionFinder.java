@@ -1,5 +1,6 @@
 package qupath.ext.stitching.core.positionfinders;
 
+import qupath.ext.stitching.core.InputProbe;
 import qupath.lib.images.servers.ImageServer;
 
 import java.io.IOException;
@@ -21,4 +22,53 @@ public interface PositionFinder {
      * @throws RuntimeException if the provided server doesn't contain a position as described by this class
      */
     int[] findPosition(ImageServer<?> server) throws IOException;
+
+    /**
+     * Find the [x,y] position (in pixel coordinates) of the tile represented by the provided image server, using
+     * information already retrieved from its file when possible to avoid reading the file again.
+     * <p>
+     * By default, this calls {@link #findPosition(ImageServer)} and ignores the provided probe.
+     *
+     * @param server a server representing a tile whose position should be determined
+     * @param inputProbe information already retrieved from the file of the provided server. Can be null
+     * @return an integer array of size two, the first element being the x-coordinate and the second element being
+     * the y-coordinate of the tile represented by the provided server
+     * @throws IOException if an error occurred while determining the position
+     * @throws NullPointerException if the provided server is null
+     * @throws RuntimeException if the provided server doesn't contain a position as described by this class
+     */
+    default int[] findPosition(ImageServer<?> server, InputProbe inputProbe) throws IOException {
+        return findPosition(server);
+    }
+
+    /**
+     * Indicate whether this position finder can find positions only from information retrieved from the file of a tile
+     * (see {@link #findProbedPosition(InputProbe)}).
+     * <p>
+     * By default, this returns false.
+     *
+     * @return whether {@link #findProbedPosition(InputProbe)} is supported by this position finder
+     */
+    default boolean supportsProbing() {
+        return false;
+    }
+
+    /**
+     * Find the [x,y] position (in pixel coordinates) of a tile only from information retrieved from its file, without
+     * opening it with an image reader. This allows to know the position of all tiles quickly, before they are opened.
+     * <p>
+     * This should only be called if {@link #supportsProbing()} returns true. By default, this throws an
+     * {@link UnsupportedOperationException}.
+     *
+     * @param inputProbe information retrieved from the file of the tile
+     * @return an integer array of size two, the first element being the x-coordinate and the second element being
+     * the y-coordinate of the tile represented by the provided probe
+     * @throws IOException if an error occurred while determining the position
+     * @throws NullPointerException if the provided probe is null
+     * @throws UnsupportedOperationException if {@link #supportsProbing()} returns false
+     * @throws RuntimeException if the provided probe doesn't contain a position as described by this class
+     */
+    default int[] findProbedPosition(InputProbe inputProbe) throws IOException {
+        throw new UnsupportedOperationException(String.format("%s cannot find positions without opening tiles", this));
+    }
 }
@@ -2,18 +2,12 @@ package qupath.ext.stitching.core.positionfinders;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import qupath.ext.stitching.core.InputProbe;
+import qupath.ext.stitching.core.TiffHeader;
 import qupath.lib.images.servers.ImageServer;
 
-import javax.imageio.ImageIO;
-import javax.imageio.ImageReader;
-import javax.imageio.metadata.IIOMetadata;
-import javax.imageio.plugins.tiff.BaselineTIFFTagSet;
-import javax.imageio.plugins.tiff.TIFFDirectory;
-import javax.imageio.plugins.tiff.TIFFField;
-import javax.imageio.stream.ImageInputStream;
-import java.io.File;
 import java.io.IOException;
-import java.util.Iterator;
+import java.util.Objects;
 
 /**
  * A position finder that looks at the "XPosition", "YPosition", "XResolution", and "YResolution" TIFF tags of the
@@ -22,7 +16,9 @@ import java.util.Iterator;
  * The X position is given by "XPosition" * "XResolution" (likewise for the Y position).
  * <p>
  * The input image must be a TIFF file containing the above tags. Its path must be contained in the first URI returned
- * by {@link ImageServer#getURIs()} of the provided server.
+ * by {@link ImageServer#getURIs()} of the provided server. Only the first image file directory of the file is read
+ * (see {@link TiffHeader}), and it is not read again if it was already probed (see {@link #findPosition(ImageServer, InputProbe)}).
+ * Positions can also be found from a probe only (see {@link #findProbedPosition(InputProbe)}).
  */
 public class TiffTagPositionFinder implements PositionFinder {
 
@@ -30,49 +26,54 @@ public class TiffTagPositionFinder implements PositionFinder {
 
     @Override
     public int[] findPosition(ImageServer<?> server) throws IOException {
-        String path;
-        if (server.getURIs().isEmpty()) {
-            throw new IllegalArgumentException(String.format("The provided server %s doesn't have any URI", server));
-        } else {
-            if (server.getURIs().size() > 1) {
-                logger.debug("Multiple URIs found for {}. Only considering the first one to find position", server);
-            }
-            path = server.getURIs().iterator().next().getPath();
-        }
+        String path = getPath(server);
+        TiffHeader tiffHeader = TiffHeader.read(path);
+        logger.debug("Got {} for {}", tiffHeader, path);
 
-        Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("TIFF");
-        if (!readers.hasNext()) {
-            throw new IllegalArgumentException("No ImageIO TIFF reader found");
-        }
-        ImageReader reader = readers.next();
-
-        try (ImageInputStream inputStream = ImageIO.createImageInputStream(new File(path))) {
-            reader.setInput(inputStream);
+        return getPosition(tiffHeader);
+    }
 
-            IIOMetadata metadata = reader.getImageMetadata(reader.getMinIndex());
-            if (metadata == null) {
-                throw new IllegalArgumentException(String.format("No metadata found in %s", path));
-            }
-            TIFFDirectory tiffDirectory = TIFFDirectory.createFromMetadata(metadata);
+    @Override
+    public int[] findPosition(ImageServer<?> server, InputProbe inputProbe) throws IOException {
+        Objects.requireNonNull(server);
 
-            return new int[] {
-                    (int) Math.round(getTag(path, tiffDirectory, BaselineTIFFTagSet.TAG_X_RESOLUTION).getAsDouble(0) *
-                            getTag(path, tiffDirectory, BaselineTIFFTagSet.TAG_X_POSITION).getAsDouble(0)
-                    ),
-                    (int) Math.round(getTag(path, tiffDirectory, BaselineTIFFTagSet.TAG_Y_RESOLUTION).getAsDouble(0) *
-                            getTag(path, tiffDirectory, BaselineTIFFTagSet.TAG_Y_POSITION).getAsDouble(0)
-                    )
-            };
+        if (inputProbe == null) {
+            return findPosition(server);
+        } else {
+            return getPosition(inputProbe.getTiffHeader());
         }
     }
 
-    private static TIFFField getTag(String path, TIFFDirectory tiffDirectory, int tagNumber) {
-        TIFFField tag = tiffDirectory.getTIFFField(tagNumber);
+    @Override
+    public boolean supportsProbing() {
+        return true;
+    }
+
+    @Override
+    public int[] findProbedPosition(InputProbe inputProbe) {
+        return getPosition(inputProbe.getTiffHeader());
+    }
+
+    @Override
+    public String toString() {
+        return "TiffTagPositionFinder";
+    }
 
-        if (tag == null) {
-            throw new IllegalArgumentException(String.format("The provided file %s does not contain the %d tag", path, tagNumber));
+    private static String getPath(ImageServer<?> server) {
+        if (server.getURIs().isEmpty()) {
+            throw new IllegalArgumentException(String.format("The provided server %s doesn't have any URI", server));
         } else {
-            return tag;
+            if (server.getURIs().size() > 1) {
+                logger.debug("Multiple URIs found for {}. Only considering the first one to find position", server);
+            }
+            return server.getURIs().iterator().next().getPath();
         }
     }
+
+    private static int[] getPosition(TiffHeader tiffHeader) {
+        return new int[] {
+                (int) Math.round(tiffHeader.getTagValue(TiffHeader.TAG_X_RESOLUTION) * tiffHeader.getTagValue(TiffHeader.TAG_X_POSITION)),
+                (int) Math.round(tiffHeader.getTagValue(TiffHeader.TAG_Y_RESOLUTION) * tiffHeader.getTagValue(TiffHeader.TAG_Y_POSITION))
+        };
+    }
 }
@@ -7,6 +7,7 @@ import javafx.scene.control.ButtonType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import qupath.ext.stitching.Utils;
+import qupath.ext.stitching.core.BlendingMode;
 import qupath.ext.stitching.core.ImageStitcher;
 import qupath.ext.stitching.core.positionfinders.FilenamePatternPositionFinder;
 import qupath.ext.stitching.core.positionfinders.TiffTagPositionFinder;
@@ -25,6 +26,7 @@ import java.util.List;
 import java.util.ResourceBundle;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 /**
  * An action to stitch images and save the resulting image with the Zarr format.
@@ -65,6 +67,22 @@ class StitchingAction implements Runnable {
             return name;
         }
     }
+    private enum Blending {
+        NONE(resources.getString("StitchingAction.noBlending")),
+        FEATHER(resources.getString("StitchingAction.feather")),
+        NEAREST_CENTER(resources.getString("StitchingAction.nearestCenter"));
+
+        private final String name;
+
+        Blending(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
 
     /**
      * Create the action.
@@ -109,10 +127,26 @@ class StitchingAction implements Runnable {
         }
         logger.debug("Got file {} to write stitched image", outputFile);
 
-        if (Files.exists(outputFile.toPath())) {
+        boolean resume = false;
+        boolean deletionAccepted = false;
+        if (imageFormat == ImageFormat.OME_ZARR && ImageStitcher.isZarrFileResumable(outputFile.getPath())) {
+            logger.debug("{} was partially written by a previous stitching. Asking user if it should be resumed", outputFile);
+
+            ButtonType choice = Dialogs.showYesNoCancelDialog(
+                    resources.getString("StitchingAction.warning"),
+                    resources.getString("StitchingAction.partialFileExists")
+            );
+            if (choice == ButtonType.CANCEL) {
+                return;
+            }
+            resume = choice == ButtonType.YES;
+            deletionAccepted = choice == ButtonType.NO;
+        }
+
+        if (!resume && Files.exists(outputFile.toPath())) {
             logger.debug("A file already exists at {}. Asking user if possible to delete it", outputFile);
 
-            if (!Dialogs.showConfirmDialog(
+            if (!deletionAccepted && !Dialogs.showConfirmDialog(
                     resources.getString("StitchingAction.warning"),
                     resources.getString("StitchingAction.fileAlreadyExists")
             )) {
@@ -131,7 +165,7 @@ class StitchingAction implements Runnable {
             }
         }
 
-        stitchImages(inputFiles.stream().map(File::getPath).toList(), outputFile.getPath(), parameters, imageFormat);
+        stitchImages(inputFiles.stream().map(File::getPath).toList(), outputFile.getPath(), parameters, imageFormat, resume);
     }
 
     /**
@@ -171,6 +205,25 @@ class StitchingAction implements Runnable {
                         TilePosition.ALL,
                         List.of(TilePosition.values()),
                         resources.getString("StitchingAction.tilePositionDescription")
+                )
+                .addBooleanParameter(
+                        "registration",
+                        resources.getString("StitchingAction.registration"),
+                        false,
+                        resources.getString("StitchingAction.registrationDescription")
+                )
+                .addChoiceParameter(
+                        "blending",
+                        resources.getString("StitchingAction.blending"),
+                        Blending.NONE,
+                        List.of(Blending.values()),
+                        resources.getString("StitchingAction.blendingDescription")
+                )
+                .addBooleanParameter(
+                        "shadingCorrection",
+                        resources.getString("StitchingAction.shadingCorrection"),
+                        false,
+                        resources.getString("StitchingAction.shadingCorrectionDescription")
                 );
     }
 
@@ -187,7 +240,13 @@ class StitchingAction implements Runnable {
                 .orElse(ButtonType.CANCEL) == continueButton;
     }
 
-    private void stitchImages(List<String> inputImages, String outputImage, ParameterList parameters, ImageFormat imageFormat) {
+    private void stitchImages(
+            List<String> inputImages,
+            String outputImage,
+            ParameterList parameters,
+            ImageFormat imageFormat,
+            boolean resume
+    ) {
         ExecutorService executor = Executors.newSingleThreadExecutor(ThreadTools.createThreadFactory("stitching-action-", false));
         ProgressWindow progressWindow;
         try {
@@ -206,7 +265,7 @@ class StitchingAction implements Runnable {
         executor.execute(() -> {
             try {
                 Platform.runLater(() -> progressWindow.setStatus(resources.getString("StitchingAction.parsingInputImages")));
-                ImageStitcher imageStitcher = new ImageStitcher.Builder(inputImages)
+                try (ImageStitcher imageStitcher = new ImageStitcher.Builder(inputImages)
                         .positionFinders(switch ((TilePosition) parameters.getChoiceParameterValue("tilePosition")) {
                             case ALL -> List.of(
                                     new FilenamePatternPositionFinder(FilenamePatternPositionFinder.StandardPattern.VECTRA),
@@ -217,39 +276,49 @@ class StitchingAction implements Runnable {
                         })
                         .numberOfThreads(parameters.getIntParameterValue("numberOfThreads"))
                         .pyramidalize(parameters.getBooleanParameterValue("pyramidalize"))
+                        .registration(parameters.getBooleanParameterValue("registration"))
+                        .shadingCorrection(parameters.getBooleanParameterValue("shadingCorrection"))
+                        .blendingMode(switch ((Blending) parameters.getChoiceParameterValue("blending")) {
+                            case NONE -> BlendingMode.NONE;
+                            case FEATHER -> BlendingMode.FEATHER;
+                            case NEAREST_CENTER -> BlendingMode.NEAREST_CENTER;
+                        })
                         .onProgress(progress -> Platform.runLater(() -> progressWindow.setProgress(switch (imageFormat) {
                             case OME_ZARR -> progress / 2;
                             case OME_TIFF -> progress;
                         })))
-                        .build();
-
-                switch (imageFormat) {
-                    case OME_ZARR -> {
-                        Platform.runLater(() -> progressWindow.setStatus(resources.getString("StitchingAction.writingOutputZarrImage")));
-                        imageStitcher.writeToZarrFile(
-                                outputImage,
-                                progress -> Platform.runLater(() -> progressWindow.setProgress(0.5f + progress/2)));
-                    }
-                    case OME_TIFF -> {
-                        Platform.runLater(() -> {
-                            progressWindow.setStatus(resources.getString("StitchingAction.writingOutputTiffImage"));
-                            progressWindow.setUndefinedProgress();
-                        });
-                        imageStitcher.writeToTiffFile(outputImage);
+                        .build()) {
+                    switch (imageFormat) {
+                        case OME_ZARR -> {
+                            Platform.runLater(() -> progressWindow.setStatus(resources.getString("StitchingAction.writingOutputZarrImage")));
+                            Consumer<Float> onProgress = progress -> Platform.runLater(() -> progressWindow.setProgress(0.5f + progress/2));
+                            if (resume) {
+                                imageStitcher.resumeZarrFile(outputImage, onProgress);
+                            } else {
+                                imageStitcher.writeToZarrFile(outputImage, onProgress);
+                            }
+                        }
+                        case OME_TIFF -> {
+                            Platform.runLater(() -> {
+                                progressWindow.setStatus(resources.getString("StitchingAction.writingOutputTiffImage"));
+                                progressWindow.setUndefinedProgress();
+                            });
+                            imageStitcher.writeToTiffFile(outputImage);
+                        }
                     }
-                }
 
-                Platform.runLater(() -> {
-                    progressWindow.close();
+                    Platform.runLater(() -> {
+                        progressWindow.close();
 
-                    Dialogs.showInfoNotification(
-                            resources.getString("StitchingAction.stitchingCompleted"),
-                            resources.getString(imageStitcher.areSomeInputImagesNotUsed() ?
-                                    "StitchingAction.someImagesCombined" :
-                                    "StitchingAction.providedImagesCombined"
-                            )
-                    );
-                });
+                        Dialogs.showInfoNotification(
+                                resources.getString("StitchingAction.stitchingCompleted"),
+                                resources.getString(imageStitcher.areSomeInputImagesNotUsed() ?
+                                        "StitchingAction.someImagesCombined" :
+                                        "StitchingAction.providedImagesCombined"
+                                )
+                        );
+                    });
+                }
             } catch (Exception e) {
                 Platform.runLater(progressWindow::close);
 
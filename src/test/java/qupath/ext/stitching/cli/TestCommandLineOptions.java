@@ -0,0 +1,191 @@
+package qupath.ext.stitching.cli;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+
+public class TestCommandLineOptions {
+
+    @Test
+    void Check_No_Slide() {
+        List<String> arguments = List.of("--threads", "4");
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CommandLineOptions.parse(arguments));
+    }
+
+    @Test
+    void Check_Help_Without_Slide() {
+        List<String> arguments = List.of("--help");
+
+        boolean help = CommandLineOptions.parse(arguments).isHelp();
+
+        Assertions.assertTrue(help);
+    }
+
+    @Test
+    void Check_Unknown_Option() {
+        List<String> arguments = List.of("--unknown", "slide");
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CommandLineOptions.parse(arguments));
+    }
+
+    @Test
+    void Check_Option_Without_Value() {
+        List<String> arguments = List.of("slide", "--threads");
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CommandLineOptions.parse(arguments));
+    }
+
+    @Test
+    void Check_Value_Given_To_Option_Without_Value() {
+        List<String> arguments = List.of("--registration=true", "slide");
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CommandLineOptions.parse(arguments));
+    }
+
+    @Test
+    void Check_Option_With_Invalid_Integer() {
+        List<String> arguments = List.of("--threads", "four", "slide");
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CommandLineOptions.parse(arguments));
+    }
+
+    @Test
+    void Check_Option_With_Invalid_Choice() {
+        List<String> arguments = List.of("--blending", "average", "slide");
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CommandLineOptions.parse(arguments));
+    }
+
+    @Test
+    void Check_Option_With_Invalid_Size() {
+        List<String> arguments = List.of("--memory-budget", "4X", "slide");
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CommandLineOptions.parse(arguments));
+    }
+
+    @Test
+    void Check_Option_Rejected_By_Image_Stitcher_Builder() {
+        List<String> arguments = List.of("--chunk-size", "502", "slide");
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CommandLineOptions.parse(arguments));
+    }
+
+    @Test
+    void Check_Slides() {
+        List<String> arguments = List.of("slide1", "--threads", "4", "slide2", "--", "-slide3");
+        List<String> expectedSlides = List.of("slide1", "slide2", "-slide3");
+
+        List<String> slides = CommandLineOptions.parse(arguments).getSlides();
+
+        Assertions.assertEquals(expectedSlides, slides);
+    }
+
+    @Test
+    void Check_Output_Format_With_Inline_Value() {
+        List<String> arguments = List.of("--format=ome-tiff", "slide");
+
+        CommandLineOptions.OutputFormat outputFormat = CommandLineOptions.parse(arguments).getOutputFormat();
+
+        Assertions.assertEquals(CommandLineOptions.OutputFormat.OME_TIFF, outputFormat);
+    }
+
+    @Test
+    void Check_Default_Output_Format() {
+        List<String> arguments = List.of("slide");
+
+        CommandLineOptions.OutputFormat outputFormat = CommandLineOptions.parse(arguments).getOutputFormat();
+
+        Assertions.assertEquals(CommandLineOptions.OutputFormat.OME_ZARR, outputFormat);
+    }
+
+    @Test
+    void Check_Output_Path_In_Output_Directory() {
+        Path outputDirectory = Path.of("output");
+        List<String> arguments = List.of("-d", outputDirectory.toString(), "-f", "ome-tiff", "slide");
+        Path expectedOutputPath = outputDirectory.resolve("slide1.ome.tiff");
+
+        Path outputPath = CommandLineOptions.parse(arguments).getOutputPath(new Slide("slide1", List.of()));
+
+        Assertions.assertEquals(expectedOutputPath, outputPath);
+    }
+
+    @Test
+    void Check_Output_Format_Of_Output() {
+        List<String> arguments = List.of("-o", "image.ome.tiff", "slide");
+
+        CommandLineOptions.OutputFormat outputFormat = CommandLineOptions.parse(arguments).getOutputFormat();
+
+        Assertions.assertEquals(CommandLineOptions.OutputFormat.OME_TIFF, outputFormat);
+    }
+
+    @Test
+    void Check_Output_With_Invalid_Extension() {
+        List<String> arguments = List.of("-o", "image.png", "slide");
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CommandLineOptions.parse(arguments));
+    }
+
+    @Test
+    void Check_Output_With_Different_Format() {
+        List<String> arguments = List.of("-o", "image.ome.zarr", "-f", "ome-tiff", "slide");
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CommandLineOptions.parse(arguments));
+    }
+
+    @Test
+    void Check_Output_With_Several_Slides() {
+        List<String> arguments = List.of("-o", "image.ome.zarr", "slide1", "slide2");
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CommandLineOptions.parse(arguments));
+    }
+
+    @Test
+    void Check_Layout_Manifest_With_Several_Slides() {
+        List<String> arguments = List.of("--layout-manifest", "manifest.json", "slide1", "slide2");
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CommandLineOptions.parse(arguments));
+    }
+
+    @Test
+    void Check_Partition_Step() {
+        List<String> arguments = List.of("--write-partition", "2", "slide");
+        CommandLineOptions.PartitionStep expectedPartitionStep = CommandLineOptions.PartitionStep.WRITE;
+        int expectedPartitionParameter = 2;
+
+        CommandLineOptions options = CommandLineOptions.parse(arguments);
+
+        Assertions.assertEquals(expectedPartitionStep, options.getPartitionStep());
+        Assertions.assertEquals(expectedPartitionParameter, options.getPartitionParameter());
+    }
+
+    @Test
+    void Check_Several_Partition_Steps() {
+        List<String> arguments = List.of("--create-partitions", "2", "--finish-partitions", "slide");
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CommandLineOptions.parse(arguments));
+    }
+
+    @Test
+    void Check_Number_Of_Partitions_Less_Than_One() {
+        List<String> arguments = List.of("--create-partitions", "0", "slide");
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CommandLineOptions.parse(arguments));
+    }
+
+    @Test
+    void Check_Partitions_With_Tiff_Output() {
+        List<String> arguments = List.of("--create-partitions", "2", "-f", "ome-tiff", "slide");
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CommandLineOptions.parse(arguments));
+    }
+
+    @Test
+    void Check_Partitions_With_Several_Slides() {
+        List<String> arguments = List.of("--finish-partitions", "slide1", "slide2");
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CommandLineOptions.parse(arguments));
+    }
+}
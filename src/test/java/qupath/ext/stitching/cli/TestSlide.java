@@ -0,0 +1,133 @@
+package qupath.ext.stitching.cli;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import qupath.ext.stitching.Utils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class TestSlide {
+
+    @Test
+    void Check_Input_Images_Of_Directory() throws Exception {
+        Path directory = Files.createTempDirectory(null);
+        Path image1 = Files.createFile(directory.resolve("image1.tif"));
+        Path image2 = Files.createFile(directory.resolve("image2.TIFF"));
+        Files.createFile(directory.resolve("notes.txt"));
+        List<String> expectedInputImages = List.of(image1.toString(), image2.toString());
+
+        List<String> inputImages = Slide.fromArgument(directory.toString()).inputImages();
+
+        Assertions.assertEquals(expectedInputImages, inputImages);
+
+        Utils.deleteFileOrDirectoryRecursively(directory.toFile());
+    }
+
+    @Test
+    void Check_Name_Of_Directory() throws Exception {
+        Path directory = Files.createTempDirectory(null);
+        Files.createFile(directory.resolve("image.tif"));
+        String expectedName = directory.getFileName().toString();
+
+        String name = Slide.fromArgument(directory.toString()).name();
+
+        Assertions.assertEquals(expectedName, name);
+
+        Utils.deleteFileOrDirectoryRecursively(directory.toFile());
+    }
+
+    @Test
+    void Check_Input_Images_Of_Glob() throws Exception {
+        Path directory = Files.createTempDirectory(null);
+        Path image1 = Files.createFile(directory.resolve("image1.tiff"));
+        Files.createFile(directory.resolve("image2.tif"));
+        Files.createDirectory(directory.resolve("sub"));
+        Files.createFile(directory.resolve("sub").resolve("image3.tiff"));
+        List<String> expectedInputImages = List.of(image1.toString());
+
+        List<String> inputImages = Slide.fromArgument(directory + "/*.tiff").inputImages();
+
+        Assertions.assertEquals(expectedInputImages, inputImages);
+
+        Utils.deleteFileOrDirectoryRecursively(directory.toFile());
+    }
+
+    @Test
+    void Check_Input_Images_Of_Recursive_Glob() throws Exception {
+        Path directory = Files.createTempDirectory(null);
+        Files.createFile(directory.resolve("image1.tif"));
+        Files.createDirectory(directory.resolve("sub"));
+        Path image2 = Files.createFile(directory.resolve("sub").resolve("image2.tiff"));
+        List<String> expectedInputImages = List.of(image2.toString());
+
+        List<String> inputImages = Slide.fromArgument(directory + "/**.tiff").inputImages();
+
+        Assertions.assertEquals(expectedInputImages, inputImages);
+
+        Utils.deleteFileOrDirectoryRecursively(directory.toFile());
+    }
+
+    @Test
+    void Check_Name_Of_Glob() throws Exception {
+        Path directory = Files.createTempDirectory(null);
+        Files.createFile(directory.resolve("image.tif"));
+        String expectedName = directory.getFileName().toString();
+
+        String name = Slide.fromArgument(directory + "/*.tif").name();
+
+        Assertions.assertEquals(expectedName, name);
+
+        Utils.deleteFileOrDirectoryRecursively(directory.toFile());
+    }
+
+    @Test
+    void Check_Input_Images_Of_List() throws Exception {
+        Path directory = Files.createTempDirectory(null);
+        Path list = Files.writeString(directory.resolve("slide.txt"), """
+                # Input images of the slide
+                image2.tif
+
+                /data/image1.tif
+                """);
+        List<String> expectedInputImages = List.of(Path.of("/data/image1.tif").toString(), directory.resolve("image2.tif").toString());
+
+        List<String> inputImages = Slide.fromArgument("@" + list).inputImages();
+
+        Assertions.assertEquals(expectedInputImages, inputImages);
+
+        Utils.deleteFileOrDirectoryRecursively(directory.toFile());
+    }
+
+    @Test
+    void Check_Name_Of_List() throws Exception {
+        Path directory = Files.createTempDirectory(null);
+        Path list = Files.writeString(directory.resolve("slide.txt"), "image.tif");
+        String expectedName = "slide";
+
+        String name = Slide.fromArgument("@" + list).name();
+
+        Assertions.assertEquals(expectedName, name);
+
+        Utils.deleteFileOrDirectoryRecursively(directory.toFile());
+    }
+
+    @Test
+    void Check_Slide_Without_Input_Images() throws Exception {
+        Path directory = Files.createTempDirectory(null);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Slide.fromArgument(directory.toString()));
+
+        Utils.deleteFileOrDirectoryRecursively(directory.toFile());
+    }
+
+    @Test
+    void Check_Invalid_Slide() throws Exception {
+        Path file = Files.createTempFile(null, ".tif");
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Slide.fromArgument(file.toString()));
+
+        Files.delete(file);
+    }
+}
@@ -0,0 +1,166 @@
+package qupath.ext.stitching.cli;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import qupath.ext.stitching.Utils;
+import qupath.ext.stitching.core.ImageStitcher;
+import qupath.ext.stitching.core.ImageUtils;
+
+import java.awt.Color;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class TestStitchingCommand {
+
+    @Test
+    void Check_Exit_Code_With_Invalid_Arguments() {
+        int expectedExitCode = 2;
+
+        int exitCode = run("--unknown", "slide");
+
+        Assertions.assertEquals(expectedExitCode, exitCode);
+    }
+
+    @Test
+    void Check_Exit_Code_With_Help() {
+        int expectedExitCode = 0;
+
+        int exitCode = run("--help");
+
+        Assertions.assertEquals(expectedExitCode, exitCode);
+    }
+
+    @Test
+    void Check_Slides_Written() throws Exception {
+        Path slide1 = createSlide(Color.RED);
+        Path slide2 = createSlide(Color.BLUE);
+        Path outputDirectory = Files.createTempDirectory(null);
+        List<Path> expectedOutputs = List.of(
+                outputDirectory.resolve(slide1.getFileName() + ".ome.zarr"),
+                outputDirectory.resolve(slide2.getFileName() + ".ome.zarr")
+        );
+
+        int exitCode = run("-d", outputDirectory.toString(), slide1.toString(), slide2.toString());
+
+        Assertions.assertEquals(0, exitCode);
+        Assertions.assertTrue(expectedOutputs.stream().allMatch(Files::isDirectory));
+        Assertions.assertTrue(expectedOutputs.stream().noneMatch(output -> ImageStitcher.isZarrFileResumable(output.toString())));
+
+        Utils.deleteFileOrDirectoryRecursively(slide1.toFile());
+        Utils.deleteFileOrDirectoryRecursively(slide2.toFile());
+        Utils.deleteFileOrDirectoryRecursively(outputDirectory.toFile());
+    }
+
+    @Test
+    void Check_Tiff_Slide_Written() throws Exception {
+        Path slide = createSlide(Color.RED);
+        Path outputDirectory = Files.createTempDirectory(null);
+        Path expectedOutput = outputDirectory.resolve(slide.getFileName() + ".ome.tiff");
+
+        int exitCode = run("-d", outputDirectory.toString(), "-f", "ome-tiff", slide.toString());
+
+        Assertions.assertEquals(0, exitCode);
+        Assertions.assertTrue(Files.isRegularFile(expectedOutput));
+
+        Utils.deleteFileOrDirectoryRecursively(slide.toFile());
+        Utils.deleteFileOrDirectoryRecursively(outputDirectory.toFile());
+    }
+
+    @Test
+    void Check_Failed_Slide_Does_Not_Prevent_Other_Slides() throws Exception {
+        Path emptySlide = Files.createTempDirectory(null);
+        Path slide = createSlide(Color.RED);
+        Path outputDirectory = Files.createTempDirectory(null);
+        Path expectedOutput = outputDirectory.resolve(slide.getFileName() + ".ome.zarr");
+
+        int exitCode = run("-d", outputDirectory.toString(), emptySlide.toString(), slide.toString());
+
+        Assertions.assertEquals(1, exitCode);
+        Assertions.assertTrue(Files.isDirectory(expectedOutput));
+
+        Utils.deleteFileOrDirectoryRecursively(emptySlide.toFile());
+        Utils.deleteFileOrDirectoryRecursively(slide.toFile());
+        Utils.deleteFileOrDirectoryRecursively(outputDirectory.toFile());
+    }
+
+    @Test
+    void Check_Existing_Output_Fails() throws Exception {
+        Path slide = createSlide(Color.RED);
+        Path outputDirectory = Files.createTempDirectory(null);
+        Files.createDirectory(outputDirectory.resolve(slide.getFileName() + ".ome.zarr"));
+
+        int exitCode = run("-d", outputDirectory.toString(), slide.toString());
+
+        Assertions.assertEquals(1, exitCode);
+
+        Utils.deleteFileOrDirectoryRecursively(slide.toFile());
+        Utils.deleteFileOrDirectoryRecursively(outputDirectory.toFile());
+    }
+
+    @Test
+    void Check_Existing_Output_Skipped() throws Exception {
+        Path slide = createSlide(Color.RED);
+        Path outputDirectory = Files.createTempDirectory(null);
+        Path output = Files.createDirectory(outputDirectory.resolve(slide.getFileName() + ".ome.zarr"));
+
+        int exitCode = run("-d", outputDirectory.toString(), "--skip-existing", slide.toString());
+
+        Assertions.assertEquals(0, exitCode);
+        try (Stream<Path> files = Files.list(output)) {
+            Assertions.assertEquals(0, files.count());
+        }
+
+        Utils.deleteFileOrDirectoryRecursively(slide.toFile());
+        Utils.deleteFileOrDirectoryRecursively(outputDirectory.toFile());
+    }
+
+    @Test
+    void Check_Partitioned_Slide_Written() throws Exception {
+        Path slide = createSlide(Color.RED);
+        Path output = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        List<Integer> expectedExitCodes = List.of(0, 0, 0, 0);
+
+        List<Integer> exitCodes = List.of(
+                run("-o", output.toString(), "--create-partitions", "2", slide.toString()),
+                run("-o", output.toString(), "--write-partition", "0", slide.toString()),
+                run("-o", output.toString(), "--write-partition", "1", slide.toString()),
+                run("-o", output.toString(), "--finish-partitions", slide.toString())
+        );
+
+        Assertions.assertEquals(expectedExitCodes, exitCodes);
+
+        Utils.deleteFileOrDirectoryRecursively(slide.toFile());
+        Utils.deleteFileOrDirectoryRecursively(output.getParent().toFile());
+    }
+
+    @Test
+    void Check_Partitioned_Slide_Not_Finished_Before_All_Partitions_Written() throws Exception {
+        Path slide = createSlide(Color.RED);
+        Path output = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        run("-o", output.toString(), "--create-partitions", "2", slide.toString());
+        run("-o", output.toString(), "--write-partition", "0", slide.toString());
+
+        int exitCode = run("-o", output.toString(), "--finish-partitions", slide.toString());
+
+        Assertions.assertEquals(1, exitCode);
+
+        Utils.deleteFileOrDirectoryRecursively(slide.toFile());
+        Utils.deleteFileOrDirectoryRecursively(output.getParent().toFile());
+    }
+
+    private static Path createSlide(Color color) throws Exception {
+        Path slide = Files.createTempDirectory(null);
+        ImageUtils.writeTiff(slide.resolve("image1.tiff").toString(), ImageUtils.createSampleImage(2, 3, color), 1, 1, 0, 0);
+        ImageUtils.writeTiff(slide.resolve("image2.tiff").toString(), ImageUtils.createSampleImage(2, 3, color), 1, 1, 2, 4);
+        return slide;
+    }
+
+    private static int run(String... arguments) {
+        PrintStream stream = new PrintStream(new ByteArrayOutputStream());
+        return StitchingCommand.run(List.of(arguments), stream, stream);
+    }
+}
@@ -17,6 +17,11 @@ import java.awt.Color;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
 
 /**
  * A collection of utility methods for creating (TIFF) images.
@@ -47,6 +52,27 @@ public class ImageUtils {
         return image;
     }
 
+    /**
+     * Create a RGB image filled with random pixels, so that any part of the image can be unambiguously located.
+     *
+     * @param width the width the image should have
+     * @param height the height the image should have
+     * @param seed the seed of the random generator used to create the pixels
+     * @return an image with the specified size and random pixels
+     */
+    public static BufferedImage createTexturedImage(int width, int height, long seed) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(seed);
+
+        for (int y=0; y<height; y++) {
+            for (int x=0; x<width; x++) {
+                image.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+
+        return image;
+    }
+
     /**
      * Write a TIFF file to the provided path that contain the "XResolution", "YResolution", "XPosition", and "YPosition" tags
      * with the provided values.
@@ -96,6 +122,162 @@ public class ImageUtils {
         writer.dispose();
     }
 
+    /**
+     * Write a TIFF file that only contains a header and a first image file directory with the "ImageWidth", "ImageLength",
+     * "XResolution", "YResolution", "XPosition", and "YPosition" tags. The rational tags are written with a denominator of 1
+     * and are stored after the image file directory (or within it for BigTIFF files). No pixel data is written.
+     *
+     * @param path the path the file should have
+     * @param byteOrder the byte order of the file
+     * @param bigTiff whether to write a BigTIFF file
+     * @param width the value of the "ImageWidth" tag
+     * @param height the value of the "ImageLength" tag
+     * @param xResolution the value of the "XResolution" tag
+     * @param yResolution the value of the "YResolution" tag
+     * @param xPosition the value of the "XPosition" tag
+     * @param yPosition the value of the "YPosition" tag
+     */
+    public static void writeTiffHeader(
+            Path path,
+            ByteOrder byteOrder,
+            boolean bigTiff,
+            int width,
+            int height,
+            int xResolution,
+            int yResolution,
+            int xPosition,
+            int yPosition
+    ) throws IOException {
+        int headerSize = bigTiff ? 16 : 8;
+        int countSize = bigTiff ? 8 : 2;
+        int entrySize = bigTiff ? 20 : 12;
+        int numberOfEntries = 6;
+        int ifdSize = countSize + numberOfEntries * entrySize + (bigTiff ? 8 : 4);
+        int valuesOffset = headerSize + ifdSize;
+        ByteBuffer buffer = ByteBuffer.allocate(valuesOffset + (bigTiff ? 0 : 4 * 8)).order(byteOrder);
+
+        buffer.put(byteOrder == ByteOrder.LITTLE_ENDIAN ? (byte) 0x49 : (byte) 0x4D);
+        buffer.put(byteOrder == ByteOrder.LITTLE_ENDIAN ? (byte) 0x49 : (byte) 0x4D);
+        if (bigTiff) {
+            buffer.putShort((short) 43).putShort((short) 8).putShort((short) 0).putLong(headerSize);
+            buffer.putLong(numberOfEntries);
+        } else {
+            buffer.putShort((short) 42).putInt(headerSize);
+            buffer.putShort((short) numberOfEntries);
+        }
+
+        int[][] inlineTags = {{256, width}, {257, height}};
+        for (int[] tag: inlineTags) {
+            buffer.putShort((short) tag[0]).putShort((short) 4);
+            if (bigTiff) {
+                buffer.putLong(1).putInt(tag[1]).putInt(0);
+            } else {
+                buffer.putInt(1).putInt(tag[1]);
+            }
+        }
+        int[][] rationalTags = {{282, xResolution}, {283, yResolution}, {286, xPosition}, {287, yPosition}};
+        for (int i=0; i<rationalTags.length; i++) {
+            buffer.putShort((short) rationalTags[i][0]).putShort((short) 5);
+            if (bigTiff) {
+                buffer.putLong(1).putInt(rationalTags[i][1]).putInt(1);
+            } else {
+                buffer.putInt(1).putInt(valuesOffset + i * 8);
+            }
+        }
+        if (bigTiff) {
+            buffer.putLong(0);
+        } else {
+            buffer.putInt(0);
+
+            for (int[] tag: rationalTags) {
+                buffer.putInt(tag[1]).putInt(1);
+            }
+        }
+
+        Files.write(path, buffer.array());
+    }
+
+    /**
+     * Write an uncompressed little-endian TIFF file with any number of channels of 8 or 16 bits and random pixels,
+     * containing the "XResolution", "YResolution" (both equal to 1), "ResolutionUnit" (equal to none), "XPosition", and
+     * "YPosition" tags. The channels are interleaved and stored in a single strip.
+     *
+     * @param path the path the file should have
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param numberOfChannels the number of channels of the image
+     * @param bitsPerSample the number of bits of each channel (8 or 16)
+     * @param xPosition the value of the "XPosition" tag
+     * @param yPosition the value of the "YPosition" tag
+     * @param seed the seed of the random generator used to create the pixels
+     */
+    public static void writeMultichannelTiff(
+            Path path,
+            int width,
+            int height,
+            int numberOfChannels,
+            int bitsPerSample,
+            int xPosition,
+            int yPosition,
+            long seed
+    ) throws IOException {
+        int numberOfExtraSamples = numberOfChannels - 1;
+        int numberOfEntries = numberOfExtraSamples > 0 ? 16 : 15;
+        int ifdSize = 2 + numberOfEntries * 12 + 4;
+        int bitsPerSampleOffset = 8 + ifdSize;
+        int extraSamplesOffset = bitsPerSampleOffset + (numberOfChannels > 2 ? 2 * numberOfChannels : 0);
+        int rationalsOffset = extraSamplesOffset + (numberOfExtraSamples > 2 ? 2 * numberOfExtraSamples : 0);
+        int pixelsOffset = rationalsOffset + 4 * 8;
+        int pixelsSize = width * height * numberOfChannels * bitsPerSample / 8;
+        ByteBuffer buffer = ByteBuffer.allocate(pixelsOffset + pixelsSize).order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.put((byte) 0x49).put((byte) 0x49).putShort((short) 42).putInt(8);
+        buffer.putShort((short) numberOfEntries);
+
+        putLongEntry(buffer, 256, width);
+        putLongEntry(buffer, 257, height);
+        putShortsEntry(buffer, 258, numberOfChannels, bitsPerSample, bitsPerSampleOffset);
+        putShortsEntry(buffer, 259, 1, 1, 0);
+        putShortsEntry(buffer, 262, 1, 1, 0);
+        putLongEntry(buffer, 273, pixelsOffset);
+        putShortsEntry(buffer, 277, 1, numberOfChannels, 0);
+        putLongEntry(buffer, 278, height);
+        putLongEntry(buffer, 279, pixelsSize);
+        int[][] rationalTags = {{282, 1}, {283, 1}, {286, xPosition}, {287, yPosition}};
+        for (int i=0; i<2; i++) {
+            buffer.putShort((short) rationalTags[i][0]).putShort((short) 5).putInt(1).putInt(rationalsOffset + i * 8);
+        }
+        putShortsEntry(buffer, 284, 1, 1, 0);
+        for (int i=2; i<rationalTags.length; i++) {
+            buffer.putShort((short) rationalTags[i][0]).putShort((short) 5).putInt(1).putInt(rationalsOffset + i * 8);
+        }
+        putShortsEntry(buffer, 296, 1, 1, 0);
+        if (numberOfExtraSamples > 0) {
+            putShortsEntry(buffer, 338, numberOfExtraSamples, 0, extraSamplesOffset);
+        }
+        buffer.putInt(0);
+
+        if (numberOfChannels > 2) {
+            for (int i=0; i<numberOfChannels; i++) {
+                buffer.putShort((short) bitsPerSample);
+            }
+        }
+        if (numberOfExtraSamples > 2) {
+            for (int i=0; i<numberOfExtraSamples; i++) {
+                buffer.putShort((short) 0);
+            }
+        }
+        for (int[] tag: rationalTags) {
+            buffer.putInt(tag[1]).putInt(1);
+        }
+
+        byte[] pixels = new byte[pixelsSize];
+        new Random(seed).nextBytes(pixels);
+        buffer.put(pixels);
+
+        Files.write(path, buffer.array());
+    }
+
     /**
      * Assert that two RGB buffered images are equal.
      *
@@ -127,4 +309,17 @@ public class ImageUtils {
 
         Assertions.assertArrayEquals(expectedPixels, actualPixels);
     }
+
+    private static void putLongEntry(ByteBuffer buffer, int tag, int value) {
+        buffer.putShort((short) tag).putShort((short) 4).putInt(1).putInt(value);
+    }
+
+    private static void putShortsEntry(ByteBuffer buffer, int tag, int count, int value, int valuesOffset) {
+        buffer.putShort((short) tag).putShort((short) 3).putInt(count);
+        if (count > 2) {
+            buffer.putInt(valuesOffset);
+        } else {
+            buffer.putShort((short) value).putShort((short) (count == 2 ? value : 0));
+        }
+    }
 }
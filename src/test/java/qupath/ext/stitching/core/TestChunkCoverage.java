@@ -0,0 +1,100 @@
+package qupath.ext.stitching.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import qupath.ext.stitching.Utils;
+import qupath.lib.images.servers.ImageServerMetadata;
+import qupath.lib.images.servers.WrappedBufferedImageServer;
+
+import java.awt.Color;
+import java.nio.file.Files;
+import java.util.BitSet;
+import java.util.List;
+
+public class TestChunkCoverage {
+
+    @Test
+    void Check_Covered_Chunks() throws Exception {
+        OmeZarrStore store = createStore(8, 8, 1, 2);
+        TileLayout layout = new TileLayout(new int[] {0, 7}, new int[] {0, 7}, new int[] {2, 1}, new int[] {2, 1});
+        BitSet expectedChunks = new BitSet();
+        expectedChunks.set(0);
+        expectedChunks.set(15);
+        ChunkCoverage coverage = new ChunkCoverage(layout, store, 0, 0);
+
+        BitSet chunks = coverage.getCoveredChunks(0);
+
+        Assertions.assertEquals(expectedChunks, chunks);
+
+        Utils.deleteFileOrDirectoryRecursively(store.getPath().getParent().toFile());
+    }
+
+    @Test
+    void Check_Coverage_Of_Full_Resolution_Chunks() throws Exception {
+        OmeZarrStore store = createStore(8, 8, 1, 2);
+        TileLayout layout = new TileLayout(new int[] {0, 7}, new int[] {0, 7}, new int[] {2, 1}, new int[] {2, 1});
+        List<ChunkCoverage.Coverage> expectedCoverages = List.of(
+                ChunkCoverage.Coverage.FULL,
+                ChunkCoverage.Coverage.UNCOVERED,
+                ChunkCoverage.Coverage.PARTIAL
+        );
+        ChunkCoverage coverage = new ChunkCoverage(layout, store, 0, 0);
+
+        List<ChunkCoverage.Coverage> coverages = List.of(
+                coverage.getCoverage(0, 0),
+                coverage.getCoverage(0, 2),
+                coverage.getCoverage(0, 15)
+        );
+
+        Assertions.assertEquals(expectedCoverages, coverages);
+
+        Utils.deleteFileOrDirectoryRecursively(store.getPath().getParent().toFile());
+    }
+
+    @Test
+    void Check_Coverage_Of_Downsampled_Chunks() throws Exception {
+        OmeZarrStore store = createStore(32, 32, 2, 4);
+        TileLayout layout = new TileLayout(new int[] {0, 24}, new int[] {0, 24}, new int[] {16, 4}, new int[] {16, 4});
+        List<ChunkCoverage.Coverage> expectedCoverages = List.of(
+                ChunkCoverage.Coverage.FULL,
+                ChunkCoverage.Coverage.UNCOVERED,
+                ChunkCoverage.Coverage.PARTIAL
+        );
+        ChunkCoverage coverage = new ChunkCoverage(layout, store, 0, 0);
+
+        List<ChunkCoverage.Coverage> coverages = List.of(
+                coverage.getCoverage(1, 0),
+                coverage.getCoverage(1, 1),
+                coverage.getCoverage(1, 3)
+        );
+
+        Assertions.assertEquals(expectedCoverages, coverages);
+
+        Utils.deleteFileOrDirectoryRecursively(store.getPath().getParent().toFile());
+    }
+
+    @Test
+    void Check_Coverage_With_Offset() throws Exception {
+        OmeZarrStore store = createStore(8, 8, 1, 2);
+        TileLayout layout = new TileLayout(new int[] {0}, new int[] {0}, new int[] {2}, new int[] {2});
+        ChunkCoverage coverage = new ChunkCoverage(layout, store, 2, 4);
+
+        ChunkCoverage.Coverage chunkCoverage = coverage.getCoverage(0, 9);
+
+        Assertions.assertEquals(ChunkCoverage.Coverage.FULL, chunkCoverage);
+
+        Utils.deleteFileOrDirectoryRecursively(store.getPath().getParent().toFile());
+    }
+
+    private static OmeZarrStore createStore(int width, int height, int nLevels, int chunkSize) throws Exception {
+        ImageServerMetadata metadata;
+        try (WrappedBufferedImageServer server = new WrappedBufferedImageServer("", ImageUtils.createSampleImage(width, height, Color.WHITE))) {
+            metadata = server.getMetadata();
+        }
+
+        return new OmeZarrStore.Builder(Files.createTempDirectory(null).resolve("image.ome.zarr"), metadata)
+                .numberOfLevels(nLevels)
+                .chunkSize(chunkSize, chunkSize)
+                .build();
+    }
+}
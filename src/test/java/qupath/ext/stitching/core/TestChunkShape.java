@@ -0,0 +1,91 @@
+package qupath.ext.stitching.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TestChunkShape {
+
+    @Test
+    void Check_Invalid_Shape() {
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new ChunkShape(0, 512)
+        );
+    }
+
+    @Test
+    void Check_Multiple_Not_Dividing_Default_Size() {
+        TileLayout layout = createGrid(1800, 1400, 1800, 1400);
+
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> ChunkShape.fromLayout(layout, 3)
+        );
+    }
+
+    @Test
+    void Check_Shape_Dividing_Grid_Step() {
+        TileLayout layout = createGrid(1800, 1400, 1800, 1400);
+        ChunkShape expectedShape = new ChunkShape(900, 700);
+
+        ChunkShape shape = ChunkShape.fromLayout(layout, ChunkShape.ZARR_MULTIPLE);
+
+        Assertions.assertEquals(expectedShape, shape);
+    }
+
+    @Test
+    void Check_Shape_Equal_To_Grid_Step() {
+        TileLayout layout = createGrid(480, 480, 512, 512);
+        ChunkShape expectedShape = new ChunkShape(480, 480);
+
+        ChunkShape shape = ChunkShape.fromLayout(layout, ChunkShape.TIFF_MULTIPLE);
+
+        Assertions.assertEquals(expectedShape, shape);
+    }
+
+    @Test
+    void Check_Shape_Is_Multiple() {
+        TileLayout layout = createGrid(1800, 1400, 1800, 1400);
+
+        ChunkShape shape = ChunkShape.fromLayout(layout, ChunkShape.TIFF_MULTIPLE);
+
+        Assertions.assertArrayEquals(
+                new int[] {0, 0},
+                new int[] {shape.width() % ChunkShape.TIFF_MULTIPLE, shape.height() % ChunkShape.TIFF_MULTIPLE}
+        );
+    }
+
+    @Test
+    void Check_Shape_Covers_Whole_Small_Inputs() {
+        TileLayout layout = createGrid(200, 200, 200, 200);
+        ChunkShape expectedShape = new ChunkShape(400, 400);
+
+        ChunkShape shape = ChunkShape.fromLayout(layout, ChunkShape.TIFF_MULTIPLE);
+
+        Assertions.assertEquals(expectedShape, shape);
+    }
+
+    @Test
+    void Check_Default_Shape_On_Irregular_Layout() {
+        TileLayout layout = new TileLayout(
+                new int[] {0, 500, 40, 1000},
+                new int[] {0, 20, 300, 900},
+                new int[] {100, 300, 10, 200},
+                new int[] {100, 100, 400, 50}
+        );
+        ChunkShape expectedShape = new ChunkShape(ChunkShape.DEFAULT_SIZE, ChunkShape.DEFAULT_SIZE);
+
+        ChunkShape shape = ChunkShape.fromLayout(layout, ChunkShape.ZARR_MULTIPLE);
+
+        Assertions.assertEquals(expectedShape, shape);
+    }
+
+    private static TileLayout createGrid(int stepX, int stepY, int tileWidth, int tileHeight) {
+        return new TileLayout(
+                new int[] {0, stepX, 0, stepX},
+                new int[] {0, 0, stepY, stepY},
+                new int[] {tileWidth, tileWidth, tileWidth, tileWidth},
+                new int[] {tileHeight, tileHeight, tileHeight, tileHeight}
+        );
+    }
+}
@@ -0,0 +1,104 @@
+package qupath.ext.stitching.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class TestFft {
+
+    @Test
+    void Check_Next_Power_Of_Two_Of_Power_Of_Two() {
+        int expectedPowerOfTwo = 64;
+
+        int powerOfTwo = Fft.nextPowerOfTwo(64);
+
+        Assertions.assertEquals(expectedPowerOfTwo, powerOfTwo);
+    }
+
+    @Test
+    void Check_Next_Power_Of_Two_Of_Other_Number() {
+        int expectedPowerOfTwo = 128;
+
+        int powerOfTwo = Fft.nextPowerOfTwo(65);
+
+        Assertions.assertEquals(expectedPowerOfTwo, powerOfTwo);
+    }
+
+    @Test
+    void Check_Next_Power_Of_Two_Of_One() {
+        int expectedPowerOfTwo = 1;
+
+        int powerOfTwo = Fft.nextPowerOfTwo(1);
+
+        Assertions.assertEquals(expectedPowerOfTwo, powerOfTwo);
+    }
+
+    @Test
+    void Check_Size_Not_Power_Of_Two() {
+        double[] real = new double[6 * 4];
+        double[] imaginary = new double[6 * 4];
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Fft.transform2D(real, imaginary, 6, 4, false));
+    }
+
+    @Test
+    void Check_Arrays_With_Wrong_Length() {
+        double[] real = new double[8 * 4];
+        double[] imaginary = new double[8 * 2];
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Fft.transform2D(real, imaginary, 8, 4, false));
+    }
+
+    @Test
+    void Check_Transform_Of_Impulse() {
+        int width = 8;
+        int height = 4;
+        double[] real = new double[width * height];
+        double[] imaginary = new double[width * height];
+        real[0] = 1;
+        double[] expectedReal = new double[width * height];
+        Arrays.fill(expectedReal, 1);
+        double[] expectedImaginary = new double[width * height];
+
+        Fft.transform2D(real, imaginary, width, height, false);
+
+        Assertions.assertArrayEquals(expectedReal, real, 1e-9);
+        Assertions.assertArrayEquals(expectedImaginary, imaginary, 1e-9);
+    }
+
+    @Test
+    void Check_Transform_Of_Constant() {
+        int width = 4;
+        int height = 8;
+        double[] real = new double[width * height];
+        Arrays.fill(real, 2);
+        double[] imaginary = new double[width * height];
+        double[] expectedReal = new double[width * height];
+        expectedReal[0] = 2 * width * height;
+        double[] expectedImaginary = new double[width * height];
+
+        Fft.transform2D(real, imaginary, width, height, false);
+
+        Assertions.assertArrayEquals(expectedReal, real, 1e-9);
+        Assertions.assertArrayEquals(expectedImaginary, imaginary, 1e-9);
+    }
+
+    @Test
+    void Check_Inverse_Transform_Gives_Original_Array() {
+        int width = 16;
+        int height = 8;
+        Random random = new Random(0);
+        double[] real = random.doubles(width * height).toArray();
+        double[] imaginary = random.doubles(width * height).toArray();
+        double[] expectedReal = real.clone();
+        double[] expectedImaginary = imaginary.clone();
+
+        Fft.transform2D(real, imaginary, width, height, false);
+        Fft.transform2D(real, imaginary, width, height, true);
+
+        Assertions.assertArrayEquals(expectedReal, real, 1e-9);
+        Assertions.assertArrayEquals(expectedImaginary, imaginary, 1e-9);
+    }
+}
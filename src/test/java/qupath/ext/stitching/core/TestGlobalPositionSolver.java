@@ -0,0 +1,176 @@
+package qupath.ext.stitching.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class TestGlobalPositionSolver {
+
+    @Test
+    void Check_Max_Residual_Not_Positive() {
+        TileLayout layout = createGrid(2, 1, 100, 0);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new GlobalPositionSolver(layout, 0));
+    }
+
+    @Test
+    void Check_Offset_With_Tile_Out_Of_Bounds() {
+        GlobalPositionSolver solver = new GlobalPositionSolver(createGrid(2, 1, 100, 0), 1);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> solver.addOffset(0, 2, 100, 0, 1));
+    }
+
+    @Test
+    void Check_Offset_Between_Same_Tile() {
+        GlobalPositionSolver solver = new GlobalPositionSolver(createGrid(2, 1, 100, 0), 1);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> solver.addOffset(1, 1, 0, 0, 1));
+    }
+
+    @Test
+    void Check_Offset_With_Weight_Not_Positive() {
+        GlobalPositionSolver solver = new GlobalPositionSolver(createGrid(2, 1, 100, 0), 1);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> solver.addOffset(0, 1, 100, 0, 0));
+    }
+
+    @Test
+    void Check_Nominal_Layout_Without_Offsets() {
+        TileLayout nominalLayout = createGrid(3, 2, 100, 0);
+        GlobalPositionSolver solver = new GlobalPositionSolver(nominalLayout, 1);
+
+        TileLayout layout = solver.solve();
+
+        assertLayoutsEqual(nominalLayout, layout);
+    }
+
+    @Test
+    void Check_Consistent_Offsets_Give_Exact_Positions() {
+        TileLayout expectedLayout = createGrid(4, 3, 90, 5);
+        TileLayout nominalLayout = createGrid(4, 3, 100, 0);
+        GlobalPositionSolver solver = new GlobalPositionSolver(nominalLayout, 1);
+        addNeighbourOffsets(solver, expectedLayout, 4, 3, null);
+
+        TileLayout layout = solver.solve();
+
+        assertLayoutsEqual(expectedLayout, layout);
+    }
+
+    @Test
+    void Check_Noisy_Offsets_Averaged() {
+        TileLayout expectedLayout = createGrid(20, 20, 90, 5);
+        TileLayout nominalLayout = createGrid(20, 20, 100, 0);
+        GlobalPositionSolver solver = new GlobalPositionSolver(nominalLayout, 3);
+        addNeighbourOffsets(solver, expectedLayout, 20, 20, new Random(0));
+        int maxError = 3;
+
+        TileLayout layout = solver.solve();
+
+        for (int i=0; i<expectedLayout.getNumberOfTiles(); i++) {
+            Assertions.assertTrue(Math.abs(expectedLayout.getX(i) - layout.getX(i)) <= maxError);
+            Assertions.assertTrue(Math.abs(expectedLayout.getY(i) - layout.getY(i)) <= maxError);
+        }
+    }
+
+    @Test
+    void Check_Outlier_Offset_Rejected() {
+        TileLayout expectedLayout = createGrid(4, 3, 90, 5);
+        TileLayout nominalLayout = createGrid(4, 3, 100, 0);
+        GlobalPositionSolver solver = new GlobalPositionSolver(nominalLayout, 1);
+        addNeighbourOffsets(solver, expectedLayout, 4, 3, null);
+        solver.addOffset(5, 6, 40, -25, 1);
+        int expectedNumberOfRejectedOffsets = 1;
+
+        TileLayout layout = solver.solve();
+
+        assertLayoutsEqual(expectedLayout, layout);
+        Assertions.assertEquals(expectedNumberOfRejectedOffsets, solver.getNumberOfRejectedOffsets());
+    }
+
+    @Test
+    void Check_Mean_Position_Kept() {
+        TileLayout nominalLayout = new TileLayout(
+                new int[] {1000, 1100},
+                new int[] {2000, 2000},
+                new int[] {120, 120},
+                new int[] {100, 100}
+        );
+        GlobalPositionSolver solver = new GlobalPositionSolver(nominalLayout, 1);
+        solver.addOffset(0, 1, 90, 4, 1);
+        int expectedOriginX = 1005;
+        int expectedOriginY = 1998;
+
+        TileLayout layout = solver.solve();
+
+        Assertions.assertEquals(expectedOriginX, layout.getOriginX());
+        Assertions.assertEquals(expectedOriginY, layout.getOriginY());
+    }
+
+    @Test
+    void Check_Unconnected_Tile_Keeps_Nominal_Position() {
+        TileLayout nominalLayout = new TileLayout(
+                new int[] {0, 100, 500},
+                new int[] {0, 0, 0},
+                new int[] {120, 120, 120},
+                new int[] {100, 100, 100}
+        );
+        GlobalPositionSolver solver = new GlobalPositionSolver(nominalLayout, 1);
+        solver.addOffset(0, 1, 90, 4, 1);
+        TileLayout expectedLayout = new TileLayout(
+                new int[] {5, 95, 500},
+                new int[] {-2, 2, 0},
+                new int[] {120, 120, 120},
+                new int[] {100, 100, 100}
+        );
+
+        TileLayout layout = solver.solve();
+
+        assertLayoutsEqual(expectedLayout, layout);
+    }
+
+    private static TileLayout createGrid(int nColumns, int nRows, int step, int jitter) {
+        int[] xs = new int[nColumns * nRows];
+        int[] ys = new int[nColumns * nRows];
+        int[] sizes = new int[nColumns * nRows];
+        Arrays.fill(sizes, 120);
+
+        for (int row=0; row<nRows; row++) {
+            for (int column=0; column<nColumns; column++) {
+                int i = row * nColumns + column;
+                xs[i] = column * step + ((i * 7) % (2 * jitter + 1)) - jitter;
+                ys[i] = row * step + ((i * 3) % (2 * jitter + 1)) - jitter;
+            }
+        }
+        return new TileLayout(xs, ys, sizes, sizes);
+    }
+
+    private static void addNeighbourOffsets(GlobalPositionSolver solver, TileLayout layout, int nColumns, int nRows, Random noise) {
+        for (int row=0; row<nRows; row++) {
+            for (int column=0; column<nColumns; column++) {
+                int i = row * nColumns + column;
+
+                for (int neighbour: new int[] {column + 1 < nColumns ? i + 1 : -1, row + 1 < nRows ? i + nColumns : -1}) {
+                    if (neighbour != -1) {
+                        solver.addOffset(
+                                i,
+                                neighbour,
+                                layout.getX(neighbour) - layout.getX(i) + (noise == null ? 0 : noise.nextInt(3) - 1),
+                                layout.getY(neighbour) - layout.getY(i) + (noise == null ? 0 : noise.nextInt(3) - 1),
+                                1
+                        );
+                    }
+                }
+            }
+        }
+    }
+
+    private static void assertLayoutsEqual(TileLayout expectedLayout, TileLayout layout) {
+        Assertions.assertEquals(expectedLayout.getNumberOfTiles(), layout.getNumberOfTiles());
+        for (int i=0; i<expectedLayout.getNumberOfTiles(); i++) {
+            Assertions.assertEquals(expectedLayout.getX(i), layout.getX(i));
+            Assertions.assertEquals(expectedLayout.getY(i), layout.getY(i));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package qupath.ext.stitching.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+
+public class TestImagePool {
+
+    @Test
+    void Check_Negative_Max_Retained_Images() {
+        BufferedImage template = ImageUtils.createSampleImage(1, 1, Color.WHITE);
+
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new ImagePool(template, -1)
+        );
+    }
+
+    @Test
+    void Check_Acquired_Image_Size() {
+        ImagePool imagePool = new ImagePool(ImageUtils.createSampleImage(1, 1, Color.WHITE), 1);
+
+        BufferedImage image = imagePool.acquire(3, 2);
+
+        Assertions.assertArrayEquals(new int[] {3, 2}, new int[] {image.getWidth(), image.getHeight()});
+    }
+
+    @Test
+    void Check_Acquired_Image_Has_Type_Of_Template() {
+        BufferedImage template = new BufferedImage(1, 1, BufferedImage.TYPE_USHORT_GRAY);
+        ImagePool imagePool = new ImagePool(template, 1);
+
+        BufferedImage image = imagePool.acquire(3, 2);
+
+        Assertions.assertEquals(template.getRaster().getTransferType(), image.getRaster().getTransferType());
+    }
+
+    @Test
+    void Check_Released_Image_Reused() {
+        ImagePool imagePool = new ImagePool(ImageUtils.createSampleImage(1, 1, Color.WHITE), 1);
+        BufferedImage expectedImage = imagePool.acquire(3, 2);
+        imagePool.release(expectedImage);
+
+        BufferedImage image = imagePool.acquire(3, 2);
+
+        Assertions.assertSame(expectedImage, image);
+    }
+
+    @Test
+    void Check_Released_Image_Not_Reused_For_Other_Size() {
+        ImagePool imagePool = new ImagePool(ImageUtils.createSampleImage(1, 1, Color.WHITE), 1);
+        BufferedImage releasedImage = imagePool.acquire(3, 2);
+        imagePool.release(releasedImage);
+
+        BufferedImage image = imagePool.acquire(2, 3);
+
+        Assertions.assertNotSame(releasedImage, image);
+    }
+
+    @Test
+    void Check_Reused_Image_Filled_With_Zeros() {
+        ImagePool imagePool = new ImagePool(ImageUtils.createSampleImage(1, 1, Color.WHITE), 1);
+        BufferedImage releasedImage = imagePool.acquire(2, 2);
+        releasedImage.getRaster().setPixels(0, 0, 2, 2, new int[] {255, 255, 255, 1, 2, 3, 4, 5, 6, 7, 8, 9});
+        imagePool.release(releasedImage);
+        int[] expectedPixels = new int[12];
+
+        BufferedImage image = imagePool.acquire(2, 2);
+
+        Assertions.assertArrayEquals(expectedPixels, image.getRaster().getPixels(0, 0, 2, 2, (int[]) null));
+    }
+
+    @Test
+    void Check_Reused_Image_Not_Filled_With_Zeros_When_Not_Requested() {
+        ImagePool imagePool = new ImagePool(ImageUtils.createSampleImage(1, 1, Color.WHITE), 1);
+        BufferedImage releasedImage = imagePool.acquire(2, 2);
+        int[] expectedPixels = new int[] {255, 255, 255, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+        releasedImage.getRaster().setPixels(0, 0, 2, 2, expectedPixels);
+        imagePool.release(releasedImage);
+
+        BufferedImage image = imagePool.acquire(2, 2, false);
+
+        Assertions.assertArrayEquals(expectedPixels, image.getRaster().getPixels(0, 0, 2, 2, (int[]) null));
+    }
+
+    @Test
+    void Check_Number_Of_Retained_Images_Limited() {
+        ImagePool imagePool = new ImagePool(ImageUtils.createSampleImage(1, 1, Color.WHITE), 2);
+        BufferedImage image1 = imagePool.acquire(2, 2);
+        BufferedImage image2 = imagePool.acquire(2, 2);
+        BufferedImage image3 = imagePool.acquire(2, 2);
+
+        imagePool.release(image1);
+        imagePool.release(image2);
+        imagePool.release(image3);
+
+        Assertions.assertEquals(2, imagePool.getNumberOfRetainedImages());
+    }
+
+    @Test
+    void Check_Null_Image_Released() {
+        ImagePool imagePool = new ImagePool(ImageUtils.createSampleImage(1, 1, Color.WHITE), 1);
+
+        imagePool.release(null);
+
+        Assertions.assertEquals(0, imagePool.getNumberOfRetainedImages());
+    }
+}
@@ -3,6 +3,11 @@ package qupath.ext.stitching.core;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import qupath.ext.stitching.Utils;
+import qupath.ext.stitching.cli.StitchingCommand;
+import qupath.ext.stitching.core.positionfinders.PositionFinder;
+import qupath.ext.stitching.core.positionfinders.TiffTagPositionFinder;
+import qupath.lib.images.writers.ome.OMEPyramidWriter;
+import qupath.lib.images.writers.ome.zarr.OMEZarrWriter;
 import qupath.lib.regions.RegionRequest;
 
 import javax.imageio.ImageIO;
@@ -13,7 +18,11 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class TestImageStitcher {
 
@@ -27,6 +36,133 @@ public class TestImageStitcher {
         );
     }
 
+    @Test
+    void Check_Max_Open_Inputs_Less_Than_One() {
+        List<String> imagePaths = List.of();
+
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new ImageStitcher.Builder(imagePaths).maxOpenInputs(0)
+        );
+    }
+
+    @Test
+    void Check_Max_Concurrent_Parsing_Less_Than_One() {
+        List<String> imagePaths = List.of();
+
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new ImageStitcher.Builder(imagePaths).maxConcurrentParsing(0)
+        );
+    }
+
+    @Test
+    void Check_Memory_Budget_Less_Than_One() {
+        List<String> imagePaths = List.of();
+
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new ImageStitcher.Builder(imagePaths).memoryBudget(0)
+        );
+    }
+
+    @Test
+    void Check_Zarr_Compression_Level_Out_Of_Range() {
+        List<String> imagePaths = List.of();
+
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new ImageStitcher.Builder(imagePaths).zarrCompressionLevel(0)
+        );
+    }
+
+    @Test
+    void Check_Zarr_Shard_Size_Less_Than_One() {
+        List<String> imagePaths = List.of();
+
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new ImageStitcher.Builder(imagePaths).zarrShardSize(0)
+        );
+    }
+
+    @Test
+    void Check_Negative_Chunk_Size() {
+        List<String> imagePaths = List.of();
+
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new ImageStitcher.Builder(imagePaths).chunkSize(-16)
+        );
+    }
+
+    @Test
+    void Check_Chunk_Size_Not_Multiple_Of_4() {
+        List<String> imagePaths = List.of();
+
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new ImageStitcher.Builder(imagePaths).chunkSize(502)
+        );
+    }
+
+    @Test
+    void Check_Chunk_Size_Not_Multiple_Of_16_Accepted() {
+        List<String> imagePaths = List.of();
+
+        Assertions.assertDoesNotThrow(() -> new ImageStitcher.Builder(imagePaths).chunkSize(500));
+    }
+
+    @Test
+    void Check_Negative_Tiff_Tile_Size() {
+        List<String> imagePaths = List.of();
+
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new ImageStitcher.Builder(imagePaths).tiffTileSize(-16)
+        );
+    }
+
+    @Test
+    void Check_Tiff_Tile_Size_Not_Multiple_Of_16() {
+        List<String> imagePaths = List.of();
+
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new ImageStitcher.Builder(imagePaths).tiffTileSize(500)
+        );
+    }
+
+    @Test
+    void Check_Max_Registration_Shift_Less_Than_One() {
+        List<String> imagePaths = List.of();
+
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new ImageStitcher.Builder(imagePaths).maxRegistrationShift(0)
+        );
+    }
+
+    @Test
+    void Check_Registration_Downsample_Less_Than_One() {
+        List<String> imagePaths = List.of();
+
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new ImageStitcher.Builder(imagePaths).registrationDownsample(0.5)
+        );
+    }
+
+    @Test
+    void Check_Shading_Correction_Samples_Less_Than_One() {
+        List<String> imagePaths = List.of();
+
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new ImageStitcher.Builder(imagePaths).shadingCorrectionSamples(0)
+        );
+    }
+
     @Test
     void Check_No_Tiff_Image_Given() throws IOException {
         Path imagePath = Files.createTempFile(null, ".tiff");
@@ -115,6 +251,198 @@ public class TestImageStitcher {
         Files.delete(Path.of(imagePath2));
     }
 
+    @Test
+    void Check_Pixels_Of_Assembled_Image_With_Pipelined_Parsing() throws Exception {
+        String imagePath1 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath1, ImageUtils.createSampleImage(2, 3, Color.RED), 1, 1, 0, 0);
+        String imagePath2 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath2, ImageUtils.createSampleImage(2, 3, Color.BLUE), 1, 1, 2, 4);
+        List<String> imagePaths = List.of(imagePath1, imagePath2);
+        BufferedImage expectedImage = new BufferedImage(4, 7, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = expectedImage.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, 2, 3);
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(2, 4, 2, 3);
+        graphics.dispose();
+
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(imagePaths).pipelinedParsing(true).build()) {
+            ImageUtils.assertRgbBufferedImagesEqual(
+                    expectedImage,
+                    imageStitcher.getServer().readRegion(RegionRequest.createInstance(imageStitcher.getServer()))
+            );
+        }
+
+        Files.delete(Path.of(imagePath1));
+        Files.delete(Path.of(imagePath2));
+    }
+
+    @Test
+    void Check_Pixels_Of_Assembled_Image_With_Pipelined_Parsing_When_First_Position_Finder_Does_Not_Support_Probing() throws Exception {
+        String imagePath1 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath1, ImageUtils.createSampleImage(2, 3, Color.RED), 1, 1, 0, 0);
+        String imagePath2 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath2, ImageUtils.createSampleImage(2, 3, Color.BLUE), 1, 1, 2, 4);
+        List<String> imagePaths = List.of(imagePath1, imagePath2);
+        List<PositionFinder> positionFinders = List.of(
+                server -> {
+                    throw new IllegalArgumentException("No position");
+                },
+                new TiffTagPositionFinder()
+        );
+        BufferedImage expectedImage = new BufferedImage(4, 7, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = expectedImage.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, 2, 3);
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(2, 4, 2, 3);
+        graphics.dispose();
+
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(imagePaths).positionFinders(positionFinders).pipelinedParsing(true).build()) {
+            ImageUtils.assertRgbBufferedImagesEqual(
+                    expectedImage,
+                    imageStitcher.getServer().readRegion(RegionRequest.createInstance(imageStitcher.getServer()))
+            );
+        }
+
+        Files.delete(Path.of(imagePath1));
+        Files.delete(Path.of(imagePath2));
+    }
+
+    @Test
+    void Check_Pipelined_Parsing_When_No_Position_Finder_Supports_Probing() throws IOException {
+        String imagePath = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath, ImageUtils.createSampleImage(2, 3, Color.WHITE), 1, 1, 0, 0);
+        List<String> imagePaths = List.of(imagePath);
+        List<PositionFinder> positionFinders = List.of(server -> new int[] {0, 0});
+
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new ImageStitcher.Builder(imagePaths).positionFinders(positionFinders).pipelinedParsing(true).build()
+        );
+
+        Files.delete(Path.of(imagePath));
+    }
+
+    @Test
+    void Check_Pixels_Of_Assembled_Image_With_Small_Memory_Budget() throws Exception {
+        String imagePath1 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath1, ImageUtils.createSampleImage(2, 3, Color.RED), 1, 1, 0, 0);
+        String imagePath2 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath2, ImageUtils.createSampleImage(2, 3, Color.BLUE), 1, 1, 2, 4);
+        List<String> imagePaths = List.of(imagePath1, imagePath2);
+        BufferedImage expectedImage = new BufferedImage(4, 7, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = expectedImage.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, 2, 3);
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(2, 4, 2, 3);
+        graphics.dispose();
+
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(imagePaths).memoryBudget(1).build()) {
+            ImageUtils.assertRgbBufferedImagesEqual(
+                    expectedImage,
+                    imageStitcher.getServer().readRegion(RegionRequest.createInstance(imageStitcher.getServer()))
+            );
+        }
+
+        Files.delete(Path.of(imagePath1));
+        Files.delete(Path.of(imagePath2));
+    }
+
+    @Test
+    void Check_Pipelined_Parsing_With_Registration() throws IOException {
+        String imagePath = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath, ImageUtils.createSampleImage(2, 3, Color.WHITE), 1, 1, 0, 0);
+        List<String> imagePaths = List.of(imagePath);
+
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new ImageStitcher.Builder(imagePaths).pipelinedParsing(true).registration(true).build()
+        );
+
+        Files.delete(Path.of(imagePath));
+    }
+
+    @Test
+    void Check_Zarr_File_Written_With_Pipelined_Parsing() throws Exception {
+        String imagePath1 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath1, ImageUtils.createSampleImage(2, 3, Color.WHITE), 1, 1, 0, 0);
+        String imagePath2 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath2, ImageUtils.createSampleImage(2, 3, Color.WHITE), 1, 1, 2, 4);
+        List<String> imagePaths = List.of(imagePath1, imagePath2);
+        Path outputPath = Files.createTempDirectory(null).resolve("image.ome.zarr");
+
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(imagePaths).pipelinedParsing(true).build()) {
+            imageStitcher.writeToZarrFile(outputPath.toString(), null);
+        }
+
+        Assertions.assertTrue(Files.exists(outputPath));
+
+        Files.delete(Path.of(imagePath1));
+        Files.delete(Path.of(imagePath2));
+        Utils.deleteFileOrDirectoryRecursively(outputPath.getParent().toFile());
+    }
+
+    @Test
+    void Check_Zarr_File_Written_With_Small_Memory_Budget() throws Exception {
+        String imagePath1 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath1, ImageUtils.createSampleImage(600, 3, Color.WHITE), 1, 1, 0, 0);
+        String imagePath2 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath2, ImageUtils.createSampleImage(600, 3, Color.WHITE), 1, 1, 500, 600);
+        List<String> imagePaths = List.of(imagePath1, imagePath2);
+        Path outputPath = Files.createTempDirectory(null).resolve("image.ome.zarr");
+
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(imagePaths).memoryBudget(1).build()) {
+            imageStitcher.writeToZarrFile(outputPath.toString(), null);
+        }
+
+        Assertions.assertTrue(Files.exists(outputPath));
+
+        Files.delete(Path.of(imagePath1));
+        Files.delete(Path.of(imagePath2));
+        Utils.deleteFileOrDirectoryRecursively(outputPath.getParent().toFile());
+    }
+
+    @Test
+    void Check_Layout_Manifest_Written() throws Exception {
+        String imagePath1 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath1, ImageUtils.createSampleImage(2, 3, Color.WHITE), 1, 1, 0, 0);
+        String imagePath2 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath2, ImageUtils.createSampleImage(2, 3, Color.WHITE), 1, 1, 2, 4);
+        List<String> imagePaths = List.of(imagePath1, imagePath2);
+        Path manifestPath = Files.createTempDirectory(null).resolve("manifest.json");
+        int expectedNumberOfEntries = 2;
+
+        try (ImageStitcher ignored = new ImageStitcher.Builder(imagePaths).layoutManifest(manifestPath).build()) {
+            Assertions.assertEquals(expectedNumberOfEntries, LayoutManifest.read(manifestPath).size());
+        }
+
+        Files.delete(Path.of(imagePath1));
+        Files.delete(Path.of(imagePath2));
+        Utils.deleteFileOrDirectoryRecursively(manifestPath.getParent().toFile());
+    }
+
+    @Test
+    void Check_Width_Of_Assembled_Image_With_Layout_Manifest() throws Exception {
+        String imagePath1 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath1, ImageUtils.createSampleImage(2, 3, Color.WHITE), 1, 1, 0, 0);
+        String imagePath2 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath2, ImageUtils.createSampleImage(2, 3, Color.WHITE), 1, 1, 2, 4);
+        List<String> imagePaths = List.of(imagePath1, imagePath2);
+        Path manifestPath = Files.createTempDirectory(null).resolve("manifest.json");
+        new ImageStitcher.Builder(imagePaths).layoutManifest(manifestPath).build().close();
+        int expectedWidth = 4;
+
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(imagePaths).layoutManifest(manifestPath).build()) {
+            Assertions.assertEquals(expectedWidth, imageStitcher.getServer().getWidth());
+        }
+
+        Files.delete(Path.of(imagePath1));
+        Files.delete(Path.of(imagePath2));
+        Utils.deleteFileOrDirectoryRecursively(manifestPath.getParent().toFile());
+    }
+
     @Test
     void Check_Zarr_Not_Written_With_Invalid_Path() throws IOException {
         String imagePath1 = Files.createTempFile(null, ".tiff").toString();
@@ -166,20 +494,769 @@ public class TestImageStitcher {
     }
 
     @Test
-    void Check_Tiff_File_Written() throws Exception {
-        String imagePath1 = Files.createTempFile(null, ".tiff").toString();
-        ImageUtils.writeTiff(imagePath1, ImageUtils.createSampleImage(2, 3, Color.WHITE), 1, 1, 0, 0);
-        String imagePath2 = Files.createTempFile(null, ".tiff").toString();
-        ImageUtils.writeTiff(imagePath2, ImageUtils.createSampleImage(2, 3, Color.WHITE), 1, 1, 2, 4);
-        List<String> imagePaths = List.of(imagePath1, imagePath2);
-        Path outputPath = Path.of(Files.createTempDirectory(null).resolve("image.ome.tiff").toString());
+    void Check_Zarr_File_Written_With_Codec() throws Exception {
+        String imagePath = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath, ImageUtils.createSampleImage(2, 3, Color.WHITE), 1, 1, 0, 0);
+        List<String> imagePaths = List.of(imagePath);
+        Path outputPath = Files.createTempDirectory(null).resolve("image.ome.zarr");
 
-        new ImageStitcher.Builder(imagePaths).build().writeToTiffFile(outputPath.toString());
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(imagePaths)
+                .zarrCodec(ZarrCodec.GZIP)
+                .zarrCompressionLevel(ZarrCodec.MIN_LEVEL)
+                .build()
+        ) {
+            imageStitcher.writeToZarrFile(outputPath.toString(), null);
+        }
 
-        Assertions.assertTrue(Files.exists(outputPath));
+        OmeZarrStore store = OmeZarrStore.open(outputPath);
+        Assertions.assertEquals(
+                List.of(ZarrCodec.GZIP, ZarrCodec.MIN_LEVEL),
+                List.of(store.getCodec(), store.getCompressionLevel())
+        );
 
-        Files.delete(Path.of(imagePath1));
-        Files.delete(Path.of(imagePath2));
+        Files.delete(Path.of(imagePath));
         Utils.deleteFileOrDirectoryRecursively(outputPath.getParent().toFile());
     }
+
+    @Test
+    void Check_Sharded_Zarr_File_Written() throws Exception {
+        String imagePath1 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath1, ImageUtils.createSampleImage(2, 3, Color.RED), 1, 1, 0, 0);
+        String imagePath2 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath2, ImageUtils.createSampleImage(2, 3, Color.BLUE), 1, 1, 2, 4);
+        List<String> imagePaths = List.of(imagePath1, imagePath2);
+        Path outputPath = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        BufferedImage expectedImage = new BufferedImage(4, 7, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = expectedImage.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, 2, 3);
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(2, 4, 2, 3);
+        graphics.dispose();
+
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(imagePaths).pyramidalize(false).zarrShardSize(2).build()) {
+            imageStitcher.writeToZarrFile(outputPath.toString(), null);
+        }
+
+        OmeZarrStore store = OmeZarrStore.open(outputPath);
+        BufferedImage image = new BufferedImage(4, 7, BufferedImage.TYPE_INT_RGB);
+        store.readChunk(0, 0, 0, 0, 0, image.getRaster());
+        Assertions.assertEquals(2, store.getShardSize());
+        ImageUtils.assertRgbBufferedImagesEqual(expectedImage, image);
+        Assertions.assertFalse(ImageStitcher.isZarrFileResumable(outputPath.toString()));
+
+        Files.delete(Path.of(imagePath1));
+        Files.delete(Path.of(imagePath2));
+        Utils.deleteFileOrDirectoryRecursively(outputPath.getParent().toFile());
+    }
+
+    @Test
+    void Check_Zarr_File_Not_Resumable_After_Writing() throws Exception {
+        String imagePath1 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath1, ImageUtils.createSampleImage(2, 3, Color.WHITE), 1, 1, 0, 0);
+        String imagePath2 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath2, ImageUtils.createSampleImage(2, 3, Color.WHITE), 1, 1, 2, 4);
+        List<String> imagePaths = List.of(imagePath1, imagePath2);
+        Path outputPath = Files.createTempDirectory(null).resolve("image.ome.zarr");
+
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(imagePaths).build()) {
+            imageStitcher.writeToZarrFile(outputPath.toString(), null);
+        }
+
+        Assertions.assertFalse(ImageStitcher.isZarrFileResumable(outputPath.toString()));
+
+        Files.delete(Path.of(imagePath1));
+        Files.delete(Path.of(imagePath2));
+        Utils.deleteFileOrDirectoryRecursively(outputPath.getParent().toFile());
+    }
+
+    @Test
+    void Check_Complete_Zarr_File_Not_Resumed() throws Exception {
+        String imagePath1 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath1, ImageUtils.createSampleImage(2, 3, Color.WHITE), 1, 1, 0, 0);
+        String imagePath2 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath2, ImageUtils.createSampleImage(2, 3, Color.WHITE), 1, 1, 2, 4);
+        List<String> imagePaths = List.of(imagePath1, imagePath2);
+        Path outputPath = Files.createTempDirectory(null).resolve("image.ome.zarr");
+
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(imagePaths).build()) {
+            imageStitcher.writeToZarrFile(outputPath.toString(), null);
+
+            Assertions.assertThrows(
+                    IllegalArgumentException.class,
+                    () -> imageStitcher.resumeZarrFile(outputPath.toString(), null)
+            );
+        }
+
+        Files.delete(Path.of(imagePath1));
+        Files.delete(Path.of(imagePath2));
+        Utils.deleteFileOrDirectoryRecursively(outputPath.getParent().toFile());
+    }
+
+    @Test
+    void Check_Interrupted_Zarr_File_Resumed() throws Exception {
+        String imagePath1 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath1, ImageUtils.createSampleImage(2, 3, Color.RED), 1, 1, 0, 0);
+        String imagePath2 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath2, ImageUtils.createSampleImage(2, 3, Color.BLUE), 1, 1, 2, 4);
+        List<String> imagePaths = List.of(imagePath1, imagePath2);
+        Path outputPath = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        BufferedImage expectedImage = new BufferedImage(4, 7, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = expectedImage.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, 2, 3);
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(2, 4, 2, 3);
+        graphics.dispose();
+
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(imagePaths).pyramidalize(false).build()) {
+            imageStitcher.writeToZarrFile(outputPath.toString(), null);
+            // Simulate an interruption happening before any chunk was written
+            StitchedImageServer server = (StitchedImageServer) imageStitcher.getServer();
+            OmeZarrStore store = OmeZarrStore.open(outputPath);
+            Utils.deleteFileOrDirectoryRecursively(outputPath.resolve("0").resolve("0").toFile());
+            ZarrChunkJournal.create(
+                    store,
+                    ZarrChunkJournal.computeFingerprint(server.getLayout(), server.getURIs(), server.getBlendingMode(), server.getShadingCorrection(), store)
+            ).close();
+
+            imageStitcher.resumeZarrFile(outputPath.toString(), null);
+        }
+
+        BufferedImage image = new BufferedImage(4, 7, BufferedImage.TYPE_INT_RGB);
+        OmeZarrStore.open(outputPath).readChunk(0, 0, 0, 0, 0, image.getRaster());
+        ImageUtils.assertRgbBufferedImagesEqual(expectedImage, image);
+        Assertions.assertFalse(ImageStitcher.isZarrFileResumable(outputPath.toString()));
+
+        Files.delete(Path.of(imagePath1));
+        Files.delete(Path.of(imagePath2));
+        Utils.deleteFileOrDirectoryRecursively(outputPath.getParent().toFile());
+    }
+
+    @Test
+    void Check_Chunk_Truncated_After_Last_Journal_Record_Rewritten_When_Resumed() throws Exception {
+        String imagePath1 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath1, ImageUtils.createSampleImage(32, 32, Color.RED), 1, 1, 0, 0);
+        String imagePath2 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath2, ImageUtils.createSampleImage(32, 32, Color.BLUE), 1, 1, 32, 0);
+        List<String> imagePaths = List.of(imagePath1, imagePath2);
+        Path outputPath = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        BufferedImage expectedImage = new BufferedImage(64, 32, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = expectedImage.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, 32, 32);
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(32, 0, 32, 32);
+        graphics.dispose();
+
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(imagePaths).pyramidalize(false).chunkSize(32).build()) {
+            imageStitcher.writeToZarrFile(outputPath.toString(), null);
+            // Simulate a system stop happening after the first chunk was recorded in the journal, while the content
+            // of the second chunk (written after the last record) didn't reach the storage device
+            StitchedImageServer server = (StitchedImageServer) imageStitcher.getServer();
+            try (
+                    OmeZarrStore store = OmeZarrStore.open(outputPath);
+                    ZarrChunkJournal journal = ZarrChunkJournal.create(
+                            store,
+                            ZarrChunkJournal.computeFingerprint(server.getLayout(), server.getURIs(), server.getBlendingMode(), server.getShadingCorrection(), store)
+                    )
+            ) {
+                journal.markWritten(0, 0, 0, 0, 0);
+            }
+            for (int c=0; c<3; c++) {
+                Files.write(outputPath.resolve("0").resolve("0").resolve(String.valueOf(c)).resolve("0").resolve("0").resolve("1"), new byte[0]);
+            }
+
+            imageStitcher.resumeZarrFile(outputPath.toString(), null);
+        }
+
+        BufferedImage image = new BufferedImage(64, 32, BufferedImage.TYPE_INT_RGB);
+        try (OmeZarrStore store = OmeZarrStore.open(outputPath)) {
+            store.readChunk(0, 0, 0, 0, 0, image.getRaster().createWritableChild(0, 0, 32, 32, 0, 0, null));
+            store.readChunk(0, 0, 0, 1, 0, image.getRaster().createWritableChild(32, 0, 32, 32, 32, 0, null));
+        }
+        ImageUtils.assertRgbBufferedImagesEqual(expectedImage, image);
+
+        Files.delete(Path.of(imagePath1));
+        Files.delete(Path.of(imagePath2));
+        Utils.deleteFileOrDirectoryRecursively(outputPath.getParent().toFile());
+    }
+
+    @Test
+    void Check_Zarr_File_Updated() throws Exception {
+        String imagePath1 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath1, ImageUtils.createSampleImage(2, 3, Color.RED), 1, 1, 0, 0);
+        String imagePath2 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath2, ImageUtils.createSampleImage(2, 3, Color.RED), 1, 1, 2, 4);
+        String imagePath3 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath3, ImageUtils.createSampleImage(2, 3, Color.BLUE), 1, 1, 2, 4);
+        Path outputPath = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(List.of(imagePath1, imagePath2)).build()) {
+            imageStitcher.writeToZarrFile(outputPath.toString(), null);
+        }
+        BufferedImage expectedImage = new BufferedImage(4, 7, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = expectedImage.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, 2, 3);
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(2, 4, 2, 3);
+        graphics.dispose();
+
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(List.of(imagePath3)).build()) {
+            imageStitcher.updateZarrFile(outputPath.toString(), null);
+        }
+
+        BufferedImage image = new BufferedImage(4, 7, BufferedImage.TYPE_INT_RGB);
+        OmeZarrStore.open(outputPath).readChunk(0, 0, 0, 0, 0, image.getRaster());
+        ImageUtils.assertRgbBufferedImagesEqual(expectedImage, image);
+
+        Files.delete(Path.of(imagePath1));
+        Files.delete(Path.of(imagePath2));
+        Files.delete(Path.of(imagePath3));
+        Utils.deleteFileOrDirectoryRecursively(outputPath.getParent().toFile());
+    }
+
+    @Test
+    void Check_Zarr_File_Written_By_QuPath_Updated() throws Exception {
+        String imagePath1 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath1, ImageUtils.createSampleImage(64, 48, Color.RED), 1, 1, 100, 100);
+        String imagePath2 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath2, ImageUtils.createSampleImage(16, 16, Color.BLUE), 1, 1, 132, 116);
+        Path outputPath = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        try (
+                ImageStitcher imageStitcher = new ImageStitcher.Builder(List.of(imagePath1)).build();
+                OMEZarrWriter writer = new OMEZarrWriter.Builder(imageStitcher.getServer()).build(outputPath.toString())
+        ) {
+            writer.writeImage();
+        }
+        BufferedImage expectedImage = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = expectedImage.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, 64, 48);
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(32, 16, 16, 16);
+        graphics.dispose();
+
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(List.of(imagePath2)).build()) {
+            imageStitcher.updateZarrFile(outputPath.toString(), 100, 100, null);
+        }
+
+        BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+        try (OmeZarrStore store = OmeZarrStore.open(outputPath)) {
+            for (int chunkY=0; chunkY<store.getNumberOfChunksY(0); chunkY++) {
+                for (int chunkX=0; chunkX<store.getNumberOfChunksX(0); chunkX++) {
+                    int x = chunkX * store.getChunkWidth();
+                    int y = chunkY * store.getChunkHeight();
+                    store.readChunk(0, 0, 0, chunkX, chunkY, image.getRaster().createWritableChild(
+                            x,
+                            y,
+                            Math.min(store.getChunkWidth(), image.getWidth() - x),
+                            Math.min(store.getChunkHeight(), image.getHeight() - y),
+                            x,
+                            y,
+                            null
+                    ));
+                }
+            }
+        }
+        ImageUtils.assertRgbBufferedImagesEqual(expectedImage, image);
+
+        Files.delete(Path.of(imagePath1));
+        Files.delete(Path.of(imagePath2));
+        Utils.deleteFileOrDirectoryRecursively(outputPath.getParent().toFile());
+    }
+
+    @Test
+    void Check_Origin_Recorded_When_Zarr_File_Written_By_QuPath_Updated() throws Exception {
+        String imagePath1 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath1, ImageUtils.createSampleImage(64, 48, Color.RED), 1, 1, 100, 100);
+        String imagePath2 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath2, ImageUtils.createSampleImage(16, 16, Color.BLUE), 1, 1, 132, 116);
+        Path outputPath = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        try (
+                ImageStitcher imageStitcher = new ImageStitcher.Builder(List.of(imagePath1)).build();
+                OMEZarrWriter writer = new OMEZarrWriter.Builder(imageStitcher.getServer()).build(outputPath.toString())
+        ) {
+            writer.writeImage();
+        }
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(List.of(imagePath2)).build()) {
+            imageStitcher.updateZarrFile(outputPath.toString(), 100, 100, null);
+        }
+
+        try (OmeZarrStore store = OmeZarrStore.open(outputPath)) {
+            Assertions.assertEquals(List.of(100, 100), List.of(store.getOriginX(), store.getOriginY()));
+        }
+
+        Files.delete(Path.of(imagePath1));
+        Files.delete(Path.of(imagePath2));
+        Utils.deleteFileOrDirectoryRecursively(outputPath.getParent().toFile());
+    }
+
+    @Test
+    void Check_Zarr_File_Written_By_QuPath_Not_Updated_Without_Origin() throws Exception {
+        String imagePath1 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath1, ImageUtils.createSampleImage(64, 48, Color.RED), 1, 1, 100, 100);
+        String imagePath2 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath2, ImageUtils.createSampleImage(16, 16, Color.BLUE), 1, 1, 132, 116);
+        Path outputPath = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        try (
+                ImageStitcher imageStitcher = new ImageStitcher.Builder(List.of(imagePath1)).build();
+                OMEZarrWriter writer = new OMEZarrWriter.Builder(imageStitcher.getServer()).build(outputPath.toString())
+        ) {
+            writer.writeImage();
+        }
+
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(List.of(imagePath2)).build()) {
+            Assertions.assertThrows(
+                    IllegalArgumentException.class,
+                    () -> imageStitcher.updateZarrFile(outputPath.toString(), null)
+            );
+        }
+
+        Files.delete(Path.of(imagePath1));
+        Files.delete(Path.of(imagePath2));
+        Utils.deleteFileOrDirectoryRecursively(outputPath.getParent().toFile());
+    }
+
+    @Test
+    void Check_Zarr_File_Not_Updated_With_Different_Origin() throws Exception {
+        String imagePath1 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath1, ImageUtils.createSampleImage(64, 48, Color.RED), 1, 1, 100, 100);
+        String imagePath2 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath2, ImageUtils.createSampleImage(16, 16, Color.BLUE), 1, 1, 132, 116);
+        Path outputPath = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(List.of(imagePath1)).build()) {
+            imageStitcher.writeToZarrFile(outputPath.toString(), null);
+        }
+
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(List.of(imagePath2)).build()) {
+            Assertions.assertThrows(
+                    IllegalArgumentException.class,
+                    () -> imageStitcher.updateZarrFile(outputPath.toString(), 0, 0, null)
+            );
+        }
+
+        Files.delete(Path.of(imagePath1));
+        Files.delete(Path.of(imagePath2));
+        Utils.deleteFileOrDirectoryRecursively(outputPath.getParent().toFile());
+    }
+
+    @Test
+    void Check_Zarr_File_Not_Updated_With_Inputs_Outside_Image() throws Exception {
+        String imagePath1 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath1, ImageUtils.createSampleImage(2, 3, Color.RED), 1, 1, 0, 0);
+        String imagePath2 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath2, ImageUtils.createSampleImage(2, 3, Color.BLUE), 1, 1, 4, 4);
+        Path outputPath = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(List.of(imagePath1)).build()) {
+            imageStitcher.writeToZarrFile(outputPath.toString(), null);
+        }
+
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(List.of(imagePath2)).build()) {
+            Assertions.assertThrows(
+                    IllegalArgumentException.class,
+                    () -> imageStitcher.updateZarrFile(outputPath.toString(), null)
+            );
+        }
+
+        Files.delete(Path.of(imagePath1));
+        Files.delete(Path.of(imagePath2));
+        Utils.deleteFileOrDirectoryRecursively(outputPath.getParent().toFile());
+    }
+
+    @Test
+    void Check_Number_Of_Partitions_Less_Than_One() throws Exception {
+        String imagePath = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath, ImageUtils.createSampleImage(2, 3, Color.RED), 1, 1, 0, 0);
+        Path outputPath = Files.createTempDirectory(null).resolve("image.ome.zarr");
+
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(List.of(imagePath)).build()) {
+            Assertions.assertThrows(
+                    IllegalArgumentException.class,
+                    () -> imageStitcher.createPartitionedZarrFile(outputPath.toString(), 0)
+            );
+        }
+
+        Files.delete(Path.of(imagePath));
+        Utils.deleteFileOrDirectoryRecursively(outputPath.getParent().toFile());
+    }
+
+    @Test
+    void Check_Partitioned_Zarr_File_Written() throws Exception {
+        List<String> imagePaths = List.of(
+                Files.createTempFile(null, ".tiff").toString(),
+                Files.createTempFile(null, ".tiff").toString(),
+                Files.createTempFile(null, ".tiff").toString(),
+                Files.createTempFile(null, ".tiff").toString()
+        );
+        for (int i=0; i<imagePaths.size(); i++) {
+            ImageUtils.writeTiff(imagePaths.get(i), ImageUtils.createTexturedImage(32, 32, i), 1, 1, 32 * (i % 2), 32 * (i / 2));
+        }
+        Path expectedOutputPath = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(imagePaths).chunkSize(16).build()) {
+            imageStitcher.writeToZarrFile(expectedOutputPath.toString(), null);
+        }
+        Path outputPath = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        int numberOfPartitions = 2;
+
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(imagePaths).chunkSize(16).build()) {
+            imageStitcher.createPartitionedZarrFile(outputPath.toString(), numberOfPartitions);
+        }
+        // Each partition is written by a different stitcher, as it would be by a different process
+        for (int partition=0; partition<numberOfPartitions; partition++) {
+            try (ImageStitcher imageStitcher = new ImageStitcher.Builder(imagePaths).chunkSize(16).build()) {
+                imageStitcher.writeZarrPartition(outputPath.toString(), partition, null);
+            }
+        }
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(imagePaths).chunkSize(16).build()) {
+            imageStitcher.finishPartitionedZarrFile(outputPath.toString(), null);
+        }
+
+        OmeZarrStore expectedStore = OmeZarrStore.open(expectedOutputPath);
+        OmeZarrStore store = OmeZarrStore.open(outputPath);
+        Assertions.assertEquals(expectedStore.getNumberOfLevels(), store.getNumberOfLevels());
+        for (int level=0; level<store.getNumberOfLevels(); level++) {
+            for (int chunkY=0; chunkY<store.getNumberOfChunksY(level); chunkY++) {
+                for (int chunkX=0; chunkX<store.getNumberOfChunksX(level); chunkX++) {
+                    BufferedImage expectedChunk = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+                    expectedStore.readChunk(level, 0, 0, chunkX, chunkY, expectedChunk.getRaster());
+                    BufferedImage chunk = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+                    store.readChunk(level, 0, 0, chunkX, chunkY, chunk.getRaster());
+
+                    ImageUtils.assertRgbBufferedImagesEqual(expectedChunk, chunk);
+                }
+            }
+        }
+        Assertions.assertEquals(0, store.getNumberOfPartitions());
+
+        for (String imagePath: imagePaths) {
+            Files.delete(Path.of(imagePath));
+        }
+        Utils.deleteFileOrDirectoryRecursively(expectedOutputPath.getParent().toFile());
+        Utils.deleteFileOrDirectoryRecursively(outputPath.getParent().toFile());
+    }
+
+    @Test
+    void Check_Sharded_Partitioned_Zarr_File_Written_Concurrently() throws Exception {
+        // 7x7 inputs of 68x68 pixels give 30x30 chunks of 16x16 pixels and five levels. With three partitions and
+        // shards of 2x2 chunks, partitions write levels 0 and 1, so blocks of 8x8 chunks don't divide the image evenly
+        // and the chunks of level 2 contain chunks written by different partitions
+        List<String> imagePaths = new ArrayList<>();
+        for (int i=0; i<49; i++) {
+            String imagePath = Files.createTempFile(null, ".tiff").toString();
+            ImageUtils.writeTiff(imagePath, ImageUtils.createTexturedImage(68, 68, i), 1, 1, 68 * (i % 7), 68 * (i / 7));
+            imagePaths.add(imagePath);
+        }
+        Path expectedOutputPath = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(imagePaths).chunkSize(16).zarrShardSize(2).build()) {
+            imageStitcher.writeToZarrFile(expectedOutputPath.toString(), null);
+        }
+        Path outputPath = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        int numberOfPartitions = 3;
+
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(imagePaths).chunkSize(16).zarrShardSize(2).build()) {
+            imageStitcher.createPartitionedZarrFile(outputPath.toString(), numberOfPartitions);
+        }
+        // Each partition is written at the same time by a different stitcher, as it would be by a different process
+        try (ExecutorService executor = Executors.newFixedThreadPool(numberOfPartitions)) {
+            List<Future<Void>> partitions = new ArrayList<>();
+            for (int i=0; i<numberOfPartitions; i++) {
+                int partition = i;
+                partitions.add(executor.submit(() -> {
+                    try (ImageStitcher imageStitcher = new ImageStitcher.Builder(imagePaths).chunkSize(16).zarrShardSize(2).build()) {
+                        imageStitcher.writeZarrPartition(outputPath.toString(), partition, null);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> partition: partitions) {
+                partition.get();
+            }
+        }
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(imagePaths).chunkSize(16).zarrShardSize(2).build()) {
+            imageStitcher.finishPartitionedZarrFile(outputPath.toString(), null);
+        }
+
+        OmeZarrStore expectedStore = OmeZarrStore.open(expectedOutputPath);
+        OmeZarrStore store = OmeZarrStore.open(outputPath);
+        Assertions.assertEquals(expectedStore.getNumberOfLevels(), store.getNumberOfLevels());
+        for (int level=0; level<store.getNumberOfLevels(); level++) {
+            for (int chunkY=0; chunkY<store.getNumberOfChunksY(level); chunkY++) {
+                for (int chunkX=0; chunkX<store.getNumberOfChunksX(level); chunkX++) {
+                    BufferedImage expectedChunk = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+                    expectedStore.readChunk(level, 0, 0, chunkX, chunkY, expectedChunk.getRaster());
+                    BufferedImage chunk = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+                    store.readChunk(level, 0, 0, chunkX, chunkY, chunk.getRaster());
+
+                    ImageUtils.assertRgbBufferedImagesEqual(expectedChunk, chunk);
+                }
+            }
+        }
+        Assertions.assertEquals(0, store.getNumberOfPartitions());
+
+        for (String imagePath: imagePaths) {
+            Files.delete(Path.of(imagePath));
+        }
+        Utils.deleteFileOrDirectoryRecursively(expectedOutputPath.getParent().toFile());
+        Utils.deleteFileOrDirectoryRecursively(outputPath.getParent().toFile());
+    }
+
+    @Test
+    void Check_Sharded_Partitioned_Zarr_File_Written_By_Several_Processes() throws Exception {
+        // 5x5 inputs of 68x68 pixels give 22x22 chunks of 16x16 pixels, split into three partitions of shards of
+        // 2x2 chunks
+        Path slide = Files.createTempDirectory(null);
+        for (int i=0; i<25; i++) {
+            ImageUtils.writeTiff(
+                    slide.resolve(String.format("image%02d.tiff", i)).toString(),
+                    ImageUtils.createTexturedImage(68, 68, i),
+                    1,
+                    1,
+                    68 * (i % 5),
+                    68 * (i / 5)
+            );
+        }
+        Path expectedOutputPath = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        Assertions.assertEquals(0, runStitchingCommand("-o", expectedOutputPath.toString(), "--chunk-size", "16", "--zarr-shard-size", "2", slide.toString()));
+        Path outputPath = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        int numberOfPartitions = 3;
+        Assertions.assertEquals(0, runStitchingCommand(
+                "-o", outputPath.toString(), "--chunk-size", "16", "--zarr-shard-size", "2", "--create-partitions", String.valueOf(numberOfPartitions), slide.toString()
+        ));
+
+        List<Process> processes = new ArrayList<>();
+        for (int partition=0; partition<numberOfPartitions; partition++) {
+            processes.add(startStitchingCommand(
+                    "-o", outputPath.toString(), "--chunk-size", "16", "--zarr-shard-size", "2", "--write-partition", String.valueOf(partition), slide.toString()
+            ));
+        }
+        List<Integer> exitCodes = new ArrayList<>();
+        for (Process process: processes) {
+            exitCodes.add(process.waitFor());
+        }
+        Assertions.assertEquals(List.of(0, 0, 0), exitCodes);
+        Assertions.assertEquals(0, runStitchingCommand(
+                "-o", outputPath.toString(), "--chunk-size", "16", "--zarr-shard-size", "2", "--finish-partitions", slide.toString()
+        ));
+
+        try (OmeZarrStore expectedStore = OmeZarrStore.open(expectedOutputPath); OmeZarrStore store = OmeZarrStore.open(outputPath)) {
+            Assertions.assertEquals(expectedStore.getNumberOfLevels(), store.getNumberOfLevels());
+            for (int level=0; level<store.getNumberOfLevels(); level++) {
+                for (int chunkY=0; chunkY<store.getNumberOfChunksY(level); chunkY++) {
+                    for (int chunkX=0; chunkX<store.getNumberOfChunksX(level); chunkX++) {
+                        BufferedImage expectedChunk = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+                        expectedStore.readChunk(level, 0, 0, chunkX, chunkY, expectedChunk.getRaster());
+                        BufferedImage chunk = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+                        store.readChunk(level, 0, 0, chunkX, chunkY, chunk.getRaster());
+
+                        ImageUtils.assertRgbBufferedImagesEqual(expectedChunk, chunk);
+                    }
+                }
+            }
+            Assertions.assertEquals(0, store.getNumberOfPartitions());
+        }
+
+        Utils.deleteFileOrDirectoryRecursively(slide.toFile());
+        Utils.deleteFileOrDirectoryRecursively(expectedOutputPath.getParent().toFile());
+        Utils.deleteFileOrDirectoryRecursively(outputPath.getParent().toFile());
+    }
+
+    @Test
+    void Check_Partitioned_Zarr_File_Not_Finished_Before_All_Partitions_Written() throws Exception {
+        String imagePath = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath, ImageUtils.createSampleImage(2, 3, Color.RED), 1, 1, 0, 0);
+        Path outputPath = Files.createTempDirectory(null).resolve("image.ome.zarr");
+
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(List.of(imagePath)).build()) {
+            imageStitcher.createPartitionedZarrFile(outputPath.toString(), 2);
+            imageStitcher.writeZarrPartition(outputPath.toString(), 0, null);
+
+            Assertions.assertThrows(
+                    IllegalArgumentException.class,
+                    () -> imageStitcher.finishPartitionedZarrFile(outputPath.toString(), null)
+            );
+        }
+
+        Files.delete(Path.of(imagePath));
+        Utils.deleteFileOrDirectoryRecursively(outputPath.getParent().toFile());
+    }
+
+    @Test
+    void Check_Partition_Out_Of_Bounds() throws Exception {
+        String imagePath = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath, ImageUtils.createSampleImage(2, 3, Color.RED), 1, 1, 0, 0);
+        Path outputPath = Files.createTempDirectory(null).resolve("image.ome.zarr");
+
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(List.of(imagePath)).build()) {
+            imageStitcher.createPartitionedZarrFile(outputPath.toString(), 2);
+
+            Assertions.assertThrows(
+                    IllegalArgumentException.class,
+                    () -> imageStitcher.writeZarrPartition(outputPath.toString(), 2, null)
+            );
+        }
+
+        Files.delete(Path.of(imagePath));
+        Utils.deleteFileOrDirectoryRecursively(outputPath.getParent().toFile());
+    }
+
+    @Test
+    void Check_Partitioned_Zarr_File_Not_Updated() throws Exception {
+        String imagePath = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath, ImageUtils.createSampleImage(2, 3, Color.RED), 1, 1, 0, 0);
+        Path outputPath = Files.createTempDirectory(null).resolve("image.ome.zarr");
+
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(List.of(imagePath)).build()) {
+            imageStitcher.createPartitionedZarrFile(outputPath.toString(), 2);
+
+            Assertions.assertThrows(
+                    IllegalArgumentException.class,
+                    () -> imageStitcher.updateZarrFile(outputPath.toString(), null)
+            );
+        }
+
+        Files.delete(Path.of(imagePath));
+        Utils.deleteFileOrDirectoryRecursively(outputPath.getParent().toFile());
+    }
+
+    @Test
+    void Check_Tiff_File_Written() throws Exception {
+        String imagePath1 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath1, ImageUtils.createSampleImage(2, 3, Color.WHITE), 1, 1, 0, 0);
+        String imagePath2 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath2, ImageUtils.createSampleImage(2, 3, Color.WHITE), 1, 1, 2, 4);
+        List<String> imagePaths = List.of(imagePath1, imagePath2);
+        Path outputPath = Path.of(Files.createTempDirectory(null).resolve("image.ome.tiff").toString());
+
+        new ImageStitcher.Builder(imagePaths).build().writeToTiffFile(outputPath.toString());
+
+        Assertions.assertTrue(Files.exists(outputPath));
+
+        Files.delete(Path.of(imagePath1));
+        Files.delete(Path.of(imagePath2));
+        Utils.deleteFileOrDirectoryRecursively(outputPath.getParent().toFile());
+    }
+
+    @Test
+    void Check_Tiff_File_Written_With_Compression() throws Exception {
+        String imagePath = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath, ImageUtils.createSampleImage(2, 3, Color.WHITE), 1, 1, 0, 0);
+        List<String> imagePaths = List.of(imagePath);
+        Path outputPath = Path.of(Files.createTempDirectory(null).resolve("image.ome.tiff").toString());
+
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(imagePaths)
+                .tiffCompression(OMEPyramidWriter.CompressionType.LZW)
+                .build()
+        ) {
+            imageStitcher.writeToTiffFile(outputPath.toString());
+        }
+
+        Assertions.assertTrue(Files.exists(outputPath));
+
+        Files.delete(Path.of(imagePath));
+        Utils.deleteFileOrDirectoryRecursively(outputPath.getParent().toFile());
+    }
+
+    @Test
+    void Check_Zarr_Chunks_Aligned_With_Input_Grid() throws Exception {
+        String imagePath1 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath1, ImageUtils.createSampleImage(600, 3, Color.WHITE), 1, 1, 0, 0);
+        String imagePath2 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath2, ImageUtils.createSampleImage(600, 3, Color.WHITE), 1, 1, 600, 0);
+        List<String> imagePaths = List.of(imagePath1, imagePath2);
+        Path outputPath = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        int expectedChunkWidth = 600;
+
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(imagePaths).build()) {
+            imageStitcher.writeToZarrFile(outputPath.toString(), null);
+        }
+
+        Assertions.assertEquals(expectedChunkWidth, OmeZarrStore.open(outputPath).getChunkWidth());
+
+        Files.delete(Path.of(imagePath1));
+        Files.delete(Path.of(imagePath2));
+        Utils.deleteFileOrDirectoryRecursively(outputPath.getParent().toFile());
+    }
+
+    @Test
+    void Check_Zarr_Chunks_With_Chunk_Size() throws Exception {
+        String imagePath1 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath1, ImageUtils.createSampleImage(600, 3, Color.WHITE), 1, 1, 0, 0);
+        String imagePath2 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath2, ImageUtils.createSampleImage(600, 3, Color.WHITE), 1, 1, 600, 0);
+        List<String> imagePaths = List.of(imagePath1, imagePath2);
+        Path outputPath = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        List<Integer> expectedChunkShape = List.of(256, 256);
+
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(imagePaths).chunkSize(256).build()) {
+            imageStitcher.writeToZarrFile(outputPath.toString(), null);
+        }
+
+        OmeZarrStore store = OmeZarrStore.open(outputPath);
+        Assertions.assertEquals(expectedChunkShape, List.of(store.getChunkWidth(), store.getChunkHeight()));
+
+        Files.delete(Path.of(imagePath1));
+        Files.delete(Path.of(imagePath2));
+        Utils.deleteFileOrDirectoryRecursively(outputPath.getParent().toFile());
+    }
+
+    @Test
+    void Check_Tile_Size_Of_Server_Aligned_With_Input_Grid() throws Exception {
+        String imagePath1 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath1, ImageUtils.createSampleImage(480, 3, Color.WHITE), 1, 1, 0, 0);
+        String imagePath2 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath2, ImageUtils.createSampleImage(480, 3, Color.WHITE), 1, 1, 480, 0);
+        List<String> imagePaths = List.of(imagePath1, imagePath2);
+        int expectedTileWidth = 480;
+
+        int tileWidth;
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(imagePaths).pyramidalize(false).tiffTileSize(0).build()) {
+            tileWidth = imageStitcher.getServer().getMetadata().getPreferredTileWidth();
+        }
+
+        Assertions.assertEquals(expectedTileWidth, tileWidth);
+
+        Files.delete(Path.of(imagePath1));
+        Files.delete(Path.of(imagePath2));
+    }
+
+    @Test
+    void Check_Tile_Size_Of_Server_Not_Aligned_With_Input_Grid_By_Default() throws Exception {
+        String imagePath1 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath1, ImageUtils.createSampleImage(480, 3, Color.WHITE), 1, 1, 0, 0);
+        String imagePath2 = Files.createTempFile(null, ".tiff").toString();
+        ImageUtils.writeTiff(imagePath2, ImageUtils.createSampleImage(480, 3, Color.WHITE), 1, 1, 480, 0);
+        List<String> imagePaths = List.of(imagePath1, imagePath2);
+        int expectedTileWidth = 512;
+
+        int tileWidth;
+        try (ImageStitcher imageStitcher = new ImageStitcher.Builder(imagePaths).pyramidalize(false).build()) {
+            tileWidth = imageStitcher.getServer().getMetadata().getPreferredTileWidth();
+        }
+
+        Assertions.assertEquals(expectedTileWidth, tileWidth);
+
+        Files.delete(Path.of(imagePath1));
+        Files.delete(Path.of(imagePath2));
+    }
+
+    private static int runStitchingCommand(String... arguments) throws IOException, InterruptedException {
+        return startStitchingCommand(arguments).waitFor();
+    }
+
+    private static Process startStitchingCommand(String... arguments) throws IOException {
+        // The command line runs in a new JVM, as it would when several machines write the partitions of an image
+        List<String> command = new ArrayList<>(List.of(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp",
+                System.getProperty("java.class.path"),
+                StitchingCommand.class.getName()
+        ));
+        command.addAll(List.of(arguments));
+
+        return new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+    }
 }
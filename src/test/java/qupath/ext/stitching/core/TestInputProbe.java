@@ -0,0 +1,103 @@
+package qupath.ext.stitching.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import qupath.ext.stitching.Utils;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class TestInputProbe {
+
+    @Test
+    void Check_Null_Path() {
+        Assertions.assertThrows(NullPointerException.class, () -> InputProbe.probe(null));
+    }
+
+    @Test
+    void Check_File_Does_Not_Exist() throws IOException {
+        String path = Files.createTempDirectory(null).resolve("no_file").toString();
+
+        Assertions.assertThrows(IOException.class, () -> InputProbe.probe(path));
+
+        Utils.deleteFileOrDirectoryRecursively(Path.of(path).getParent().toFile());
+    }
+
+    @Test
+    void Check_Empty_File() throws IOException {
+        Path path = Files.createTempFile(null, ".tiff");
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> InputProbe.probe(path.toString()));
+
+        Files.delete(path);
+    }
+
+    @Test
+    void Check_Non_Tiff_File() throws IOException {
+        Path path = Files.createTempFile(null, ".tiff");
+        Files.writeString(path, "some content");
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> InputProbe.probe(path.toString()));
+
+        Files.delete(path);
+    }
+
+    @Test
+    void Check_Big_Tiff_File_Accepted() throws IOException {
+        Path path = Files.createTempFile(null, ".tiff");
+        ImageUtils.writeTiffHeader(path, ByteOrder.LITTLE_ENDIAN, true, 1800, 1400, 1, 1, 0, 0);
+
+        Assertions.assertDoesNotThrow(() -> InputProbe.probe(path.toString()));
+
+        Files.delete(path);
+    }
+
+    @Test
+    void Check_Dimensions() throws IOException {
+        Path path = Files.createTempFile(null, ".tiff");
+        ImageUtils.writeTiff(path.toString(), ImageUtils.createSampleImage(2, 3, Color.WHITE), 1, 1, 0, 0);
+        int[] expectedDimensions = new int[] {2, 3};
+
+        InputProbe inputProbe = InputProbe.probe(path.toString());
+
+        Assertions.assertArrayEquals(expectedDimensions, new int[] {inputProbe.getWidth(), inputProbe.getHeight()});
+
+        Files.delete(path);
+    }
+
+    @Test
+    void Check_Position_Tags() throws IOException {
+        Path path = Files.createTempFile(null, ".tiff");
+        ImageUtils.writeTiff(path.toString(), ImageUtils.createSampleImage(2, 3, Color.WHITE), 7, 3, 7, 4);
+        double[] expectedPosition = new double[] {7, 4};
+
+        InputProbe inputProbe = InputProbe.probe(path.toString());
+
+        Assertions.assertArrayEquals(
+                expectedPosition,
+                new double[] {
+                        inputProbe.getTiffHeader().getTagValue(TiffHeader.TAG_X_POSITION),
+                        inputProbe.getTiffHeader().getTagValue(TiffHeader.TAG_Y_POSITION)
+                },
+                0
+        );
+
+        Files.delete(path);
+    }
+
+    @Test
+    void Check_File_Size() throws IOException {
+        Path path = Files.createTempFile(null, ".tiff");
+        ImageUtils.writeTiff(path.toString(), ImageUtils.createSampleImage(2, 3, Color.WHITE), 1, 1, 0, 0);
+        long expectedSize = Files.size(path);
+
+        InputProbe inputProbe = InputProbe.probe(path.toString());
+
+        Assertions.assertEquals(expectedSize, inputProbe.getFileSize());
+
+        Files.delete(path);
+    }
+}
@@ -0,0 +1,165 @@
+package qupath.ext.stitching.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import qupath.lib.images.servers.WrappedBufferedImageServer;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class TestInputServerPool {
+
+    @Test
+    void Check_Max_Open_Servers_Less_Than_One() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new InputServerPool(input -> null, 0));
+    }
+
+    @Test
+    void Check_Server_Opened_On_Acquire() throws IOException {
+        List<Integer> openedInputs = new ArrayList<>();
+        InputServerPool inputServerPool = new InputServerPool(
+                input -> {
+                    openedInputs.add(input);
+                    return new ClosableServer(ConcurrentHashMap.newKeySet(), input);
+                },
+                2
+        );
+        List<Integer> expectedOpenedInputs = List.of(1);
+
+        inputServerPool.acquire(1).close();
+
+        Assertions.assertEquals(expectedOpenedInputs, openedInputs);
+
+        inputServerPool.close();
+    }
+
+    @Test
+    void Check_Server_Not_Reopened_When_Already_Open() throws IOException {
+        List<Integer> openedInputs = new ArrayList<>();
+        InputServerPool inputServerPool = new InputServerPool(
+                input -> {
+                    openedInputs.add(input);
+                    return new ClosableServer(ConcurrentHashMap.newKeySet(), input);
+                },
+                2
+        );
+        List<Integer> expectedOpenedInputs = List.of(1);
+
+        inputServerPool.acquire(1).close();
+        inputServerPool.acquire(1).close();
+
+        Assertions.assertEquals(expectedOpenedInputs, openedInputs);
+
+        inputServerPool.close();
+    }
+
+    @Test
+    void Check_Number_Of_Open_Servers_Bounded() throws IOException {
+        InputServerPool inputServerPool = new InputServerPool(
+                input -> new ClosableServer(ConcurrentHashMap.newKeySet(), input),
+                2
+        );
+        int expectedNumberOfOpenServers = 2;
+
+        for (int i=0; i<5; i++) {
+            inputServerPool.acquire(i).close();
+        }
+
+        Assertions.assertEquals(expectedNumberOfOpenServers, inputServerPool.getNumberOfOpenServers());
+
+        inputServerPool.close();
+    }
+
+    @Test
+    void Check_Least_Recently_Used_Server_Closed() throws IOException {
+        Set<Integer> closedInputs = ConcurrentHashMap.newKeySet();
+        InputServerPool inputServerPool = new InputServerPool(input -> new ClosableServer(closedInputs, input), 2);
+        Set<Integer> expectedClosedInputs = Set.of(1);
+
+        inputServerPool.acquire(0).close();
+        inputServerPool.acquire(1).close();
+        inputServerPool.acquire(0).close();
+        inputServerPool.acquire(2).close();
+
+        Assertions.assertEquals(expectedClosedInputs, closedInputs);
+
+        inputServerPool.close();
+    }
+
+    @Test
+    void Check_Acquired_Server_Not_Closed() throws IOException {
+        Set<Integer> closedInputs = ConcurrentHashMap.newKeySet();
+        InputServerPool inputServerPool = new InputServerPool(input -> new ClosableServer(closedInputs, input), 1);
+
+        try (InputServerPool.Lease ignored = inputServerPool.acquire(0)) {
+            inputServerPool.acquire(1).close();
+
+            Assertions.assertFalse(closedInputs.contains(0));
+        }
+
+        inputServerPool.close();
+    }
+
+    @Test
+    void Check_All_Servers_Closed_When_Pool_Closed() throws IOException {
+        Set<Integer> closedInputs = ConcurrentHashMap.newKeySet();
+        InputServerPool inputServerPool = new InputServerPool(input -> new ClosableServer(closedInputs, input), 3);
+        inputServerPool.acquire(0).close();
+        inputServerPool.acquire(1).close();
+        Set<Integer> expectedClosedInputs = Set.of(0, 1);
+
+        inputServerPool.close();
+
+        Assertions.assertEquals(expectedClosedInputs, closedInputs);
+    }
+
+    @Test
+    void Check_Acquire_After_Pool_Closed() {
+        InputServerPool inputServerPool = new InputServerPool(
+                input -> new ClosableServer(ConcurrentHashMap.newKeySet(), input),
+                2
+        );
+
+        inputServerPool.close();
+
+        Assertions.assertThrows(IllegalStateException.class, () -> inputServerPool.acquire(0));
+    }
+
+    @Test
+    void Check_Server_That_Cannot_Be_Opened() {
+        InputServerPool inputServerPool = new InputServerPool(
+                input -> {
+                    throw new IOException();
+                },
+                2
+        );
+
+        Assertions.assertThrows(IOException.class, () -> inputServerPool.acquire(0));
+
+        inputServerPool.close();
+    }
+
+    private static class ClosableServer extends WrappedBufferedImageServer {
+
+        private final Set<Integer> closedInputs;
+        private final int input;
+
+        public ClosableServer(Set<Integer> closedInputs, int input) {
+            super(String.valueOf(input), ImageUtils.createSampleImage(1, 1, Color.WHITE));
+
+            this.closedInputs = closedInputs;
+            this.input = input;
+        }
+
+        @Override
+        public void close() throws Exception {
+            super.close();
+
+            closedInputs.add(input);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package qupath.ext.stitching.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import qupath.ext.stitching.core.positionfinders.TiffTagPositionFinder;
+import qupath.lib.images.servers.PixelType;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class TestLayoutManifest {
+
+    @Test
+    void Check_Manifest_Empty_When_File_Does_Not_Exist() throws IOException {
+        Path path = Files.createTempDirectory(null).resolve("manifest.json");
+
+        LayoutManifest manifest = LayoutManifest.read(path);
+
+        Assertions.assertEquals(0, manifest.size());
+
+        Files.delete(path.getParent());
+    }
+
+    @Test
+    void Check_Manifest_Empty_When_File_Invalid() throws IOException {
+        Path path = Files.createTempFile(null, ".json");
+        Files.writeString(path, "some content");
+
+        LayoutManifest manifest = LayoutManifest.read(path);
+
+        Assertions.assertEquals(0, manifest.size());
+
+        Files.delete(path);
+    }
+
+    @Test
+    void Check_Entry_Read_After_Write() throws IOException {
+        Path path = Files.createTempFile(null, ".json");
+        LayoutManifest.Entry expectedEntry = createEntry("/some/path.tiff", 10, 20, List.of("some finder"));
+        LayoutManifest manifest = new LayoutManifest();
+        manifest.put(expectedEntry);
+        manifest.write(path);
+
+        LayoutManifest.Entry entry = LayoutManifest.read(path).get("/some/path.tiff", 10, 20, List.of("some finder"));
+
+        Assertions.assertEquals(expectedEntry, entry);
+
+        Files.delete(path);
+    }
+
+    @Test
+    void Check_Entry_With_Unknown_Calibration_Read_After_Write() throws IOException {
+        Path path = Files.createTempFile(null, ".json");
+        LayoutManifest.Entry expectedEntry = createEntry("/some/path.tiff", 10, 20, List.of("some finder"), Double.NaN, Double.NaN);
+        LayoutManifest manifest = new LayoutManifest();
+        manifest.put(expectedEntry);
+        manifest.write(path);
+
+        LayoutManifest.Entry entry = LayoutManifest.read(path).get("/some/path.tiff", 10, 20, List.of("some finder"));
+
+        Assertions.assertEquals(expectedEntry, entry);
+
+        Files.delete(path);
+    }
+
+    @Test
+    void Check_Entry_Not_Returned_When_File_Size_Changed() {
+        LayoutManifest manifest = new LayoutManifest();
+        manifest.put(createEntry("/some/path.tiff", 10, 20, List.of("some finder")));
+
+        LayoutManifest.Entry entry = manifest.get("/some/path.tiff", 11, 20, List.of("some finder"));
+
+        Assertions.assertNull(entry);
+    }
+
+    @Test
+    void Check_Entry_Not_Returned_When_Last_Modified_Time_Changed() {
+        LayoutManifest manifest = new LayoutManifest();
+        manifest.put(createEntry("/some/path.tiff", 10, 20, List.of("some finder")));
+
+        LayoutManifest.Entry entry = manifest.get("/some/path.tiff", 10, 21, List.of("some finder"));
+
+        Assertions.assertNull(entry);
+    }
+
+    @Test
+    void Check_Entry_Not_Returned_When_Position_Finder_Not_Used() {
+        LayoutManifest manifest = new LayoutManifest();
+        manifest.put(createEntry("/some/path.tiff", 10, 20, List.of("some finder")));
+
+        LayoutManifest.Entry entry = manifest.get("/some/path.tiff", 10, 20, List.of("other finder"));
+
+        Assertions.assertNull(entry);
+    }
+
+    @Test
+    void Check_Entry_Not_Returned_When_Higher_Priority_Position_Finder_Added() {
+        LayoutManifest manifest = new LayoutManifest();
+        manifest.put(createEntry("/some/path.tiff", 10, 20, List.of("some finder")));
+
+        LayoutManifest.Entry entry = manifest.get("/some/path.tiff", 10, 20, List.of("other finder", "some finder"));
+
+        Assertions.assertNull(entry);
+    }
+
+    @Test
+    void Check_Entry_Returned_When_Lower_Priority_Position_Finder_Added() {
+        LayoutManifest manifest = new LayoutManifest();
+        LayoutManifest.Entry expectedEntry = createEntry("/some/path.tiff", 10, 20, List.of("some finder"));
+        manifest.put(expectedEntry);
+
+        LayoutManifest.Entry entry = manifest.get("/some/path.tiff", 10, 20, List.of("some finder", "other finder"));
+
+        Assertions.assertEquals(expectedEntry, entry);
+    }
+
+    @Test
+    void Check_Entry_Not_Returned_When_Position_Finders_Reordered() {
+        LayoutManifest manifest = new LayoutManifest();
+        manifest.put(createEntry("/some/path.tiff", 10, 20, List.of("some finder", "other finder")));
+
+        LayoutManifest.Entry entry = manifest.get("/some/path.tiff", 10, 20, List.of("other finder", "some finder"));
+
+        Assertions.assertNull(entry);
+    }
+
+    @Test
+    void Check_Entries_Retained() {
+        LayoutManifest manifest = new LayoutManifest();
+        manifest.put(createEntry("/some/path.tiff", 10, 20, List.of("some finder")));
+        manifest.put(createEntry("/other/path.tiff", 10, 20, List.of("some finder")));
+
+        manifest.retainAll(List.of("/other/path.tiff"));
+
+        Assertions.assertNull(manifest.get("/some/path.tiff", 10, 20, List.of("some finder")));
+    }
+
+    @Test
+    void Check_Position_Finder_Description_Stable() {
+        String expectedDescription = LayoutManifest.describePositionFinder(new TiffTagPositionFinder());
+
+        String description = LayoutManifest.describePositionFinder(new TiffTagPositionFinder());
+
+        Assertions.assertEquals(expectedDescription, description);
+    }
+
+    private static LayoutManifest.Entry createEntry(String path, long fileSize, long lastModifiedTime, List<String> positionFinders) {
+        return createEntry(path, fileSize, lastModifiedTime, positionFinders, 0.5, 0.25);
+    }
+
+    private static LayoutManifest.Entry createEntry(
+            String path,
+            long fileSize,
+            long lastModifiedTime,
+            List<String> positionFinders,
+            double pixelWidthMicrons,
+            double pixelHeightMicrons
+    ) {
+        return new LayoutManifest.Entry(
+                path,
+                fileSize,
+                lastModifiedTime,
+                positionFinders,
+                1,
+                2,
+                3,
+                4,
+                List.of("file:" + path),
+                3,
+                PixelType.UINT8,
+                1,
+                1,
+                pixelWidthMicrons,
+                pixelHeightMicrons
+        );
+    }
+}
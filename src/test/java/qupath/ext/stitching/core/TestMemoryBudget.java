@@ -0,0 +1,118 @@
+package qupath.ext.stitching.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import qupath.lib.images.servers.PixelType;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class TestMemoryBudget {
+
+    @Test
+    void Check_Max_Bytes_Less_Than_One() {
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new MemoryBudget(0)
+        );
+    }
+
+    @Test
+    void Check_Negative_Reservation() {
+        MemoryBudget memoryBudget = new MemoryBudget(10);
+
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> memoryBudget.reserve(-1)
+        );
+    }
+
+    @Test
+    void Check_Reserved_Bytes_Counted() throws Exception {
+        MemoryBudget memoryBudget = new MemoryBudget(10);
+
+        memoryBudget.reserve(3);
+        memoryBudget.reserve(4);
+
+        Assertions.assertEquals(7, memoryBudget.getReservedBytes());
+    }
+
+    @Test
+    void Check_Released_Bytes_Not_Counted() throws Exception {
+        MemoryBudget memoryBudget = new MemoryBudget(10);
+
+        memoryBudget.reserve(3).close();
+
+        Assertions.assertEquals(0, memoryBudget.getReservedBytes());
+    }
+
+    @Test
+    void Check_Second_Release_Ignored() throws Exception {
+        MemoryBudget memoryBudget = new MemoryBudget(10);
+        memoryBudget.reserve(3);
+        MemoryBudget.Reservation reservation = memoryBudget.reserve(4);
+
+        reservation.close();
+        reservation.close();
+
+        Assertions.assertEquals(3, memoryBudget.getReservedBytes());
+    }
+
+    @Test
+    void Check_Reservation_Larger_Than_Budget_Granted_When_Alone() throws Exception {
+        MemoryBudget memoryBudget = new MemoryBudget(10);
+
+        memoryBudget.reserve(20);
+
+        Assertions.assertEquals(20, memoryBudget.getReservedBytes());
+    }
+
+    @Test
+    void Check_Reservation_Blocks_Until_Bytes_Released() throws Exception {
+        MemoryBudget memoryBudget = new MemoryBudget(10);
+        MemoryBudget.Reservation reservation = memoryBudget.reserve(8);
+        CompletableFuture<MemoryBudget.Reservation> secondReservation = CompletableFuture.supplyAsync(() -> {
+            try {
+                return memoryBudget.reserve(5);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        Thread.sleep(50);
+        Assertions.assertFalse(secondReservation.isDone());
+
+        reservation.close();
+
+        Assertions.assertEquals(5, secondReservation.get(5, TimeUnit.SECONDS).getBytes());
+    }
+
+    @Test
+    void Check_Forced_Reservation_Exceeds_Budget() throws Exception {
+        MemoryBudget memoryBudget = new MemoryBudget(10);
+        memoryBudget.reserve(8);
+
+        memoryBudget.forceReserve(5);
+
+        Assertions.assertEquals(13, memoryBudget.getReservedBytes());
+    }
+
+    @Test
+    void Check_Reservation_Not_Blocked_By_Forced_Reservations_Only() throws Exception {
+        MemoryBudget memoryBudget = new MemoryBudget(10);
+        memoryBudget.forceReserve(8);
+
+        memoryBudget.reserve(5);
+
+        Assertions.assertEquals(13, memoryBudget.getReservedBytes());
+    }
+
+    @Test
+    void Check_Image_Bytes() {
+        long expectedBytes = 10 * 20 * 8 * 2;
+
+        long bytes = MemoryBudget.getImageBytes(10, 20, 8, PixelType.UINT16);
+
+        Assertions.assertEquals(expectedBytes, bytes);
+    }
+}
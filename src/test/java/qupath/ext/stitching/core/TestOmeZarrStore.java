@@ -0,0 +1,399 @@
+package qupath.ext.stitching.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import qupath.ext.stitching.Utils;
+import qupath.lib.images.servers.ImageServerMetadata;
+import qupath.lib.images.servers.WrappedBufferedImageServer;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.stream.IntStream;
+
+public class TestOmeZarrStore {
+
+    @Test
+    void Check_Number_Of_Levels_To_Fit_In_Chunk() {
+        int expectedNumberOfLevels = 3;
+
+        int numberOfLevels = OmeZarrStore.getNumberOfLevelsToFitInChunk(4000, 1000, 512, 512);
+
+        Assertions.assertEquals(expectedNumberOfLevels, numberOfLevels);
+    }
+
+    @Test
+    void Check_Chunk_Size_Not_Multiple_Of_4_With_Several_Levels() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        ImageServerMetadata metadata = createMetadata(10, 10);
+
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new OmeZarrStore.Builder(path, metadata).numberOfLevels(2).chunkSize(6, 6).build()
+        );
+
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Level_Sizes() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        OmeZarrStore store = new OmeZarrStore.Builder(path, createMetadata(9, 5))
+                .numberOfLevels(3)
+                .chunkSize(4, 4)
+                .build();
+        int[] expectedSizes = new int[] {9, 5, 3, 2, 2, 1};
+
+        int[] sizes = new int[] {store.getWidth(0), store.getHeight(0), store.getWidth(1), store.getHeight(1), store.getWidth(2), store.getHeight(2)};
+
+        Assertions.assertArrayEquals(expectedSizes, sizes);
+
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Level_Downsamples() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        OmeZarrStore store = new OmeZarrStore.Builder(path, createMetadata(9, 5))
+                .numberOfLevels(5)
+                .chunkSize(4, 4)
+                .build();
+        int[] expectedDownsamples = new int[] {1, 4, 8, 16, 32};
+
+        int[] downsamples = IntStream.range(0, store.getNumberOfLevels()).map(store::getDownsample).toArray();
+
+        Assertions.assertArrayEquals(expectedDownsamples, downsamples);
+
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Downsamples_Of_Opened_Store() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        OmeZarrStore expectedStore = new OmeZarrStore.Builder(path, createMetadata(9, 5))
+                .numberOfLevels(4)
+                .chunkSize(4, 4)
+                .build();
+        int[] expectedDownsamples = IntStream.range(0, expectedStore.getNumberOfLevels()).map(expectedStore::getDownsample).toArray();
+
+        OmeZarrStore store = OmeZarrStore.open(path);
+
+        int[] downsamples = IntStream.range(0, store.getNumberOfLevels()).map(store::getDownsample).toArray();
+        Assertions.assertArrayEquals(expectedDownsamples, downsamples);
+
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Ome_Xml_Written() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+
+        new OmeZarrStore.Builder(path, createMetadata(9, 5)).chunkSize(4, 4).build();
+
+        String omeXml = Files.readString(path.resolve("OME").resolve("METADATA.ome.xml"));
+        Assertions.assertTrue(omeXml.contains("SizeX=\"9\"") && omeXml.contains("SizeY=\"5\"") && omeXml.contains("SizeC=\"3\""));
+
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Opened_Store_Matches_Created_Store() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        OmeZarrStore expectedStore = new OmeZarrStore.Builder(path, createMetadata(9, 5))
+                .numberOfLevels(3)
+                .chunkSize(4, 4)
+                .origin(12, 34)
+                .codec(ZarrCodec.GZIP)
+                .build();
+
+        OmeZarrStore store = OmeZarrStore.open(path);
+
+        Assertions.assertEquals(expectedStore.toString(), store.toString());
+        Assertions.assertEquals(expectedStore.getOriginX(), store.getOriginX());
+        Assertions.assertEquals(expectedStore.getOriginY(), store.getOriginY());
+
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Compression_Level_Of_Opened_Store() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        int expectedLevel = 1;
+        new OmeZarrStore.Builder(path, createMetadata(9, 5)).chunkSize(4, 4).compressionLevel(expectedLevel).build();
+
+        OmeZarrStore store = OmeZarrStore.open(path);
+
+        Assertions.assertEquals(expectedLevel, store.getCompressionLevel());
+
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Invalid_Compression_Level() throws IOException {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new OmeZarrStore.Builder(path, createMetadata(9, 5)).chunkSize(4, 4).compressionLevel(0).build()
+        );
+
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Store_Without_Metadata_Cannot_Be_Opened() throws IOException {
+        Path path = Files.createTempDirectory(null);
+
+        Assertions.assertThrows(IOException.class, () -> OmeZarrStore.open(path));
+
+        Utils.deleteFileOrDirectoryRecursively(path.toFile());
+    }
+
+    @Test
+    void Check_Store_With_Unsupported_Compressor_Cannot_Be_Opened() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        new OmeZarrStore.Builder(path, createMetadata(9, 5)).chunkSize(4, 4).build();
+        Path arrayPath = path.resolve("0").resolve(".zarray");
+        Files.writeString(arrayPath, Files.readString(arrayPath).replace("\"zlib\"", "\"blosc\""));
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> OmeZarrStore.open(path));
+
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Chunk_Read_After_Write() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        OmeZarrStore store = new OmeZarrStore.Builder(path, createMetadata(9, 5)).chunkSize(4, 4).build();
+        BufferedImage expectedImage = ImageUtils.createSampleImage(4, 4, Color.ORANGE);
+        store.writeChunk(0, 0, 0, 1, 1, expectedImage.getRaster());
+        BufferedImage image = new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+
+        store.readChunk(0, 0, 0, 1, 1, image.getRaster());
+
+        ImageUtils.assertRgbBufferedImagesEqual(expectedImage, image);
+
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Border_Chunk_Read_After_Write() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        OmeZarrStore store = new OmeZarrStore.Builder(path, createMetadata(9, 5)).chunkSize(4, 4).build();
+        BufferedImage expectedImage = ImageUtils.createSampleImage(1, 1, Color.ORANGE);
+        store.writeChunk(0, 0, 0, 2, 1, expectedImage.getRaster());
+        BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+
+        store.readChunk(0, 0, 0, 2, 1, image.getRaster());
+
+        ImageUtils.assertRgbBufferedImagesEqual(expectedImage, image);
+
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Missing_Chunk_Not_Read() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        OmeZarrStore store = new OmeZarrStore.Builder(path, createMetadata(9, 5)).chunkSize(4, 4).build();
+
+        boolean read = store.readChunk(0, 0, 0, 0, 0, new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB).getRaster());
+
+        Assertions.assertFalse(read);
+
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Invalid_Shard_Size() throws IOException {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new OmeZarrStore.Builder(path, createMetadata(9, 5)).chunkSize(4, 4).shardSize(0).build()
+        );
+
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Opened_Sharded_Store_Matches_Created_Store() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        OmeZarrStore expectedStore = new OmeZarrStore.Builder(path, createMetadata(9, 5))
+                .numberOfLevels(3)
+                .chunkSize(4, 4)
+                .origin(12, 34)
+                .codec(ZarrCodec.GZIP)
+                .compressionLevel(3)
+                .shardSize(2)
+                .build();
+
+        OmeZarrStore store = OmeZarrStore.open(path);
+
+        Assertions.assertEquals(expectedStore.toString(), store.toString());
+        Assertions.assertEquals(expectedStore.getShardSize(), store.getShardSize());
+        Assertions.assertEquals(expectedStore.getOriginX(), store.getOriginX());
+
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Sharded_Store_Written_With_Zarr_V3() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+
+        new OmeZarrStore.Builder(path, createMetadata(9, 5)).chunkSize(4, 4).shardSize(2).build();
+
+        Assertions.assertTrue(Files.exists(path.resolve("0").resolve("zarr.json")));
+        Assertions.assertFalse(Files.exists(path.resolve("0").resolve(".zarray")));
+
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Sharded_Chunk_Read_After_Write() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        OmeZarrStore store = new OmeZarrStore.Builder(path, createMetadata(9, 5)).chunkSize(4, 4).shardSize(2).build();
+        BufferedImage expectedImage = ImageUtils.createSampleImage(4, 4, Color.ORANGE);
+        store.writeChunk(0, 0, 0, 1, 1, expectedImage.getRaster());
+        BufferedImage image = new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+
+        store.readChunk(0, 0, 0, 1, 1, image.getRaster());
+
+        ImageUtils.assertRgbBufferedImagesEqual(expectedImage, image);
+
+        store.close();
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Sharded_Chunk_Read_After_Closing() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        BufferedImage expectedImage = ImageUtils.createSampleImage(1, 1, Color.ORANGE);
+        try (OmeZarrStore store = new OmeZarrStore.Builder(path, createMetadata(9, 5))
+                .chunkSize(4, 4)
+                .shardSize(2)
+                .build()) {
+            store.writeChunk(0, 0, 0, 2, 1, expectedImage.getRaster());
+        }
+        BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+
+        OmeZarrStore.open(path).readChunk(0, 0, 0, 2, 1, image.getRaster());
+
+        ImageUtils.assertRgbBufferedImagesEqual(expectedImage, image);
+
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Sharded_Chunks_Not_Saved_Before_Closing() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        OmeZarrStore store = new OmeZarrStore.Builder(path, createMetadata(9, 5)).chunkSize(4, 4).shardSize(2).build();
+        store.writeChunk(0, 0, 0, 0, 0, ImageUtils.createSampleImage(4, 4, Color.ORANGE).getRaster());
+
+        BitSet savedChunks = OmeZarrStore.open(path).getSavedChunks(0, 0, 0);
+
+        Assertions.assertTrue(savedChunks.isEmpty());
+
+        store.close();
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Sharded_Chunks_Saved_After_Completing_Open_Shards() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        OmeZarrStore store = new OmeZarrStore.Builder(path, createMetadata(9, 5)).chunkSize(4, 4).shardSize(2).build();
+        store.writeChunk(0, 0, 0, 0, 0, ImageUtils.createSampleImage(4, 4, Color.ORANGE).getRaster());
+        BitSet expectedSavedChunks = new BitSet();
+        expectedSavedChunks.set(0);
+
+        store.completeOpenShards();
+
+        Assertions.assertEquals(expectedSavedChunks, OmeZarrStore.open(path).getSavedChunks(0, 0, 0));
+
+        store.close();
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Complete_Shard_Saved_Without_Closing() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        OmeZarrStore store = new OmeZarrStore.Builder(path, createMetadata(9, 5)).chunkSize(4, 4).shardSize(2).build();
+        // The second shard of the image only contains the chunks (2, 0) and (2, 1)
+        store.writeChunk(0, 0, 0, 2, 0, ImageUtils.createSampleImage(1, 4, Color.ORANGE).getRaster());
+        store.writeChunk(0, 0, 0, 2, 1, ImageUtils.createSampleImage(1, 1, Color.ORANGE).getRaster());
+        BitSet expectedSavedChunks = new BitSet();
+        expectedSavedChunks.set(2);
+        expectedSavedChunks.set(5);
+
+        BitSet savedChunks = OmeZarrStore.open(path).getSavedChunks(0, 0, 0);
+
+        Assertions.assertEquals(expectedSavedChunks, savedChunks);
+
+        store.close();
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Number_Of_Partitions_Read_After_Opening() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        int expectedNumberOfPartitions = 3;
+        OmeZarrStore store = new OmeZarrStore.Builder(path, createMetadata(9, 5)).chunkSize(4, 4).build();
+        store.setNumberOfPartitions(expectedNumberOfPartitions);
+
+        int numberOfPartitions = OmeZarrStore.open(path).getNumberOfPartitions();
+
+        Assertions.assertEquals(expectedNumberOfPartitions, numberOfPartitions);
+
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Number_Of_Partitions_Of_Sharded_Store_Read_After_Opening() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        int expectedNumberOfPartitions = 3;
+        OmeZarrStore store = new OmeZarrStore.Builder(path, createMetadata(9, 5)).chunkSize(4, 4).shardSize(2).build();
+        store.setNumberOfPartitions(expectedNumberOfPartitions);
+
+        int numberOfPartitions = OmeZarrStore.open(path).getNumberOfPartitions();
+
+        Assertions.assertEquals(expectedNumberOfPartitions, numberOfPartitions);
+
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Partitions_Removed_From_Attributes() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        OmeZarrStore store = new OmeZarrStore.Builder(path, createMetadata(9, 5))
+                .chunkSize(4, 4)
+                .origin(12, 34)
+                .build();
+        store.setNumberOfPartitions(3);
+
+        store.setNumberOfPartitions(0);
+
+        OmeZarrStore openedStore = OmeZarrStore.open(path);
+        Assertions.assertEquals(0, openedStore.getNumberOfPartitions());
+        Assertions.assertEquals(12, openedStore.getOriginX());
+
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Negative_Number_Of_Partitions() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        OmeZarrStore store = new OmeZarrStore.Builder(path, createMetadata(9, 5)).chunkSize(4, 4).build();
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> store.setNumberOfPartitions(-1));
+
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    private static ImageServerMetadata createMetadata(int width, int height) throws Exception {
+        try (WrappedBufferedImageServer server = new WrappedBufferedImageServer("", ImageUtils.createSampleImage(width, height, Color.WHITE))) {
+            return server.getMetadata();
+        }
+    }
+}
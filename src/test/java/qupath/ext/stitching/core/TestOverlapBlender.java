@@ -0,0 +1,161 @@
+package qupath.ext.stitching.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BandedSampleModel;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.List;
+
+public class TestOverlapBlender {
+
+    @Test
+    void Check_Null_Blending_Mode() {
+        Assertions.assertThrows(NullPointerException.class, () -> new OverlapBlender(null));
+    }
+
+    @Test
+    void Check_Last_Part_On_Top_Without_Blending() {
+        OverlapBlender overlapBlender = new OverlapBlender(BlendingMode.NONE);
+        WritableRaster destination = createRaster(DataBuffer.TYPE_BYTE, 4, 1, 0);
+        List<OverlapBlender.Part> parts = List.of(
+                createPart(createRaster(DataBuffer.TYPE_BYTE, 3, 1, 10), 0),
+                createPart(createRaster(DataBuffer.TYPE_BYTE, 3, 1, 20), 1)
+        );
+        double[] expectedPixels = new double[] {10, 20, 20, 20};
+
+        overlapBlender.blend(parts, destination);
+
+        Assertions.assertArrayEquals(expectedPixels, getPixels(destination));
+    }
+
+    @Test
+    void Check_Uncovered_Pixels_Unchanged_With_Feathering() {
+        OverlapBlender overlapBlender = new OverlapBlender(BlendingMode.FEATHER);
+        WritableRaster destination = createRaster(DataBuffer.TYPE_BYTE, 6, 1, 5);
+        List<OverlapBlender.Part> parts = List.of(
+                createPart(createRaster(DataBuffer.TYPE_BYTE, 3, 1, 10), 0),
+                createPart(createRaster(DataBuffer.TYPE_BYTE, 3, 1, 10), 2)
+        );
+        double[] expectedPixels = new double[] {10, 10, 10, 10, 10, 5};
+
+        overlapBlender.blend(parts, destination);
+
+        Assertions.assertArrayEquals(expectedPixels, getPixels(destination));
+    }
+
+    @Test
+    void Check_Uncovered_Pixels_Unchanged_With_Nearest_Center() {
+        OverlapBlender overlapBlender = new OverlapBlender(BlendingMode.NEAREST_CENTER);
+        WritableRaster destination = createRaster(DataBuffer.TYPE_BYTE, 7, 1, 5);
+        List<OverlapBlender.Part> parts = List.of(
+                createPart(createRaster(DataBuffer.TYPE_BYTE, 4, 1, 10), 0),
+                createPart(createRaster(DataBuffer.TYPE_BYTE, 4, 1, 20), 2)
+        );
+        double[] expectedPixels = new double[] {10, 10, 10, 20, 20, 20, 5};
+
+        overlapBlender.blend(parts, destination);
+
+        Assertions.assertArrayEquals(expectedPixels, getPixels(destination));
+    }
+
+    @Test
+    void Check_Feathering_Not_Rounded_On_Float_Raster() {
+        OverlapBlender overlapBlender = new OverlapBlender(BlendingMode.FEATHER);
+        WritableRaster destination = createRaster(DataBuffer.TYPE_FLOAT, 3, 1, 0);
+        List<OverlapBlender.Part> parts = List.of(
+                createPart(createRaster(DataBuffer.TYPE_FLOAT, 3, 1, 0), 0),
+                createPart(createRaster(DataBuffer.TYPE_FLOAT, 1, 1, 1), 1)
+        );
+        // Weights are (1, 2, 1) for the first part and 1 for the second part
+        double[] expectedPixels = new double[] {0, 1d / 3, 0};
+
+        overlapBlender.blend(parts, destination);
+
+        Assertions.assertArrayEquals(expectedPixels, getPixels(destination), 1e-6);
+    }
+
+    @Test
+    void Check_Feathering_Of_All_Bands() {
+        OverlapBlender overlapBlender = new OverlapBlender(BlendingMode.FEATHER);
+        WritableRaster destination = createRaster(DataBuffer.TYPE_USHORT, 2, 1, 0, 0);
+        List<OverlapBlender.Part> parts = List.of(
+                createPart(createRaster(DataBuffer.TYPE_USHORT, 2, 1, 100, 1000), 0),
+                createPart(createRaster(DataBuffer.TYPE_USHORT, 2, 1, 300, 3000), 0)
+        );
+        double[] expectedSecondBand = new double[] {2000, 2000};
+
+        overlapBlender.blend(parts, destination);
+
+        Assertions.assertArrayEquals(expectedSecondBand, destination.getSamples(0, 0, 2, 1, 1, (double[]) null));
+    }
+
+    @Test
+    void Check_Feathering_Of_Packed_Pixels() {
+        OverlapBlender overlapBlender = new OverlapBlender(BlendingMode.FEATHER);
+        WritableRaster destination = createRgbRaster(4, 0);
+        List<OverlapBlender.Part> parts = List.of(
+                createPart(createRgbRaster(3, 10), 0),
+                createPart(createRgbRaster(3, 40), 1)
+        );
+        // Weights are (1, 2, 1) for both parts
+        double[] expectedPixels = new double[] {10, 20, 30, 40};
+
+        overlapBlender.blend(parts, destination);
+
+        for (int b=0; b<destination.getNumBands(); b++) {
+            Assertions.assertArrayEquals(expectedPixels, destination.getSamples(0, 0, 4, 1, b, (double[]) null));
+        }
+    }
+
+    @Test
+    void Check_Downsampled_Parts_Use_Full_Resolution_Weights() {
+        OverlapBlender overlapBlender = new OverlapBlender(BlendingMode.NEAREST_CENTER);
+        WritableRaster destination = createRaster(DataBuffer.TYPE_BYTE, 2, 1, 0);
+        List<OverlapBlender.Part> parts = List.of(
+                // Full resolution input of width 8 placed at x=0, read at downsample 2 from x=4
+                new OverlapBlender.Part(createRaster(DataBuffer.TYPE_BYTE, 2, 1, 10), 0, 0, 4, 0, 8, 1, 2),
+                // Full resolution input of width 8 placed at x=4, read at downsample 2 from x=0
+                new OverlapBlender.Part(createRaster(DataBuffer.TYPE_BYTE, 2, 1, 20), 0, 0, 0, 0, 8, 1, 2)
+        );
+        double[] expectedPixels = new double[] {10, 20};
+
+        overlapBlender.blend(parts, destination);
+
+        Assertions.assertArrayEquals(expectedPixels, getPixels(destination));
+    }
+
+    private static WritableRaster createRaster(int dataType, int width, int height, double... values) {
+        WritableRaster raster = Raster.createWritableRaster(new BandedSampleModel(dataType, width, height, values.length), null);
+
+        for (int b=0; b<values.length; b++) {
+            double[] samples = new double[width * height];
+            Arrays.fill(samples, values[b]);
+            raster.setSamples(0, 0, width, height, b, samples);
+        }
+        return raster;
+    }
+
+    private static WritableRaster createRgbRaster(int width, int value) {
+        WritableRaster raster = new BufferedImage(width, 1, BufferedImage.TYPE_INT_RGB).getRaster();
+
+        for (int b=0; b<raster.getNumBands(); b++) {
+            double[] samples = new double[width];
+            Arrays.fill(samples, value);
+            raster.setSamples(0, 0, width, 1, b, samples);
+        }
+        return raster;
+    }
+
+    private static OverlapBlender.Part createPart(Raster raster, int x) {
+        return new OverlapBlender.Part(raster, x, 0, 0, 0, raster.getWidth(), raster.getHeight(), 1);
+    }
+
+    private static double[] getPixels(Raster raster) {
+        return raster.getSamples(0, 0, raster.getWidth(), raster.getHeight(), 0, (double[]) null);
+    }
+}
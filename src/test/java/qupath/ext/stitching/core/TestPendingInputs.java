@@ -0,0 +1,95 @@
+package qupath.ext.stitching.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import qupath.lib.images.servers.PixelType;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class TestPendingInputs {
+
+    @Test
+    void Check_Completed_Descriptor_Returned() throws Exception {
+        PendingInputs pendingInputs = new PendingInputs(2);
+        InputDescriptor expectedDescriptor = new InputDescriptor(List.of(), 3, PixelType.UINT8, 1, 1);
+
+        pendingInputs.complete(1, expectedDescriptor);
+
+        Assertions.assertEquals(expectedDescriptor, pendingInputs.await(1));
+    }
+
+    @Test
+    void Check_Input_Completed_With_Null() throws Exception {
+        PendingInputs pendingInputs = new PendingInputs(1);
+
+        pendingInputs.complete(0, null);
+
+        Assertions.assertNull(pendingInputs.await(0));
+    }
+
+    @Test
+    void Check_Second_Completion_Ignored() throws Exception {
+        PendingInputs pendingInputs = new PendingInputs(1);
+        InputDescriptor expectedDescriptor = new InputDescriptor(List.of(), 3, PixelType.UINT8, 1, 1);
+
+        pendingInputs.complete(0, expectedDescriptor);
+        pendingInputs.complete(0, new InputDescriptor(List.of(), 1, PixelType.FLOAT32, 1, 1));
+
+        Assertions.assertEquals(expectedDescriptor, pendingInputs.await(0));
+    }
+
+    @Test
+    void Check_Await_Blocks_Until_Completed() throws Exception {
+        PendingInputs pendingInputs = new PendingInputs(1);
+        InputDescriptor expectedDescriptor = new InputDescriptor(List.of(), 3, PixelType.UINT8, 1, 1);
+        CompletableFuture<InputDescriptor> descriptor = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pendingInputs.await(0);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        Thread.sleep(50);
+        Assertions.assertFalse(descriptor.isDone());
+
+        pendingInputs.complete(0, expectedDescriptor);
+
+        Assertions.assertEquals(expectedDescriptor, descriptor.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void Check_Failed_Input_Throws() {
+        PendingInputs pendingInputs = new PendingInputs(1);
+
+        pendingInputs.fail(0, new IOException("Input with too many z-slices"));
+
+        Assertions.assertThrows(IOException.class, () -> pendingInputs.await(0));
+    }
+
+    @Test
+    void Check_Cancel_Completes_Remaining_Inputs_With_Null() throws Exception {
+        PendingInputs pendingInputs = new PendingInputs(2);
+        InputDescriptor expectedDescriptor = new InputDescriptor(List.of(), 3, PixelType.UINT8, 1, 1);
+        pendingInputs.complete(0, expectedDescriptor);
+
+        pendingInputs.cancel();
+
+        Assertions.assertEquals(expectedDescriptor, pendingInputs.await(0));
+        Assertions.assertNull(pendingInputs.await(1));
+    }
+
+    @Test
+    void Check_Number_Of_Completed_Inputs() {
+        PendingInputs pendingInputs = new PendingInputs(3);
+        int expectedNumberOfCompletedInputs = 2;
+
+        pendingInputs.complete(0, null);
+        pendingInputs.complete(2, null);
+
+        Assertions.assertEquals(expectedNumberOfCompletedInputs, pendingInputs.getNumberOfCompletedInputs());
+    }
+}
@@ -0,0 +1,104 @@
+package qupath.ext.stitching.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class TestPhaseCorrelation {
+
+    @Test
+    void Check_Arrays_With_Wrong_Length() {
+        float[] reference = new float[10 * 10];
+        float[] moving = new float[10 * 9];
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> PhaseCorrelation.findTranslation(reference, moving, 10, 10, 5));
+    }
+
+    @Test
+    void Check_Translation_Of_Identical_Images() {
+        float[] image = createTexture(100, 60, 0);
+        PhaseCorrelation.Translation expectedTranslation = new PhaseCorrelation.Translation(0, 0, 1);
+
+        PhaseCorrelation.Translation translation = PhaseCorrelation.findTranslation(image, image, 100, 60, 10);
+
+        assertTranslationsEqual(expectedTranslation, translation);
+    }
+
+    @Test
+    void Check_Positive_Translation() {
+        int width = 100;
+        int height = 60;
+        float[] texture = createTexture(200, 200, 0);
+        float[] reference = crop(texture, 200, 50, 50, width, height);
+        float[] moving = crop(texture, 200, 50 - 7, 50 - 4, width, height);
+        PhaseCorrelation.Translation expectedTranslation = new PhaseCorrelation.Translation(7, 4, 1);
+
+        PhaseCorrelation.Translation translation = PhaseCorrelation.findTranslation(reference, moving, width, height, 20);
+
+        assertTranslationsEqual(expectedTranslation, translation);
+    }
+
+    @Test
+    void Check_Negative_Translation() {
+        int width = 60;
+        int height = 100;
+        float[] texture = createTexture(200, 200, 0);
+        float[] reference = crop(texture, 200, 50, 50, width, height);
+        float[] moving = crop(texture, 200, 50 + 12, 50 + 3, width, height);
+        PhaseCorrelation.Translation expectedTranslation = new PhaseCorrelation.Translation(-12, -3, 1);
+
+        PhaseCorrelation.Translation translation = PhaseCorrelation.findTranslation(reference, moving, width, height, 20);
+
+        assertTranslationsEqual(expectedTranslation, translation);
+    }
+
+    @Test
+    void Check_Translation_Above_Max_Shift_Not_Found() {
+        int width = 100;
+        int height = 60;
+        float[] texture = createTexture(200, 200, 0);
+        float[] reference = crop(texture, 200, 50, 50, width, height);
+        float[] moving = crop(texture, 200, 50 - 15, 50, width, height);
+
+        PhaseCorrelation.Translation translation = PhaseCorrelation.findTranslation(reference, moving, width, height, 10);
+
+        Assertions.assertTrue(translation == null || translation.correlation() < 0.3);
+    }
+
+    @Test
+    void Check_Uniform_Images_Not_Registered() {
+        float[] image = new float[50 * 50];
+        Arrays.fill(image, 3);
+
+        PhaseCorrelation.Translation translation = PhaseCorrelation.findTranslation(image, image, 50, 50, 10);
+
+        Assertions.assertNull(translation);
+    }
+
+    private static float[] createTexture(int width, int height, long seed) {
+        float[] texture = new float[width * height];
+        Random random = new Random(seed);
+
+        for (int i=0; i<texture.length; i++) {
+            texture[i] = random.nextFloat();
+        }
+        return texture;
+    }
+
+    private static float[] crop(float[] image, int imageWidth, int x, int y, int width, int height) {
+        float[] crop = new float[width * height];
+
+        for (int j=0; j<height; j++) {
+            System.arraycopy(image, (y + j) * imageWidth + x, crop, j * width, width);
+        }
+        return crop;
+    }
+
+    private static void assertTranslationsEqual(PhaseCorrelation.Translation expectedTranslation, PhaseCorrelation.Translation translation) {
+        Assertions.assertEquals(expectedTranslation.dx(), translation.dx());
+        Assertions.assertEquals(expectedTranslation.dy(), translation.dy());
+        Assertions.assertEquals(expectedTranslation.correlation(), translation.correlation(), 1e-6);
+    }
+}
@@ -0,0 +1,331 @@
+package qupath.ext.stitching.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import qupath.lib.images.servers.ImageServer;
+import qupath.lib.images.servers.WrappedBufferedImageServer;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.List;
+import java.util.stream.IntStream;
+
+public class TestShadingCorrection {
+
+    @Test
+    void Check_Size_Not_Positive() {
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new ShadingCorrection(0, 2, new float[][] {new float[0]}, null)
+        );
+    }
+
+    @Test
+    void Check_No_Flat_Field() {
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new ShadingCorrection(2, 2, new float[0][], null)
+        );
+    }
+
+    @Test
+    void Check_Flat_Field_With_Wrong_Size() {
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new ShadingCorrection(2, 2, new float[][] {new float[3]}, null)
+        );
+    }
+
+    @Test
+    void Check_Dark_Fields_With_Different_Number_Of_Channels() {
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new ShadingCorrection(2, 2, new float[][] {new float[4]}, new float[][] {new float[4], new float[4]})
+        );
+    }
+
+    @Test
+    void Check_Image_With_Different_Number_Of_Bands() {
+        ShadingCorrection shadingCorrection = new ShadingCorrection(2, 2, new float[][] {new float[] {1, 1, 1, 1}}, null);
+
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> shadingCorrection.apply(ImageUtils.createSampleImage(2, 2, Color.WHITE), 0, 0, 1)
+        );
+    }
+
+    @Test
+    void Check_Flat_Field_Applied() {
+        ShadingCorrection shadingCorrection = new ShadingCorrection(2, 2, new float[][] {new float[] {0.5f, 1, 2, 4}}, null);
+        BufferedImage image = createGrayImage(2, 2, new int[] {50, 50, 50, 200});
+        int[] expectedPixels = new int[] {100, 50, 25, 50};
+
+        BufferedImage correctedImage = shadingCorrection.apply(image, 0, 0, 1);
+
+        Assertions.assertArrayEquals(expectedPixels, correctedImage.getRaster().getPixels(0, 0, 2, 2, (int[]) null));
+    }
+
+    @Test
+    void Check_Dark_Field_Applied() {
+        ShadingCorrection shadingCorrection = new ShadingCorrection(
+                2,
+                2,
+                new float[][] {new float[] {1, 1, 2, 2}},
+                new float[][] {new float[] {10, 20, 10, 20}}
+        );
+        BufferedImage image = createGrayImage(2, 2, new int[] {50, 50, 50, 50});
+        int[] expectedPixels = new int[] {40, 30, 20, 15};
+
+        BufferedImage correctedImage = shadingCorrection.apply(image, 0, 0, 1);
+
+        Assertions.assertArrayEquals(expectedPixels, correctedImage.getRaster().getPixels(0, 0, 2, 2, (int[]) null));
+    }
+
+    @Test
+    void Check_Corrected_Values_Clamped() {
+        ShadingCorrection shadingCorrection = new ShadingCorrection(2, 1, new float[][] {new float[] {0.5f, 1}}, null);
+        BufferedImage image = createGrayImage(2, 1, new int[] {200, 200});
+        int[] expectedPixels = new int[] {255, 200};
+
+        BufferedImage correctedImage = shadingCorrection.apply(image, 0, 0, 1);
+
+        Assertions.assertArrayEquals(expectedPixels, correctedImage.getRaster().getPixels(0, 0, 2, 1, (int[]) null));
+    }
+
+    @Test
+    void Check_Part_Of_Input_Corrected() {
+        ShadingCorrection shadingCorrection = new ShadingCorrection(2, 2, new float[][] {new float[] {0.5f, 1, 2, 4}}, null);
+        BufferedImage image = createGrayImage(1, 1, new int[] {100});
+        int[] expectedPixels = new int[] {25};
+
+        BufferedImage correctedImage = shadingCorrection.apply(image, 1, 1, 1);
+
+        Assertions.assertArrayEquals(expectedPixels, correctedImage.getRaster().getPixels(0, 0, 1, 1, (int[]) null));
+    }
+
+    @Test
+    void Check_Downsampled_Input_Corrected() {
+        ShadingCorrection shadingCorrection = new ShadingCorrection(
+                4,
+                2,
+                new float[][] {new float[] {1, 1, 2, 2, 1, 1, 2, 2}},
+                null
+        );
+        BufferedImage image = createGrayImage(2, 1, new int[] {100, 100});
+        int[] expectedPixels = new int[] {100, 50};
+
+        BufferedImage correctedImage = shadingCorrection.apply(image, 0, 0, 2);
+
+        Assertions.assertArrayEquals(expectedPixels, correctedImage.getRaster().getPixels(0, 0, 2, 1, (int[]) null));
+    }
+
+    @Test
+    void Check_Input_Image_Not_Modified() {
+        ShadingCorrection shadingCorrection = new ShadingCorrection(2, 1, new float[][] {new float[] {0.5f, 2}}, null);
+        BufferedImage image = createGrayImage(2, 1, new int[] {50, 50});
+        int[] expectedPixels = new int[] {50, 50};
+
+        shadingCorrection.apply(image, 0, 0, 1);
+
+        Assertions.assertArrayEquals(expectedPixels, image.getRaster().getPixels(0, 0, 2, 1, (int[]) null));
+    }
+
+    @Test
+    void Check_Correction_Written_To_Destination() {
+        ShadingCorrection shadingCorrection = new ShadingCorrection(2, 2, new float[][] {new float[] {0.5f, 1, 2, 4}}, null);
+        BufferedImage image = createGrayImage(2, 2, new int[] {50, 50, 50, 200});
+        WritableRaster destination = image.getRaster().createCompatibleWritableRaster(3, 3);
+        int[] expectedPixels = new int[] {
+                0, 0, 0,
+                0, 100, 50,
+                0, 25, 50
+        };
+
+        shadingCorrection.apply(image.getRaster(), destination.createWritableChild(1, 1, 2, 2, 0, 0, null), 0, 0, 1);
+
+        Assertions.assertArrayEquals(expectedPixels, destination.getPixels(0, 0, 3, 3, (int[]) null));
+    }
+
+    @Test
+    void Check_Destination_With_Different_Size() {
+        ShadingCorrection shadingCorrection = new ShadingCorrection(2, 2, new float[][] {new float[] {1, 1, 1, 1}}, null);
+        BufferedImage image = createGrayImage(2, 2, new int[] {50, 50, 50, 50});
+
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> shadingCorrection.apply(image.getRaster(), image.getRaster().createCompatibleWritableRaster(3, 2), 0, 0, 1)
+        );
+    }
+
+    @Test
+    void Check_Number_Of_Samples_Less_Than_One() {
+        List<ImageServer<BufferedImage>> inputs = List.of(
+                new WrappedBufferedImageServer("1", createGrayImage(2, 2, new int[] {1, 1, 1, 1}))
+        );
+        TileLayout layout = new TileLayout(new int[] {0}, new int[] {0}, new int[] {2}, new int[] {2});
+
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> ShadingCorrection.estimate(layout, new InputServerPool(inputs::get, inputs.size()), 0, false, 1)
+        );
+    }
+
+    @Test
+    void Check_Estimated_Size_Is_Most_Common_Input_Size() throws Exception {
+        List<ImageServer<BufferedImage>> inputs = List.of(
+                new WrappedBufferedImageServer("1", createGrayImage(2, 2, new int[] {1, 1, 1, 1})),
+                new WrappedBufferedImageServer("2", createGrayImage(3, 1, new int[] {1, 1, 1})),
+                new WrappedBufferedImageServer("3", createGrayImage(3, 1, new int[] {1, 1, 1}))
+        );
+        TileLayout layout = new TileLayout(new int[] {0, 2, 5}, new int[] {0, 0, 0}, new int[] {2, 3, 3}, new int[] {2, 1, 1});
+        int[] expectedSize = new int[] {3, 1};
+
+        ShadingCorrection shadingCorrection = ShadingCorrection.estimate(
+                layout,
+                new InputServerPool(inputs::get, inputs.size()),
+                10,
+                false,
+                1
+        );
+
+        Assertions.assertArrayEquals(expectedSize, new int[] {shadingCorrection.getWidth(), shadingCorrection.getHeight()});
+    }
+
+    @Test
+    void Check_Uniform_Inputs_Not_Changed() throws Exception {
+        int size = 40;
+        List<ImageServer<BufferedImage>> inputs = IntStream.range(0, 4)
+                .mapToObj(i -> (ImageServer<BufferedImage>) new WrappedBufferedImageServer(
+                        String.valueOf(i),
+                        createGrayImage(size, size, IntStream.generate(() -> 100).limit(size * size).toArray())
+                ))
+                .toList();
+        TileLayout layout = new TileLayout(
+                new int[] {0, size, 0, size},
+                new int[] {0, 0, size, size},
+                new int[] {size, size, size, size},
+                new int[] {size, size, size, size}
+        );
+        int[] expectedPixels = IntStream.generate(() -> 100).limit(size * size).toArray();
+
+        ShadingCorrection shadingCorrection = ShadingCorrection.estimate(
+                layout,
+                new InputServerPool(inputs::get, inputs.size()),
+                4,
+                false,
+                2
+        );
+
+        BufferedImage correctedImage = shadingCorrection.apply(createGrayImage(size, size, expectedPixels), 0, 0, 1);
+        Assertions.assertArrayEquals(expectedPixels, correctedImage.getRaster().getPixels(0, 0, size, size, (int[]) null));
+    }
+
+    @Test
+    void Check_Vignetting_Reduced() throws Exception {
+        int size = 40;
+        int[] vignettedPixels = IntStream.range(0, size * size)
+                .map(i -> (int) Math.round(200 - 100 * Math.hypot(i % size - size / 2d, i / size - size / 2d) / size))
+                .toArray();
+        List<ImageServer<BufferedImage>> inputs = IntStream.range(0, 4)
+                .mapToObj(i -> (ImageServer<BufferedImage>) new WrappedBufferedImageServer(
+                        String.valueOf(i),
+                        createGrayImage(size, size, vignettedPixels)
+                ))
+                .toList();
+        TileLayout layout = new TileLayout(
+                new int[] {0, size, 0, size},
+                new int[] {0, 0, size, size},
+                new int[] {size, size, size, size},
+                new int[] {size, size, size, size}
+        );
+        ShadingCorrection shadingCorrection = ShadingCorrection.estimate(
+                layout,
+                new InputServerPool(inputs::get, inputs.size()),
+                4,
+                false,
+                2
+        );
+
+        int[] correctedPixels = shadingCorrection.apply(createGrayImage(size, size, vignettedPixels), 0, 0, 1)
+                .getRaster()
+                .getPixels(0, 0, size, size, (int[]) null);
+
+        Assertions.assertTrue(getRange(correctedPixels) < getRange(vignettedPixels) / 2);
+    }
+
+    @Test
+    void Check_Content_Of_Minority_Of_Samples_Ignored() throws Exception {
+        int size = 40;
+        int[] uniformPixels = IntStream.generate(() -> 100).limit(size * size).toArray();
+        int[] pixelsWithContent = IntStream.range(0, size * size)
+                .map(i -> i % size >= 10 && i % size < 30 && i / size >= 10 && i / size < 30 ? 250 : 100)
+                .toArray();
+        List<ImageServer<BufferedImage>> inputs = IntStream.range(0, 5)
+                .mapToObj(i -> (ImageServer<BufferedImage>) new WrappedBufferedImageServer(
+                        String.valueOf(i),
+                        createGrayImage(size, size, i < 2 ? pixelsWithContent : uniformPixels)
+                ))
+                .toList();
+        TileLayout layout = new TileLayout(
+                IntStream.range(0, 5).map(i -> i * size).toArray(),
+                new int[] {0, 0, 0, 0, 0},
+                new int[] {size, size, size, size, size},
+                new int[] {size, size, size, size, size}
+        );
+        ShadingCorrection shadingCorrection = ShadingCorrection.estimate(
+                layout,
+                new InputServerPool(inputs::get, inputs.size()),
+                5,
+                false,
+                2
+        );
+
+        BufferedImage correctedImage = shadingCorrection.apply(createGrayImage(size, size, uniformPixels), 0, 0, 1);
+        Assertions.assertArrayEquals(uniformPixels, correctedImage.getRaster().getPixels(0, 0, size, size, (int[]) null));
+    }
+
+    @Test
+    void Check_Vignetting_Of_Large_Inputs_Reduced() throws Exception {
+        int size = 600;
+        int[] vignettedPixels = IntStream.range(0, size * size)
+                .map(i -> (int) Math.round(200 - 100 * Math.hypot(i % size - size / 2d, i / size - size / 2d) / size))
+                .toArray();
+        List<ImageServer<BufferedImage>> inputs = IntStream.range(0, 3)
+                .mapToObj(i -> (ImageServer<BufferedImage>) new WrappedBufferedImageServer(
+                        String.valueOf(i),
+                        createGrayImage(size, size, vignettedPixels)
+                ))
+                .toList();
+        TileLayout layout = new TileLayout(
+                new int[] {0, size, 2 * size},
+                new int[] {0, 0, 0},
+                new int[] {size, size, size},
+                new int[] {size, size, size}
+        );
+        ShadingCorrection shadingCorrection = ShadingCorrection.estimate(
+                layout,
+                new InputServerPool(inputs::get, inputs.size()),
+                3,
+                false,
+                2
+        );
+
+        int[] correctedPixels = shadingCorrection.apply(createGrayImage(size, size, vignettedPixels), 0, 0, 1)
+                .getRaster()
+                .getPixels(0, 0, size, size, (int[]) null);
+
+        Assertions.assertTrue(getRange(correctedPixels) < getRange(vignettedPixels) / 2);
+    }
+
+    private static BufferedImage createGrayImage(int width, int height, int[] pixels) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        WritableRaster raster = image.getRaster();
+        raster.setPixels(0, 0, width, height, pixels);
+        return image;
+    }
+
+    private static int getRange(int[] pixels) {
+        return IntStream.of(pixels).max().orElseThrow() - IntStream.of(pixels).min().orElseThrow();
+    }
+}
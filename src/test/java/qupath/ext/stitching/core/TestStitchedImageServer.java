@@ -0,0 +1,275 @@
+package qupath.ext.stitching.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import qupath.lib.images.servers.ImageServer;
+import qupath.lib.images.servers.PixelType;
+import qupath.lib.images.servers.WrappedBufferedImageServer;
+import qupath.lib.regions.RegionRequest;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.List;
+
+public class TestStitchedImageServer {
+
+    @Test
+    void Check_Number_Of_Inputs_Different_From_Number_Of_Tiles() {
+        List<ImageServer<BufferedImage>> inputs = List.of(
+                new WrappedBufferedImageServer("1", ImageUtils.createSampleImage(2, 3, Color.WHITE))
+        );
+        TileLayout layout = new TileLayout(new int[] {0, 2}, new int[] {0, 0}, new int[] {2, 2}, new int[] {3, 3});
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> createServer(inputs, layout));
+    }
+
+    @Test
+    void Check_Inputs_With_Different_Number_Of_Channels() {
+        List<ImageServer<BufferedImage>> inputs = List.of(
+                new WrappedBufferedImageServer("rgb", ImageUtils.createSampleImage(2, 3, Color.WHITE)),
+                new WrappedBufferedImageServer("gray", new BufferedImage(2, 3, BufferedImage.TYPE_BYTE_GRAY))
+        );
+        TileLayout layout = new TileLayout(new int[] {0, 2}, new int[] {0, 0}, new int[] {2, 2}, new int[] {3, 3});
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> createServer(inputs, layout));
+    }
+
+    @Test
+    void Check_Width_When_Origin_Not_Zero() throws Exception {
+        StitchedImageServer server = createServer(
+                List.of(
+                        new WrappedBufferedImageServer("1", ImageUtils.createSampleImage(2, 3, Color.WHITE)),
+                        new WrappedBufferedImageServer("2", ImageUtils.createSampleImage(2, 3, Color.WHITE))
+                ),
+                new TileLayout(new int[] {10, 12}, new int[] {20, 24}, new int[] {2, 2}, new int[] {3, 3})
+        );
+        int expectedWidth = 4;
+
+        Assertions.assertEquals(expectedWidth, server.getWidth());
+
+        server.close();
+    }
+
+    @Test
+    void Check_Height_When_Origin_Not_Zero() throws Exception {
+        StitchedImageServer server = createServer(
+                List.of(
+                        new WrappedBufferedImageServer("1", ImageUtils.createSampleImage(2, 3, Color.WHITE)),
+                        new WrappedBufferedImageServer("2", ImageUtils.createSampleImage(2, 3, Color.WHITE))
+                ),
+                new TileLayout(new int[] {10, 12}, new int[] {20, 24}, new int[] {2, 2}, new int[] {3, 3})
+        );
+        int expectedHeight = 7;
+
+        Assertions.assertEquals(expectedHeight, server.getHeight());
+
+        server.close();
+    }
+
+    @Test
+    void Check_Pixels_With_Uncovered_Area() throws Exception {
+        StitchedImageServer server = createServer(
+                List.of(
+                        new WrappedBufferedImageServer("1", ImageUtils.createSampleImage(2, 3, Color.RED)),
+                        new WrappedBufferedImageServer("2", ImageUtils.createSampleImage(2, 3, Color.BLUE))
+                ),
+                new TileLayout(new int[] {0, 2}, new int[] {0, 4}, new int[] {2, 2}, new int[] {3, 3})
+        );
+        BufferedImage expectedImage = new BufferedImage(4, 7, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = expectedImage.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, 2, 3);
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(2, 4, 2, 3);
+        graphics.dispose();
+
+        BufferedImage image = server.readRegion(RegionRequest.createInstance(server));
+
+        ImageUtils.assertRgbBufferedImagesEqual(expectedImage, image);
+
+        server.close();
+    }
+
+    @Test
+    void Check_Pixels_With_Overlapping_Inputs() throws Exception {
+        StitchedImageServer server = createServer(
+                List.of(
+                        new WrappedBufferedImageServer("1", ImageUtils.createSampleImage(3, 3, Color.RED)),
+                        new WrappedBufferedImageServer("2", ImageUtils.createSampleImage(3, 3, Color.BLUE))
+                ),
+                new TileLayout(new int[] {0, 2}, new int[] {0, 1}, new int[] {3, 3}, new int[] {3, 3})
+        );
+        BufferedImage expectedImage = new BufferedImage(5, 4, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = expectedImage.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, 3, 3);
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(2, 1, 3, 3);
+        graphics.dispose();
+
+        BufferedImage image = server.readRegion(RegionRequest.createInstance(server));
+
+        ImageUtils.assertRgbBufferedImagesEqual(expectedImage, image);
+
+        server.close();
+    }
+
+    @Test
+    void Check_Pixels_With_Overlapping_Inputs_And_Feathering() throws Exception {
+        StitchedImageServer server = createServer(
+                List.of(
+                        new WrappedBufferedImageServer("1", ImageUtils.createSampleImage(4, 1, new Color(200, 0, 0))),
+                        new WrappedBufferedImageServer("2", ImageUtils.createSampleImage(4, 1, new Color(0, 0, 100)))
+                ),
+                new TileLayout(new int[] {0, 2}, new int[] {0, 0}, new int[] {4, 4}, new int[] {1, 1}),
+                BlendingMode.FEATHER
+        );
+        // Feathering weights are (1, 2, 2, 1) for both inputs, so the overlapping pixels have weights (2, 1) and (1, 2)
+        BufferedImage expectedImage = new BufferedImage(6, 1, BufferedImage.TYPE_INT_RGB);
+        expectedImage.setRGB(0, 0, new Color(200, 0, 0).getRGB());
+        expectedImage.setRGB(1, 0, new Color(200, 0, 0).getRGB());
+        expectedImage.setRGB(2, 0, new Color(133, 0, 33).getRGB());
+        expectedImage.setRGB(3, 0, new Color(67, 0, 67).getRGB());
+        expectedImage.setRGB(4, 0, new Color(0, 0, 100).getRGB());
+        expectedImage.setRGB(5, 0, new Color(0, 0, 100).getRGB());
+
+        BufferedImage image = server.readRegion(RegionRequest.createInstance(server));
+
+        ImageUtils.assertRgbBufferedImagesEqual(expectedImage, image);
+
+        server.close();
+    }
+
+    @Test
+    void Check_Pixels_With_Overlapping_Inputs_And_Nearest_Center() throws Exception {
+        StitchedImageServer server = createServer(
+                List.of(
+                        new WrappedBufferedImageServer("1", ImageUtils.createSampleImage(6, 3, Color.RED)),
+                        new WrappedBufferedImageServer("2", ImageUtils.createSampleImage(6, 3, Color.BLUE))
+                ),
+                new TileLayout(new int[] {0, 2}, new int[] {0, 0}, new int[] {6, 6}, new int[] {3, 3}),
+                BlendingMode.NEAREST_CENTER
+        );
+        // The overlap spans x in [2, 6): the centers are at x=3 and x=5, so the seam is between x=3 and x=4
+        BufferedImage expectedImage = new BufferedImage(8, 3, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = expectedImage.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, 4, 3);
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(4, 0, 4, 3);
+        graphics.dispose();
+
+        BufferedImage image = server.readRegion(RegionRequest.createInstance(server));
+
+        ImageUtils.assertRgbBufferedImagesEqual(expectedImage, image);
+
+        server.close();
+    }
+
+    @Test
+    void Check_Pixels_With_Overlapping_Shading_Corrected_Inputs_And_Feathering() throws Exception {
+        List<ImageServer<BufferedImage>> inputs = List.of(
+                new WrappedBufferedImageServer("1", createGrayImage(4, 1, new int[] {100, 100, 100, 100})),
+                new WrappedBufferedImageServer("2", createGrayImage(4, 1, new int[] {50, 50, 50, 50}))
+        );
+        StitchedImageServer server = new StitchedImageServer.Builder(
+                inputs.stream().map(InputDescriptor::of).toList(),
+                new InputServerPool(inputs::get, inputs.size()),
+                new TileLayout(new int[] {0, 2}, new int[] {0, 0}, new int[] {4, 4}, new int[] {1, 1})
+        )
+                .blendingMode(BlendingMode.FEATHER)
+                .shadingCorrection(new ShadingCorrection(4, 1, new float[][] {new float[] {0.5f, 0.5f, 0.5f, 0.5f}}, null))
+                .build();
+        // Corrected inputs are 200 and 100, and feathering weights are (1, 2, 2, 1) for both inputs
+        int[] expectedPixels = new int[] {200, 200, 167, 133, 100, 100};
+
+        BufferedImage image = server.readRegion(RegionRequest.createInstance(server));
+
+        Assertions.assertArrayEquals(expectedPixels, image.getRaster().getPixels(0, 0, 6, 1, (int[]) null));
+
+        server.close();
+    }
+
+    @Test
+    void Check_Inputs_Closed_When_Server_Closed() throws Exception {
+        InputServerPool inputServerPool = new InputServerPool(
+                input -> new WrappedBufferedImageServer(String.valueOf(input), ImageUtils.createSampleImage(2, 3, Color.WHITE)),
+                2
+        );
+        StitchedImageServer server = new StitchedImageServer.Builder(
+                List.of(
+                        new InputDescriptor(List.of(), 3, PixelType.UINT8, 1, 1),
+                        new InputDescriptor(List.of(), 3, PixelType.UINT8, 1, 1)
+                ),
+                inputServerPool,
+                new TileLayout(new int[] {0, 2}, new int[] {0, 4}, new int[] {2, 2}, new int[] {3, 3})
+        ).build();
+
+        server.close();
+
+        Assertions.assertThrows(IllegalStateException.class, () -> inputServerPool.acquire(0));
+    }
+
+    @Test
+    void Check_Memory_Not_Reserved_While_Waiting_For_Input() throws Exception {
+        List<ImageServer<BufferedImage>> inputs = List.of(
+                new WrappedBufferedImageServer("1", ImageUtils.createSampleImage(2, 3, Color.WHITE)),
+                new WrappedBufferedImageServer("2", ImageUtils.createSampleImage(2, 3, Color.WHITE))
+        );
+        PendingInputs pendingInputs = new PendingInputs(inputs.size());
+        pendingInputs.complete(0, InputDescriptor.of(inputs.getFirst()));
+        MemoryBudget memoryBudget = new MemoryBudget(1_000_000);
+        StitchedImageServer server = new StitchedImageServer.Builder(
+                inputs.stream().map(InputDescriptor::of).toList(),
+                new InputServerPool(inputs::get, inputs.size()),
+                new TileLayout(new int[] {0, 2}, new int[] {0, 0}, new int[] {2, 2}, new int[] {3, 3})
+        )
+                .pendingInputs(pendingInputs)
+                .memoryBudget(memoryBudget)
+                .build();
+        Thread reader = Thread.ofPlatform().start(() -> {
+            try {
+                server.readRegion(RegionRequest.createInstance(server.getPath(), 1, 0, 0, 4, 3));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        while (reader.isAlive() && reader.getState() != Thread.State.WAITING) {
+            Thread.onSpinWait();
+        }
+
+        long reservedBytes = memoryBudget.getReservedBytes();
+
+        Assertions.assertEquals(0, reservedBytes);
+
+        pendingInputs.complete(1, InputDescriptor.of(inputs.getLast()));
+        reader.join();
+        server.close();
+    }
+
+    private static StitchedImageServer createServer(List<ImageServer<BufferedImage>> inputs, TileLayout layout) throws IOException {
+        return createServer(inputs, layout, BlendingMode.NONE);
+    }
+
+    private static StitchedImageServer createServer(
+            List<ImageServer<BufferedImage>> inputs,
+            TileLayout layout,
+            BlendingMode blendingMode
+    ) throws IOException {
+        return new StitchedImageServer.Builder(
+                inputs.stream().map(InputDescriptor::of).toList(),
+                new InputServerPool(inputs::get, inputs.size()),
+                layout
+        )
+                .blendingMode(blendingMode)
+                .build();
+    }
+
+    private static BufferedImage createGrayImage(int width, int height, int[] pixels) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        image.getRaster().setPixels(0, 0, width, height, pixels);
+        return image;
+    }
+}
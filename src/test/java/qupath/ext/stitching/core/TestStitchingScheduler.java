@@ -0,0 +1,189 @@
+package qupath.ext.stitching.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import qupath.ext.stitching.Utils;
+
+import java.awt.Color;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class TestStitchingScheduler {
+
+    @Test
+    void Check_Cpu_Threads_Less_Than_One() {
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new StitchingScheduler.Builder().cpuThreads(0)
+        );
+    }
+
+    @Test
+    void Check_Io_Threads_Less_Than_One() {
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new StitchingScheduler.Builder().ioThreads(0)
+        );
+    }
+
+    @Test
+    void Check_Max_Concurrent_Jobs_Less_Than_One() {
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new StitchingScheduler.Builder().maxConcurrentJobs(0)
+        );
+    }
+
+    @Test
+    void Check_Queue_Depth() throws Exception {
+        Path imagePath = createImage();
+        CountDownLatch firstJobRunning = new CountDownLatch(1);
+        CountDownLatch firstJobReleased = new CountDownLatch(1);
+        int expectedQueueDepth = 2;
+
+        try (StitchingScheduler scheduler = new StitchingScheduler.Builder().maxConcurrentJobs(1).build()) {
+            scheduler.submit(createBuilder(imagePath), imageStitcher -> {
+                firstJobRunning.countDown();
+                firstJobReleased.await();
+            });
+            scheduler.submit(createBuilder(imagePath), imageStitcher -> {});
+            scheduler.submit(createBuilder(imagePath), imageStitcher -> {});
+            firstJobRunning.await();
+
+            Assertions.assertEquals(expectedQueueDepth, scheduler.getQueueDepth());
+
+            firstJobReleased.countDown();
+        }
+
+        Files.delete(imagePath);
+    }
+
+    @Test
+    void Check_Cancelled_Job_Not_In_Queue() throws Exception {
+        Path imagePath = createImage();
+        CountDownLatch firstJobRunning = new CountDownLatch(1);
+        CountDownLatch firstJobReleased = new CountDownLatch(1);
+        int expectedQueueDepth = 1;
+
+        try (StitchingScheduler scheduler = new StitchingScheduler.Builder().maxConcurrentJobs(1).build()) {
+            scheduler.submit(createBuilder(imagePath), imageStitcher -> {
+                firstJobRunning.countDown();
+                firstJobReleased.await();
+            });
+            scheduler.submit(createBuilder(imagePath), imageStitcher -> {});
+            Future<Void> cancelledJob = scheduler.submit(createBuilder(imagePath), imageStitcher -> {});
+            firstJobRunning.await();
+
+            cancelledJob.cancel(false);
+
+            Assertions.assertEquals(expectedQueueDepth, scheduler.getQueueDepth());
+
+            firstJobReleased.countDown();
+        }
+
+        Files.delete(imagePath);
+    }
+
+    @Test
+    void Check_Jobs_Started_By_Priority() throws Exception {
+        Path imagePath = createImage();
+        CountDownLatch firstJobReleased = new CountDownLatch(1);
+        List<Integer> startedJobs = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> expectedStartedJobs = List.of(5, 3, 1);
+
+        try (StitchingScheduler scheduler = new StitchingScheduler.Builder()
+                .maxConcurrentJobs(1)
+                .schedulingPolicy(StitchingScheduler.SchedulingPolicy.PRIORITY)
+                .build()
+        ) {
+            scheduler.submit(createBuilder(imagePath), imageStitcher -> firstJobReleased.await());
+            for (int priority: List.of(1, 5, 3)) {
+                scheduler.submit(createBuilder(imagePath), imageStitcher -> startedJobs.add(priority), priority);
+            }
+
+            firstJobReleased.countDown();
+        }
+
+        Assertions.assertEquals(expectedStartedJobs, startedJobs);
+
+        Files.delete(imagePath);
+    }
+
+    @Test
+    void Check_Jobs_Started_In_Submission_Order_With_Fair_Policy() throws Exception {
+        Path imagePath = createImage();
+        CountDownLatch firstJobReleased = new CountDownLatch(1);
+        List<Integer> startedJobs = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> expectedStartedJobs = List.of(1, 5, 3);
+
+        try (StitchingScheduler scheduler = new StitchingScheduler.Builder()
+                .maxConcurrentJobs(1)
+                .schedulingPolicy(StitchingScheduler.SchedulingPolicy.FAIR)
+                .build()
+        ) {
+            scheduler.submit(createBuilder(imagePath), imageStitcher -> firstJobReleased.await());
+            for (int priority: List.of(1, 5, 3)) {
+                scheduler.submit(createBuilder(imagePath), imageStitcher -> startedJobs.add(priority), priority);
+            }
+
+            firstJobReleased.countDown();
+        }
+
+        Assertions.assertEquals(expectedStartedJobs, startedJobs);
+
+        Files.delete(imagePath);
+    }
+
+    @Test
+    void Check_Failed_Stitcher_Creation_Reported() throws Exception {
+        try (StitchingScheduler scheduler = new StitchingScheduler.Builder().build()) {
+            Future<Void> job = scheduler.submit(new ImageStitcher.Builder(List.of()), imageStitcher -> {});
+
+            ExecutionException exception = Assertions.assertThrows(ExecutionException.class, () -> job.get(5, TimeUnit.SECONDS));
+            Assertions.assertInstanceOf(IllegalArgumentException.class, exception.getCause());
+        }
+    }
+
+    @Test
+    void Check_Jobs_Written_With_Shared_Threads() throws Exception {
+        Path imagePath = createImage();
+        Path outputDirectory = Files.createTempDirectory(null);
+        List<Future<Void>> jobs = new ArrayList<>();
+        List<Path> outputPaths = List.of(
+                outputDirectory.resolve("image1.ome.zarr"),
+                outputDirectory.resolve("image2.ome.zarr"),
+                outputDirectory.resolve("image3.ome.tiff")
+        );
+
+        try (StitchingScheduler scheduler = new StitchingScheduler.Builder().cpuThreads(1).ioThreads(1).maxConcurrentJobs(3).build()) {
+            jobs.add(scheduler.submit(createBuilder(imagePath), imageStitcher -> imageStitcher.writeToZarrFile(outputPaths.get(0).toString(), null)));
+            jobs.add(scheduler.submit(createBuilder(imagePath), imageStitcher -> imageStitcher.writeToZarrFile(outputPaths.get(1).toString(), null)));
+            jobs.add(scheduler.submit(createBuilder(imagePath), imageStitcher -> imageStitcher.writeToTiffFile(outputPaths.get(2).toString())));
+        }
+
+        for (Future<Void> job: jobs) {
+            job.get();
+        }
+        Assertions.assertTrue(outputPaths.stream().allMatch(Files::exists));
+
+        Files.delete(imagePath);
+        Utils.deleteFileOrDirectoryRecursively(outputDirectory.toFile());
+    }
+
+    private static Path createImage() throws Exception {
+        Path imagePath = Files.createTempFile(null, ".tiff");
+        ImageUtils.writeTiff(imagePath.toString(), ImageUtils.createSampleImage(2, 3, Color.RED), 1, 1, 0, 0);
+        return imagePath;
+    }
+
+    private static ImageStitcher.Builder createBuilder(Path imagePath) {
+        return new ImageStitcher.Builder(List.of(imagePath.toString())).numberOfThreads(4);
+    }
+}
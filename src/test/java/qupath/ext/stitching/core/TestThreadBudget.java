@@ -0,0 +1,191 @@
+package qupath.ext.stitching.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class TestThreadBudget {
+
+    @Test
+    void Check_Max_Threads_Less_Than_One() {
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new ThreadBudget(0, StitchingScheduler.SchedulingPolicy.FAIR)
+        );
+    }
+
+    @Test
+    void Check_Acquired_Permit_Counted() throws Exception {
+        ThreadBudget threadBudget = new ThreadBudget(2, StitchingScheduler.SchedulingPolicy.FAIR);
+        ThreadBudget.Client client = threadBudget.register(0);
+
+        try (ThreadBudget.Permit ignored = client.acquire()) {
+            Assertions.assertEquals(1, threadBudget.getUsedThreads());
+        }
+    }
+
+    @Test
+    void Check_Released_Permit_Not_Counted() throws Exception {
+        ThreadBudget threadBudget = new ThreadBudget(2, StitchingScheduler.SchedulingPolicy.FAIR);
+        ThreadBudget.Client client = threadBudget.register(0);
+
+        client.acquire().close();
+
+        Assertions.assertEquals(0, threadBudget.getUsedThreads());
+    }
+
+    @Test
+    void Check_Nested_Permit_Not_Counted() throws Exception {
+        ThreadBudget threadBudget = new ThreadBudget(1, StitchingScheduler.SchedulingPolicy.FAIR);
+        ThreadBudget.Client client = threadBudget.register(0);
+
+        try (ThreadBudget.Permit ignored = client.acquire(); ThreadBudget.Permit ignored2 = client.acquire()) {
+            Assertions.assertEquals(1, threadBudget.getUsedThreads());
+        }
+    }
+
+    @Test
+    void Check_Nested_Permit_Does_Not_Release_Thread() throws Exception {
+        ThreadBudget threadBudget = new ThreadBudget(1, StitchingScheduler.SchedulingPolicy.FAIR);
+        ThreadBudget.Client client = threadBudget.register(0);
+
+        try (ThreadBudget.Permit ignored = client.acquire()) {
+            client.acquire().close();
+
+            Assertions.assertEquals(1, threadBudget.getUsedThreads());
+        }
+    }
+
+    @Test
+    void Check_Acquire_Blocks_Until_Permit_Released() throws Exception {
+        ThreadBudget threadBudget = new ThreadBudget(1, StitchingScheduler.SchedulingPolicy.FAIR);
+        ThreadBudget.Client client = threadBudget.register(0);
+        ExecutorService executorService = Executors.newCachedThreadPool();
+        ThreadBudget.Permit permit = client.acquire();
+        Future<ThreadBudget.Permit> secondPermit = executorService.submit(client::acquire);
+
+        Thread.sleep(50);
+        Assertions.assertFalse(secondPermit.isDone());
+
+        permit.close();
+
+        Assertions.assertNotNull(secondPermit.get(5, TimeUnit.SECONDS));
+
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void Check_Reserved_Permits_Less_Than_One() {
+        ThreadBudget threadBudget = new ThreadBudget(2, StitchingScheduler.SchedulingPolicy.FAIR);
+        ThreadBudget.Client client = threadBudget.register(0);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> client.reserve(0));
+    }
+
+    @Test
+    void Check_Reserved_Permits_Counted() throws Exception {
+        ThreadBudget threadBudget = new ThreadBudget(4, StitchingScheduler.SchedulingPolicy.FAIR);
+        ThreadBudget.Client client = threadBudget.register(0);
+
+        try (ThreadBudget.Reservation ignored = client.reserve(3)) {
+            Assertions.assertEquals(3, threadBudget.getUsedThreads());
+        }
+    }
+
+    @Test
+    void Check_Reserved_Permits_Limited_To_Available_Permits() throws Exception {
+        ThreadBudget threadBudget = new ThreadBudget(4, StitchingScheduler.SchedulingPolicy.FAIR);
+        ThreadBudget.Client client = threadBudget.register(0);
+        int expectedPermits = 3;
+
+        try (ThreadBudget.Permit ignored = client.acquire()) {
+            int permits = client.reserve(8).getPermits();
+
+            Assertions.assertEquals(expectedPermits, permits);
+        }
+    }
+
+    @Test
+    void Check_Released_Reservation_Not_Counted() throws Exception {
+        ThreadBudget threadBudget = new ThreadBudget(4, StitchingScheduler.SchedulingPolicy.FAIR);
+        ThreadBudget.Client client = threadBudget.register(0);
+
+        client.reserve(3).close();
+
+        Assertions.assertEquals(0, threadBudget.getUsedThreads());
+    }
+
+    @Test
+    void Check_Permit_Acquired_From_Reservation_Not_Counted() throws Exception {
+        ThreadBudget threadBudget = new ThreadBudget(2, StitchingScheduler.SchedulingPolicy.FAIR);
+        ThreadBudget.Client client = threadBudget.register(0);
+        ExecutorService executorService = Executors.newCachedThreadPool();
+
+        try (ThreadBudget.Reservation ignored = client.reserve(2)) {
+            Future<ThreadBudget.Permit> firstPermit = executorService.submit(client::acquire);
+            Future<ThreadBudget.Permit> secondPermit = executorService.submit(client::acquire);
+
+            Assertions.assertNotNull(firstPermit.get(5, TimeUnit.SECONDS));
+            Assertions.assertNotNull(secondPermit.get(5, TimeUnit.SECONDS));
+            Assertions.assertEquals(2, threadBudget.getUsedThreads());
+        }
+
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void Check_Released_Permit_Given_To_Client_With_Highest_Priority() throws Exception {
+        ThreadBudget threadBudget = new ThreadBudget(1, StitchingScheduler.SchedulingPolicy.PRIORITY);
+        ThreadBudget.Client lowPriorityClient = threadBudget.register(0);
+        ThreadBudget.Client highPriorityClient = threadBudget.register(1);
+        ExecutorService executorService = Executors.newCachedThreadPool();
+        ThreadBudget.Permit permit = lowPriorityClient.acquire();
+        Future<ThreadBudget.Permit> lowPriorityPermit = executorService.submit(lowPriorityClient::acquire);
+        Thread.sleep(50);
+        Future<ThreadBudget.Permit> highPriorityPermit = executorService.submit(highPriorityClient::acquire);
+        Thread.sleep(50);
+
+        permit.close();
+
+        Assertions.assertNotNull(highPriorityPermit.get(5, TimeUnit.SECONDS));
+        Assertions.assertFalse(lowPriorityPermit.isDone());
+
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void Check_Released_Permit_Given_To_Client_Holding_Fewest_Permits() throws Exception {
+        ThreadBudget threadBudget = new ThreadBudget(2, StitchingScheduler.SchedulingPolicy.FAIR);
+        ThreadBudget.Client firstClient = threadBudget.register(0);
+        ThreadBudget.Client secondClient = threadBudget.register(0);
+        ExecutorService executorService = Executors.newCachedThreadPool();
+        CountDownLatch secondClientHoldsPermit = new CountDownLatch(1);
+        CountDownLatch releaseSecondClientPermit = new CountDownLatch(1);
+        ThreadBudget.Permit firstClientPermit = firstClient.acquire();
+        executorService.submit(() -> {
+            try (ThreadBudget.Permit ignored = secondClient.acquire()) {
+                secondClientHoldsPermit.countDown();
+                releaseSecondClientPermit.await();
+            }
+            return null;
+        });
+        secondClientHoldsPermit.await();
+        Future<ThreadBudget.Permit> firstClientSecondPermit = executorService.submit(firstClient::acquire);
+        Thread.sleep(50);
+        Future<ThreadBudget.Permit> secondClientSecondPermit = executorService.submit(secondClient::acquire);
+        Thread.sleep(50);
+
+        releaseSecondClientPermit.countDown();
+
+        Assertions.assertNotNull(secondClientSecondPermit.get(5, TimeUnit.SECONDS));
+        Assertions.assertFalse(firstClientSecondPermit.isDone());
+
+        firstClientPermit.close();
+        executorService.shutdownNow();
+    }
+}
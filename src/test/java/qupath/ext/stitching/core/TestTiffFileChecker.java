@@ -5,6 +5,8 @@ import org.junit.jupiter.api.Test;
 import qupath.ext.stitching.Utils;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
@@ -71,4 +73,37 @@ public class TestTiffFileChecker {
 
         Files.delete(tempFilePath);
     }
+
+    @Test
+    void Check_BigTiff_File() throws IOException {
+        Path tempFilePath = Files.createTempFile(null, ".tiff");
+        Files.write(tempFilePath, new byte[] {0x49, 0x49, 0x2B, 0x00}, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        Files.writeString(tempFilePath, "some content", StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        String path = tempFilePath.toString();
+
+        Assertions.assertDoesNotThrow(() -> TiffFileChecker.checkTiffFile(path));
+
+        Files.delete(tempFilePath);
+    }
+
+    @Test
+    void Check_Tiff_File_With_Wrong_Magic_Number() throws IOException {
+        Path tempFilePath = Files.createTempFile(null, ".tiff");
+        Files.write(tempFilePath, new byte[] {0x49, 0x49, 0x2C, 0x00}, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        Files.writeString(tempFilePath, "some content", StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        String path = tempFilePath.toString();
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> TiffFileChecker.checkTiffFile(path));
+
+        Files.delete(tempFilePath);
+    }
+
+    @Test
+    void Check_Byte_Order_Of_Big_Endian_Tiff_Bytes() {
+        ByteBuffer bytes = ByteBuffer.wrap(new byte[] {0x4D, 0x4D, 0x00, 0x2A, 0x00, 0x00, 0x00, 0x08});
+
+        ByteOrder byteOrder = TiffFileChecker.checkTiffBytes("image.tiff", bytes);
+
+        Assertions.assertEquals(ByteOrder.BIG_ENDIAN, byteOrder);
+    }
 }
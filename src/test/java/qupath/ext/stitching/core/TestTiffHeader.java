@@ -0,0 +1,190 @@
+package qupath.ext.stitching.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import qupath.ext.stitching.Utils;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class TestTiffHeader {
+
+    @Test
+    void Check_Null_Path() {
+        Assertions.assertThrows(NullPointerException.class, () -> TiffHeader.read(null));
+    }
+
+    @Test
+    void Check_File_Does_Not_Exist() throws IOException {
+        String path = Files.createTempDirectory(null).resolve("no_file").toString();
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> TiffHeader.read(path));
+
+        Utils.deleteFileOrDirectoryRecursively(Path.of(path).getParent().toFile());
+    }
+
+    @Test
+    void Check_Non_Tiff_File() throws IOException {
+        Path path = Files.createTempFile(null, ".tiff");
+        Files.writeString(path, "some content");
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> TiffHeader.read(path.toString()));
+
+        Files.delete(path);
+    }
+
+    @Test
+    void Check_Tags_Of_Image_IO_File() throws IOException {
+        Path path = Files.createTempFile(null, ".tiff");
+        ImageUtils.writeTiff(path.toString(), ImageUtils.createSampleImage(2, 3, Color.WHITE), 7, 3, 8, 4);
+        double[] expectedValues = new double[] {2, 3, 7, 3, 8, 4};
+
+        TiffHeader tiffHeader = TiffHeader.read(path.toString());
+
+        Assertions.assertArrayEquals(expectedValues, getTestedTagValues(tiffHeader), 0);
+
+        Files.delete(path);
+    }
+
+    @Test
+    void Check_Missing_Tag() throws IOException {
+        Path path = Files.createTempFile(null, ".tiff");
+        ImageIO.write(ImageUtils.createSampleImage(2, 3, Color.WHITE), "tiff", new File(path.toString()));
+
+        TiffHeader tiffHeader = TiffHeader.read(path.toString());
+
+        Assertions.assertFalse(tiffHeader.hasTag(TiffHeader.TAG_X_POSITION));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> tiffHeader.getTagValue(TiffHeader.TAG_X_POSITION));
+
+        Files.delete(path);
+    }
+
+    @Test
+    void Check_Tags_Of_Little_Endian_File() throws IOException {
+        Path path = Files.createTempFile(null, ".tiff");
+        ImageUtils.writeTiffHeader(path, ByteOrder.LITTLE_ENDIAN, false, 1800, 1400, 20000, 10000, 12, 34);
+        double[] expectedValues = new double[] {1800, 1400, 20000, 10000, 12, 34};
+
+        TiffHeader tiffHeader = TiffHeader.read(path.toString());
+
+        Assertions.assertArrayEquals(expectedValues, getTestedTagValues(tiffHeader), 0);
+        Assertions.assertEquals(ByteOrder.LITTLE_ENDIAN, tiffHeader.getByteOrder());
+        Assertions.assertFalse(tiffHeader.isBigTiff());
+
+        Files.delete(path);
+    }
+
+    @Test
+    void Check_Tags_Of_Big_Endian_File() throws IOException {
+        Path path = Files.createTempFile(null, ".tiff");
+        ImageUtils.writeTiffHeader(path, ByteOrder.BIG_ENDIAN, false, 1800, 1400, 20000, 10000, 12, 34);
+        double[] expectedValues = new double[] {1800, 1400, 20000, 10000, 12, 34};
+
+        TiffHeader tiffHeader = TiffHeader.read(path.toString());
+
+        Assertions.assertArrayEquals(expectedValues, getTestedTagValues(tiffHeader), 0);
+        Assertions.assertEquals(ByteOrder.BIG_ENDIAN, tiffHeader.getByteOrder());
+
+        Files.delete(path);
+    }
+
+    @Test
+    void Check_Tags_Of_Little_Endian_Big_Tiff_File() throws IOException {
+        Path path = Files.createTempFile(null, ".tiff");
+        ImageUtils.writeTiffHeader(path, ByteOrder.LITTLE_ENDIAN, true, 1800, 1400, 20000, 10000, 12, 34);
+        double[] expectedValues = new double[] {1800, 1400, 20000, 10000, 12, 34};
+
+        TiffHeader tiffHeader = TiffHeader.read(path.toString());
+
+        Assertions.assertArrayEquals(expectedValues, getTestedTagValues(tiffHeader), 0);
+        Assertions.assertTrue(tiffHeader.isBigTiff());
+
+        Files.delete(path);
+    }
+
+    @Test
+    void Check_Tags_Of_Big_Endian_Big_Tiff_File() throws IOException {
+        Path path = Files.createTempFile(null, ".tiff");
+        ImageUtils.writeTiffHeader(path, ByteOrder.BIG_ENDIAN, true, 1800, 1400, 20000, 10000, 12, 34);
+        double[] expectedValues = new double[] {1800, 1400, 20000, 10000, 12, 34};
+
+        TiffHeader tiffHeader = TiffHeader.read(path.toString());
+
+        Assertions.assertArrayEquals(expectedValues, getTestedTagValues(tiffHeader), 0);
+        Assertions.assertTrue(tiffHeader.isBigTiff());
+
+        Files.delete(path);
+    }
+
+    @Test
+    void Check_First_Value_Of_Tag_Stored_Outside_Entry() throws IOException {
+        Path path = Files.createTempFile(null, ".tiff");
+        ImageUtils.writeMultichannelTiff(path, 2, 3, 3, 16, 5, 6, 0);
+        double[] expectedValues = new double[] {16, 3};
+
+        TiffHeader tiffHeader = TiffHeader.read(path.toString());
+
+        Assertions.assertArrayEquals(
+                expectedValues,
+                new double[] {tiffHeader.getTagValue(TiffHeader.TAG_BITS_PER_SAMPLE), tiffHeader.getTagValue(TiffHeader.TAG_SAMPLES_PER_PIXEL)},
+                0
+        );
+
+        Files.delete(path);
+    }
+
+    @Test
+    void Check_First_Value_Of_Tag_With_Several_Values_Stored_In_Entry() throws IOException {
+        Path path = Files.createTempFile(null, ".tiff");
+        ImageUtils.writeMultichannelTiff(path, 2, 3, 2, 8, 5, 6, 0);
+        double expectedBitsPerSample = 8;
+
+        TiffHeader tiffHeader = TiffHeader.read(path.toString());
+
+        Assertions.assertEquals(expectedBitsPerSample, tiffHeader.getTagValue(TiffHeader.TAG_BITS_PER_SAMPLE));
+
+        Files.delete(path);
+    }
+
+    @Test
+    void Check_Tags_Of_Multichannel_File() throws IOException {
+        Path path = Files.createTempFile(null, ".tiff");
+        ImageUtils.writeMultichannelTiff(path, 2, 3, 4, 8, 5, 6, 0);
+        double[] expectedValues = new double[] {2, 3, 1, 1, 5, 6};
+
+        TiffHeader tiffHeader = TiffHeader.read(path.toString());
+
+        Assertions.assertArrayEquals(expectedValues, getTestedTagValues(tiffHeader), 0);
+
+        Files.delete(path);
+    }
+
+    @Test
+    void Check_Zero_Valued_Tag_Stored_In_Entry() throws IOException {
+        Path path = Files.createTempFile(null, ".tiff");
+        ImageUtils.writeTiffHeader(path, ByteOrder.LITTLE_ENDIAN, false, 0, 1400, 20000, 10000, 12, 34);
+        double expectedWidth = 0;
+
+        TiffHeader tiffHeader = TiffHeader.read(path.toString());
+
+        Assertions.assertEquals(expectedWidth, tiffHeader.getTagValue(TiffHeader.TAG_IMAGE_WIDTH));
+
+        Files.delete(path);
+    }
+
+    private static double[] getTestedTagValues(TiffHeader tiffHeader) {
+        return new double[] {
+                tiffHeader.getTagValue(TiffHeader.TAG_IMAGE_WIDTH),
+                tiffHeader.getTagValue(TiffHeader.TAG_IMAGE_LENGTH),
+                tiffHeader.getTagValue(TiffHeader.TAG_X_RESOLUTION),
+                tiffHeader.getTagValue(TiffHeader.TAG_Y_RESOLUTION),
+                tiffHeader.getTagValue(TiffHeader.TAG_X_POSITION),
+                tiffHeader.getTagValue(TiffHeader.TAG_Y_POSITION)
+        };
+    }
+}
@@ -0,0 +1,195 @@
+package qupath.ext.stitching.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TestTileLayout {
+
+    @Test
+    void Check_Empty_Layout() {
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new TileLayout(new int[0], new int[0], new int[0], new int[0])
+        );
+    }
+
+    @Test
+    void Check_Arrays_With_Different_Lengths() {
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new TileLayout(new int[] {0, 1}, new int[] {0}, new int[] {1}, new int[] {1})
+        );
+    }
+
+    @Test
+    void Check_Invalid_Tile_Size() {
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new TileLayout(new int[] {0}, new int[] {0}, new int[] {0}, new int[] {1})
+        );
+    }
+
+    @Test
+    void Check_Positions_Translated_To_Origin() {
+        TileLayout layout = new TileLayout(new int[] {10, 15}, new int[] {-3, 7}, new int[] {5, 5}, new int[] {4, 4});
+        int[] expectedXs = new int[] {0, 5};
+        int[] expectedYs = new int[] {0, 10};
+
+        Assertions.assertArrayEquals(expectedXs, new int[] {layout.getX(0), layout.getX(1)});
+        Assertions.assertArrayEquals(expectedYs, new int[] {layout.getY(0), layout.getY(1)});
+    }
+
+    @Test
+    void Check_Size_Of_Layout() {
+        TileLayout layout = new TileLayout(new int[] {10, 15}, new int[] {-3, 7}, new int[] {5, 8}, new int[] {4, 4});
+        int expectedWidth = 13;
+        int expectedHeight = 14;
+
+        Assertions.assertEquals(expectedWidth, layout.getWidth());
+        Assertions.assertEquals(expectedHeight, layout.getHeight());
+    }
+
+    @Test
+    void Check_Regular_Grid_Detected() {
+        TileLayout layout = new TileLayout(
+                new int[] {0, 90, 180, 1, 91, 179},
+                new int[] {0, 1, 0, 75, 74, 76},
+                new int[] {100, 100, 100, 100, 100, 100},
+                new int[] {80, 80, 80, 80, 80, 80}
+        );
+
+        Assertions.assertTrue(layout.isRegularGrid());
+    }
+
+    @Test
+    void Check_Regular_Grid_Not_Detected_With_Different_Tile_Sizes() {
+        TileLayout layout = new TileLayout(
+                new int[] {0, 90, 180},
+                new int[] {0, 0, 0},
+                new int[] {100, 100, 50},
+                new int[] {80, 80, 80}
+        );
+
+        Assertions.assertFalse(layout.isRegularGrid());
+    }
+
+    @Test
+    void Check_Grid_Step_Of_Regular_Grid() {
+        TileLayout layout = new TileLayout(
+                new int[] {0, 90, 180, 1, 91, 179},
+                new int[] {0, 1, 0, 75, 74, 76},
+                new int[] {100, 100, 100, 100, 100, 100},
+                new int[] {80, 80, 80, 80, 80, 80}
+        );
+        int[] expectedStep = new int[] {90, 75};
+
+        int[] step = new int[] {layout.getGridStepX(), layout.getGridStepY()};
+
+        Assertions.assertArrayEquals(expectedStep, step);
+    }
+
+    @Test
+    void Check_Grid_Step_Of_Irregular_Layout() {
+        TileLayout layout = new TileLayout(
+                new int[] {0, 90, 180},
+                new int[] {0, 0, 0},
+                new int[] {100, 100, 50},
+                new int[] {80, 80, 80}
+        );
+        int[] expectedStep = new int[] {0, 0};
+
+        int[] step = new int[] {layout.getGridStepX(), layout.getGridStepY()};
+
+        Assertions.assertArrayEquals(expectedStep, step);
+    }
+
+    @Test
+    void Check_Tiles_Found_On_Regular_Grid() {
+        TileLayout layout = new TileLayout(
+                new int[] {0, 90, 180, 1, 91, 179},
+                new int[] {0, 1, 0, 75, 74, 76},
+                new int[] {100, 100, 100, 100, 100, 100},
+                new int[] {80, 80, 80, 80, 80, 80}
+        );
+        int[] expectedTiles = new int[] {1, 4};
+
+        int[] tiles = layout.findTiles(120, 10, 30, 70);
+
+        Assertions.assertArrayEquals(expectedTiles, tiles);
+    }
+
+    @Test
+    void Check_Tiles_Found_On_Irregular_Layout() {
+        TileLayout layout = new TileLayout(
+                new int[] {0, 500, 40, 1000},
+                new int[] {0, 20, 300, 900},
+                new int[] {100, 300, 10, 200},
+                new int[] {100, 100, 400, 50}
+        );
+        int[] expectedTiles = new int[] {0, 2};
+
+        int[] tiles = layout.findTiles(30, 50, 40, 300);
+
+        Assertions.assertArrayEquals(expectedTiles, tiles);
+    }
+
+    @Test
+    void Check_No_Tiles_Found_Outside_Layout() {
+        TileLayout layout = new TileLayout(
+                new int[] {0, 500},
+                new int[] {0, 20},
+                new int[] {100, 300},
+                new int[] {100, 100}
+        );
+
+        int[] tiles = layout.findTiles(2000, 2000, 10, 10);
+
+        Assertions.assertEquals(0, tiles.length);
+    }
+
+    @Test
+    void Check_Region_Covered_By_Single_Tile() {
+        TileLayout layout = new TileLayout(new int[] {0, 100}, new int[] {0, 0}, new int[] {100, 100}, new int[] {100, 100});
+
+        boolean covered = layout.covers(10, 10, 50, 50);
+
+        Assertions.assertTrue(covered);
+    }
+
+    @Test
+    void Check_Region_Covered_By_Several_Tiles() {
+        TileLayout layout = new TileLayout(
+                new int[] {0, 100, 0, 90},
+                new int[] {0, 0, 100, 95},
+                new int[] {100, 100, 100, 110},
+                new int[] {100, 100, 100, 100}
+        );
+
+        boolean covered = layout.covers(50, 50, 100, 100);
+
+        Assertions.assertTrue(covered);
+    }
+
+    @Test
+    void Check_Region_With_Gap_Not_Covered() {
+        TileLayout layout = new TileLayout(
+                new int[] {0, 100, 0},
+                new int[] {0, 0, 100},
+                new int[] {100, 100, 100},
+                new int[] {100, 100, 100}
+        );
+
+        boolean covered = layout.covers(50, 50, 100, 100);
+
+        Assertions.assertFalse(covered);
+    }
+
+    @Test
+    void Check_Region_Outside_Layout_Not_Covered() {
+        TileLayout layout = new TileLayout(new int[] {0}, new int[] {0}, new int[] {100}, new int[] {100});
+
+        boolean covered = layout.covers(200, 200, 10, 10);
+
+        Assertions.assertFalse(covered);
+    }
+}
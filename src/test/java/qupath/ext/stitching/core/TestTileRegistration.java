@@ -0,0 +1,141 @@
+package qupath.ext.stitching.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import qupath.lib.images.servers.WrappedBufferedImageServer;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+public class TestTileRegistration {
+
+    @Test
+    void Check_Max_Shift_Less_Than_One() {
+        TileLayout layout = new TileLayout(new int[] {0}, new int[] {0}, new int[] {10}, new int[] {10});
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new TileRegistration(layout, null, 0, 1, 1));
+    }
+
+    @Test
+    void Check_Downsample_Less_Than_One() {
+        TileLayout layout = new TileLayout(new int[] {0}, new int[] {0}, new int[] {10}, new int[] {10});
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new TileRegistration(layout, null, 10, 0.5, 1));
+    }
+
+    @Test
+    void Check_Positions_Corrected() throws Exception {
+        BufferedImage image = ImageUtils.createTexturedImage(400, 300, 0);
+        int[] xs = new int[] {0, 171, 4, 178};
+        int[] ys = new int[] {0, 6, 142, 135};
+        List<BufferedImage> tiles = cropTiles(image, xs, ys, 200, 150);
+        TileLayout nominalLayout = new TileLayout(
+                new int[] {0, 180, 0, 180},
+                new int[] {0, 0, 140, 140},
+                new int[] {200, 200, 200, 200},
+                new int[] {150, 150, 150, 150}
+        );
+        TileLayout expectedLayout = new TileLayout(xs, ys, new int[] {200, 200, 200, 200}, new int[] {150, 150, 150, 150});
+
+        TileLayout layout;
+        try (InputServerPool inputServerPool = createPool(tiles)) {
+            layout = new TileRegistration(nominalLayout, inputServerPool, 16, 1, 2).register();
+        }
+
+        assertLayoutsEqual(expectedLayout, layout);
+    }
+
+    @Test
+    void Check_Mean_Position_Kept() throws Exception {
+        BufferedImage image = ImageUtils.createTexturedImage(400, 200, 0);
+        int[] xs = new int[] {0, 186};
+        int[] ys = new int[] {0, 4};
+        List<BufferedImage> tiles = cropTiles(image, xs, ys, 200, 150);
+        TileLayout nominalLayout = new TileLayout(
+                new int[] {1000, 1180},
+                new int[] {2000, 2000},
+                new int[] {200, 200},
+                new int[] {150, 150}
+        );
+        int expectedOriginX = 997;
+        int expectedOriginY = 1998;
+
+        TileLayout layout;
+        try (InputServerPool inputServerPool = createPool(tiles)) {
+            layout = new TileRegistration(nominalLayout, inputServerPool, 16, 1, 1).register();
+        }
+
+        Assertions.assertEquals(expectedOriginX, layout.getOriginX());
+        Assertions.assertEquals(expectedOriginY, layout.getOriginY());
+    }
+
+    @Test
+    void Check_Tile_Without_Overlap_Keeps_Nominal_Position() throws Exception {
+        BufferedImage image = ImageUtils.createTexturedImage(600, 200, 0);
+        int[] xs = new int[] {0, 186, 400};
+        int[] ys = new int[] {0, 4, 10};
+        List<BufferedImage> tiles = cropTiles(image, xs, ys, 200, 150);
+        TileLayout nominalLayout = new TileLayout(
+                new int[] {0, 180, 450},
+                new int[] {0, 0, 0},
+                new int[] {200, 200, 200},
+                new int[] {150, 150, 150}
+        );
+        TileLayout expectedLayout = new TileLayout(
+                new int[] {-3, 183, 450},
+                new int[] {-2, 2, 0},
+                new int[] {200, 200, 200},
+                new int[] {150, 150, 150}
+        );
+
+        TileLayout layout;
+        try (InputServerPool inputServerPool = createPool(tiles)) {
+            layout = new TileRegistration(nominalLayout, inputServerPool, 16, 1, 1).register();
+        }
+
+        assertLayoutsEqual(expectedLayout, layout);
+    }
+
+    @Test
+    void Check_Uniform_Tiles_Keep_Nominal_Positions() throws Exception {
+        List<BufferedImage> tiles = List.of(
+                ImageUtils.createSampleImage(200, 150, Color.WHITE),
+                ImageUtils.createSampleImage(200, 150, Color.WHITE)
+        );
+        TileLayout nominalLayout = new TileLayout(
+                new int[] {0, 180},
+                new int[] {0, 0},
+                new int[] {200, 200},
+                new int[] {150, 150}
+        );
+
+        TileLayout layout;
+        try (InputServerPool inputServerPool = createPool(tiles)) {
+            layout = new TileRegistration(nominalLayout, inputServerPool, 16, 1, 1).register();
+        }
+
+        assertLayoutsEqual(nominalLayout, layout);
+    }
+
+    private static List<BufferedImage> cropTiles(BufferedImage image, int[] xs, int[] ys, int width, int height) {
+        BufferedImage[] tiles = new BufferedImage[xs.length];
+
+        for (int i=0; i<xs.length; i++) {
+            tiles[i] = image.getSubimage(xs[i], ys[i], width, height);
+        }
+        return List.of(tiles);
+    }
+
+    private static InputServerPool createPool(List<BufferedImage> tiles) {
+        return new InputServerPool(input -> new WrappedBufferedImageServer("", tiles.get(input)), tiles.size());
+    }
+
+    private static void assertLayoutsEqual(TileLayout expectedLayout, TileLayout layout) {
+        Assertions.assertEquals(expectedLayout.getNumberOfTiles(), layout.getNumberOfTiles());
+        for (int i=0; i<expectedLayout.getNumberOfTiles(); i++) {
+            Assertions.assertEquals(expectedLayout.getX(i), layout.getX(i));
+            Assertions.assertEquals(expectedLayout.getY(i), layout.getY(i));
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package qupath.ext.stitching.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import qupath.ext.stitching.Utils;
+import qupath.lib.images.servers.ImageServerMetadata;
+import qupath.lib.images.servers.WrappedBufferedImageServer;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+public class TestZarrChunkJournal {
+
+    @Test
+    void Check_Journal_Exists_After_Creation() throws Exception {
+        OmeZarrStore store = createStore();
+
+        ZarrChunkJournal.create(store, createFingerprint(store, 0)).close();
+
+        Assertions.assertTrue(ZarrChunkJournal.exists(store.getPath()));
+
+        Utils.deleteFileOrDirectoryRecursively(store.getPath().getParent().toFile());
+    }
+
+    @Test
+    void Check_Journal_Does_Not_Exist_After_Deletion() throws Exception {
+        OmeZarrStore store = createStore();
+        ZarrChunkJournal journal = ZarrChunkJournal.create(store, createFingerprint(store, 0));
+
+        journal.delete();
+
+        Assertions.assertFalse(ZarrChunkJournal.exists(store.getPath()));
+
+        Utils.deleteFileOrDirectoryRecursively(store.getPath().getParent().toFile());
+    }
+
+    @Test
+    void Check_Chunk_Marked_As_Written() throws Exception {
+        OmeZarrStore store = createStore();
+        ZarrChunkJournal journal = ZarrChunkJournal.create(store, createFingerprint(store, 0));
+
+        journal.markWritten(1, 0, 0, 1, 0);
+
+        Assertions.assertTrue(journal.isWritten(1, 0, 0, 1, 0));
+
+        journal.close();
+        Utils.deleteFileOrDirectoryRecursively(store.getPath().getParent().toFile());
+    }
+
+    @Test
+    void Check_Other_Chunk_Not_Marked_As_Written() throws Exception {
+        OmeZarrStore store = createStore();
+        ZarrChunkJournal journal = ZarrChunkJournal.create(store, createFingerprint(store, 0));
+
+        journal.markWritten(1, 0, 0, 1, 0);
+
+        Assertions.assertFalse(journal.isWritten(0, 0, 0, 1, 0));
+
+        journal.close();
+        Utils.deleteFileOrDirectoryRecursively(store.getPath().getParent().toFile());
+    }
+
+    @Test
+    void Check_Written_Chunks_Read_After_Reopening() throws Exception {
+        OmeZarrStore store = createStore();
+        byte[] fingerprint = createFingerprint(store, 0);
+        try (ZarrChunkJournal journal = ZarrChunkJournal.create(store, fingerprint)) {
+            journal.markWritten(0, 0, 0, 0, 0);
+            journal.markWritten(0, 0, 0, 2, 1);
+            journal.markWritten(1, 0, 0, 0, 0);
+        }
+        int expectedNumberOfWrittenChunks = 3;
+
+        try (ZarrChunkJournal journal = ZarrChunkJournal.open(store, fingerprint)) {
+            Assertions.assertEquals(expectedNumberOfWrittenChunks, journal.getNumberOfWrittenChunks());
+            Assertions.assertTrue(journal.isWritten(0, 0, 0, 2, 1));
+        }
+
+        Utils.deleteFileOrDirectoryRecursively(store.getPath().getParent().toFile());
+    }
+
+    @Test
+    void Check_Record_Not_Saved_Before_Checkpoint() throws Exception {
+        OmeZarrStore store = createStore();
+        byte[] fingerprint = createFingerprint(store, 0);
+        ZarrChunkJournal journal = ZarrChunkJournal.create(store, fingerprint);
+        long expectedJournalSize = Files.size(store.getPath().resolve(".stitching-journal"));
+
+        journal.markWritten(0, 0, 0, 0, 0);
+
+        Assertions.assertEquals(expectedJournalSize, Files.size(store.getPath().resolve(".stitching-journal")));
+
+        journal.close();
+        Utils.deleteFileOrDirectoryRecursively(store.getPath().getParent().toFile());
+    }
+
+    @Test
+    void Check_Record_Saved_After_Checkpoint() throws Exception {
+        OmeZarrStore store = createStore();
+        byte[] fingerprint = createFingerprint(store, 0);
+        ZarrChunkJournal journal = ZarrChunkJournal.create(store, fingerprint);
+        journal.markWritten(0, 0, 0, 0, 0);
+        journal.checkpoint();
+        int expectedNumberOfWrittenChunks = 1;
+
+        try (ZarrChunkJournal reopenedJournal = ZarrChunkJournal.open(store, fingerprint)) {
+            Assertions.assertEquals(expectedNumberOfWrittenChunks, reopenedJournal.getNumberOfWrittenChunks());
+        }
+
+        journal.close();
+        Utils.deleteFileOrDirectoryRecursively(store.getPath().getParent().toFile());
+    }
+
+    @Test
+    void Check_Partial_Record_Ignored_After_Reopening() throws Exception {
+        OmeZarrStore store = createStore();
+        byte[] fingerprint = createFingerprint(store, 0);
+        try (ZarrChunkJournal journal = ZarrChunkJournal.create(store, fingerprint)) {
+            journal.markWritten(0, 0, 0, 0, 0);
+        }
+        Files.write(store.getPath().resolve(".stitching-journal"), new byte[] {1, 0, 0}, StandardOpenOption.APPEND);
+        int expectedNumberOfWrittenChunks = 1;
+
+        try (ZarrChunkJournal journal = ZarrChunkJournal.open(store, fingerprint)) {
+            Assertions.assertEquals(expectedNumberOfWrittenChunks, journal.getNumberOfWrittenChunks());
+        }
+
+        Utils.deleteFileOrDirectoryRecursively(store.getPath().getParent().toFile());
+    }
+
+    @Test
+    void Check_Chunks_Of_Incomplete_Shards_Dropped_After_Reopening() throws Exception {
+        OmeZarrStore store = createShardedStore();
+        byte[] fingerprint = createFingerprint(store, 0);
+        try (ZarrChunkJournal journal = ZarrChunkJournal.create(store, fingerprint)) {
+            // The first shard of the full resolution level contains 4 chunks, so it is not complete after writing one
+            store.writeChunk(0, 0, 0, 0, 0, ImageUtils.createSampleImage(4, 4, Color.WHITE).getRaster());
+            journal.markWritten(0, 0, 0, 0, 0);
+            // The only shard of the lowest resolution level contains 2 chunks, so it is complete after writing both
+            store.writeChunk(1, 0, 0, 0, 0, ImageUtils.createSampleImage(4, 2, Color.WHITE).getRaster());
+            journal.markWritten(1, 0, 0, 0, 0);
+            store.writeChunk(1, 0, 0, 1, 0, ImageUtils.createSampleImage(2, 2, Color.WHITE).getRaster());
+            journal.markWritten(1, 0, 0, 1, 0);
+        }
+        List<Boolean> expectedWrittenChunks = List.of(false, true);
+
+        try (ZarrChunkJournal journal = ZarrChunkJournal.open(OmeZarrStore.open(store.getPath()), fingerprint)) {
+            Assertions.assertEquals(
+                    expectedWrittenChunks,
+                    List.of(journal.isWritten(0, 0, 0, 0, 0), journal.isWritten(1, 0, 0, 0, 0))
+            );
+        }
+
+        store.close();
+        Utils.deleteFileOrDirectoryRecursively(store.getPath().getParent().toFile());
+    }
+
+    @Test
+    void Check_Journal_Not_Opened_With_Different_Fingerprint() throws Exception {
+        OmeZarrStore store = createStore();
+        ZarrChunkJournal.create(store, createFingerprint(store, 0)).close();
+        byte[] otherFingerprint = createFingerprint(store, 1);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ZarrChunkJournal.open(store, otherFingerprint));
+
+        Utils.deleteFileOrDirectoryRecursively(store.getPath().getParent().toFile());
+    }
+
+    @Test
+    void Check_Journal_Not_Opened_With_Different_Blending_Mode() throws Exception {
+        OmeZarrStore store = createStore();
+        ZarrChunkJournal.create(store, createFingerprint(store, 0, BlendingMode.NONE, null)).close();
+        byte[] otherFingerprint = createFingerprint(store, 0, BlendingMode.FEATHER, null);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ZarrChunkJournal.open(store, otherFingerprint));
+
+        Utils.deleteFileOrDirectoryRecursively(store.getPath().getParent().toFile());
+    }
+
+    @Test
+    void Check_Journal_Not_Opened_With_Different_Shading_Correction() throws Exception {
+        OmeZarrStore store = createStore();
+        ZarrChunkJournal.create(store, createFingerprint(store, 0, BlendingMode.NONE, createShadingCorrection(1))).close();
+        byte[] otherFingerprint = createFingerprint(store, 0, BlendingMode.NONE, createShadingCorrection(2));
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ZarrChunkJournal.open(store, otherFingerprint));
+
+        Utils.deleteFileOrDirectoryRecursively(store.getPath().getParent().toFile());
+    }
+
+    @Test
+    void Check_Journal_Not_Opened_Without_Shading_Correction() throws Exception {
+        OmeZarrStore store = createStore();
+        ZarrChunkJournal.create(store, createFingerprint(store, 0, BlendingMode.NONE, createShadingCorrection(1))).close();
+        byte[] otherFingerprint = createFingerprint(store, 0, BlendingMode.NONE, null);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ZarrChunkJournal.open(store, otherFingerprint));
+
+        Utils.deleteFileOrDirectoryRecursively(store.getPath().getParent().toFile());
+    }
+
+    @Test
+    void Check_Journal_Not_Opened_With_Different_Compression_Level() throws Exception {
+        OmeZarrStore store = createStore(ZarrCodec.MIN_LEVEL);
+        OmeZarrStore otherStore = createStore(ZarrCodec.MAX_LEVEL);
+        ZarrChunkJournal.create(store, createFingerprint(store, 0)).close();
+        byte[] otherFingerprint = createFingerprint(otherStore, 0);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ZarrChunkJournal.open(store, otherFingerprint));
+
+        Utils.deleteFileOrDirectoryRecursively(store.getPath().getParent().toFile());
+        Utils.deleteFileOrDirectoryRecursively(otherStore.getPath().getParent().toFile());
+    }
+
+    @Test
+    void Check_Missing_Journal_Not_Opened() throws Exception {
+        OmeZarrStore store = createStore();
+        byte[] fingerprint = createFingerprint(store, 0);
+
+        Assertions.assertThrows(IOException.class, () -> ZarrChunkJournal.open(store, fingerprint));
+
+        Utils.deleteFileOrDirectoryRecursively(store.getPath().getParent().toFile());
+    }
+
+    @Test
+    void Check_Partition_Journal_Exists_After_Creation() throws Exception {
+        OmeZarrStore store = createStore();
+
+        ZarrChunkJournal.create(store, createFingerprint(store, 0), 1).close();
+
+        Assertions.assertTrue(ZarrChunkJournal.exists(store.getPath(), 1));
+        Assertions.assertFalse(ZarrChunkJournal.exists(store.getPath(), 0));
+        Assertions.assertFalse(ZarrChunkJournal.exists(store.getPath()));
+
+        Utils.deleteFileOrDirectoryRecursively(store.getPath().getParent().toFile());
+    }
+
+    @Test
+    void Check_Chunks_Of_Other_Partition_Not_Read_After_Reopening() throws Exception {
+        OmeZarrStore store = createStore();
+        byte[] fingerprint = createFingerprint(store, 0);
+        try (ZarrChunkJournal journal = ZarrChunkJournal.create(store, fingerprint, 0)) {
+            journal.markWritten(0, 0, 0, 1, 0);
+        }
+        ZarrChunkJournal.create(store, fingerprint, 1).close();
+
+        ZarrChunkJournal journal = ZarrChunkJournal.open(store, fingerprint, 1);
+
+        Assertions.assertFalse(journal.isWritten(0, 0, 0, 1, 0));
+
+        journal.close();
+        Utils.deleteFileOrDirectoryRecursively(store.getPath().getParent().toFile());
+    }
+
+    private static OmeZarrStore createStore() throws Exception {
+        ImageServerMetadata metadata;
+        try (WrappedBufferedImageServer server = new WrappedBufferedImageServer("", ImageUtils.createSampleImage(24, 8, Color.WHITE))) {
+            metadata = server.getMetadata();
+        }
+
+        return new OmeZarrStore.Builder(Files.createTempDirectory(null).resolve("image.ome.zarr"), metadata)
+                .numberOfLevels(2)
+                .chunkSize(4, 4)
+                .build();
+    }
+
+    private static OmeZarrStore createStore(int compressionLevel) throws Exception {
+        ImageServerMetadata metadata;
+        try (WrappedBufferedImageServer server = new WrappedBufferedImageServer("", ImageUtils.createSampleImage(24, 8, Color.WHITE))) {
+            metadata = server.getMetadata();
+        }
+
+        return new OmeZarrStore.Builder(Files.createTempDirectory(null).resolve("image.ome.zarr"), metadata)
+                .numberOfLevels(2)
+                .chunkSize(4, 4)
+                .compressionLevel(compressionLevel)
+                .build();
+    }
+
+    private static OmeZarrStore createShardedStore() throws Exception {
+        ImageServerMetadata metadata;
+        try (WrappedBufferedImageServer server = new WrappedBufferedImageServer("", ImageUtils.createSampleImage(24, 8, Color.WHITE))) {
+            metadata = server.getMetadata();
+        }
+
+        return new OmeZarrStore.Builder(Files.createTempDirectory(null).resolve("image.ome.zarr"), metadata)
+                .numberOfLevels(2)
+                .chunkSize(4, 4)
+                .shardSize(2)
+                .build();
+    }
+
+    private static byte[] createFingerprint(OmeZarrStore store, int tileX) {
+        return createFingerprint(store, tileX, BlendingMode.NONE, null);
+    }
+
+    private static byte[] createFingerprint(OmeZarrStore store, int tileX, BlendingMode blendingMode, ShadingCorrection shadingCorrection) {
+        return ZarrChunkJournal.computeFingerprint(
+                new TileLayout(new int[] {tileX}, new int[] {0}, new int[] {24}, new int[] {8}),
+                List.of(URI.create("file:/image.tiff")),
+                blendingMode,
+                shadingCorrection,
+                store
+        );
+    }
+
+    private static ShadingCorrection createShadingCorrection(float flatFieldValue) {
+        float[] flatField = new float[6 * 4];
+        Arrays.fill(flatField, flatFieldValue);
+
+        return new ShadingCorrection(6, 4, new float[][] {flatField, flatField, flatField}, null);
+    }
+}
@@ -0,0 +1,213 @@
+package qupath.ext.stitching.core;
+
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+public class TestZarrCodec {
+
+    @Test
+    void Check_Uncompressed_Bytes_Decoded() throws IOException {
+        byte[] expectedBytes = createSampleBytes();
+
+        byte[] bytes = ZarrCodec.NONE.decode(ZarrCodec.NONE.encode(expectedBytes), expectedBytes.length);
+
+        Assertions.assertArrayEquals(expectedBytes, bytes);
+    }
+
+    @Test
+    void Check_Zlib_Bytes_Decoded() throws IOException {
+        byte[] expectedBytes = createSampleBytes();
+
+        byte[] bytes = ZarrCodec.ZLIB.decode(ZarrCodec.ZLIB.encode(expectedBytes), expectedBytes.length);
+
+        Assertions.assertArrayEquals(expectedBytes, bytes);
+    }
+
+    @Test
+    void Check_Gzip_Bytes_Decoded() throws IOException {
+        byte[] expectedBytes = createSampleBytes();
+
+        byte[] bytes = ZarrCodec.GZIP.decode(ZarrCodec.GZIP.encode(expectedBytes), expectedBytes.length);
+
+        Assertions.assertArrayEquals(expectedBytes, bytes);
+    }
+
+    @Test
+    void Check_Blosc_Bytes_Decoded() throws IOException {
+        byte[] expectedBytes = createSampleBytes();
+
+        byte[] bytes = ZarrCodec.BLOSC_LZ4.decode(ZarrCodec.BLOSC_LZ4.encode(expectedBytes), expectedBytes.length);
+
+        Assertions.assertArrayEquals(expectedBytes, bytes);
+    }
+
+    @Test
+    void Check_Blosc_Bytes_Decoded_By_Other_Blosc_Codec() throws IOException {
+        byte[] expectedBytes = createSampleBytes();
+
+        byte[] bytes = ZarrCodec.BLOSC_LZ4.decode(ZarrCodec.BLOSC_ZSTD.encode(expectedBytes), expectedBytes.length);
+
+        Assertions.assertArrayEquals(expectedBytes, bytes);
+    }
+
+    @Test
+    void Check_Bytes_Encoded_To_Stream_Decoded() throws IOException {
+        byte[] expectedBytes = createSampleBytes();
+
+        for (ZarrCodec codec: ZarrCodec.values()) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            codec.encode(expectedBytes, outputStream, ZarrCodec.DEFAULT_LEVEL);
+
+            byte[] bytes = codec.decode(outputStream.toByteArray(), expectedBytes.length);
+
+            Assertions.assertArrayEquals(expectedBytes, bytes);
+        }
+    }
+
+    @Test
+    void Check_Zlib_Bytes_Encoded_Several_Times_By_Same_Thread() throws IOException {
+        byte[] expectedBytes = createSampleBytes();
+        byte[] firstEncodedBytes = ZarrCodec.ZLIB.encode(expectedBytes);
+
+        byte[] secondEncodedBytes = ZarrCodec.ZLIB.encode(expectedBytes);
+
+        Assertions.assertArrayEquals(firstEncodedBytes, secondEncodedBytes);
+    }
+
+    @Test
+    void Check_Zlib_Bytes_Compressed() throws IOException {
+        byte[] bytes = new byte[10000];
+
+        byte[] compressedBytes = ZarrCodec.ZLIB.encode(bytes);
+
+        Assertions.assertTrue(compressedBytes.length < bytes.length);
+    }
+
+    @Test
+    void Check_Higher_Level_Gives_Smaller_Bytes() throws IOException {
+        byte[] bytes = createSampleBytes();
+
+        byte[] fastestBytes = ZarrCodec.ZLIB.encode(bytes, ZarrCodec.MIN_LEVEL);
+        byte[] smallestBytes = ZarrCodec.ZLIB.encode(bytes, ZarrCodec.MAX_LEVEL);
+
+        Assertions.assertTrue(smallestBytes.length <= fastestBytes.length);
+    }
+
+    @Test
+    void Check_Bytes_Encoded_With_Level_Decoded() throws IOException {
+        byte[] expectedBytes = createSampleBytes();
+
+        byte[] bytes = ZarrCodec.GZIP.decode(ZarrCodec.GZIP.encode(expectedBytes, ZarrCodec.MAX_LEVEL), expectedBytes.length);
+
+        Assertions.assertArrayEquals(expectedBytes, bytes);
+    }
+
+    @Test
+    void Check_Level_Too_Low() {
+        byte[] bytes = createSampleBytes();
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ZarrCodec.ZLIB.encode(bytes, ZarrCodec.MIN_LEVEL - 1));
+    }
+
+    @Test
+    void Check_Level_Too_High() {
+        byte[] bytes = createSampleBytes();
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ZarrCodec.ZLIB.encode(bytes, ZarrCodec.MAX_LEVEL + 1));
+    }
+
+    @Test
+    void Check_Level_From_Json() {
+        int expectedLevel = 7;
+
+        int level = ZarrCodec.levelFromJson(ZarrCodec.ZLIB.toJson(expectedLevel));
+
+        Assertions.assertEquals(expectedLevel, level);
+    }
+
+    @Test
+    void Check_Default_Level_From_Json_Without_Level() {
+        int level = ZarrCodec.levelFromJson(ZarrCodec.NONE.toJson());
+
+        Assertions.assertEquals(ZarrCodec.DEFAULT_LEVEL, level);
+    }
+
+    @Test
+    void Check_Decoding_With_Wrong_Length() throws IOException {
+        byte[] bytes = createSampleBytes();
+        byte[] compressedBytes = ZarrCodec.ZLIB.encode(bytes);
+
+        Assertions.assertThrows(IOException.class, () -> ZarrCodec.ZLIB.decode(compressedBytes, bytes.length + 1));
+    }
+
+    @Test
+    void Check_Codec_From_Json() {
+        for (ZarrCodec expectedCodec: ZarrCodec.values()) {
+            ZarrCodec codec = ZarrCodec.fromJson(expectedCodec.toJson());
+
+            Assertions.assertEquals(expectedCodec, codec);
+        }
+    }
+
+    @Test
+    void Check_Codec_From_Codec_Json() {
+        for (ZarrCodec expectedCodec: ZarrCodec.values()) {
+            ZarrCodec codec = ZarrCodec.fromCodecJson(expectedCodec.toCodecJson(ZarrCodec.DEFAULT_LEVEL));
+
+            Assertions.assertEquals(expectedCodec, codec);
+        }
+    }
+
+    @Test
+    void Check_Level_From_Codec_Json() {
+        int expectedLevel = 2;
+
+        int level = ZarrCodec.levelFromJson(ZarrCodec.ZLIB.toCodecJson(expectedLevel).get("configuration"));
+
+        Assertions.assertEquals(expectedLevel, level);
+    }
+
+    @Test
+    void Check_Blosc_Codec_From_Json_Of_Jzarr() {
+        // The compressor written by QuPath's OME-Zarr writer
+        JsonObject compressor = new JsonObject();
+        compressor.addProperty("blocksize", 0);
+        compressor.addProperty("clevel", 5);
+        compressor.addProperty("cname", "lz4");
+        compressor.addProperty("id", "blosc");
+        compressor.addProperty("shuffle", 1);
+
+        ZarrCodec codec = ZarrCodec.fromJson(compressor);
+
+        Assertions.assertEquals(ZarrCodec.BLOSC_LZ4, codec);
+    }
+
+    @Test
+    void Check_Level_From_Blosc_Json() {
+        int expectedLevel = 3;
+
+        int level = ZarrCodec.levelFromJson(ZarrCodec.BLOSC_ZSTD.toJson(expectedLevel));
+
+        Assertions.assertEquals(expectedLevel, level);
+    }
+
+    @Test
+    void Check_Unsupported_Codec_From_Json() {
+        JsonObject compressor = new JsonObject();
+        compressor.addProperty("id", "lzma");
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ZarrCodec.fromJson(compressor));
+    }
+
+    private static byte[] createSampleBytes() {
+        byte[] bytes = new byte[1000];
+        for (int i=0; i<bytes.length; i++) {
+            bytes[i] = (byte) (i % 7);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,132 @@
+package qupath.ext.stitching.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import qupath.ext.stitching.Utils;
+import qupath.lib.images.servers.ImageServerMetadata;
+import qupath.lib.images.servers.WrappedBufferedImageServer;
+
+import java.awt.Color;
+import java.nio.file.Files;
+import java.util.BitSet;
+
+public class TestZarrPartitioning {
+
+    @Test
+    void Check_Number_Of_Partitions_Less_Than_One() throws Exception {
+        OmeZarrStore store = createStore(32, 32, 4, 1);
+        BitSet coveredChunks = getAllChunks(store);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ZarrPartitioning(store, coveredChunks, 0));
+
+        Utils.deleteFileOrDirectoryRecursively(store.getPath().getParent().toFile());
+    }
+
+    @Test
+    void Check_Partitions_Disjoint() throws Exception {
+        OmeZarrStore store = createStore(32, 32, 4, 1);
+        ZarrPartitioning partitioning = new ZarrPartitioning(store, getAllChunks(store), 3);
+
+        boolean disjoint = !partitioning.getChunks(0).intersects(partitioning.getChunks(1)) &&
+                !partitioning.getChunks(0).intersects(partitioning.getChunks(2)) &&
+                !partitioning.getChunks(1).intersects(partitioning.getChunks(2));
+
+        Assertions.assertTrue(disjoint);
+
+        Utils.deleteFileOrDirectoryRecursively(store.getPath().getParent().toFile());
+    }
+
+    @Test
+    void Check_Partitions_Contain_All_Chunks() throws Exception {
+        OmeZarrStore store = createStore(36, 28, 4, 1);
+        BitSet expectedChunks = getAllChunks(store);
+        ZarrPartitioning partitioning = new ZarrPartitioning(store, expectedChunks, 3);
+
+        BitSet chunks = new BitSet();
+        for (int partition=0; partition<partitioning.getNumberOfPartitions(); partition++) {
+            chunks.or(partitioning.getChunks(partition));
+        }
+
+        Assertions.assertEquals(expectedChunks, chunks);
+
+        Utils.deleteFileOrDirectoryRecursively(store.getPath().getParent().toFile());
+    }
+
+    @Test
+    void Check_Partition_Level() throws Exception {
+        OmeZarrStore store = createStore(64, 64, 4, 1);
+        // Blocks of 4x4 chunks give 16 blocks, at least 4 per partition
+        int expectedPartitionLevel = 1;
+
+        int partitionLevel = new ZarrPartitioning(store, getAllChunks(store), 2).getPartitionLevel();
+
+        Assertions.assertEquals(expectedPartitionLevel, partitionLevel);
+
+        Utils.deleteFileOrDirectoryRecursively(store.getPath().getParent().toFile());
+    }
+
+    @Test
+    void Check_Partitions_Aligned_With_Shards() throws Exception {
+        OmeZarrStore store = createStore(32, 32, 1, 2);
+        ZarrPartitioning partitioning = new ZarrPartitioning(store, getAllChunks(store), 4);
+
+        boolean aligned = true;
+        for (int partition=0; partition<partitioning.getNumberOfPartitions(); partition++) {
+            BitSet chunks = partitioning.getChunks(partition);
+
+            for (int shardY=0; shardY<4; shardY++) {
+                for (int shardX=0; shardX<4; shardX++) {
+                    int firstChunk = 2 * shardY * 8 + 2 * shardX;
+                    boolean firstChunkInPartition = chunks.get(firstChunk);
+
+                    aligned &= chunks.get(firstChunk + 1) == firstChunkInPartition &&
+                            chunks.get(firstChunk + 8) == firstChunkInPartition &&
+                            chunks.get(firstChunk + 9) == firstChunkInPartition;
+                }
+            }
+        }
+
+        Assertions.assertTrue(aligned);
+
+        Utils.deleteFileOrDirectoryRecursively(store.getPath().getParent().toFile());
+    }
+
+    @Test
+    void Check_Partitions_Balanced_With_Covered_Chunks() throws Exception {
+        OmeZarrStore store = createStore(32, 32, 1, 1);
+        // Only the left half of the image is covered
+        BitSet coveredChunks = new BitSet();
+        for (int chunkY=0; chunkY<8; chunkY++) {
+            coveredChunks.set(chunkY * 8, chunkY * 8 + 4);
+        }
+        ZarrPartitioning partitioning = new ZarrPartitioning(store, coveredChunks, 2);
+
+        BitSet coveredChunksOfFirstPartition = partitioning.getChunks(0);
+        coveredChunksOfFirstPartition.and(coveredChunks);
+        BitSet coveredChunksOfSecondPartition = partitioning.getChunks(1);
+        coveredChunksOfSecondPartition.and(coveredChunks);
+
+        Assertions.assertEquals(coveredChunksOfFirstPartition.cardinality(), coveredChunksOfSecondPartition.cardinality());
+
+        Utils.deleteFileOrDirectoryRecursively(store.getPath().getParent().toFile());
+    }
+
+    private static OmeZarrStore createStore(int width, int height, int nLevels, int shardSize) throws Exception {
+        ImageServerMetadata metadata;
+        try (WrappedBufferedImageServer server = new WrappedBufferedImageServer("", ImageUtils.createSampleImage(width, height, Color.WHITE))) {
+            metadata = server.getMetadata();
+        }
+
+        return new OmeZarrStore.Builder(Files.createTempDirectory(null).resolve("image.ome.zarr"), metadata)
+                .numberOfLevels(nLevels)
+                .chunkSize(4, 4)
+                .shardSize(shardSize)
+                .build();
+    }
+
+    private static BitSet getAllChunks(OmeZarrStore store) {
+        BitSet chunks = new BitSet();
+        chunks.set(0, store.getNumberOfChunksX(0) * store.getNumberOfChunksY(0));
+        return chunks;
+    }
+}
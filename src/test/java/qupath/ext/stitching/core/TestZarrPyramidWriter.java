@@ -0,0 +1,427 @@
+package qupath.ext.stitching.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import qupath.ext.stitching.Utils;
+import qupath.lib.images.servers.ImageServer;
+import qupath.lib.images.servers.WrappedBufferedImageServer;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.List;
+
+public class TestZarrPyramidWriter {
+
+    @Test
+    void Check_All_Chunks() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        StitchedImageServer server = createServer(
+                List.of(ImageUtils.createSampleImage(3, 3, Color.RED)),
+                new TileLayout(new int[] {0}, new int[] {0}, new int[] {3}, new int[] {3})
+        );
+        OmeZarrStore store = new OmeZarrStore.Builder(path, server.getMetadata()).chunkSize(2, 2).build();
+        BitSet expectedChunks = new BitSet();
+        expectedChunks.set(0, 4);
+
+        BitSet chunks = new ZarrPyramidWriter.Builder(server, store).numberOfThreads(1).build().getAllChunks();
+
+        Assertions.assertEquals(expectedChunks, chunks);
+
+        server.close();
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Chunks_Covered_By_Inputs() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        StitchedImageServer server = createServer(
+                List.of(ImageUtils.createSampleImage(2, 2, Color.RED)),
+                new TileLayout(new int[] {0}, new int[] {0}, new int[] {2}, new int[] {2})
+        );
+        OmeZarrStore store = new OmeZarrStore.Builder(path, createMetadataServer(6, 6).getMetadata())
+                .chunkSize(2, 2)
+                .build();
+        BitSet expectedChunks = new BitSet();
+        expectedChunks.set(4);
+        expectedChunks.set(5);
+        expectedChunks.set(7);
+        expectedChunks.set(8);
+
+        ZarrPyramidWriter writer = new ZarrPyramidWriter.Builder(server, store).offset(3, 3).numberOfThreads(1).build();
+
+        BitSet chunks = writer.getChunksCoveredByInputs();
+
+        Assertions.assertEquals(expectedChunks, chunks);
+
+        server.close();
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Full_Resolution_Level_Written() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        StitchedImageServer server = createServer(
+                List.of(ImageUtils.createSampleImage(4, 4, Color.RED), ImageUtils.createSampleImage(4, 4, Color.BLUE)),
+                new TileLayout(new int[] {0, 4}, new int[] {0, 0}, new int[] {4, 4}, new int[] {4, 4})
+        );
+        OmeZarrStore store = new OmeZarrStore.Builder(path, server.getMetadata())
+                .numberOfLevels(2)
+                .chunkSize(4, 4)
+                .build();
+        ZarrPyramidWriter writer = new ZarrPyramidWriter.Builder(server, store).numberOfThreads(2).build();
+        BufferedImage expectedImage = ImageUtils.createSampleImage(4, 4, Color.BLUE);
+
+        writer.write(writer.getAllChunks(), false, null, null);
+
+        BufferedImage image = new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+        store.readChunk(0, 0, 0, 1, 0, image.getRaster());
+        ImageUtils.assertRgbBufferedImagesEqual(expectedImage, image);
+
+        server.close();
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Downsampled_Level_Written() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        StitchedImageServer server = createServer(
+                List.of(ImageUtils.createSampleImage(4, 4, Color.RED), ImageUtils.createSampleImage(4, 4, Color.BLUE)),
+                new TileLayout(new int[] {0, 4}, new int[] {0, 0}, new int[] {4, 4}, new int[] {4, 4})
+        );
+        OmeZarrStore store = new OmeZarrStore.Builder(path, server.getMetadata())
+                .numberOfLevels(2)
+                .chunkSize(4, 4)
+                .build();
+        ZarrPyramidWriter writer = new ZarrPyramidWriter.Builder(server, store).numberOfThreads(2).build();
+        BufferedImage expectedImage = new BufferedImage(2, 1, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = expectedImage.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, 1, 1);
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(1, 0, 1, 1);
+        graphics.dispose();
+
+        writer.write(writer.getAllChunks(), false, null, null);
+
+        BufferedImage image = new BufferedImage(2, 1, BufferedImage.TYPE_INT_RGB);
+        store.readChunk(1, 0, 0, 0, 0, image.getRaster());
+        ImageUtils.assertRgbBufferedImagesEqual(expectedImage, image);
+
+        server.close();
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Lowest_Resolution_Level_Written() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        StitchedImageServer server = createServer(
+                List.of(ImageUtils.createSampleImage(8, 16, Color.RED), ImageUtils.createSampleImage(8, 16, Color.BLUE)),
+                new TileLayout(new int[] {0, 8}, new int[] {0, 0}, new int[] {8, 8}, new int[] {16, 16})
+        );
+        OmeZarrStore store = new OmeZarrStore.Builder(path, server.getMetadata())
+                .numberOfLevels(3)
+                .chunkSize(4, 4)
+                .build();
+        ZarrPyramidWriter writer = new ZarrPyramidWriter.Builder(server, store).numberOfThreads(3).build();
+        BufferedImage expectedImage = new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = expectedImage.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, 1, 2);
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(1, 0, 1, 2);
+        graphics.dispose();
+
+        writer.write(writer.getAllChunks(), false, null, null);
+
+        BufferedImage image = new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB);
+        store.readChunk(2, 0, 0, 0, 0, image.getRaster());
+        ImageUtils.assertRgbBufferedImagesEqual(expectedImage, image);
+
+        server.close();
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Downsampled_Level_Written_With_Children_Already_Written() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        StitchedImageServer server = createServer(
+                List.of(ImageUtils.createSampleImage(4, 4, Color.RED), ImageUtils.createSampleImage(4, 4, Color.BLUE)),
+                new TileLayout(new int[] {0, 4}, new int[] {0, 0}, new int[] {4, 4}, new int[] {4, 4})
+        );
+        OmeZarrStore store = new OmeZarrStore.Builder(path, server.getMetadata())
+                .numberOfLevels(2)
+                .chunkSize(4, 4)
+                .build();
+        ZarrPyramidWriter writer = new ZarrPyramidWriter.Builder(server, store).numberOfThreads(2).build();
+        ZarrChunkJournal journal = ZarrChunkJournal.create(
+                store,
+                ZarrChunkJournal.computeFingerprint(server.getLayout(), server.getURIs(), server.getBlendingMode(), server.getShadingCorrection(), store)
+        );
+        store.writeChunk(0, 0, 0, 0, 0, ImageUtils.createSampleImage(4, 4, Color.RED).getRaster());
+        journal.markWritten(0, 0, 0, 0, 0);
+        BufferedImage expectedImage = new BufferedImage(2, 1, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = expectedImage.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, 1, 1);
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(1, 0, 1, 1);
+        graphics.dispose();
+
+        writer.write(writer.getAllChunks(), false, journal, null);
+
+        BufferedImage image = new BufferedImage(2, 1, BufferedImage.TYPE_INT_RGB);
+        store.readChunk(1, 0, 0, 0, 0, image.getRaster());
+        ImageUtils.assertRgbBufferedImagesEqual(expectedImage, image);
+
+        journal.close();
+        server.close();
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Inputs_Drawn_On_Existing_Chunks() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        StitchedImageServer firstServer = createServer(
+                List.of(ImageUtils.createSampleImage(4, 2, Color.RED)),
+                new TileLayout(new int[] {0}, new int[] {0}, new int[] {4}, new int[] {2})
+        );
+        OmeZarrStore store = new OmeZarrStore.Builder(path, firstServer.getMetadata()).chunkSize(4, 4).build();
+        ZarrPyramidWriter firstWriter = new ZarrPyramidWriter.Builder(firstServer, store).numberOfThreads(1).build();
+        firstWriter.write(firstWriter.getAllChunks(), false, null, null);
+        StitchedImageServer secondServer = createServer(
+                List.of(ImageUtils.createSampleImage(2, 2, Color.BLUE)),
+                new TileLayout(new int[] {0}, new int[] {0}, new int[] {2}, new int[] {2})
+        );
+        ZarrPyramidWriter secondWriter = new ZarrPyramidWriter.Builder(secondServer, store)
+                .offset(2, 0)
+                .numberOfThreads(1)
+                .build();
+        BufferedImage expectedImage = new BufferedImage(4, 2, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = expectedImage.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, 2, 2);
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(2, 0, 2, 2);
+        graphics.dispose();
+
+        secondWriter.write(secondWriter.getChunksCoveredByInputs(), true, null, null);
+
+        BufferedImage image = new BufferedImage(4, 2, BufferedImage.TYPE_INT_RGB);
+        store.readChunk(0, 0, 0, 0, 0, image.getRaster());
+        ImageUtils.assertRgbBufferedImagesEqual(expectedImage, image);
+
+        firstServer.close();
+        secondServer.close();
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Chunks_Recorded_In_Journal_Not_Written() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        StitchedImageServer server = createServer(
+                List.of(ImageUtils.createSampleImage(2, 2, Color.RED), ImageUtils.createSampleImage(2, 2, Color.BLUE)),
+                new TileLayout(new int[] {0, 2}, new int[] {0, 0}, new int[] {2, 2}, new int[] {2, 2})
+        );
+        OmeZarrStore store = new OmeZarrStore.Builder(path, server.getMetadata()).chunkSize(2, 2).build();
+        ZarrPyramidWriter writer = new ZarrPyramidWriter.Builder(server, store).numberOfThreads(1).build();
+        ZarrChunkJournal journal = ZarrChunkJournal.create(
+                store,
+                ZarrChunkJournal.computeFingerprint(server.getLayout(), server.getURIs(), server.getBlendingMode(), server.getShadingCorrection(), store)
+        );
+        journal.markWritten(0, 0, 0, 1, 0);
+
+        writer.write(writer.getAllChunks(), false, journal, null);
+
+        Assertions.assertFalse(store.readChunk(0, 0, 0, 1, 0, new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB).getRaster()));
+
+        journal.close();
+        server.close();
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Written_Chunks_Recorded_In_Journal() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        StitchedImageServer server = createServer(
+                List.of(ImageUtils.createSampleImage(4, 4, Color.RED), ImageUtils.createSampleImage(4, 4, Color.BLUE)),
+                new TileLayout(new int[] {0, 4}, new int[] {0, 0}, new int[] {4, 4}, new int[] {4, 4})
+        );
+        OmeZarrStore store = new OmeZarrStore.Builder(path, server.getMetadata())
+                .numberOfLevels(2)
+                .chunkSize(4, 4)
+                .build();
+        ZarrPyramidWriter writer = new ZarrPyramidWriter.Builder(server, store).numberOfThreads(1).build();
+        ZarrChunkJournal journal = ZarrChunkJournal.create(
+                store,
+                ZarrChunkJournal.computeFingerprint(server.getLayout(), server.getURIs(), server.getBlendingMode(), server.getShadingCorrection(), store)
+        );
+        int expectedNumberOfWrittenChunks = 3;
+
+        writer.write(writer.getAllChunks(), false, journal, null);
+
+        Assertions.assertEquals(expectedNumberOfWrittenChunks, journal.getNumberOfWrittenChunks());
+
+        journal.close();
+        server.close();
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Uncovered_Chunks_Not_Written() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        StitchedImageServer server = createServer(
+                List.of(ImageUtils.createSampleImage(2, 2, Color.RED), ImageUtils.createSampleImage(2, 2, Color.BLUE)),
+                new TileLayout(new int[] {0, 4}, new int[] {0, 4}, new int[] {2, 2}, new int[] {2, 2})
+        );
+        OmeZarrStore store = new OmeZarrStore.Builder(path, server.getMetadata()).chunkSize(2, 2).build();
+        ZarrPyramidWriter writer = new ZarrPyramidWriter.Builder(server, store).numberOfThreads(2).build();
+
+        writer.write(writer.getChunksCoveredByInputs(), false, null, null);
+
+        Assertions.assertFalse(store.readChunk(0, 0, 0, 1, 0, new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB).getRaster()));
+
+        server.close();
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Downsampled_Level_Written_With_Uncovered_Children() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        StitchedImageServer server = createServer(
+                List.of(ImageUtils.createSampleImage(4, 4, Color.RED), ImageUtils.createSampleImage(4, 4, Color.BLUE)),
+                new TileLayout(new int[] {0, 16}, new int[] {0, 16}, new int[] {4, 4}, new int[] {4, 4})
+        );
+        OmeZarrStore store = new OmeZarrStore.Builder(path, server.getMetadata())
+                .numberOfLevels(2)
+                .chunkSize(4, 4)
+                .build();
+        ZarrPyramidWriter writer = new ZarrPyramidWriter.Builder(server, store).numberOfThreads(2).build();
+        BufferedImage expectedImage = new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = expectedImage.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, 1, 1);
+        graphics.dispose();
+
+        writer.write(writer.getChunksCoveredByInputs(), false, null, null);
+
+        BufferedImage image = new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+        store.readChunk(1, 0, 0, 0, 0, image.getRaster());
+        ImageUtils.assertRgbBufferedImagesEqual(expectedImage, image);
+
+        server.close();
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Sharded_Store_Complete_Without_Uncovered_Chunks() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        StitchedImageServer server = createServer(
+                List.of(ImageUtils.createSampleImage(2, 2, Color.RED), ImageUtils.createSampleImage(2, 2, Color.BLUE)),
+                new TileLayout(new int[] {0, 4}, new int[] {0, 4}, new int[] {2, 2}, new int[] {2, 2})
+        );
+        OmeZarrStore store = new OmeZarrStore.Builder(path, server.getMetadata()).chunkSize(2, 2).shardSize(2).build();
+        ZarrPyramidWriter writer = new ZarrPyramidWriter.Builder(server, store).numberOfThreads(2).build();
+        BitSet expectedChunks = writer.getChunksCoveredByInputs();
+
+        writer.write(writer.getChunksCoveredByInputs(), false, null, null);
+
+        // The store is not closed, so the chunks are only saved if their shards were completed
+        Assertions.assertEquals(expectedChunks, OmeZarrStore.open(path).getSavedChunks(0, 0, 0));
+
+        store.close();
+        server.close();
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Levels_Above_Max_Level_Not_Written() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        StitchedImageServer server = createServer(
+                List.of(ImageUtils.createSampleImage(4, 4, Color.RED), ImageUtils.createSampleImage(4, 4, Color.BLUE)),
+                new TileLayout(new int[] {0, 4}, new int[] {0, 0}, new int[] {4, 4}, new int[] {4, 4})
+        );
+        OmeZarrStore store = new OmeZarrStore.Builder(path, server.getMetadata())
+                .numberOfLevels(2)
+                .chunkSize(4, 4)
+                .build();
+        ZarrPyramidWriter writer = new ZarrPyramidWriter.Builder(server, store).numberOfThreads(2).build();
+
+        writer.write(writer.getAllChunks(), 0, 0, false, null, null);
+
+        Assertions.assertFalse(store.readChunk(1, 0, 0, 0, 0, new BufferedImage(2, 1, BufferedImage.TYPE_INT_RGB).getRaster()));
+
+        server.close();
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Downsampled_Level_Written_From_Chunks_Of_Store() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        StitchedImageServer server = createServer(
+                List.of(ImageUtils.createSampleImage(4, 4, Color.RED), ImageUtils.createSampleImage(4, 4, Color.BLUE)),
+                new TileLayout(new int[] {0, 4}, new int[] {0, 0}, new int[] {4, 4}, new int[] {4, 4})
+        );
+        OmeZarrStore store = new OmeZarrStore.Builder(path, server.getMetadata())
+                .numberOfLevels(2)
+                .chunkSize(4, 4)
+                .build();
+        ZarrPyramidWriter writer = new ZarrPyramidWriter.Builder(server, store).numberOfThreads(2).build();
+        // The full resolution chunks contain different pixels than the input images, to check that they are not redrawn
+        store.writeChunk(0, 0, 0, 0, 0, ImageUtils.createSampleImage(4, 4, Color.GREEN).getRaster());
+        store.writeChunk(0, 0, 0, 1, 0, ImageUtils.createSampleImage(4, 4, Color.GREEN).getRaster());
+        BufferedImage expectedImage = ImageUtils.createSampleImage(2, 1, Color.GREEN);
+
+        writer.write(writer.getChunksCoveredByInputs(1), 1, 1, false, null, null);
+
+        BufferedImage image = new BufferedImage(2, 1, BufferedImage.TYPE_INT_RGB);
+        store.readChunk(1, 0, 0, 0, 0, image.getRaster());
+        ImageUtils.assertRgbBufferedImagesEqual(expectedImage, image);
+
+        server.close();
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Invalid_Levels_To_Write() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("image.ome.zarr");
+        StitchedImageServer server = createServer(
+                List.of(ImageUtils.createSampleImage(4, 4, Color.RED)),
+                new TileLayout(new int[] {0}, new int[] {0}, new int[] {4}, new int[] {4})
+        );
+        OmeZarrStore store = new OmeZarrStore.Builder(path, server.getMetadata())
+                .numberOfLevels(2)
+                .chunkSize(4, 4)
+                .build();
+        ZarrPyramidWriter writer = new ZarrPyramidWriter.Builder(server, store).numberOfThreads(2).build();
+
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> writer.write(writer.getAllChunks(), 1, 0, false, null, null)
+        );
+
+        server.close();
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    private static StitchedImageServer createServer(List<BufferedImage> images, TileLayout layout) throws IOException {
+        List<ImageServer<BufferedImage>> inputs = images.stream()
+                .map(image -> (ImageServer<BufferedImage>) new WrappedBufferedImageServer("", image))
+                .toList();
+
+        return new StitchedImageServer.Builder(
+                inputs.stream().map(InputDescriptor::of).toList(),
+                new InputServerPool(inputs::get, inputs.size()),
+                layout
+        )
+                .build();
+    }
+
+    private static ImageServer<BufferedImage> createMetadataServer(int width, int height) {
+        return new WrappedBufferedImageServer("", ImageUtils.createSampleImage(width, height, Color.WHITE));
+    }
+}
@@ -0,0 +1,141 @@
+package qupath.ext.stitching.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+
+public class TestZarrShard {
+
+    @Test
+    void Check_Chunks_Read_After_Write() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("shard");
+        byte[] expectedChunk = new byte[] {4, 5};
+        try (ZarrShard shard = ZarrShard.open(path, 4, 4)) {
+            shard.write(new int[] {1, 3}, ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5}), new int[] {3, 2});
+
+            byte[] chunk = shard.read(3);
+
+            Assertions.assertArrayEquals(expectedChunk, chunk);
+        }
+
+        Files.delete(path);
+        Files.delete(path.getParent());
+    }
+
+    @Test
+    void Check_Chunk_Read_From_Closed_Shard() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("shard");
+        byte[] expectedChunk = new byte[] {1, 2, 3};
+        try (ZarrShard shard = ZarrShard.open(path, 4, 4)) {
+            shard.write(new int[] {1, 3}, ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5}), new int[] {3, 2});
+        }
+
+        byte[] chunk = ZarrShard.readChunk(path, 1, 4);
+
+        Assertions.assertArrayEquals(expectedChunk, chunk);
+
+        Files.delete(path);
+        Files.delete(path.getParent());
+    }
+
+    @Test
+    void Check_Missing_Chunk_Not_Read() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("shard");
+        try (ZarrShard shard = ZarrShard.open(path, 4, 4)) {
+            shard.write(new int[] {1}, ByteBuffer.wrap(new byte[] {1, 2, 3}), new int[] {3});
+        }
+
+        byte[] chunk = ZarrShard.readChunk(path, 0, 4);
+
+        Assertions.assertNull(chunk);
+
+        Files.delete(path);
+        Files.delete(path.getParent());
+    }
+
+    @Test
+    void Check_Shard_Closed_When_Complete() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("shard");
+        ZarrShard shard = ZarrShard.open(path, 4, 2);
+        shard.write(new int[] {0}, ByteBuffer.wrap(new byte[] {1}), new int[] {1});
+
+        boolean complete = shard.write(new int[] {2}, ByteBuffer.wrap(new byte[] {2}), new int[] {1});
+
+        Assertions.assertTrue(complete);
+        Assertions.assertThrows(
+                IllegalStateException.class,
+                () -> shard.write(new int[] {3}, ByteBuffer.wrap(new byte[] {3}), new int[] {1})
+        );
+
+        Files.delete(path);
+        Files.delete(path.getParent());
+    }
+
+    @Test
+    void Check_Chunks_Not_Present_Before_Index_Written() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("shard");
+        ZarrShard shard = ZarrShard.open(path, 4, 4);
+        shard.write(new int[] {0, 1}, ByteBuffer.wrap(new byte[] {1, 2}), new int[] {1, 1});
+
+        BitSet chunks = ZarrShard.getChunksPresent(path, 4);
+
+        Assertions.assertTrue(chunks.isEmpty());
+
+        shard.close();
+        Files.delete(path);
+        Files.delete(path.getParent());
+    }
+
+    @Test
+    void Check_Chunks_Present_After_Index_Written() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("shard");
+        try (ZarrShard shard = ZarrShard.open(path, 4, 4)) {
+            shard.write(new int[] {0, 2}, ByteBuffer.wrap(new byte[] {1, 2}), new int[] {1, 1});
+        }
+        BitSet expectedChunks = new BitSet();
+        expectedChunks.set(0);
+        expectedChunks.set(2);
+
+        BitSet chunks = ZarrShard.getChunksPresent(path, 4);
+
+        Assertions.assertEquals(expectedChunks, chunks);
+
+        Files.delete(path);
+        Files.delete(path.getParent());
+    }
+
+    @Test
+    void Check_Existing_Chunks_Kept_After_Reopening() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("shard");
+        try (ZarrShard shard = ZarrShard.open(path, 4, 4)) {
+            shard.write(new int[] {0, 1}, ByteBuffer.wrap(new byte[] {1, 2}), new int[] {1, 1});
+        }
+        byte[] expectedChunk = new byte[] {1};
+
+        try (ZarrShard shard = ZarrShard.open(path, 4, 4)) {
+            shard.write(new int[] {1}, ByteBuffer.wrap(new byte[] {3}), new int[] {1});
+        }
+
+        Assertions.assertArrayEquals(expectedChunk, ZarrShard.readChunk(path, 0, 4));
+
+        Files.delete(path);
+        Files.delete(path.getParent());
+    }
+
+    @Test
+    void Check_Shard_Without_Valid_Index_Emptied_When_Opened() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("shard");
+        Files.write(path, new byte[100]);
+
+        try (ZarrShard shard = ZarrShard.open(path, 4, 4)) {
+            Assertions.assertNull(shard.read(0));
+        }
+
+        Files.delete(path);
+        Files.delete(path.getParent());
+    }
+}
@@ -2,6 +2,9 @@ package qupath.ext.stitching.core.positionfinders;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import qupath.ext.stitching.Utils;
+import qupath.ext.stitching.core.ImageUtils;
+import qupath.ext.stitching.core.InputProbe;
 import qupath.lib.images.servers.AbstractTileableImageServer;
 import qupath.lib.images.servers.ImageServerBuilder;
 import qupath.lib.images.servers.ImageServerMetadata;
@@ -9,6 +12,8 @@ import qupath.lib.images.servers.TileRequest;
 
 import java.awt.image.BufferedImage;
 import java.net.URI;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collection;
 import java.util.List;
@@ -140,6 +145,70 @@ public class TestFilenamePatternPositionFinder {
         server.close();
     }
 
+    @Test
+    void Check_Probing_Supported() {
+        PositionFinder positionFinder = new FilenamePatternPositionFinder(
+                Pattern.compile("\\[([\\d.]+),([\\d.]+)]"),
+                FilenamePatternPositionFinder.Unit.PIXEL
+        );
+
+        boolean probingSupported = positionFinder.supportsProbing();
+
+        Assertions.assertTrue(probingSupported);
+    }
+
+    @Test
+    void Check_Position_With_Probe_When_Pixel_Unit() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("file[234.2344,587].tiff");
+        ImageUtils.writeTiffHeader(path, ByteOrder.LITTLE_ENDIAN, false, 2, 3, 1, 1, 0, 0);
+        int[] expectedPosition = new int[] {234, 587};
+        PositionFinder positionFinder = new FilenamePatternPositionFinder(
+                Pattern.compile("\\[([\\d.]+),([\\d.]+)]"),
+                FilenamePatternPositionFinder.Unit.PIXEL
+        );
+
+        int[] position = positionFinder.findProbedPosition(InputProbe.probe(path.toString()));
+
+        Assertions.assertArrayEquals(expectedPosition, position);
+
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Position_With_Probe_When_Calibrated_Unit() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("file[234.2344,587].tiff");
+        // Without the "ResolutionUnit" tag, resolutions are in pixels per inch, so these correspond to 2 and 10 micrometers
+        ImageUtils.writeTiffHeader(path, ByteOrder.LITTLE_ENDIAN, false, 2, 3, 12700, 2540, 0, 0);
+        int[] expectedPosition = new int[] {Math.round(234.2344f / 2f), Math.round(587f / 10f)};
+        PositionFinder positionFinder = new FilenamePatternPositionFinder(
+                Pattern.compile("\\[([\\d.]+),([\\d.]+)]"),
+                FilenamePatternPositionFinder.Unit.CALIBRATED
+        );
+
+        int[] position = positionFinder.findProbedPosition(InputProbe.probe(path.toString()));
+
+        Assertions.assertArrayEquals(expectedPosition, position);
+
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
+    @Test
+    void Check_Position_With_Probe_When_Grid_Unit() throws Exception {
+        Path path = Files.createTempDirectory(null).resolve("file[4,23].tiff");
+        ImageUtils.writeTiffHeader(path, ByteOrder.LITTLE_ENDIAN, false, 2, 3, 1, 1, 0, 0);
+        int[] expectedPosition = new int[] {4 * 2, 23 * 3};
+        PositionFinder positionFinder = new FilenamePatternPositionFinder(
+                Pattern.compile("\\[([\\d.]+),([\\d.]+)]"),
+                FilenamePatternPositionFinder.Unit.GRID
+        );
+
+        int[] position = positionFinder.findProbedPosition(InputProbe.probe(path.toString()));
+
+        Assertions.assertArrayEquals(expectedPosition, position);
+
+        Utils.deleteFileOrDirectoryRecursively(path.getParent().toFile());
+    }
+
     private static class SampleImageServer extends AbstractTileableImageServer {
 
         private final List<URI> uris;
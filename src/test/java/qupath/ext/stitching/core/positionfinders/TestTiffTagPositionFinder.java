@@ -3,6 +3,7 @@ package qupath.ext.stitching.core.positionfinders;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import qupath.ext.stitching.core.ImageUtils;
+import qupath.ext.stitching.core.InputProbe;
 import qupath.lib.images.servers.AbstractTileableImageServer;
 import qupath.lib.images.servers.ImageServerBuilder;
 import qupath.lib.images.servers.ImageServerMetadata;
@@ -77,6 +78,47 @@ public class TestTiffTagPositionFinder {
 
     }
 
+    @Test
+    void Check_Position_With_Probe() throws Exception {
+        Path path = Files.createTempFile(null, ".tiff");
+        ImageUtils.writeTiff(path.toString(), ImageUtils.createSampleImage(2, 3, Color.WHITE), 7, 3, 7, 4);
+        SampleImageServer server = new SampleImageServer(List.of(path.toUri()));
+        InputProbe inputProbe = InputProbe.probe(path.toString());
+        PositionFinder positionFinder = new TiffTagPositionFinder();
+        int[] expectedPosition = new int[] { 49, 12 };
+
+        int[] position = positionFinder.findPosition(server, inputProbe);
+
+        Assertions.assertArrayEquals(expectedPosition, position);
+
+        server.close();
+        Files.delete(path);
+    }
+
+    @Test
+    void Check_Probing_Supported() {
+        PositionFinder positionFinder = new TiffTagPositionFinder();
+
+        boolean probingSupported = positionFinder.supportsProbing();
+
+        Assertions.assertTrue(probingSupported);
+    }
+
+    @Test
+    void Check_Position_With_Probe_Only() throws Exception {
+        Path path = Files.createTempFile(null, ".tiff");
+        ImageUtils.writeTiff(path.toString(), ImageUtils.createSampleImage(2, 3, Color.WHITE), 7, 3, 7, 4);
+        InputProbe inputProbe = InputProbe.probe(path.toString());
+        PositionFinder positionFinder = new TiffTagPositionFinder();
+        int[] expectedPosition = new int[] { 49, 12 };
+
+        int[] position = positionFinder.findProbedPosition(inputProbe);
+
+        Assertions.assertArrayEquals(expectedPosition, position);
+
+        Files.delete(path);
+    }
+
     private static class SampleImageServer extends AbstractTileableImageServer {
 
         private final List<URI> uris;